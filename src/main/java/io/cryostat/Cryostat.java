@@ -29,7 +29,9 @@ import io.cryostat.discovery.DiscoveryStorage;
 import io.cryostat.messaging.MessagingServer;
 import io.cryostat.net.HttpServer;
 import io.cryostat.net.web.WebServer;
+import io.cryostat.recordings.ArchiveRetentionEngine;
 import io.cryostat.recordings.RecordingMetadataManager;
+import io.cryostat.recordings.UploadSessionManager;
 import io.cryostat.rules.RuleProcessor;
 import io.cryostat.rules.RuleRegistry;
 
@@ -88,6 +90,14 @@ class Cryostat extends AbstractVerticle {
                             return client.deployer()
                                     .deploy(client.recordingMetadataManager(), true);
                         })
+                .compose(
+                        (m) -> {
+                            return client.deployer().deploy(client.archiveRetentionEngine(), true);
+                        })
+                .compose(
+                        (m) -> {
+                            return client.deployer().deploy(client.uploadSessionManager(), true);
+                        })
                 .compose(
                         (m) -> {
                             return client.deployer().deploy(client.discoveryStorage(), true);
@@ -158,6 +168,10 @@ class Cryostat extends AbstractVerticle {
 
         RecordingMetadataManager recordingMetadataManager();
 
+        ArchiveRetentionEngine archiveRetentionEngine();
+
+        UploadSessionManager uploadSessionManager();
+
         @Component.Builder
         interface Builder {
             Client build();
@@ -17,16 +17,18 @@ package io.cryostat.configuration;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
-import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 
 import io.cryostat.core.sys.Environment;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.discovery.DiscoveryStorage;
-import io.cryostat.rules.MatchExpressionEvaluator;
+import io.cryostat.rules.MatchExpressionIndex;
 import io.cryostat.rules.MatchExpressionValidator;
+import io.cryostat.storage.DatabaseExecutor;
 
 import com.google.gson.Gson;
 import dagger.Lazy;
@@ -39,6 +41,7 @@ import org.slf4j.LoggerFactory;
 public abstract class ConfigurationModule {
     public static final String CONFIGURATION_PATH = "CONFIGURATION_PATH";
     public static final String CREDENTIALS_SUBDIRECTORY = "credentials";
+    public static final int DEFAULT_JMX_CREDENTIALS_CACHE_TTL_SECONDS = 60;
     private static final Logger logger = LoggerFactory.getLogger(ConfigurationModule.class);
 
     @Provides
@@ -55,25 +58,36 @@ public abstract class ConfigurationModule {
     static CredentialsManager provideCredentialsManager(
             @Named(CONFIGURATION_PATH) Path confDir,
             MatchExpressionValidator matchExpressionValidator,
-            Lazy<MatchExpressionEvaluator> matchExpressionEvaluator,
+            Lazy<MatchExpressionIndex> matchExpressionIndex,
             DiscoveryStorage discovery,
             StoredCredentialsDao dao,
+            Environment env,
             FileSystem fs,
             Gson gson) {
         Path credentialsDir = confDir.resolve(CREDENTIALS_SUBDIRECTORY);
+        int ttlSeconds =
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                env.getEnv(
+                                        Variables.JMX_CREDENTIALS_CACHE_TTL_SECONDS,
+                                        String.valueOf(
+                                                DEFAULT_JMX_CREDENTIALS_CACHE_TTL_SECONDS))));
         return new CredentialsManager(
                 credentialsDir,
                 matchExpressionValidator,
-                matchExpressionEvaluator,
+                matchExpressionIndex,
                 discovery,
                 dao,
+                new CredentialsCache(Duration.ofSeconds(ttlSeconds)),
                 fs,
                 gson);
     }
 
     @Provides
     @Singleton
-    static StoredCredentialsDao provideStoredCredentialsDao(EntityManager em) {
-        return new StoredCredentialsDao(em);
+    static StoredCredentialsDao provideStoredCredentialsDao(
+            EntityManagerFactory emf, DatabaseExecutor executor) {
+        return new StoredCredentialsDao(emf, executor);
     }
 }
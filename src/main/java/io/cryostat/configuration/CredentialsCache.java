@@ -0,0 +1,151 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.configuration;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import io.cryostat.core.net.Credentials;
+import io.cryostat.platform.ServiceRef;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Remembers which stored credentials apply to each target, and holds recently used decrypted
+ * credentials for a bounded time, so that connecting to a target does not need to read and decrypt
+ * every stored credential and evaluate its match expression. Decrypted credentials are only ever
+ * held in memory by this cache and are never written out.
+ *
+ * <p>Every invalidation advances a generation counter. Values computed from data read before an
+ * invalidation are discarded rather than cached when they are put, so that a lookup racing with a
+ * credentials change cannot reinstate a stale result.
+ */
+class CredentialsCache {
+
+    static final int MAX_TARGETS = 4096;
+    static final int MAX_CREDENTIALS = 1024;
+
+    private final Cache<ServiceRef, Optional<Integer>> targets;
+    private final Cache<Integer, Credentials> credentials;
+    private List<StoredMatchExpression> matchExpressions;
+    private long generation;
+
+    CredentialsCache(Duration ttl) {
+        this(ttl, Ticker.systemTicker());
+    }
+
+    CredentialsCache(Duration ttl, Ticker ticker) {
+        this.targets = Caffeine.newBuilder().maximumSize(MAX_TARGETS).recordStats().build();
+        this.credentials =
+                Caffeine.newBuilder()
+                        .ticker(ticker)
+                        .maximumSize(MAX_CREDENTIALS)
+                        .expireAfterWrite(ttl)
+                        .recordStats()
+                        .build();
+    }
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * @return the ID of the stored credentials which apply to the target, an empty Optional if none
+     *     apply, or null if this is not known
+     */
+    Optional<Integer> getCredentialsId(ServiceRef serviceRef) {
+        return targets.getIfPresent(serviceRef);
+    }
+
+    synchronized void putCredentialsId(
+            ServiceRef serviceRef, Optional<Integer> id, long generation) {
+        if (this.generation == generation) {
+            targets.put(serviceRef, id);
+        }
+    }
+
+    /**
+     * @return the decrypted credentials, or null if these have not been used recently
+     */
+    Credentials getCredentials(int id) {
+        return credentials.getIfPresent(id);
+    }
+
+    synchronized void putCredentials(int id, Credentials credentials, long generation) {
+        if (this.generation == generation) {
+            this.credentials.put(id, credentials);
+        }
+    }
+
+    /**
+     * @return the stored match expressions in evaluation order, or null if not known
+     */
+    synchronized List<StoredMatchExpression> getMatchExpressions() {
+        return matchExpressions;
+    }
+
+    synchronized void putMatchExpressions(
+            List<StoredMatchExpression> matchExpressions, long generation) {
+        if (this.generation == generation) {
+            this.matchExpressions = List.copyOf(matchExpressions);
+        }
+    }
+
+    /** Forget which credentials apply to any target with the given service URI. */
+    synchronized void invalidate(URI serviceUri) {
+        generation++;
+        targets.asMap().keySet().removeIf(sr -> Objects.equals(sr.getServiceUri(), serviceUri));
+    }
+
+    synchronized void invalidateAll() {
+        generation++;
+        matchExpressions = null;
+        targets.invalidateAll();
+        credentials.invalidateAll();
+    }
+
+    CacheStats getTargetStats() {
+        return targets.stats();
+    }
+
+    CacheStats getCredentialsStats() {
+        return credentials.stats();
+    }
+
+    static class StoredMatchExpression {
+        private final int id;
+        private final String matchExpression;
+
+        StoredMatchExpression(int id, String matchExpression) {
+            this.id = id;
+            this.matchExpression = matchExpression;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        String getMatchExpression() {
+            return matchExpression;
+        }
+    }
+}
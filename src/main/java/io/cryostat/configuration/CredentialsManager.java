@@ -32,11 +32,12 @@ import java.util.Set;
 
 import javax.script.ScriptException;
 
+import io.cryostat.configuration.CredentialsCache.StoredMatchExpression;
 import io.cryostat.core.net.Credentials;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.platform.PlatformClient;
 import io.cryostat.platform.ServiceRef;
-import io.cryostat.rules.MatchExpressionEvaluator;
+import io.cryostat.rules.MatchExpressionIndex;
 import io.cryostat.rules.MatchExpressionValidationException;
 import io.cryostat.rules.MatchExpressionValidator;
 import io.cryostat.util.URIUtil;
@@ -46,6 +47,11 @@ import io.cryostat.util.events.EventType;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import dagger.Lazy;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.utils.URIBuilder;
 import org.slf4j.Logger;
@@ -56,9 +62,10 @@ public class CredentialsManager
 
     private final Path credentialsDir;
     private final MatchExpressionValidator matchExpressionValidator;
-    private final Lazy<MatchExpressionEvaluator> matchExpressionEvaluator;
+    private final Lazy<MatchExpressionIndex> matchExpressionIndex;
     private final PlatformClient platformClient;
     private final StoredCredentialsDao dao;
+    private final CredentialsCache cache;
     private final FileSystem fs;
     private final Gson gson;
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -66,18 +73,32 @@ public class CredentialsManager
     CredentialsManager(
             Path credentialsDir,
             MatchExpressionValidator matchExpressionValidator,
-            Lazy<MatchExpressionEvaluator> matchExpressionEvaluator,
+            Lazy<MatchExpressionIndex> matchExpressionIndex,
             PlatformClient platformClient,
             StoredCredentialsDao dao,
+            CredentialsCache cache,
             FileSystem fs,
             Gson gson) {
         this.credentialsDir = credentialsDir;
         this.matchExpressionValidator = matchExpressionValidator;
-        this.matchExpressionEvaluator = matchExpressionEvaluator;
+        this.matchExpressionIndex = matchExpressionIndex;
         this.platformClient = platformClient;
         this.dao = dao;
+        this.cache = cache;
         this.fs = fs;
         this.gson = gson;
+
+        this.platformClient.addTargetDiscoveryListener(
+                tde -> {
+                    switch (tde.getEventKind()) {
+                        case MODIFIED:
+                        case LOST:
+                            cache.invalidate(tde.getServiceRef().getServiceUri());
+                            break;
+                        default:
+                            break;
+                    }
+                });
     }
 
     // TODO remove after 2.2 release
@@ -145,6 +166,7 @@ public class CredentialsManager
             throws MatchExpressionValidationException {
         matchExpressionValidator.validate(matchExpression);
         StoredCredentials saved = dao.save(new StoredCredentials(matchExpression, credentials));
+        cache.invalidateAll();
         emit(CredentialsEvent.ADDED, matchExpression);
         return saved.getId();
     }
@@ -186,20 +208,78 @@ public class CredentialsManager
         }
     }
 
+    /**
+     * Get the first stored credentials whose match expression applies to the target. Which stored
+     * credentials apply is remembered until the credentials or the target change, and the decrypted
+     * credentials are remembered for a limited time after they are read.
+     */
     public Credentials getCredentials(ServiceRef serviceRef) throws ScriptException {
-        for (StoredCredentials sc : dao.getAll()) {
-            if (matchExpressionEvaluator.get().applies(sc.getMatchExpression(), serviceRef)) {
-                return sc.getCredentials();
+        CredentialsLookup event = new CredentialsLookup();
+        event.begin();
+        long generation = cache.generation();
+        Map<Integer, StoredCredentials> loaded = new HashMap<>();
+        Optional<Integer> id = cache.getCredentialsId(serviceRef);
+        event.targetCacheHit = id != null;
+        if (id == null) {
+            id = Optional.empty();
+            for (StoredMatchExpression sme : getMatchExpressions(generation, loaded)) {
+                if (matchExpressionIndex.get().applies(sme.getMatchExpression(), serviceRef)) {
+                    id = Optional.of(sme.getId());
+                    break;
+                }
             }
+            cache.putCredentialsId(serviceRef, id, generation);
         }
-        return null;
+        Credentials credentials = null;
+        if (id.isPresent()) {
+            credentials = cache.getCredentials(id.get());
+            event.credentialsCacheHit = credentials != null;
+            if (credentials == null) {
+                Optional<StoredCredentials> stored =
+                        loaded.containsKey(id.get())
+                                ? Optional.of(loaded.get(id.get()))
+                                : dao.get(id.get());
+                if (stored.isPresent()) {
+                    credentials = stored.get().getCredentials();
+                    cache.putCredentials(id.get(), credentials, generation);
+                }
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.targetHitRate = cache.getTargetStats().hitRate();
+            event.credentialsHitRate = cache.getCredentialsStats().hitRate();
+            event.commit();
+        }
+        return credentials;
+    }
+
+    /**
+     * @param loaded receives the stored credentials if these had to be read from the database
+     */
+    private List<StoredMatchExpression> getMatchExpressions(
+            long generation, Map<Integer, StoredCredentials> loaded) {
+        List<StoredMatchExpression> matchExpressions = cache.getMatchExpressions();
+        if (matchExpressions == null) {
+            matchExpressions = new ArrayList<>();
+            for (StoredCredentials sc : dao.getAll()) {
+                matchExpressions.add(
+                        new StoredMatchExpression(sc.getId(), sc.getMatchExpression()));
+                loaded.put(sc.getId(), sc);
+            }
+            cache.putMatchExpressions(matchExpressions, generation);
+        }
+        return matchExpressions;
     }
 
     public Collection<ServiceRef> getServiceRefsWithCredentials() throws ScriptException {
+        Set<ServiceRef> matched = new HashSet<>();
+        for (StoredMatchExpression sme : getMatchExpressions(cache.generation(), new HashMap<>())) {
+            matched.addAll(matchExpressionIndex.get().getMatchingTargets(sme.getMatchExpression()));
+        }
         List<ServiceRef> result = new ArrayList<>();
         for (ServiceRef service : this.platformClient.listDiscoverableServices()) {
-            Credentials credentials = getCredentials(service);
-            if (credentials != null) {
+            if (matched.contains(service)) {
                 result.add(service);
             }
         }
@@ -223,25 +303,23 @@ public class CredentialsManager
     }
 
     public Set<ServiceRef> resolveMatchingTargets(String matchExpression) {
-        Set<ServiceRef> matchedTargets = new HashSet<>();
-        for (ServiceRef target : platformClient.listDiscoverableServices()) {
-            try {
-                if (matchExpressionEvaluator.get().applies(matchExpression, target)) {
-                    matchedTargets.add(target);
-                }
-            } catch (ScriptException e) {
-                logger.error("Script execution exception", e);
-                break;
-            }
+        try {
+            return matchExpressionIndex.get().getMatchingTargets(matchExpression);
+        } catch (ScriptException e) {
+            logger.error("Script execution exception", e);
+            return Set.of();
         }
-        return matchedTargets;
     }
 
     public boolean delete(int id) {
-        dao.get(id)
-                .map(StoredCredentials::getMatchExpression)
-                .ifPresent(c -> emit(CredentialsEvent.REMOVED, c));
-        return dao.delete(id);
+        Optional<String> matchExpression = dao.get(id).map(StoredCredentials::getMatchExpression);
+        boolean deleted = dao.delete(id);
+        cache.invalidateAll();
+        // listeners must not be able to observe the credentials which were just removed
+        if (deleted) {
+            matchExpression.ifPresent(c -> emit(CredentialsEvent.REMOVED, c));
+        }
+        return deleted;
     }
 
     public Map<Integer, String> getAll() {
@@ -331,6 +409,19 @@ public class CredentialsManager
         }
     }
 
+    @Name("io.cryostat.configuration.CredentialsManager.CredentialsLookup")
+    @Label("Credentials Lookup")
+    @Category("Cryostat")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class CredentialsLookup extends Event {
+        boolean targetCacheHit;
+        boolean credentialsCacheHit;
+        double targetHitRate;
+        double credentialsHitRate;
+    }
+
     public enum CredentialsEvent implements EventType {
         ADDED,
         REMOVED,
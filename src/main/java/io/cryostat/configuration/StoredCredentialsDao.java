@@ -15,12 +15,18 @@
  */
 package io.cryostat.configuration;
 
-import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 
 import io.cryostat.storage.AbstractDao;
+import io.cryostat.storage.DatabaseExecutor;
 
+/**
+ * Not given an {@link io.cryostat.storage.EntityCache}: stored credentials are decrypted when read,
+ * so a cache would hold every password in memory for the life of the process. Lookups by match
+ * expression are served by {@link CredentialsCache}, which keeps only IDs and match expressions.
+ */
 class StoredCredentialsDao extends AbstractDao<Integer, StoredCredentials> {
-    StoredCredentialsDao(EntityManager em) {
-        super(StoredCredentials.class, em);
+    StoredCredentialsDao(EntityManagerFactory emf, DatabaseExecutor executor) {
+        super(StoredCredentials.class, emf, executor);
     }
 }
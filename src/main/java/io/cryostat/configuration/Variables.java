@@ -72,12 +72,57 @@ public final class Variables {
     public static final String ARCHIVE_PATH = "CRYOSTAT_ARCHIVE_PATH";
     public static final String CONFIG_PATH = "CRYOSTAT_CONFIG_PATH";
 
+    // archive write pipeline configuration
+    public static final String ARCHIVE_WRITE_CHUNK_SIZE = "CRYOSTAT_ARCHIVE_WRITE_CHUNK_SIZE";
+    public static final String ARCHIVE_WRITE_MAX_BYTES_IN_FLIGHT =
+            "CRYOSTAT_ARCHIVE_WRITE_MAX_BYTES_IN_FLIGHT";
+    public static final String ARCHIVE_WRITE_PROGRESS_INTERVAL_BYTES =
+            "CRYOSTAT_ARCHIVE_WRITE_PROGRESS_INTERVAL_BYTES";
+    public static final String ARCHIVE_WRITE_MAX_CONCURRENT =
+            "CRYOSTAT_ARCHIVE_WRITE_MAX_CONCURRENT";
+
+    // archive migration configuration
+    public static final String ARCHIVE_MIGRATION_PARALLELISM =
+            "CRYOSTAT_ARCHIVE_MIGRATION_PARALLELISM";
+    public static final String METADATA_VALIDATION_PARALLELISM =
+            "CRYOSTAT_METADATA_VALIDATION_PARALLELISM";
+    public static final String METADATA_WRITE_DELAY_MS = "CRYOSTAT_METADATA_WRITE_DELAY_MS";
+
+    // automated rules periodic archival configuration
+    public static final String RULE_ARCHIVE_JITTER_PERCENT = "CRYOSTAT_RULE_ARCHIVE_JITTER_PERCENT";
+    public static final String RULE_ARCHIVE_MAX_CONCURRENT = "CRYOSTAT_RULE_ARCHIVE_MAX_CONCURRENT";
+    public static final String RULE_ARCHIVE_MAX_CONCURRENT_PER_RULE =
+            "CRYOSTAT_RULE_ARCHIVE_MAX_CONCURRENT_PER_RULE";
+    public static final String RULE_ARCHIVE_OVERRUN_POLICY = "CRYOSTAT_RULE_ARCHIVE_OVERRUN_POLICY";
+
+    // archive upload configuration
+    public static final String ARCHIVE_UPLOAD_MAX_BYTES = "CRYOSTAT_ARCHIVE_UPLOAD_MAX_BYTES";
+    public static final String ARCHIVE_UPLOAD_SESSION_TTL_SECONDS =
+            "CRYOSTAT_ARCHIVE_UPLOAD_SESSION_TTL_SECONDS";
+    public static final String ARCHIVE_UPLOAD_SESSIONS_PER_JVM =
+            "CRYOSTAT_ARCHIVE_UPLOAD_SESSIONS_PER_JVM";
+
+    // archive retention configuration
+    public static final String ARCHIVE_MAX_BYTES = "CRYOSTAT_ARCHIVE_MAX_BYTES";
+    public static final String ARCHIVE_MAX_BYTES_PER_JVM = "CRYOSTAT_ARCHIVE_MAX_BYTES_PER_JVM";
+    public static final String ARCHIVE_MAX_AGE_SECONDS = "CRYOSTAT_ARCHIVE_MAX_AGE_SECONDS";
+    public static final String ARCHIVE_EVICTION_POLICY = "CRYOSTAT_ARCHIVE_EVICTION_POLICY";
+    public static final String ARCHIVE_RETENTION_PERIOD_SECONDS =
+            "CRYOSTAT_ARCHIVE_RETENTION_PERIOD_SECONDS";
+
     // database configuration
     public static final String JDBC_DRIVER = "CRYOSTAT_JDBC_DRIVER";
     public static final String JDBC_URL = "CRYOSTAT_JDBC_URL";
     public static final String JDBC_USERNAME = "CRYOSTAT_JDBC_USERNAME";
     public static final String JDBC_PASSWORD = "CRYOSTAT_JDBC_PASSWORD";
+    public static final String JDBC_POOL_SIZE = "CRYOSTAT_JDBC_POOL_SIZE";
+    public static final String JDBC_POOL_TIMEOUT_MS = "CRYOSTAT_JDBC_POOL_TIMEOUT_MS";
+    public static final String JDBC_QUEUE_SIZE = "CRYOSTAT_JDBC_QUEUE_SIZE";
+    public static final String JDBC_OPERATION_TIMEOUT_MS = "CRYOSTAT_JDBC_OPERATION_TIMEOUT_MS";
+    public static final String JDBC_CACHE_VERSION_CHECK_MS = "CRYOSTAT_JDBC_CACHE_VERSION_CHECK_MS";
     public static final String JMX_CREDENTIALS_DB_PASSWORD = "CRYOSTAT_JMX_CREDENTIALS_DB_PASSWORD";
+    public static final String JMX_CREDENTIALS_CACHE_TTL_SECONDS =
+            "CRYOSTAT_JMX_CREDENTIALS_CACHE_TTL_SECONDS";
     public static final String HIBERNATE_DIALECT = "CRYOSTAT_HIBERNATE_DIALECT";
     public static final String HBM2DDL = "CRYOSTAT_HBM2DDL";
     public static final String LOG_QUERIES = "CRYOSTAT_LOG_DB_QUERIES";
@@ -15,6 +15,7 @@
  */
 package io.cryostat.discovery;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
@@ -36,12 +37,14 @@ import org.slf4j.LoggerFactory;
 public class BuiltInDiscovery extends AbstractVerticle implements Consumer<TargetDiscoveryEvent> {
 
     static final String NOTIFICATION_CATEGORY = "TargetJvmDiscovery";
+    static final String TREE_NOTIFICATION_CATEGORY = "DiscoveryTreeChanged";
 
     private final DiscoveryStorage storage;
     private final Set<PlatformDetectionStrategy<?>> selectedStrategies;
     private final Set<PlatformDetectionStrategy<?>> unselectedStrategies;
     private final Set<PlatformClient> enabledClients = new HashSet<>();
     private final NotificationFactory notificationFactory;
+    private final Consumer<DiscoveryStorage.TreeChange> treeListener = this::acceptTreeChange;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     BuiltInDiscovery(
@@ -58,6 +61,7 @@ public class BuiltInDiscovery extends AbstractVerticle implements Consumer<Targe
     @Override
     public void start(Promise<Void> start) {
         storage.addTargetDiscoveryListener(this);
+        storage.addTreeListener(treeListener);
 
         unselectedStrategies.stream()
                 .map(PlatformDetectionStrategy::getPlatformClient)
@@ -127,6 +131,7 @@ public class BuiltInDiscovery extends AbstractVerticle implements Consumer<Targe
     @Override
     public void stop() {
         storage.removeTargetDiscoveryListener(this);
+        storage.removeTreeListener(treeListener);
         Iterator<PlatformClient> it = enabledClients.iterator();
         while (it.hasNext()) {
             try {
@@ -154,4 +159,18 @@ public class BuiltInDiscovery extends AbstractVerticle implements Consumer<Targe
                 .build()
                 .send();
     }
+
+    private void acceptTreeChange(DiscoveryStorage.TreeChange change) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("epoch", change.epoch());
+        message.put("since", change.since());
+        message.put("version", change.version());
+        message.put("delta", change.delta());
+        notificationFactory
+                .createBuilder()
+                .metaCategory(TREE_NOTIFICATION_CATEGORY)
+                .message(message)
+                .build()
+                .send();
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.discovery;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.cryostat.platform.discovery.AbstractNode;
+import io.cryostat.platform.discovery.EnvironmentNode;
+
+/**
+ * An incremental change to a discovery plugin's subtree. Nodes are identified by their stable ID,
+ * {@code kind/name}, which is unique among the children of their parent, and are located by the
+ * path of stable IDs from the plugin's {@code REALM} node to their parent. Removals are applied
+ * first, then modifications, then additions.
+ */
+public class DiscoveryDelta {
+
+    private final List<NodeChange> add;
+    private final List<NodeChange> modify;
+    private final List<NodeRemoval> remove;
+
+    public DiscoveryDelta(List<NodeChange> add, List<NodeChange> modify, List<NodeRemoval> remove) {
+        this.add = add == null ? null : List.copyOf(add);
+        this.modify = modify == null ? null : List.copyOf(modify);
+        this.remove = remove == null ? null : List.copyOf(remove);
+    }
+
+    public List<NodeChange> getAdd() {
+        return add == null ? List.of() : add;
+    }
+
+    public List<NodeChange> getModify() {
+        return modify == null ? List.of() : modify;
+    }
+
+    public List<NodeRemoval> getRemove() {
+        return remove == null ? List.of() : remove;
+    }
+
+    public boolean isEmpty() {
+        return getAdd().isEmpty() && getModify().isEmpty() && getRemove().isEmpty();
+    }
+
+    /** The stable ID of a node within its parent. */
+    public static String idOf(AbstractNode node) {
+        return node.getNodeType().getKind() + "/" + node.getName();
+    }
+
+    /**
+     * The delta which changes one tree into another, with paths beginning below their common root.
+     * Subtrees which are the same instance in both trees are not compared. A modified environment
+     * node is given without its children, which are compared separately.
+     *
+     * @return the delta, or null if it cannot be expressed because siblings in either tree share a
+     *     stable ID
+     */
+    static DiscoveryDelta between(EnvironmentNode previous, EnvironmentNode current) {
+        List<NodeChange> add = new ArrayList<>();
+        List<NodeChange> modify = new ArrayList<>();
+        List<NodeRemoval> remove = new ArrayList<>();
+        if (!diff(List.of(), previous, current, add, modify, remove)) {
+            return null;
+        }
+        return new DiscoveryDelta(add, modify, remove);
+    }
+
+    private static boolean diff(
+            List<String> path,
+            EnvironmentNode previous,
+            EnvironmentNode current,
+            List<NodeChange> add,
+            List<NodeChange> modify,
+            List<NodeRemoval> remove) {
+        Map<String, AbstractNode> before = childrenOf(previous);
+        Map<String, AbstractNode> after = childrenOf(current);
+        if (before == null || after == null) {
+            return false;
+        }
+        for (String id : before.keySet()) {
+            if (!after.containsKey(id)) {
+                remove.add(new NodeRemoval(path, id));
+            }
+        }
+        for (Map.Entry<String, AbstractNode> entry : after.entrySet()) {
+            String id = entry.getKey();
+            AbstractNode was = before.get(id);
+            AbstractNode now = entry.getValue();
+            if (was == now) {
+                continue;
+            }
+            if (was == null) {
+                add.add(new NodeChange(path, now));
+            } else if (was instanceof EnvironmentNode && now instanceof EnvironmentNode) {
+                if (!was.getLabels().equals(now.getLabels())) {
+                    modify.add(
+                            new NodeChange(
+                                    path,
+                                    new EnvironmentNode(
+                                            now.getName(),
+                                            now.getNodeType(),
+                                            now.getLabels(),
+                                            List.of())));
+                }
+                List<String> child = new ArrayList<>(path);
+                child.add(id);
+                if (!diff(
+                        child, (EnvironmentNode) was, (EnvironmentNode) now, add, modify, remove)) {
+                    return false;
+                }
+            } else if (was.getClass() != now.getClass()) {
+                remove.add(new NodeRemoval(path, id));
+                add.add(new NodeChange(path, now));
+            } else if (!was.equals(now)) {
+                modify.add(new NodeChange(path, now));
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, AbstractNode> childrenOf(EnvironmentNode node) {
+        Map<String, AbstractNode> children = new LinkedHashMap<>();
+        for (AbstractNode child : node.getChildren()) {
+            if (children.put(idOf(child), child) != null) {
+                return null;
+            }
+        }
+        return children;
+    }
+
+    /**
+     * A node to add below, or to replace within, the parent node at the given path. A modified
+     * environment node keeps its existing children.
+     */
+    public static class NodeChange {
+        private final List<String> parent;
+        private final AbstractNode node;
+
+        public NodeChange(List<String> parent, AbstractNode node) {
+            this.parent = parent == null ? null : List.copyOf(parent);
+            this.node = node;
+        }
+
+        public List<String> getParent() {
+            return parent == null ? List.of() : parent;
+        }
+
+        public AbstractNode getNode() {
+            if (node == null) {
+                throw new IllegalArgumentException("node");
+            }
+            return node;
+        }
+    }
+
+    /** The stable ID of a node to remove, along with its descendants, from the given parent. */
+    public static class NodeRemoval {
+        private final List<String> parent;
+        private final String id;
+
+        public NodeRemoval(List<String> parent, String id) {
+            this.parent = parent == null ? null : List.copyOf(parent);
+            this.id = id;
+        }
+
+        public List<String> getParent() {
+            return parent == null ? List.of() : parent;
+        }
+
+        public String getId() {
+            if (id == null) {
+                throw new IllegalArgumentException("id");
+            }
+            return id;
+        }
+    }
+}
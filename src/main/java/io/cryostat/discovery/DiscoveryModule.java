@@ -21,7 +21,7 @@ import java.util.concurrent.Executors;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
-import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 
 import io.cryostat.VerticleDeployer;
 import io.cryostat.configuration.CredentialsManager;
@@ -34,6 +34,8 @@ import io.cryostat.platform.discovery.AbstractNode;
 import io.cryostat.platform.internal.PlatformDetectionStrategy;
 import io.cryostat.recordings.JvmIdHelper;
 import io.cryostat.rules.MatchExpressionEvaluator;
+import io.cryostat.storage.DatabaseExecutor;
+import io.cryostat.storage.EntityCacheFactory;
 import io.cryostat.util.PluggableTypeAdapter;
 
 import com.google.gson.Gson;
@@ -61,8 +63,12 @@ public abstract class DiscoveryModule {
 
     @Provides
     @Singleton
-    static PluginInfoDao providePluginInfoDao(EntityManager em, Gson gson) {
-        return new PluginInfoDao(em, gson);
+    static PluginInfoDao providePluginInfoDao(
+            EntityManagerFactory emf,
+            DatabaseExecutor executor,
+            EntityCacheFactory caches,
+            Gson gson) {
+        return new PluginInfoDao(emf, executor, caches, gson);
     }
 
     @Provides
@@ -19,20 +19,22 @@ import java.net.URI;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 import javax.script.ScriptException;
@@ -56,6 +58,7 @@ import io.cryostat.util.HttpStatusCodeIdentifier;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import dagger.Lazy;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.vertx.core.Promise;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpMethod;
@@ -87,6 +90,16 @@ public class DiscoveryStorage extends AbstractPlatformClientVerticle {
     private ScheduledFuture<?> pluginPruneTask;
     private ScheduledFuture<?> targetRetryTask;
 
+    private final Object treeLock = new Object();
+    // serializes the read-modify-write of each plugin's subtree
+    private final Map<UUID, Object> pluginLocks = new ConcurrentHashMap<>();
+    private volatile DiscoveryTree tree = DiscoveryTree.EMPTY;
+    // identifies this instance's sequence of tree versions, which restarts with each instance
+    private final String treeEpoch = UUID.randomUUID().toString();
+    private final Object publishLock = new Object();
+    private DiscoveryTree published = DiscoveryTree.EMPTY;
+    private final Set<Consumer<TreeChange>> treeListeners = new CopyOnWriteArraySet<>();
+
     private final Map<Pair<TargetNode, UUID>, ConnectionAttemptRecord> nonConnectableTargets =
             new ConcurrentHashMap<>();
 
@@ -259,8 +272,7 @@ public class DiscoveryStorage extends AbstractPlatformClientVerticle {
                                 nonConnectableTargets.remove(entry.getKey());
                                 UUID id = entry.getKey().getValue();
                                 PluginInfo plugin = getById(id).orElseThrow();
-                                EnvironmentNode original =
-                                        gson.fromJson(plugin.getSubtree(), EnvironmentNode.class);
+                                EnvironmentNode original = tree().realmOf(plugin, gson).node();
                                 update(id, original.getChildren());
                             }
                         } catch (JsonSyntaxException e) {
@@ -412,6 +424,7 @@ public class DiscoveryStorage extends AbstractPlatformClientVerticle {
                             initial.getChildren());
             PluginInfo updated = dao.update(id, update);
             logger.trace("Discovery Registration: \"{}\" [{}]", realm, id);
+            publishTree();
             return updated.getId();
         } catch (Exception e) {
             deleteStoredCredentials(callback);
@@ -438,11 +451,7 @@ public class DiscoveryStorage extends AbstractPlatformClientVerticle {
                 } catch (Exception e) {
                     logger.info("Update node [{}] with null jvmId", child.getName());
                     logger.info("JVM ID exception", e);
-                    ConnectionAttemptRecord attemptRecord = new ConnectionAttemptRecord();
-                    attemptRecord.firstAttemptTimestamp = clock.now().getEpochSecond();
-                    attemptRecord.lastAttemptTimestamp = attemptRecord.firstAttemptTimestamp;
-                    nonConnectableTargets.putIfAbsent(
-                            Pair.of((TargetNode) child, id), attemptRecord);
+                    retryJvmId(id, (TargetNode) child);
                 }
                 modifiedChildren.add(child);
             } else if (child instanceof EnvironmentNode) {
@@ -460,6 +469,13 @@ public class DiscoveryStorage extends AbstractPlatformClientVerticle {
         return modifiedChildren;
     }
 
+    private void retryJvmId(UUID id, TargetNode node) {
+        ConnectionAttemptRecord attemptRecord = new ConnectionAttemptRecord();
+        attemptRecord.firstAttemptTimestamp = clock.now().getEpochSecond();
+        attemptRecord.lastAttemptTimestamp = attemptRecord.firstAttemptTimestamp;
+        nonConnectableTargets.putIfAbsent(Pair.of(node, id), attemptRecord);
+    }
+
     public List<? extends AbstractNode> update(
             UUID id, Collection<? extends AbstractNode> children) {
         var updatedChildren =
@@ -467,55 +483,301 @@ public class DiscoveryStorage extends AbstractPlatformClientVerticle {
 
         PluginInfo plugin = dao.get(id).orElseThrow(() -> new NotFoundException(id));
 
-        EnvironmentNode originalTree = gson.fromJson(plugin.getSubtree(), EnvironmentNode.class);
-        plugin = dao.update(id, updatedChildren);
-        logger.trace("Discovery Update {} ({}): {}", id, plugin.getRealm(), updatedChildren);
-        EnvironmentNode currentTree = gson.fromJson(plugin.getSubtree(), EnvironmentNode.class);
+        DiscoveryTree.Realm original;
+        DiscoveryTree.Realm current;
+        synchronized (lockFor(id)) {
+            // read again while holding the lock, in case a concurrent patch has just been applied
+            plugin = dao.get(id).orElseThrow(() -> new NotFoundException(id));
+            original = tree().realmOf(plugin, gson);
+            EnvironmentNode subtree =
+                    new EnvironmentNode(
+                            original.node().getName(),
+                            original.node().getNodeType(),
+                            original.node().getLabels(),
+                            updatedChildren);
+            plugin = dao.update(id, subtree);
+            logger.trace("Discovery Update {} ({}): {}", id, plugin.getRealm(), updatedChildren);
+            current = install(plugin, subtree);
+        }
+
+        publishTree();
+
+        List<ServiceRef> previousRefs = original.services();
+        List<ServiceRef> currentRefs = current.services();
+
+        ServiceRef.Compare diff = ServiceRef.compare(previousRefs).to(currentRefs);
+        diff.updated().forEach(sr -> notifyAsyncTargetDiscovery(EventKind.MODIFIED, sr));
+        diff.added().forEach(sr -> notifyAsyncTargetDiscovery(EventKind.FOUND, sr));
+        diff.removed().forEach(sr -> notifyAsyncTargetDiscovery(EventKind.LOST, sr));
+
+        return current.node().getChildren();
+    }
+
+    /**
+     * Apply a {@link DiscoveryDelta} to a plugin's subtree. Only the nodes named by the delta and
+     * their ancestors are rebuilt, and every other node is shared with the previous discovery tree,
+     * so the published change only compares the rebuilt nodes. The whole subtree is still stored
+     * again, since it is persisted as a single document. JVM IDs are resolved only for added
+     * targets and for modified targets which do not have one yet, before the plugin's subtree is
+     * locked, since resolving them may connect to the targets. Discovery events are emitted only
+     * for the targets within the added, removed, and modified nodes.
+     *
+     * @return the plugin's updated subtree
+     * @throws IllegalArgumentException if the delta does not apply to the plugin's current subtree
+     */
+    public EnvironmentNode patch(UUID id, DiscoveryDelta delta) {
+        Objects.requireNonNull(delta, "delta");
+        List<ServiceRef> lost = new ArrayList<>();
+        List<ServiceRef> found = new ArrayList<>();
+        List<ServiceRef> modified = new ArrayList<>();
+        PluginInfo plugin = dao.get(id).orElseThrow(() -> new NotFoundException(id));
+
+        List<AbstractNode> added = new ArrayList<>();
+        for (DiscoveryDelta.NodeChange change : delta.getAdd()) {
+            added.add(modifyChildrenWithJvmIds(id, List.of(change.getNode())).get(0));
+        }
+        List<TargetNode> resolvedModifications =
+                resolveModifiedTargets(id, tree().realmOf(plugin, gson).node(), delta);
+
+        EnvironmentNode updated;
+        boolean changed;
+        synchronized (lockFor(id)) {
+            plugin = dao.get(id).orElseThrow(() -> new NotFoundException(id));
+            EnvironmentNode original = tree().realmOf(plugin, gson).node();
+            SubtreeEdit edit = new SubtreeEdit(original);
+
+            for (DiscoveryDelta.NodeRemoval removal : delta.getRemove()) {
+                collectTargets(edit.at(removal.getParent()).remove(removal.getId()), lost);
+            }
+            for (int i = 0; i < delta.getModify().size(); i++) {
+                DiscoveryDelta.NodeChange change = delta.getModify().get(i);
+                SubtreeEdit parent = edit.at(change.getParent());
+                AbstractNode node = change.getNode();
+                String nodeId = DiscoveryDelta.idOf(node);
+                AbstractNode previous = parent.get(nodeId);
+                if (previous instanceof TargetNode && node instanceof TargetNode) {
+                    String jvmId = ((TargetNode) previous).getTarget().getJvmId();
+                    TargetNode target;
+                    if (StringUtils.isNotBlank(jvmId)) {
+                        target = withJvmId((TargetNode) node, jvmId);
+                    } else if (resolvedModifications.get(i) != null) {
+                        target = resolvedModifications.get(i);
+                    } else {
+                        // lost its JVM ID since the delta was read, so leave it to the retry task
+                        target = (TargetNode) node;
+                        retryJvmId(id, target);
+                    }
+                    parent.put(target);
+                    modified.add(target.getTarget());
+                } else if (previous instanceof EnvironmentNode && node instanceof EnvironmentNode) {
+                    parent.descend(nodeId).setLabels(node.getLabels());
+                } else {
+                    throw new IllegalArgumentException(
+                            String.format(
+                                    "No %s %s to modify", node.getClass().getSimpleName(), nodeId));
+                }
+            }
+            for (int i = 0; i < delta.getAdd().size(); i++) {
+                DiscoveryDelta.NodeChange change = delta.getAdd().get(i);
+                SubtreeEdit parent = edit.at(change.getParent());
+                AbstractNode node = change.getNode();
+                if (parent.get(DiscoveryDelta.idOf(node)) != null) {
+                    throw new IllegalArgumentException(
+                            String.format("Node %s already exists", DiscoveryDelta.idOf(node)));
+                }
+                AbstractNode resolved = added.get(i);
+                parent.put(resolved);
+                collectTargets(resolved, found);
+            }
+
+            updated = edit.build();
+            changed = updated != original;
+            if (changed) {
+                plugin = dao.update(id, updated);
+                install(plugin, updated);
+                logger.trace(
+                        "Discovery Patch {} ({}): {} added, {} modified, {} removed",
+                        id,
+                        plugin.getRealm(),
+                        delta.getAdd().size(),
+                        delta.getModify().size(),
+                        delta.getRemove().size());
+            }
+        }
 
-        List<ServiceRef> previousRefs = getRefsFromLeaves(findLeavesFrom(originalTree));
-        List<ServiceRef> currentRefs = getRefsFromLeaves(findLeavesFrom(currentTree));
+        if (changed) {
+            publishTree();
+        }
 
-        ServiceRef.compare(previousRefs).to(currentRefs).updated().stream()
-                .forEach(sr -> notifyAsyncTargetDiscovery(EventKind.MODIFIED, sr));
+        modified.forEach(sr -> notifyAsyncTargetDiscovery(EventKind.MODIFIED, sr));
+        found.forEach(sr -> notifyAsyncTargetDiscovery(EventKind.FOUND, sr));
+        lost.forEach(sr -> notifyAsyncTargetDiscovery(EventKind.LOST, sr));
 
-        ServiceRef.compare(previousRefs).to(currentRefs).added().stream()
-                .forEach(sr -> notifyAsyncTargetDiscovery(EventKind.FOUND, sr));
+        return updated;
+    }
 
-        ServiceRef.compare(previousRefs).to(currentRefs).removed().stream()
-                .forEach(sr -> notifyAsyncTargetDiscovery(EventKind.LOST, sr));
-        ;
+    /**
+     * Resolve the JVM IDs of the targets a delta modifies which have none in the given snapshot of
+     * the plugin's subtree.
+     *
+     * @return the resolved targets, in the order of the delta's modifications, with null for those
+     *     which did not need resolving
+     */
+    private List<TargetNode> resolveModifiedTargets(
+            UUID id, EnvironmentNode snapshot, DiscoveryDelta delta) {
+        SubtreeEdit edit = new SubtreeEdit(snapshot);
+        List<TargetNode> resolved = new ArrayList<>();
+        for (DiscoveryDelta.NodeChange change : delta.getModify()) {
+            AbstractNode node = change.getNode();
+            AbstractNode previous;
+            try {
+                previous = edit.at(change.getParent()).get(DiscoveryDelta.idOf(node));
+            } catch (IllegalArgumentException e) {
+                // the delta is rejected once it is applied under the plugin's lock
+                previous = null;
+            }
+            if (node instanceof TargetNode
+                    && previous instanceof TargetNode
+                    && StringUtils.isBlank(((TargetNode) previous).getTarget().getJvmId())) {
+                resolved.add((TargetNode) modifyChildrenWithJvmIds(id, List.of(node)).get(0));
+            } else {
+                resolved.add(null);
+            }
+        }
+        return resolved;
+    }
 
-        return currentTree.getChildren();
+    private static TargetNode withJvmId(TargetNode node, String jvmId) {
+        ServiceRef ref = node.getTarget();
+        ServiceRef resolved =
+                new ServiceRef(jvmId, ref.getServiceUri(), ref.getAlias().orElse(null));
+        resolved.setLabels(ref.getLabels());
+        resolved.setPlatformAnnotations(ref.getPlatformAnnotations());
+        resolved.setCryostatAnnotations(ref.getCryostatAnnotations());
+        return new TargetNode(node.getNodeType(), resolved, node.getLabels());
+    }
+
+    private static void collectTargets(AbstractNode node, List<ServiceRef> refs) {
+        if (node instanceof TargetNode) {
+            refs.add(((TargetNode) node).getTarget());
+        } else if (node instanceof EnvironmentNode) {
+            ((EnvironmentNode) node).getChildren().forEach(child -> collectTargets(child, refs));
+        }
+    }
+
+    private Object lockFor(UUID id) {
+        return pluginLocks.computeIfAbsent(id, k -> new Object());
     }
 
     public PluginInfo deregister(UUID id) {
         PluginInfo plugin = dao.get(id).orElseThrow(() -> new NotFoundException(id));
+        DiscoveryTree.Realm realm;
+        // excludes a concurrent update or patch, which would otherwise store the subtree again
+        synchronized (lockFor(id)) {
+            plugin = dao.get(id).orElseThrow(() -> new NotFoundException(id));
+            realm = tree().realmOf(plugin, gson);
+            dao.delete(id);
+            pluginLocks.remove(id);
+        }
         deleteStoredCredentials(plugin.getCallback());
-        dao.delete(id);
-        findLeavesFrom(gson.fromJson(plugin.getSubtree(), EnvironmentNode.class)).stream()
-                .map(TargetNode::getTarget)
-                .forEach(sr -> notifyAsyncTargetDiscovery(EventKind.LOST, sr));
+        publishTree();
+        realm.services().forEach(sr -> notifyAsyncTargetDiscovery(EventKind.LOST, sr));
         return plugin;
     }
 
+    /**
+     * The tree of all targets discovered by every registered plugin. The tree is shared between
+     * callers until a plugin's subtree changes, so it must not be modified.
+     */
     public EnvironmentNode getDiscoveryTree() {
-        List<EnvironmentNode> realms =
-                dao.getAll().stream()
-                        .map(PluginInfo::getSubtree)
-                        .map(s -> gson.fromJson(s, EnvironmentNode.class))
-                        .sorted((s1, s2) -> s1.compareTo(s2))
-                        .toList();
-        return new EnvironmentNode(
-                "Universe", BaseNodeType.UNIVERSE, Collections.emptyMap(), realms);
+        return tree().getUniverse();
+    }
+
+    /**
+     * The discovery tree along with its version. The version increases each time the tree's content
+     * changes, and versions are only comparable between trees of the same epoch.
+     */
+    public VersionedTree getVersionedDiscoveryTree() {
+        DiscoveryTree current = tree();
+        return new VersionedTree(treeEpoch, current.getVersion(), current.getUniverse());
+    }
+
+    /**
+     * Listen for changes to the discovery tree. Each change is published after a plugin registers,
+     * updates its subtree, or deregisters, and carries the delta from the version of the previous
+     * published change, so changes are published in order and each begins where the last ended.
+     */
+    public void addTreeListener(Consumer<TreeChange> listener) {
+        treeListeners.add(listener);
+    }
+
+    public void removeTreeListener(Consumer<TreeChange> listener) {
+        treeListeners.remove(listener);
     }
 
-    private List<TargetNode> getLeafNodes() {
-        return findLeavesFrom(getDiscoveryTree());
+    private void publishTree() {
+        synchronized (publishLock) {
+            DiscoveryTree previous = published;
+            DiscoveryTree current = tree();
+            if (current.getVersion() == previous.getVersion()) {
+                return;
+            }
+            published = current;
+            if (treeListeners.isEmpty()) {
+                return;
+            }
+            TreeChange change =
+                    new TreeChange(
+                            treeEpoch,
+                            previous.getVersion(),
+                            current.getVersion(),
+                            DiscoveryDelta.between(previous.getUniverse(), current.getUniverse()));
+            treeListeners.forEach(listener -> listener.accept(change));
+        }
+    }
+
+    /**
+     * Install a plugin's subtree which was just built and stored, so that the tree is rebuilt from
+     * it instead of deserializing the stored subtree again.
+     */
+    private DiscoveryTree.Realm install(PluginInfo plugin, EnvironmentNode subtree) {
+        DiscoveryTree.Realm realm = DiscoveryTree.Realm.of(subtree);
+        synchronized (treeLock) {
+            List<PluginInfo> plugins = dao.getAll();
+            DiscoveryTree current = tree;
+            if (!current.isBuiltFrom(plugins)) {
+                tree =
+                        current.rebuild(
+                                plugins,
+                                current.getVersion() + 1,
+                                gson,
+                                Map.of(plugin.getSubtree(), realm));
+            }
+        }
+        return realm;
+    }
+
+    private DiscoveryTree tree() {
+        DiscoveryTree current = tree;
+        if (current.isBuiltFrom(dao.getAll())) {
+            return current;
+        }
+        synchronized (treeLock) {
+            // read the plugins again while holding the lock, so that a rebuild from an older
+            // list cannot replace a tree built from a newer one
+            List<PluginInfo> plugins = dao.getAll();
+            current = tree;
+            if (!current.isBuiltFrom(plugins)) {
+                current = current.rebuild(plugins, current.getVersion() + 1, gson);
+                tree = current;
+            }
+            return current;
+        }
     }
 
     @Override
     public List<ServiceRef> listDiscoverableServices() {
-        return getLeafNodes().stream().map(TargetNode::getTarget).toList();
+        return tree().getServices();
     }
 
     public Optional<PluginInfo> getBuiltInPluginByRealm(String realm) {
@@ -526,22 +788,7 @@ public class DiscoveryStorage extends AbstractPlatformClientVerticle {
     }
 
     public List<ServiceRef> listDiscoverableServices(PluginInfo plugin) {
-        return findLeavesFrom(gson.fromJson(plugin.getSubtree(), EnvironmentNode.class)).stream()
-                .map(TargetNode::getTarget)
-                .toList();
-    }
-
-    private List<TargetNode> findLeavesFrom(AbstractNode node) {
-        if (node instanceof TargetNode) {
-            return List.of((TargetNode) node);
-        }
-        if (node instanceof EnvironmentNode) {
-            EnvironmentNode environment = (EnvironmentNode) node;
-            List<TargetNode> targets = new ArrayList<>();
-            environment.getChildren().stream().map(this::findLeavesFrom).forEach(targets::addAll);
-            return targets;
-        }
-        throw new IllegalArgumentException(node.getClass().getCanonicalName());
+        return tree().realmOf(plugin, gson).services();
     }
 
     public List<ServiceRef> getRefsFromLeaves(List<TargetNode> leaves) {
@@ -550,6 +797,22 @@ public class DiscoveryStorage extends AbstractPlatformClientVerticle {
         return refs;
     }
 
+    /**
+     * The discovery tree at a version. {@code epoch} identifies the instance which assigned the
+     * version.
+     */
+    @SuppressFBWarnings(
+            value = {"EI_EXPOSE_REP", "EI_EXPOSE_REP2"},
+            justification = "The tree is shared between readers and must not be modified")
+    public record VersionedTree(String epoch, long version, EnvironmentNode tree) {}
+
+    /**
+     * A change to the discovery tree from version {@code since} to {@code version}. The {@code
+     * delta} paths begin below the tree's {@code UNIVERSE} root, and the delta is null if the
+     * change cannot be expressed as one, in which case the tree should be read again.
+     */
+    public record TreeChange(String epoch, long since, long version, DiscoveryDelta delta) {}
+
     public static class NotFoundException extends RuntimeException {
         NotFoundException(UUID id) {
             super(String.format("Unknown registration id: [%s]", id.toString()));
@@ -0,0 +1,182 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.cryostat.platform.ServiceRef;
+import io.cryostat.platform.discovery.AbstractNode;
+import io.cryostat.platform.discovery.BaseNodeType;
+import io.cryostat.platform.discovery.EnvironmentNode;
+import io.cryostat.platform.discovery.TargetNode;
+
+import com.google.gson.Gson;
+
+/**
+ * Immutable snapshot of the discovery tree, built from the stored subtrees of every registered
+ * plugin. Each plugin's subtree is deserialized once, along with its leaf targets, and reused by
+ * every later snapshot until the plugin's stored subtree changes, so reading the tree or its
+ * targets does not repeat any work. A subtree which was built in memory before it was stored is
+ * installed as it is, without deserializing it again. The nodes of the tree are shared and must not
+ * be modified.
+ */
+final class DiscoveryTree {
+
+    static final DiscoveryTree EMPTY = new DiscoveryTree(List.of(), Map.of(), List.of(), 0);
+
+    private final List<PluginInfo> plugins;
+    // keyed by the plugin's serialized subtree, so that identical subtrees share one realm
+    private final Map<String, Realm> realms;
+    private final EnvironmentNode universe;
+    private final List<TargetNode> leaves;
+    private final List<ServiceRef> services;
+    private final int size;
+    private final long version;
+
+    private DiscoveryTree(
+            List<PluginInfo> plugins,
+            Map<String, Realm> realms,
+            List<Realm> ordered,
+            long version) {
+        this.plugins = plugins;
+        this.realms = realms;
+        List<EnvironmentNode> nodes = new ArrayList<>(ordered.size());
+        List<TargetNode> leaves = new ArrayList<>();
+        for (Realm realm : ordered) {
+            nodes.add(realm.node());
+            leaves.addAll(realm.leaves());
+        }
+        this.universe =
+                new EnvironmentNode(
+                        "Universe", BaseNodeType.UNIVERSE, Collections.emptyMap(), nodes);
+        this.leaves = Collections.unmodifiableList(leaves);
+        this.services = leaves.stream().map(TargetNode::getTarget).toList();
+        this.size = ordered.size();
+        this.version = version;
+    }
+
+    private DiscoveryTree(DiscoveryTree other, List<PluginInfo> plugins) {
+        this.plugins = plugins;
+        this.realms = other.realms;
+        this.universe = other.universe;
+        this.leaves = other.leaves;
+        this.services = other.services;
+        this.size = other.size;
+        this.version = other.version;
+    }
+
+    /** Whether this tree was built from exactly this list of plugins, as returned by the DAO. */
+    boolean isBuiltFrom(List<PluginInfo> plugins) {
+        return this.plugins == plugins;
+    }
+
+    /**
+     * Build the tree for the given plugins, reusing the realms of this tree for any plugin whose
+     * subtree has not changed.
+     *
+     * @return a tree sharing the content and version of this tree if no plugin's subtree has
+     *     changed
+     */
+    DiscoveryTree rebuild(List<PluginInfo> plugins, long version, Gson gson) {
+        return rebuild(plugins, version, gson, Map.of());
+    }
+
+    /**
+     * Build the tree for the given plugins, reusing the realms of this tree for any plugin whose
+     * subtree has not changed, and using the given realms, keyed by their serialized subtree, for
+     * any plugin whose subtree was just built in memory.
+     *
+     * @return a tree sharing the content and version of this tree if no plugin's subtree has
+     *     changed
+     */
+    DiscoveryTree rebuild(
+            List<PluginInfo> plugins, long version, Gson gson, Map<String, Realm> built) {
+        Map<String, Realm> rebuilt = new HashMap<>(plugins.size());
+        List<Realm> ordered = new ArrayList<>(plugins.size());
+        boolean changed = plugins.size() != size;
+        for (PluginInfo plugin : plugins) {
+            Realm realm = realms.get(plugin.getSubtree());
+            if (realm == null) {
+                realm = built.get(plugin.getSubtree());
+                if (realm == null) {
+                    realm = Realm.parse(plugin.getSubtree(), gson);
+                }
+                changed = true;
+            }
+            rebuilt.put(plugin.getSubtree(), realm);
+            ordered.add(realm);
+        }
+        if (!changed && rebuilt.size() == realms.size()) {
+            return new DiscoveryTree(this, plugins);
+        }
+        ordered.sort((r1, r2) -> r1.node().compareTo(r2.node()));
+        return new DiscoveryTree(plugins, rebuilt, ordered, version);
+    }
+
+    /** The realm for the plugin, deserializing its subtree if it is not part of this tree. */
+    Realm realmOf(PluginInfo plugin, Gson gson) {
+        Realm realm = realms.get(plugin.getSubtree());
+        return realm != null ? realm : Realm.parse(plugin.getSubtree(), gson);
+    }
+
+    EnvironmentNode getUniverse() {
+        return universe;
+    }
+
+    List<TargetNode> getLeaves() {
+        return leaves;
+    }
+
+    List<ServiceRef> getServices() {
+        return services;
+    }
+
+    /** Incremented each time the tree's content changes. */
+    long getVersion() {
+        return version;
+    }
+
+    record Realm(EnvironmentNode node, List<TargetNode> leaves, List<ServiceRef> services) {
+        static Realm parse(String subtree, Gson gson) {
+            return of(gson.fromJson(subtree, EnvironmentNode.class));
+        }
+
+        static Realm of(EnvironmentNode node) {
+            List<TargetNode> leaves = new ArrayList<>();
+            collectLeaves(node, leaves);
+            return new Realm(
+                    node,
+                    Collections.unmodifiableList(leaves),
+                    leaves.stream().map(TargetNode::getTarget).toList());
+        }
+
+        private static void collectLeaves(AbstractNode node, List<TargetNode> leaves) {
+            if (node instanceof TargetNode) {
+                leaves.add((TargetNode) node);
+            } else if (node instanceof EnvironmentNode) {
+                for (AbstractNode child : ((EnvironmentNode) node).getChildren()) {
+                    collectLeaves(child, leaves);
+                }
+            } else {
+                throw new IllegalArgumentException(node.getClass().getCanonicalName());
+            }
+        }
+    }
+}
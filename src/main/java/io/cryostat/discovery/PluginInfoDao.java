@@ -21,17 +21,15 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Function;
 
-import javax.persistence.EntityManager;
-import javax.persistence.EntityTransaction;
-import javax.persistence.TypedQuery;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
+import javax.persistence.EntityManagerFactory;
 
 import io.cryostat.platform.discovery.AbstractNode;
 import io.cryostat.platform.discovery.EnvironmentNode;
 import io.cryostat.storage.AbstractDao;
+import io.cryostat.storage.DatabaseExecutor;
+import io.cryostat.storage.EntityCacheFactory;
 
 import com.google.gson.Gson;
 
@@ -39,93 +37,62 @@ class PluginInfoDao extends AbstractDao<UUID, PluginInfo> {
 
     private final Gson gson;
 
-    PluginInfoDao(EntityManager em, Gson gson) {
-        super(PluginInfo.class, em);
+    PluginInfoDao(
+            EntityManagerFactory emf,
+            DatabaseExecutor executor,
+            EntityCacheFactory caches,
+            Gson gson) {
+        super(PluginInfo.class, emf, executor, caches.create(PluginInfo.class, PluginInfo::getId));
         this.gson = gson;
     }
 
     public final PluginInfo save(String realm, URI callback, EnvironmentNode subtree) {
-        synchronized (entityManager) {
-            Objects.requireNonNull(realm);
-            Objects.requireNonNull(subtree);
-            return super.save(new PluginInfo(realm, callback, gson.toJson(subtree)));
-        }
+        Objects.requireNonNull(realm);
+        Objects.requireNonNull(subtree);
+        return super.save(new PluginInfo(realm, callback, gson.toJson(subtree)));
     }
 
     public final List<PluginInfo> getByRealm(String realm) {
-        synchronized (entityManager) {
-            Objects.requireNonNull(realm);
-
-            CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-            CriteriaQuery<PluginInfo> cq = cb.createQuery(klazz);
-            Root<PluginInfo> rootEntry = cq.from(klazz);
-            CriteriaQuery<PluginInfo> all = cq.select(rootEntry);
-            CriteriaQuery<PluginInfo> withRealm =
-                    all.where(cb.equal(rootEntry.get("realm"), realm));
-            TypedQuery<PluginInfo> realmQuery = entityManager.createQuery(withRealm);
-
-            return realmQuery.getResultList();
-        }
+        Objects.requireNonNull(realm);
+        return getAll().stream().filter(plugin -> realm.equals(plugin.getRealm())).toList();
     }
 
     public final PluginInfo update(UUID id, EnvironmentNode subtree) {
-        synchronized (entityManager) {
-            Objects.requireNonNull(id);
-            Objects.requireNonNull(subtree);
-            EntityTransaction transaction = entityManager.getTransaction();
-            try {
-                PluginInfo plugin =
-                        get(id).orElseThrow(() -> new NoSuchElementException(id.toString()));
-
-                transaction.begin();
-                plugin.setSubtree(gson.toJson(subtree));
-                entityManager.merge(plugin);
-                transaction.commit();
-                entityManager.detach(plugin);
-
-                return plugin;
-            } catch (Exception e) {
-                if (transaction != null) {
-                    transaction.rollback();
-                }
-                logger.error("Update exception", e);
-                throw e;
-            }
-        }
+        Objects.requireNonNull(id);
+        Objects.requireNonNull(subtree);
+        return update(id, plugin -> subtree);
     }
 
     public final PluginInfo update(UUID id, Collection<? extends AbstractNode> children) {
-        synchronized (entityManager) {
-            Objects.requireNonNull(id);
-            Objects.requireNonNull(children);
-            EntityTransaction transaction = entityManager.getTransaction();
-            try {
-                PluginInfo plugin =
-                        get(id).orElseThrow(() -> new NoSuchElementException(id.toString()));
-                EnvironmentNode original =
-                        gson.fromJson(plugin.getSubtree(), EnvironmentNode.class);
-
-                EnvironmentNode subtree =
-                        new EnvironmentNode(
-                                original.getName(),
-                                original.getNodeType(),
-                                original.getLabels(),
-                                children);
-
-                transaction.begin();
-                plugin.setSubtree(gson.toJson(subtree));
-                entityManager.merge(plugin);
-                transaction.commit();
-                entityManager.detach(plugin);
+        Objects.requireNonNull(id);
+        Objects.requireNonNull(children);
+        return update(
+                id,
+                plugin -> {
+                    EnvironmentNode original =
+                            gson.fromJson(plugin.getSubtree(), EnvironmentNode.class);
+                    return new EnvironmentNode(
+                            original.getName(),
+                            original.getNodeType(),
+                            original.getLabels(),
+                            children);
+                });
+    }
 
-                return plugin;
-            } catch (Exception e) {
-                if (transaction != null) {
-                    transaction.rollback();
-                }
-                logger.error("Update exception", e);
-                throw e;
-            }
+    private PluginInfo update(UUID id, Function<PluginInfo, EnvironmentNode> fn) {
+        try {
+            return writeThrough(
+                    entityManager -> {
+                        PluginInfo plugin = entityManager.find(klazz, id);
+                        if (plugin == null) {
+                            throw new NoSuchElementException(id.toString());
+                        }
+                        plugin.setSubtree(gson.toJson(fn.apply(plugin)));
+                        return plugin;
+                    });
+        } catch (Exception e) {
+            logger.error("Update exception", e);
+            throw e;
         }
     }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.discovery;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.cryostat.platform.discovery.AbstractNode;
+import io.cryostat.platform.discovery.EnvironmentNode;
+
+/**
+ * Applies the changes of a {@link DiscoveryDelta} to a subtree. Only the environment nodes which
+ * are changed, and their ancestors, are rebuilt; every other node is shared with the original
+ * subtree.
+ */
+final class SubtreeEdit {
+
+    private final EnvironmentNode original;
+    private final Map<String, SubtreeEdit> edits = new HashMap<>();
+    private Map<String, AbstractNode> children;
+    private Map<String, String> labels;
+    private boolean changed;
+
+    SubtreeEdit(EnvironmentNode original) {
+        this.original = original;
+    }
+
+    /** The edit of the environment node at the given path of stable IDs below this node. */
+    SubtreeEdit at(List<String> path) {
+        SubtreeEdit edit = this;
+        for (String id : path) {
+            edit = edit.descend(id);
+        }
+        return edit;
+    }
+
+    SubtreeEdit descend(String id) {
+        SubtreeEdit edit = edits.get(id);
+        if (edit == null) {
+            AbstractNode child = children().get(id);
+            if (!(child instanceof EnvironmentNode)) {
+                throw new IllegalArgumentException(
+                        String.format("No environment node %s below %s", id, name()));
+            }
+            edit = new SubtreeEdit((EnvironmentNode) child);
+            edits.put(id, edit);
+        }
+        return edit;
+    }
+
+    /** The current child with the given stable ID, or null if there is none. */
+    AbstractNode get(String id) {
+        SubtreeEdit edit = edits.get(id);
+        return edit != null ? edit.build() : children().get(id);
+    }
+
+    /** Add or replace a child, along with its descendants. */
+    void put(AbstractNode node) {
+        String id = DiscoveryDelta.idOf(node);
+        edits.remove(id);
+        children().put(id, node);
+        changed = true;
+    }
+
+    /**
+     * Remove a child, along with its descendants.
+     *
+     * @return the removed child
+     */
+    AbstractNode remove(String id) {
+        AbstractNode removed = get(id);
+        if (removed == null) {
+            throw new IllegalArgumentException(String.format("No node %s below %s", id, name()));
+        }
+        edits.remove(id);
+        children().remove(id);
+        changed = true;
+        return removed;
+    }
+
+    void setLabels(Map<String, String> labels) {
+        this.labels = labels;
+        changed = true;
+    }
+
+    /**
+     * @return the edited node, or the original node if nothing below it was changed
+     */
+    EnvironmentNode build() {
+        boolean rebuild = changed;
+        for (Map.Entry<String, SubtreeEdit> edit : edits.entrySet()) {
+            EnvironmentNode built = edit.getValue().build();
+            if (built != edit.getValue().original) {
+                children().put(edit.getKey(), built);
+                rebuild = true;
+            }
+        }
+        edits.clear();
+        if (!rebuild) {
+            return original;
+        }
+        changed = false;
+        return new EnvironmentNode(
+                original.getName(),
+                original.getNodeType(),
+                labels != null ? labels : original.getLabels(),
+                children().values());
+    }
+
+    private Map<String, AbstractNode> children() {
+        if (children == null) {
+            children = new LinkedHashMap<>();
+            for (AbstractNode child : original.getChildren()) {
+                children.put(DiscoveryDelta.idOf(child), child);
+            }
+        }
+        return children;
+    }
+
+    private String name() {
+        return DiscoveryDelta.idOf(original);
+    }
+}
@@ -55,6 +55,19 @@ public abstract class HttpApiBetaModule {
     @IntoSet
     abstract RequestHandler bindRecordingGetWithJwtHandler(RecordingGetWithJwtHandler handler);
 
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindRecordingSliceGetHandler(RecordingSliceGetHandler handler);
+
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindRecordingsMergePostBodyHandler(
+            RecordingsMergePostBodyHandler handler);
+
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindRecordingsMergePostHandler(RecordingsMergePostHandler handler);
+
     @Binds
     @IntoSet
     abstract RequestHandler bindRecordingDeleteHandler(RecordingDeleteHandler handler);
@@ -116,8 +129,33 @@ public abstract class HttpApiBetaModule {
 
     @Binds
     @IntoSet
-    abstract RequestHandler bindRecordingsFromIdPostBodyHandler(
-            RecordingsFromIdPostBodyHandler handler);
+    abstract RequestHandler bindRecordingUploadSessionsPostBodyHandler(
+            RecordingUploadSessionsPostBodyHandler handler);
+
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindRecordingUploadSessionsPostHandler(
+            RecordingUploadSessionsPostHandler handler);
+
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindRecordingUploadSessionGetHandler(
+            RecordingUploadSessionGetHandler handler);
+
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindRecordingUploadSessionPutHandler(
+            RecordingUploadSessionPutHandler handler);
+
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindRecordingUploadSessionPostHandler(
+            RecordingUploadSessionPostHandler handler);
+
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindRecordingUploadSessionDeleteHandler(
+            RecordingUploadSessionDeleteHandler handler);
 
     @Binds
     @IntoSet
@@ -147,4 +185,8 @@ public abstract class HttpApiBetaModule {
     @Binds
     @IntoSet
     abstract RequestHandler bindCredentialTestGetBodyHandler(CredentialTestPostBodyHandler handler);
+
+    @Binds
+    @IntoSet
+    abstract RequestHandler bindArchiveTransferDeleteHandler(ArchiveTransferDeleteHandler handler);
 }
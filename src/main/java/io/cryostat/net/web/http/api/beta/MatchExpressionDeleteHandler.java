@@ -18,8 +18,8 @@ package io.cryostat.net.web.http.api.beta;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import javax.inject.Inject;
 
@@ -29,7 +29,7 @@ import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
 import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.net.web.http.api.ApiVersion;
-import io.cryostat.net.web.http.api.v2.AbstractV2RequestHandler;
+import io.cryostat.net.web.http.api.v2.AbstractAsyncV2RequestHandler;
 import io.cryostat.net.web.http.api.v2.ApiException;
 import io.cryostat.net.web.http.api.v2.IntermediateResponse;
 import io.cryostat.net.web.http.api.v2.RequestParameters;
@@ -39,7 +39,7 @@ import io.cryostat.rules.MatchExpressionManager;
 import com.google.gson.Gson;
 import io.vertx.core.http.HttpMethod;
 
-public class MatchExpressionDeleteHandler extends AbstractV2RequestHandler<Void> {
+public class MatchExpressionDeleteHandler extends AbstractAsyncV2RequestHandler<Void> {
 
     private final MatchExpressionManager expressionManager;
     private final NotificationFactory notificationFactory;
@@ -87,24 +87,39 @@ public class MatchExpressionDeleteHandler extends AbstractV2RequestHandler<Void>
     }
 
     @Override
-    public IntermediateResponse<Void> handle(RequestParameters params) throws ApiException {
+    protected CompletableFuture<IntermediateResponse<Void>> handleAsync(RequestParameters params) {
         int id = Integer.parseInt(params.getPathParams().get("id"));
-        Optional<MatchExpression> matchExpression = expressionManager.get(id);
-        if (matchExpression.isEmpty()) {
-            return new IntermediateResponse<Void>().statusCode(404);
-        }
-
-        MatchExpression expr = matchExpression.get();
-        if (expressionManager.delete(id)) {
-            notificationFactory
-                    .createBuilder()
-                    .metaCategory("MatchExpressionDeleted")
-                    .metaType(HttpMimeType.JSON)
-                    .message(Map.of("id", id, "matchExpression", expr.getMatchExpression()))
-                    .build()
-                    .send();
-            return new IntermediateResponse<Void>().statusCode(200);
-        }
-        throw new ApiException(500);
+        return expressionManager
+                .getAsync(id)
+                .thenCompose(
+                        matchExpression -> {
+                            if (matchExpression.isEmpty()) {
+                                return CompletableFuture.completedFuture(
+                                        new IntermediateResponse<Void>().statusCode(404));
+                            }
+                            MatchExpression expr = matchExpression.get();
+                            return expressionManager
+                                    .deleteAsync(id)
+                                    .thenApply(
+                                            deleted -> {
+                                                if (!deleted) {
+                                                    throw new ApiException(500);
+                                                }
+                                                notificationFactory
+                                                        .createBuilder()
+                                                        .metaCategory("MatchExpressionDeleted")
+                                                        .metaType(HttpMimeType.JSON)
+                                                        .message(
+                                                                Map.of(
+                                                                        "id",
+                                                                        id,
+                                                                        "matchExpression",
+                                                                        expr.getMatchExpression()))
+                                                        .build()
+                                                        .send();
+                                                return new IntermediateResponse<Void>()
+                                                        .statusCode(200);
+                                            });
+                        });
     }
 }
@@ -18,6 +18,7 @@ package io.cryostat.net.web.http.api.beta;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import javax.inject.Inject;
 
@@ -26,8 +27,7 @@ import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
 import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.net.web.http.api.ApiVersion;
-import io.cryostat.net.web.http.api.v2.AbstractV2RequestHandler;
-import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.net.web.http.api.v2.AbstractAsyncV2RequestHandler;
 import io.cryostat.net.web.http.api.v2.IntermediateResponse;
 import io.cryostat.net.web.http.api.v2.RequestParameters;
 import io.cryostat.rules.MatchExpression;
@@ -36,7 +36,7 @@ import io.cryostat.rules.MatchExpressionManager;
 import com.google.gson.Gson;
 import io.vertx.core.http.HttpMethod;
 
-class MatchExpressionsGetHandler extends AbstractV2RequestHandler<List<MatchExpression>> {
+class MatchExpressionsGetHandler extends AbstractAsyncV2RequestHandler<List<MatchExpression>> {
 
     private final MatchExpressionManager expressionManager;
 
@@ -81,14 +81,13 @@ class MatchExpressionsGetHandler extends AbstractV2RequestHandler<List<MatchExpr
     }
 
     @Override
-    public boolean isAsync() {
-        return false;
-    }
-
-    @Override
-    public IntermediateResponse<List<MatchExpression>> handle(RequestParameters params)
-            throws ApiException {
-        List<MatchExpression> expressions = expressionManager.getAll();
-        return new IntermediateResponse<List<MatchExpression>>().body(expressions);
+    protected CompletableFuture<IntermediateResponse<List<MatchExpression>>> handleAsync(
+            RequestParameters params) {
+        return expressionManager
+                .getAllAsync()
+                .thenApply(
+                        expressions ->
+                                new IntermediateResponse<List<MatchExpression>>()
+                                        .body(expressions));
     }
 }
@@ -97,6 +97,7 @@ public class RecordingGetFromPathWithJwtHandler extends AbstractAssetJwtConsumin
                     recordingArchiveHelper
                             .getRecordingPathFromPath(subdirectoryName, recordingName)
                             .get();
+            recordingArchiveHelper.markRecordingDownloaded(archivedRecording);
             ctx.response()
                     .putHeader(
                             HttpHeaders.CONTENT_DISPOSITION,
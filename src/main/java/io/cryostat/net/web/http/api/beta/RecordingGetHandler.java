@@ -98,6 +98,7 @@ public class RecordingGetHandler extends AbstractV2RequestHandler<Path> {
             recordingArchiveHelper.validateSourceTarget(sourceTarget);
             Path archivedRecording =
                     recordingArchiveHelper.getRecordingPath(sourceTarget, recordingName).get();
+            recordingArchiveHelper.markRecordingDownloaded(archivedRecording);
             return new IntermediateResponse<Path>().body(archivedRecording);
         } catch (RecordingSourceTargetNotFoundException e) {
             throw new ApiException(404, e.getMessage(), e);
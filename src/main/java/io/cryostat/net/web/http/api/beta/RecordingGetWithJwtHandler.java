@@ -91,6 +91,7 @@ class RecordingGetWithJwtHandler extends AbstractAssetJwtConsumingHandler {
             recordingArchiveHelper.validateSourceTarget(sourceTarget);
             Path archivedRecording =
                     recordingArchiveHelper.getRecordingPath(sourceTarget, recordingName).get();
+            recordingArchiveHelper.markRecordingDownloaded(archivedRecording);
             ctx.response()
                     .putHeader(
                             HttpHeaders.CONTENT_DISPOSITION,
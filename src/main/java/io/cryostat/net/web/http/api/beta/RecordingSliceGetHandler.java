@@ -0,0 +1,178 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import javax.inject.Inject;
+
+import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
+
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.HttpServer;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.RecordingNotFoundException;
+import io.cryostat.recordings.RecordingSlice;
+import io.cryostat.recordings.RecordingSourceTargetNotFoundException;
+import io.cryostat.rules.ArchivePathException;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Downloads only the chunks of an archived recording which overlap the period given by the {@code
+ * start} and {@code end} query parameters, in epoch milliseconds. The chunks are streamed straight
+ * from the archived file, so the download may extend somewhat before and after the requested period
+ * to the boundaries of the first and last overlapping chunks.
+ */
+public class RecordingSliceGetHandler extends AbstractAuthenticatedRequestHandler {
+
+    static final String PATH = RecordingGetHandler.PATH + "/slice";
+
+    private final RecordingArchiveHelper recordingArchiveHelper;
+    private final Vertx vertx;
+
+    @Inject
+    RecordingSliceGetHandler(
+            AuthManager auth,
+            CredentialsManager credentialsManager,
+            HttpServer httpServer,
+            RecordingArchiveHelper recordingArchiveHelper) {
+        super(auth, credentialsManager);
+        this.recordingArchiveHelper = recordingArchiveHelper;
+        this.vertx = httpServer.getVertx();
+    }
+
+    @Override
+    public ApiVersion apiVersion() {
+        return ApiVersion.BETA;
+    }
+
+    @Override
+    public HttpMethod httpMethod() {
+        return HttpMethod.GET;
+    }
+
+    @Override
+    public Set<ResourceAction> resourceActions() {
+        return EnumSet.of(ResourceAction.READ_RECORDING);
+    }
+
+    @Override
+    public String path() {
+        return basePath() + PATH;
+    }
+
+    @Override
+    public List<HttpMimeType> produces() {
+        return List.of(HttpMimeType.OCTET_STREAM);
+    }
+
+    @Override
+    public boolean isAsync() {
+        // locating the recording and reading its chunk headers are blocking file operations
+        return false;
+    }
+
+    @Override
+    public void handleAuthenticated(RoutingContext ctx) throws Exception {
+        String sourceTarget = ctx.pathParam("sourceTarget");
+        String recordingName = ctx.pathParam("recordingName");
+        long start = parseTime(ctx, "start", 0);
+        long end = parseTime(ctx, "end", Long.MAX_VALUE);
+        if (start > end) {
+            throw new ApiException(400, "start must not be after end.");
+        }
+
+        RecordingSlice slice;
+        try {
+            recordingArchiveHelper.validateSourceTarget(sourceTarget);
+            slice =
+                    recordingArchiveHelper
+                            .getRecordingSlice(sourceTarget, recordingName, start, end)
+                            .get();
+        } catch (RecordingSourceTargetNotFoundException e) {
+            throw new ApiException(404, e.getMessage(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RecordingNotFoundException
+                    || e.getCause() instanceof ArchivePathException) {
+                throw new ApiException(404, e.getMessage(), e);
+            }
+            if (e.getCause() instanceof CouldNotLoadRecordingException) {
+                throw new ApiException(
+                        500, String.format("%s is not a valid JFR recording", recordingName), e);
+            }
+            throw e;
+        }
+        if (slice.isEmpty()) {
+            throw new ApiException(
+                    404,
+                    String.format(
+                            "%s contains no data between %d and %d", recordingName, start, end));
+        }
+        recordingArchiveHelper.markRecordingDownloaded(slice.getRecording());
+
+        HttpServerResponse response = ctx.response();
+        response.putHeader(
+                HttpHeaders.CONTENT_DISPOSITION,
+                String.format("attachment; filename=\"%s\"", recordingName));
+        response.putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.OCTET_STREAM.mime());
+        response.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(slice.getLength()));
+        slice.pipeTo(vertx, response)
+                .onFailure(
+                        t -> {
+                            if (response.headWritten()) {
+                                // the client has already received part of the slice, so the
+                                // only way left to signal the failure is to drop the connection
+                                response.close();
+                            } else {
+                                ctx.fail(t);
+                            }
+                        });
+    }
+
+    private static long parseTime(RoutingContext ctx, String param, long defaultValue)
+            throws ApiException {
+        String value = ctx.request().getParam(param);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            long time = Long.parseLong(value);
+            if (time < 0) {
+                throw new NumberFormatException();
+            }
+            return time;
+        } catch (NumberFormatException e) {
+            throw new ApiException(
+                    400,
+                    String.format("%s must be a non-negative epoch milliseconds value", param));
+        }
+    }
+}
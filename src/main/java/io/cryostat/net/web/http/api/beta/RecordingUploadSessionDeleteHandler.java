@@ -0,0 +1,81 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.recordings.UploadSessionManager;
+
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.RoutingContext;
+
+/** Aborts a resumable upload, discarding the parts uploaded so far. */
+public class RecordingUploadSessionDeleteHandler extends AbstractAuthenticatedRequestHandler {
+
+    static final String PATH = RecordingUploadSessionGetHandler.PATH;
+
+    private final UploadSessionManager uploadSessionManager;
+
+    @Inject
+    RecordingUploadSessionDeleteHandler(
+            AuthManager auth,
+            CredentialsManager credentialsManager,
+            UploadSessionManager uploadSessionManager) {
+        super(auth, credentialsManager);
+        this.uploadSessionManager = uploadSessionManager;
+    }
+
+    @Override
+    public ApiVersion apiVersion() {
+        return ApiVersion.BETA;
+    }
+
+    @Override
+    public HttpMethod httpMethod() {
+        return HttpMethod.DELETE;
+    }
+
+    @Override
+    public Set<ResourceAction> resourceActions() {
+        return EnumSet.of(ResourceAction.DELETE_RECORDING);
+    }
+
+    @Override
+    public String path() {
+        return basePath() + PATH;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    @Override
+    public void handleAuthenticated(RoutingContext ctx) throws Exception {
+        uploadSessionManager
+                .abort(ctx.pathParam("jvmId"), ctx.pathParam("uploadId"))
+                .onFailure(ctx::fail)
+                .onSuccess(v -> ctx.response().setStatusCode(204).end());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.recordings.UploadSessionManager;
+import io.cryostat.recordings.UploadSessionManager.Session;
+
+import com.google.gson.Gson;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Reports the progress of a resumable upload, so that a client can find the part and offset to
+ * resume from after an interrupted transfer.
+ */
+public class RecordingUploadSessionGetHandler extends AbstractAuthenticatedRequestHandler {
+
+    static final String PATH = RecordingUploadSessionsPostHandler.PATH + "/:uploadId";
+
+    private final Gson gson;
+    private final UploadSessionManager uploadSessionManager;
+
+    @Inject
+    RecordingUploadSessionGetHandler(
+            AuthManager auth,
+            CredentialsManager credentialsManager,
+            Gson gson,
+            UploadSessionManager uploadSessionManager) {
+        super(auth, credentialsManager);
+        this.gson = gson;
+        this.uploadSessionManager = uploadSessionManager;
+    }
+
+    @Override
+    public ApiVersion apiVersion() {
+        return ApiVersion.BETA;
+    }
+
+    @Override
+    public HttpMethod httpMethod() {
+        return HttpMethod.GET;
+    }
+
+    @Override
+    public Set<ResourceAction> resourceActions() {
+        return EnumSet.of(ResourceAction.READ_RECORDING);
+    }
+
+    @Override
+    public String path() {
+        return basePath() + PATH;
+    }
+
+    @Override
+    public List<HttpMimeType> produces() {
+        return List.of(HttpMimeType.JSON);
+    }
+
+    @Override
+    public void handleAuthenticated(RoutingContext ctx) throws Exception {
+        Session session =
+                uploadSessionManager.get(ctx.pathParam("jvmId"), ctx.pathParam("uploadId"));
+        ctx.response()
+                .putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime())
+                .end(gson.toJson(status(session)));
+    }
+
+    static Map<String, Object> status(Session session) {
+        return Map.of(
+                "id",
+                session.getId(),
+                "nextPart",
+                session.getNextPart(),
+                "offset",
+                session.getOffset(),
+                "expiresAt",
+                session.getExpiresAt());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.configuration.Variables;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.UploadSessionManager;
+import io.cryostat.recordings.UploadSessionManager.Session;
+
+import com.google.gson.Gson;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.RoutingContext;
+
+/** Commits a resumable upload, archiving the recording assembled from its parts. */
+public class RecordingUploadSessionPostHandler extends AbstractAuthenticatedRequestHandler {
+
+    static final String PATH = RecordingUploadSessionGetHandler.PATH;
+
+    private final Gson gson;
+    private final UploadSessionManager uploadSessionManager;
+    private final int globalMaxFiles;
+
+    @Inject
+    RecordingUploadSessionPostHandler(
+            AuthManager auth,
+            CredentialsManager credentialsManager,
+            Gson gson,
+            UploadSessionManager uploadSessionManager,
+            @Named(Variables.PUSH_MAX_FILES_ENV) int globalMaxFiles) {
+        super(auth, credentialsManager);
+        this.gson = gson;
+        this.uploadSessionManager = uploadSessionManager;
+        this.globalMaxFiles = globalMaxFiles;
+    }
+
+    @Override
+    public ApiVersion apiVersion() {
+        return ApiVersion.BETA;
+    }
+
+    @Override
+    public HttpMethod httpMethod() {
+        return HttpMethod.POST;
+    }
+
+    @Override
+    public Set<ResourceAction> resourceActions() {
+        return EnumSet.of(
+                ResourceAction.CREATE_RECORDING,
+                ResourceAction.READ_RECORDING,
+                ResourceAction.DELETE_RECORDING,
+                ResourceAction.DELETE_REPORT);
+    }
+
+    @Override
+    public String path() {
+        return basePath() + PATH;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    @Override
+    public List<HttpMimeType> produces() {
+        return List.of(HttpMimeType.JSON);
+    }
+
+    @Override
+    public void handleAuthenticated(RoutingContext ctx) throws Exception {
+        String maxFilesParam = ctx.request().getParam("maxFiles", String.valueOf(globalMaxFiles));
+        int maxFiles;
+        try {
+            maxFiles = Integer.parseInt(maxFilesParam);
+            if (maxFiles <= 0) {
+                throw new ApiException(400, "maxFiles must be a positive integer.");
+            }
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "maxFiles must be a positive integer.");
+        }
+
+        String jvmId = ctx.pathParam("jvmId");
+        String uploadId = ctx.pathParam("uploadId");
+        Session session = uploadSessionManager.get(jvmId, uploadId);
+        uploadSessionManager
+                .commit(jvmId, uploadId, maxFiles)
+                .onFailure(t -> ctx.fail(t instanceof ApiException ? t : new ApiException(500, t)))
+                .onSuccess(
+                        name ->
+                                ctx.response()
+                                        .putHeader(
+                                                HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime())
+                                        .end(
+                                                gson.toJson(
+                                                        Map.of(
+                                                                "name",
+                                                                name,
+                                                                "metadata",
+                                                                session.getMetadata(),
+                                                                "sha256",
+                                                                session.getSha256()))));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.configuration.Variables;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.UploadSessionManager;
+
+import com.google.gson.Gson;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.RoutingContext;
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * Uploads one numbered part of a resumable upload. The request body is streamed directly into the
+ * upload at the offset given by the {@code offset} query parameter, which must be where the
+ * previous part ended.
+ */
+public class RecordingUploadSessionPutHandler extends AbstractAuthenticatedRequestHandler {
+
+    static final String PATH = RecordingUploadSessionGetHandler.PATH + "/:part";
+
+    private final Gson gson;
+    private final UploadSessionManager uploadSessionManager;
+    private final long maxUploadBytes;
+
+    @Inject
+    RecordingUploadSessionPutHandler(
+            AuthManager auth,
+            CredentialsManager credentialsManager,
+            Gson gson,
+            UploadSessionManager uploadSessionManager,
+            @Named(Variables.ARCHIVE_UPLOAD_MAX_BYTES) long maxUploadBytes) {
+        super(auth, credentialsManager);
+        this.gson = gson;
+        this.uploadSessionManager = uploadSessionManager;
+        this.maxUploadBytes = maxUploadBytes;
+    }
+
+    @Override
+    public ApiVersion apiVersion() {
+        return ApiVersion.BETA;
+    }
+
+    @Override
+    public HttpMethod httpMethod() {
+        return HttpMethod.PUT;
+    }
+
+    @Override
+    public Set<ResourceAction> resourceActions() {
+        return EnumSet.of(ResourceAction.CREATE_RECORDING);
+    }
+
+    @Override
+    public String path() {
+        return basePath() + PATH;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    @Override
+    public List<HttpMimeType> produces() {
+        return List.of(HttpMimeType.JSON);
+    }
+
+    @Override
+    public List<HttpMimeType> consumes() {
+        return List.of(HttpMimeType.OCTET_STREAM);
+    }
+
+    @Override
+    public void handleAuthenticated(RoutingContext ctx) throws Exception {
+        int part = NumberUtils.toInt(ctx.pathParam("part"), -1);
+        if (part < 1) {
+            throw new ApiException(400, "part must be a positive integer.");
+        }
+        long offset = NumberUtils.toLong(ctx.request().getParam("offset"), -1);
+        if (offset < 0) {
+            throw new ApiException(400, "offset must be a non-negative integer.");
+        }
+
+        String contentLength = ctx.request().getHeader(HttpHeaders.CONTENT_LENGTH);
+        if (maxUploadBytes > 0
+                && contentLength != null
+                && offset + NumberUtils.toLong(contentLength) > maxUploadBytes) {
+            throw new ApiException(
+                    413,
+                    String.format(
+                            "Recording upload exceeds the maximum size of %d bytes",
+                            maxUploadBytes));
+        }
+
+        // the part is streamed straight into the upload file, so it must not be buffered by a
+        // BodyHandler first
+        uploadSessionManager
+                .write(
+                        ctx.pathParam("jvmId"),
+                        ctx.pathParam("uploadId"),
+                        part,
+                        offset,
+                        ctx.request())
+                .onFailure(ctx::fail)
+                .onSuccess(
+                        session ->
+                                ctx.response()
+                                        .putHeader(
+                                                HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime())
+                                        .end(
+                                                gson.toJson(
+                                                        RecordingUploadSessionGetHandler.status(
+                                                                session))));
+    }
+}
@@ -15,42 +15,28 @@
  */
 package io.cryostat.net.web.http.api.beta;
 
-import java.nio.file.Path;
-import java.util.List;
 import java.util.Set;
 
 import javax.inject.Inject;
-import javax.inject.Named;
 
-import io.cryostat.MainModule;
 import io.cryostat.configuration.CredentialsManager;
-import io.cryostat.core.sys.FileSystem;
 import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
 import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
-import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.net.web.http.api.ApiVersion;
-import io.cryostat.recordings.RecordingArchiveHelper;
 
 import io.vertx.core.http.HttpMethod;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 
-public class RecordingsFromIdPostBodyHandler extends AbstractAuthenticatedRequestHandler {
+public class RecordingUploadSessionsPostBodyHandler extends AbstractAuthenticatedRequestHandler {
 
-    private final BodyHandler bodyHandler;
+    static final BodyHandler BODY_HANDLER = BodyHandler.create(true).setHandleFileUploads(false);
 
     @Inject
-    RecordingsFromIdPostBodyHandler(
-            AuthManager auth,
-            CredentialsManager credentialsManager,
-            @Named(MainModule.RECORDINGS_PATH) Path recordingsPath,
-            FileSystem fs) {
+    RecordingUploadSessionsPostBodyHandler(
+            AuthManager auth, CredentialsManager credentialsManager) {
         super(auth, credentialsManager);
-        Path fileUploads = recordingsPath.resolve(RecordingArchiveHelper.TEMP_UPLOADS_SUBDIRECTORY);
-        this.bodyHandler =
-                BodyHandler.create(true)
-                        .setUploadsDirectory(fileUploads.toAbsolutePath().toString());
     }
 
     @Override
@@ -75,21 +61,11 @@ public class RecordingsFromIdPostBodyHandler extends AbstractAuthenticatedReques
 
     @Override
     public String path() {
-        return basePath() + RecordingsFromIdPostHandler.PATH;
-    }
-
-    @Override
-    public List<HttpMimeType> produces() {
-        return List.of(HttpMimeType.JSON);
-    }
-
-    @Override
-    public List<HttpMimeType> consumes() {
-        return List.of(HttpMimeType.MULTIPART_FORM);
+        return basePath() + RecordingUploadSessionsPostHandler.PATH;
     }
 
     @Override
     public void handleAuthenticated(RoutingContext ctx) throws Exception {
-        this.bodyHandler.handle(ctx);
+        BODY_HANDLER.handle(ctx);
     }
 }
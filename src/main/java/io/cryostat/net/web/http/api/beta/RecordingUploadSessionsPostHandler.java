@@ -0,0 +1,172 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import io.cryostat.MainModule;
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.core.sys.FileSystem;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.JvmIdHelper;
+import io.cryostat.recordings.JvmIdHelper.JvmIdDoesNotExistException;
+import io.cryostat.recordings.RecordingMetadataManager;
+import io.cryostat.recordings.RecordingMetadataManager.Metadata;
+import io.cryostat.recordings.UploadSessionManager;
+
+import com.google.gson.Gson;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Begins a resumable upload of a recording for a target JVM. The recording is then uploaded in
+ * parts to the returned session by {@link RecordingUploadSessionPutHandler} and archived by {@link
+ * RecordingUploadSessionPostHandler}.
+ */
+public class RecordingUploadSessionsPostHandler extends AbstractAuthenticatedRequestHandler {
+
+    static final String PATH = "recordings/:jvmId/uploads";
+
+    private final Gson gson;
+    private final FileSystem fs;
+    private final JvmIdHelper idHelper;
+    private final RecordingMetadataManager recordingMetadataManager;
+    private final UploadSessionManager uploadSessionManager;
+    private final Path savedRecordingsPath;
+
+    @Inject
+    RecordingUploadSessionsPostHandler(
+            AuthManager auth,
+            CredentialsManager credentialsManager,
+            Gson gson,
+            FileSystem fs,
+            JvmIdHelper idHelper,
+            RecordingMetadataManager recordingMetadataManager,
+            UploadSessionManager uploadSessionManager,
+            @Named(MainModule.RECORDINGS_PATH) Path savedRecordingsPath) {
+        super(auth, credentialsManager);
+        this.gson = gson;
+        this.fs = fs;
+        this.idHelper = idHelper;
+        this.recordingMetadataManager = recordingMetadataManager;
+        this.uploadSessionManager = uploadSessionManager;
+        this.savedRecordingsPath = savedRecordingsPath;
+    }
+
+    @Override
+    public ApiVersion apiVersion() {
+        return ApiVersion.BETA;
+    }
+
+    @Override
+    public HttpMethod httpMethod() {
+        return HttpMethod.POST;
+    }
+
+    @Override
+    public Set<ResourceAction> resourceActions() {
+        return EnumSet.of(ResourceAction.CREATE_RECORDING);
+    }
+
+    @Override
+    public String path() {
+        return basePath() + PATH;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    @Override
+    public List<HttpMimeType> produces() {
+        return List.of(HttpMimeType.JSON);
+    }
+
+    @Override
+    public List<HttpMimeType> consumes() {
+        return List.of(HttpMimeType.MULTIPART_FORM, HttpMimeType.URLENCODED_FORM);
+    }
+
+    @Override
+    public void handleAuthenticated(RoutingContext ctx) throws Exception {
+        if (!fs.isDirectory(savedRecordingsPath)) {
+            throw new ApiException(503, "Recording saving not available.");
+        }
+
+        MultiMap attrs = ctx.request().formAttributes();
+        Matcher m = RecordingsFromIdPostHandler.parseRecordingFilename(attrs.get("filename"));
+        Metadata metadata = null;
+        if (attrs.contains("labels")) {
+            try {
+                metadata =
+                        new Metadata(
+                                recordingMetadataManager.parseRecordingLabels(attrs.get("labels")));
+            } catch (IllegalArgumentException e) {
+                throw new ApiException(400, "Invalid metadata labels for the recording.", e);
+            }
+        }
+
+        String jvmId = ctx.pathParam("jvmId");
+        String connectUrl;
+        try {
+            connectUrl =
+                    idHelper.reverseLookup(jvmId)
+                            .orElseThrow(() -> new JvmIdDoesNotExistException(jvmId))
+                            .getServiceUri()
+                            .toString();
+        } catch (JvmIdDoesNotExistException e) {
+            throw new ApiException(400, String.format("jvmId must be valid: %s", e.getMessage()));
+        }
+
+        uploadSessionManager
+                .create(
+                        jvmId,
+                        idHelper.jvmIdToSubdirectoryName(jvmId),
+                        connectUrl,
+                        RecordingsFromIdPostHandler.basename(m),
+                        RecordingsFromIdPostHandler.counter(m),
+                        metadata)
+                .onFailure(ctx::fail)
+                .onSuccess(
+                        session ->
+                                ctx.response()
+                                        .setStatusCode(201)
+                                        .putHeader(
+                                                HttpHeaders.LOCATION,
+                                                ctx.request().path() + "/" + session.getId())
+                                        .putHeader(
+                                                HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime())
+                                        .end(
+                                                gson.toJson(
+                                                        RecordingUploadSessionGetHandler.status(
+                                                                session))));
+    }
+}
@@ -15,49 +15,44 @@
  */
 package io.cryostat.net.web.http.api.beta;
 
-import java.io.IOException;
-import java.net.SocketException;
-import java.net.URISyntaxException;
-import java.net.UnknownHostException;
 import java.nio.file.Path;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import javax.inject.Provider;
 
 import io.cryostat.MainModule;
 import io.cryostat.configuration.CredentialsManager;
 import io.cryostat.configuration.Variables;
 import io.cryostat.core.sys.FileSystem;
-import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
-import io.cryostat.net.web.WebServer;
 import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
 import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.net.web.http.api.ApiVersion;
 import io.cryostat.net.web.http.api.v2.ApiException;
 import io.cryostat.recordings.JvmIdHelper;
 import io.cryostat.recordings.JvmIdHelper.JvmIdDoesNotExistException;
-import io.cryostat.recordings.JvmIdHelper.JvmIdGetException;
 import io.cryostat.recordings.RecordingArchiveHelper;
 import io.cryostat.recordings.RecordingMetadataManager;
 import io.cryostat.recordings.RecordingMetadataManager.Metadata;
-import io.cryostat.rules.ArchivedRecordingInfo;
+import io.cryostat.recordings.RecordingUploadStream;
 
 import com.google.gson.Gson;
+import io.vertx.core.Future;
 import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
-import io.vertx.ext.web.FileUpload;
+import io.vertx.core.http.HttpServerFileUpload;
+import io.vertx.core.http.HttpServerRequest;
 import io.vertx.ext.web.RoutingContext;
+import org.apache.commons.lang3.math.NumberUtils;
 
 public class RecordingsFromIdPostHandler extends AbstractAuthenticatedRequestHandler {
 
@@ -67,14 +62,11 @@ public class RecordingsFromIdPostHandler extends AbstractAuthenticatedRequestHan
 
     private final FileSystem fs;
     private final JvmIdHelper idHelper;
-    private final NotificationFactory notificationFactory;
     private final RecordingArchiveHelper recordingArchiveHelper;
     private final RecordingMetadataManager recordingMetadataManager;
     private final Path savedRecordingsPath;
     private final int globalMaxFiles;
-    private final Provider<WebServer> webServer;
-
-    private static final String NOTIFICATION_CATEGORY = "ArchivedRecordingCreated";
+    private final long maxUploadBytes;
 
     @Inject
     RecordingsFromIdPostHandler(
@@ -83,21 +75,19 @@ public class RecordingsFromIdPostHandler extends AbstractAuthenticatedRequestHan
             Gson gson,
             FileSystem fs,
             JvmIdHelper idHelper,
-            NotificationFactory notificationFactory,
             RecordingArchiveHelper recordingArchiveHelper,
             RecordingMetadataManager recordingMetadataManager,
             @Named(MainModule.RECORDINGS_PATH) Path savedRecordingsPath,
             @Named(Variables.PUSH_MAX_FILES_ENV) int globalMaxFiles,
-            Provider<WebServer> webServer) {
+            @Named(Variables.ARCHIVE_UPLOAD_MAX_BYTES) long maxUploadBytes) {
         super(auth, credentialsManager);
         this.fs = fs;
         this.idHelper = idHelper;
-        this.notificationFactory = notificationFactory;
         this.recordingArchiveHelper = recordingArchiveHelper;
         this.recordingMetadataManager = recordingMetadataManager;
         this.savedRecordingsPath = savedRecordingsPath;
         this.globalMaxFiles = globalMaxFiles;
-        this.webServer = webServer;
+        this.maxUploadBytes = maxUploadBytes;
         this.gson = gson;
     }
 
@@ -163,16 +153,15 @@ public class RecordingsFromIdPostHandler extends AbstractAuthenticatedRequestHan
             throw new ApiException(400, "maxFiles must be a positive integer.");
         }
 
-        FileUpload upload =
-                webServer
-                        .get()
-                        .getTempFileUpload(
-                                ctx.fileUploads(),
-                                savedRecordingsPath.resolve(
-                                        RecordingArchiveHelper.TEMP_UPLOADS_SUBDIRECTORY),
-                                RecordingArchiveHelper.MULTIFORM_RECORDINGS_KEY);
-        if (upload == null) {
-            throw new ApiException(400, "No recording submission.");
+        String contentLength = ctx.request().getHeader(HttpHeaders.CONTENT_LENGTH);
+        if (maxUploadBytes > 0
+                && contentLength != null
+                && NumberUtils.toLong(contentLength) > maxUploadBytes) {
+            throw new ApiException(
+                    413,
+                    String.format(
+                            "Recording upload exceeds the maximum size of %d bytes",
+                            maxUploadBytes));
         }
 
         String jvmId = ctx.pathParam("jvmId");
@@ -187,129 +176,159 @@ public class RecordingsFromIdPostHandler extends AbstractAuthenticatedRequestHan
                 throw new JvmIdDoesNotExistException(jvmId);
             }
         } catch (JvmIdDoesNotExistException e) {
-            recordingArchiveHelper.deleteTempFileUpload(upload);
             throw new ApiException(400, String.format("jvmId must be valid: %s", e.getMessage()));
         }
         String subdirectoryName = idHelper.jvmIdToSubdirectoryName(jvmId);
 
-        String fileName = upload.fileName();
+        // the recording is validated and digested as it streams into the temporary uploads
+        // directory, so it must not be buffered to disk by a BodyHandler first
+        HttpServerRequest req = ctx.request();
+        AtomicReference<Future<Upload>> submission = new AtomicReference<>();
+        req.setExpectMultipart(true);
+        req.uploadHandler(
+                fileUpload -> {
+                    if (!RecordingArchiveHelper.MULTIFORM_RECORDINGS_KEY.equals(fileUpload.name())
+                            || submission.get() != null) {
+                        // discard the contents of any other file parts
+                        return;
+                    }
+                    Future<Upload> upload = receive(fileUpload);
+                    upload.onFailure(t -> fail(ctx, t));
+                    submission.set(upload);
+                });
+        req.exceptionHandler(t -> fail(ctx, t));
+        req.endHandler(
+                v -> {
+                    Future<Upload> upload = submission.get();
+                    if (upload == null) {
+                        ctx.fail(new ApiException(400, "No recording submission."));
+                        return;
+                    }
+                    upload.onSuccess(u -> save(ctx, u, subdirectoryName, connectUrl, maxFiles));
+                });
+    }
+
+    private Future<Upload> receive(HttpServerFileUpload fileUpload) {
+        Matcher m;
+        try {
+            m = parseRecordingFilename(fileUpload.filename());
+        } catch (ApiException e) {
+            return Future.failedFuture(e);
+        }
+
+        // hold the upload's data until the temporary file is open
+        fileUpload.pause();
+        Promise<RecordingUploadStream> opened = Promise.promise();
+        recordingArchiveHelper.openUploadStream(maxUploadBytes, opened);
+        return opened.future()
+                .compose(
+                        stream ->
+                                fileUpload
+                                        .pipeTo(stream)
+                                        .recover(
+                                                t -> {
+                                                    recordingArchiveHelper.deleteUploadStream(
+                                                            stream);
+                                                    return Future.failedFuture(t);
+                                                })
+                                        .map(v -> new Upload(m, stream)));
+    }
+
+    private void save(
+            RoutingContext ctx,
+            Upload upload,
+            String subdirectoryName,
+            String connectUrl,
+            int maxFiles) {
+        MultiMap attrs = ctx.request().formAttributes();
+        Metadata metadata = null;
+        try {
+            if (attrs.contains("labels")) {
+                metadata =
+                        new Metadata(
+                                recordingMetadataManager.parseRecordingLabels(attrs.get("labels")));
+            }
+        } catch (IllegalArgumentException e) {
+            recordingArchiveHelper.deleteUploadStream(upload.stream);
+            ctx.fail(new ApiException(400, "Invalid metadata labels for the recording."));
+            return;
+        }
+        Metadata responseMetadata = metadata == null ? new Metadata() : metadata;
+        String sha256 = upload.stream.getSha256();
+
+        recordingArchiveHelper.saveUploadStream(
+                subdirectoryName,
+                basename(upload.matcher),
+                counter(upload.matcher),
+                upload.stream,
+                connectUrl,
+                maxFiles,
+                metadata,
+                res -> {
+                    if (res.failed()) {
+                        ctx.fail(
+                                res.cause() instanceof ApiException
+                                        ? res.cause()
+                                        : new ApiException(500, res.cause()));
+                        return;
+                    }
+                    ctx.response()
+                            .putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime())
+                            .end(
+                                    gson.toJson(
+                                            Map.of(
+                                                    "name",
+                                                    res.result(),
+                                                    "metadata",
+                                                    responseMetadata,
+                                                    "sha256",
+                                                    sha256)));
+                });
+    }
+
+    /**
+     * Validate an uploaded recording's file name against the archived recording naming scheme.
+     *
+     * @return a matcher over the name without any {@code .jfr} extension
+     */
+    static Matcher parseRecordingFilename(String fileName) throws ApiException {
         if (fileName == null || fileName.isEmpty()) {
-            recordingArchiveHelper.deleteTempFileUpload(upload);
             throw new ApiException(400, "Recording name must not be empty.");
         }
-
         if (fileName.endsWith(".jfr")) {
             fileName = fileName.substring(0, fileName.length() - 4);
         }
-
         Matcher m = RecordingArchiveHelper.RECORDING_FILENAME_PATTERN.matcher(fileName);
         if (!m.matches()) {
-            recordingArchiveHelper.deleteTempFileUpload(upload);
             throw new ApiException(400, RecordingArchiveHelper.RECORDING_NAME_ERR_MSG);
         }
+        return m;
+    }
 
-        MultiMap attrs = ctx.request().formAttributes();
-        Map<String, String> labels = new HashMap<>();
-        Boolean hasLabels = ((attrs.contains("labels") ? true : false));
+    static String basename(Matcher m) {
+        return String.format("%s_%s_%s", m.group(1), m.group(2), m.group(3));
+    }
 
-        try {
-            if (hasLabels) {
-                labels = recordingMetadataManager.parseRecordingLabels(attrs.get("labels"));
-            }
-        } catch (IllegalArgumentException e) {
-            recordingArchiveHelper.deleteTempFileUpload(upload);
-            throw new ApiException(400, "Invalid metadata labels for the recording.");
+    static int counter(Matcher m) {
+        return m.group(4) == null || m.group(4).isEmpty()
+                ? 0
+                : Integer.parseInt(m.group(4).substring(1));
+    }
+
+    private static void fail(RoutingContext ctx, Throwable t) {
+        // the upload, its pipe, and the request may all report the same broken connection
+        if (!ctx.failed() && !ctx.response().ended()) {
+            ctx.fail(t);
+        }
+    }
+
+    private static class Upload {
+        final Matcher matcher;
+        final RecordingUploadStream stream;
+
+        Upload(Matcher matcher, RecordingUploadStream stream) {
+            this.matcher = matcher;
+            this.stream = stream;
         }
-        Metadata metadata = new Metadata(labels);
-
-        String targetName = m.group(1);
-        String recordingName = m.group(2);
-        String timestamp = m.group(3);
-
-        long size = upload.size();
-        long archivedTime = recordingArchiveHelper.getArchivedTimeFromTimestamp(timestamp);
-
-        int count =
-                m.group(4) == null || m.group(4).isEmpty()
-                        ? 0
-                        : Integer.parseInt(m.group(4).substring(1));
-
-        final String basename = String.format("%s_%s_%s", targetName, recordingName, timestamp);
-        final String uploadedFileName = upload.uploadedFileName();
-        recordingArchiveHelper.validateRecording(
-                upload.uploadedFileName(),
-                (res) ->
-                        recordingArchiveHelper.saveUploadedRecording(
-                                subdirectoryName,
-                                basename,
-                                uploadedFileName,
-                                connectUrl,
-                                count,
-                                (res2) -> {
-                                    if (res2.failed()) {
-                                        throw new ApiException(500, res2.cause());
-                                    }
-
-                                    String fsName = res2.result();
-
-                                    try {
-                                        recordingArchiveHelper.pruneTargetUploads(
-                                                subdirectoryName, maxFiles);
-                                        if (hasLabels) {
-                                            recordingMetadataManager
-                                                    .setRecordingMetadataFromPath(
-                                                            subdirectoryName, fsName, metadata)
-                                                    .get();
-                                        }
-                                    } catch (InterruptedException
-                                            | ExecutionException
-                                            | IOException e) {
-                                        logger.error("Upload prune exception", e);
-                                        throw new ApiException(500, e);
-                                    }
-
-                                    try {
-
-                                        notificationFactory
-                                                .createOwnedResourceBuilder(
-                                                        connectUrl, NOTIFICATION_CATEGORY)
-                                                .messageEntry(
-                                                        "recording",
-                                                        new ArchivedRecordingInfo(
-                                                                connectUrl,
-                                                                fsName,
-                                                                webServer
-                                                                        .get()
-                                                                        .getArchivedDownloadURL(
-                                                                                connectUrl, fsName),
-                                                                webServer
-                                                                        .get()
-                                                                        .getArchivedReportURL(
-                                                                                connectUrl, fsName),
-                                                                metadata,
-                                                                size,
-                                                                archivedTime))
-                                                .build()
-                                                .send();
-                                    } catch (URISyntaxException
-                                            | UnknownHostException
-                                            | SocketException
-                                            | JvmIdGetException e) {
-                                        logger.error("Recording metadata exception", e);
-                                        throw new ApiException(500, e);
-                                    }
-
-                                    ctx.response()
-                                            .putHeader(
-                                                    HttpHeaders.CONTENT_TYPE,
-                                                    HttpMimeType.JSON.mime())
-                                            .end(
-                                                    gson.toJson(
-                                                            Map.of(
-                                                                    "name",
-                                                                    fsName,
-                                                                    "metadata",
-                                                                    metadata)));
-                                }));
     }
 }
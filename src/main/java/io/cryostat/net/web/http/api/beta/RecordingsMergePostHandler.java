@@ -0,0 +1,292 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.HttpServer;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.AbstractAuthenticatedRequestHandler;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.net.web.http.api.v2.graph.labels.LabelSelectorMatcher;
+import io.cryostat.recordings.JvmIdHelper;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.RecordingNotFoundException;
+import io.cryostat.recordings.RecordingStreams;
+import io.cryostat.rules.ArchivePathException;
+import io.cryostat.rules.ArchivedRecordingInfo;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Downloads several archived recordings as a single file, either selected by name or by label
+ * selectors. Recordings of a single target JVM may be concatenated into one JFR file, and
+ * recordings of any number of target JVMs may be bundled into a zip archive. The recordings are
+ * streamed from the archive one at a time, so the download is never staged in memory or on disk.
+ */
+public class RecordingsMergePostHandler extends AbstractAuthenticatedRequestHandler {
+
+    static final String PATH = "fs/recordings/merge";
+
+    static final String FORMAT_JFR = "jfr";
+    static final String FORMAT_ZIP = "zip";
+
+    private final Gson gson;
+    private final JvmIdHelper jvmIdHelper;
+    private final RecordingArchiveHelper recordingArchiveHelper;
+    private final Vertx vertx;
+
+    @Inject
+    RecordingsMergePostHandler(
+            AuthManager auth,
+            CredentialsManager credentialsManager,
+            Gson gson,
+            HttpServer httpServer,
+            JvmIdHelper jvmIdHelper,
+            RecordingArchiveHelper recordingArchiveHelper) {
+        super(auth, credentialsManager);
+        this.gson = gson;
+        this.jvmIdHelper = jvmIdHelper;
+        this.recordingArchiveHelper = recordingArchiveHelper;
+        this.vertx = httpServer.getVertx();
+    }
+
+    @Override
+    public ApiVersion apiVersion() {
+        return ApiVersion.BETA;
+    }
+
+    @Override
+    public HttpMethod httpMethod() {
+        return HttpMethod.POST;
+    }
+
+    @Override
+    public Set<ResourceAction> resourceActions() {
+        return EnumSet.of(ResourceAction.READ_RECORDING);
+    }
+
+    @Override
+    public String path() {
+        return basePath() + PATH;
+    }
+
+    @Override
+    public List<HttpMimeType> produces() {
+        return List.of(HttpMimeType.OCTET_STREAM, HttpMimeType.ZIP);
+    }
+
+    @Override
+    public List<HttpMimeType> consumes() {
+        return List.of(HttpMimeType.JSON);
+    }
+
+    @Override
+    public boolean isAsync() {
+        // resolving the selected recordings lists and stats archive files
+        return false;
+    }
+
+    @Override
+    public void handleAuthenticated(RoutingContext ctx) throws Exception {
+        RequestData request;
+        try {
+            request = gson.fromJson(ctx.body().asString(), RequestData.class);
+        } catch (JsonParseException e) {
+            throw new ApiException(400, "Unable to parse JSON", e);
+        }
+        if (request == null) {
+            throw new ApiException(400, "Request body must not be empty.");
+        }
+        String format = StringUtils.defaultIfBlank(request.format, FORMAT_JFR);
+        if (!FORMAT_JFR.equals(format) && !FORMAT_ZIP.equals(format)) {
+            throw new ApiException(400, "format must be either \"jfr\" or \"zip\".");
+        }
+
+        List<RecordingRef> selected = select(request);
+        if (selected.isEmpty()) {
+            throw new ApiException(404, "No archived recordings matched the selection.");
+        }
+        if (FORMAT_JFR.equals(format)
+                && selected.stream().map(r -> r.jvmId).distinct().count() > 1) {
+            throw new ApiException(
+                    400,
+                    "Recordings from more than one target JVM can only be merged into a zip"
+                            + " archive.");
+        }
+
+        Map<String, Path> files = resolve(selected);
+        files.values().forEach(recordingArchiveHelper::markRecordingDownloaded);
+
+        HttpServerResponse response = ctx.response();
+        Future<Void> streamed;
+        if (FORMAT_JFR.equals(format)) {
+            long length = 0;
+            for (Path file : files.values()) {
+                length += Files.size(file);
+            }
+            response.putHeader(
+                    HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"recordings.jfr\"");
+            response.putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.OCTET_STREAM.mime());
+            response.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(length));
+            streamed =
+                    RecordingStreams.concatenate(vertx, new ArrayList<>(files.values()), response);
+        } else {
+            response.setChunked(true);
+            response.putHeader(
+                    HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"recordings.zip\"");
+            response.putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.ZIP.mime());
+            streamed = RecordingStreams.zip(vertx, files, response);
+        }
+        streamed.onFailure(
+                t -> {
+                    if (response.headWritten()) {
+                        // part of the download has already been sent, so the only way left to
+                        // signal the failure is to drop the connection
+                        response.close();
+                    } else {
+                        ctx.fail(t);
+                    }
+                });
+    }
+
+    /**
+     * Determine the recordings to download, either those named in the request, in the order given,
+     * or those of the requested target JVM matching every label selector, in the order that they
+     * were recorded.
+     */
+    private List<RecordingRef> select(RequestData request) throws Exception {
+        boolean byName = request.recordings != null && !request.recordings.isEmpty();
+        boolean byLabel = request.labels != null && !request.labels.isEmpty();
+        if (byName == byLabel) {
+            throw new ApiException(
+                    400, "Exactly one of \"recordings\" or \"labels\" must be specified.");
+        }
+        if (byName) {
+            for (RecordingRef ref : request.recordings) {
+                if (ref == null || StringUtils.isAnyBlank(ref.jvmId, ref.name)) {
+                    throw new ApiException(
+                            400, "Each recording must specify a \"jvmId\" and a \"name\".");
+                }
+            }
+            return request.recordings.stream().distinct().collect(Collectors.toList());
+        }
+        if (StringUtils.isBlank(request.jvmId)) {
+            throw new ApiException(400, "\"jvmId\" is required when selecting by labels.");
+        }
+        List<LabelSelectorMatcher> matchers = new ArrayList<>();
+        try {
+            for (String label : request.labels) {
+                matchers.add(LabelSelectorMatcher.parse(label));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Invalid label selector", e);
+        }
+        List<ArchivedRecordingInfo> recordings =
+                recordingArchiveHelper.getRecordingsFromPath(request.jvmId).get();
+        return recordings.stream()
+                .filter(r -> matchers.stream().allMatch(m -> m.test(r.getMetadata().getLabels())))
+                .sorted(
+                        Comparator.comparingLong(ArchivedRecordingInfo::getStartTime)
+                                .thenComparingLong(ArchivedRecordingInfo::getArchivedTime)
+                                .thenComparing(ArchivedRecordingInfo::getName))
+                .map(r -> new RecordingRef(request.jvmId, r.getName()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the archive file of each recording, keyed by its entry name in a zip archive
+     */
+    private Map<String, Path> resolve(List<RecordingRef> recordings) throws Exception {
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (RecordingRef ref : recordings) {
+            try {
+                Path file =
+                        recordingArchiveHelper
+                                .getRecordingPathFromPath(
+                                        jvmIdHelper.jvmIdToSubdirectoryName(ref.jvmId), ref.name)
+                                .get();
+                files.put(String.format("%s/%s", ref.jvmId, ref.name), file);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RecordingNotFoundException
+                        || e.getCause() instanceof ArchivePathException) {
+                    throw new ApiException(404, e.getMessage(), e);
+                }
+                throw e;
+            }
+        }
+        return files;
+    }
+
+    static class RequestData {
+        private String format;
+        private List<RecordingRef> recordings;
+        private String jvmId;
+        private List<String> labels;
+    }
+
+    static class RecordingRef {
+        private String jvmId;
+        private String name;
+
+        RecordingRef(String jvmId, String name) {
+            this.jvmId = jvmId;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RecordingRef)) {
+                return false;
+            }
+            RecordingRef other = (RecordingRef) o;
+            return Objects.equals(jvmId, other.jvmId) && Objects.equals(name, other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(jvmId, name);
+        }
+    }
+}
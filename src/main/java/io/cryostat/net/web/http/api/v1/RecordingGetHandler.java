@@ -89,6 +89,7 @@ class RecordingGetHandler extends AbstractAuthenticatedRequestHandler {
         String recordingName = ctx.pathParam("recordingName");
         try {
             Path archivedRecording = recordingArchiveHelper.getRecordingPath(recordingName).get();
+            recordingArchiveHelper.markRecordingDownloaded(archivedRecording);
             ctx.response().putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.OCTET_STREAM.mime());
             ctx.response()
                     .putHeader(
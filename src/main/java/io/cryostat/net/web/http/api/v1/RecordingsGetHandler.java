@@ -19,6 +19,7 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
@@ -39,6 +40,9 @@ import io.vertx.ext.web.handler.HttpException;
 
 class RecordingsGetHandler extends AbstractAuthenticatedRequestHandler {
 
+    static final String FROM_PARAM = "from";
+    static final String TO_PARAM = "to";
+
     private final RecordingArchiveHelper recordingArchiveHelper;
     private final Gson gson;
 
@@ -87,6 +91,21 @@ class RecordingsGetHandler extends AbstractAuthenticatedRequestHandler {
     public void handleAuthenticated(RoutingContext ctx) throws Exception {
         try {
             List<ArchivedRecordingInfo> result = recordingArchiveHelper.getRecordings().get();
+            String from = ctx.request().getParam(FROM_PARAM);
+            String to = ctx.request().getParam(TO_PARAM);
+            if (from != null || to != null) {
+                // only recordings whose chunk headers have been indexed are known to overlap
+                long rangeStart = parseEpochMillis(FROM_PARAM, from, Long.MIN_VALUE);
+                long rangeEnd = parseEpochMillis(TO_PARAM, to, Long.MAX_VALUE);
+                result =
+                        result.stream()
+                                .filter(r -> r.getChunkCount() > 0)
+                                .filter(
+                                        r ->
+                                                r.getStartTime() <= rangeEnd
+                                                        && r.getEndTime() >= rangeStart)
+                                .collect(Collectors.toList());
+            }
             ctx.response().end(gson.toJson(result));
         } catch (ExecutionException e) {
             if (e.getCause() instanceof ArchivePathException) {
@@ -95,4 +114,16 @@ class RecordingsGetHandler extends AbstractAuthenticatedRequestHandler {
             throw e;
         }
     }
+
+    private static long parseEpochMillis(String name, String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new HttpException(
+                    400, String.format("Invalid \"%s\" timestamp: %s", name, value));
+        }
+    }
 }
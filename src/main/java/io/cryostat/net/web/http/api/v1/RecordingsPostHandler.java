@@ -25,7 +25,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Matcher;
 
 import javax.inject.Inject;
@@ -48,6 +50,7 @@ import io.cryostat.recordings.RecordingMetadataManager.Metadata;
 import io.cryostat.rules.ArchivedRecordingInfo;
 
 import com.google.gson.Gson;
+import io.vertx.core.Context;
 import io.vertx.core.MultiMap;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
@@ -214,69 +217,98 @@ class RecordingsPostHandler extends AbstractAuthenticatedRequestHandler {
                                     }
 
                                     String fsName = res2.result();
+                                    CompletableFuture<Metadata> written;
                                     try {
-                                        if (hasLabels) {
-                                            recordingMetadataManager
-                                                    .setRecordingMetadata(fsName, metadata)
-                                                    .get();
-                                        }
-
-                                    } catch (InterruptedException
-                                            | ExecutionException
-                                            | IOException e) {
+                                        written =
+                                                hasLabels
+                                                        ? recordingMetadataManager
+                                                                .setRecordingMetadata(
+                                                                        fsName, metadata)
+                                                        : CompletableFuture.completedFuture(
+                                                                metadata);
+                                    } catch (IOException e) {
                                         logger.error("Metadata set exception", e);
                                         ctx.fail(new HttpException(500, e));
                                         return;
                                     }
-
-                                    try {
-
-                                        notificationFactory
-                                                .createBuilder()
-                                                .metaCategory(NOTIFICATION_CATEGORY)
-                                                .metaType(HttpMimeType.JSON)
-                                                .message(
-                                                        Map.of(
-                                                                "recording",
-                                                                new ArchivedRecordingInfo(
-                                                                        subdirectoryName,
-                                                                        fsName,
-                                                                        webServer
-                                                                                .get()
-                                                                                .getArchivedDownloadURL(
-                                                                                        subdirectoryName,
-                                                                                        fsName),
-                                                                        webServer
-                                                                                .get()
-                                                                                .getArchivedReportURL(
-                                                                                        subdirectoryName,
-                                                                                        fsName),
-                                                                        metadata,
-                                                                        size,
-                                                                        archivedTime),
-                                                                "target",
-                                                                subdirectoryName))
-                                                .build()
-                                                .send();
-                                    } catch (URISyntaxException
-                                            | UnknownHostException
-                                            | SocketException e) {
-                                        logger.error("Recording metadata exception", e);
-                                        ctx.fail(new HttpException(500, e));
+                                    // the labels are committed by a batched write, so respond
+                                    // once it completes rather than blocking the event loop
+                                    if (written.isDone()) {
+                                        respond(
+                                                ctx,
+                                                written,
+                                                subdirectoryName,
+                                                fsName,
+                                                metadata,
+                                                size,
+                                                archivedTime);
                                         return;
                                     }
-
-                                    ctx.response()
-                                            .putHeader(
-                                                    HttpHeaders.CONTENT_TYPE,
-                                                    HttpMimeType.JSON.mime())
-                                            .end(
-                                                    gson.toJson(
-                                                            Map.of(
-                                                                    "name",
-                                                                    fsName,
-                                                                    "metadata",
-                                                                    metadata)));
+                                    Context context = ctx.vertx().getOrCreateContext();
+                                    written.whenComplete(
+                                            (v, t) ->
+                                                    context.runOnContext(
+                                                            x ->
+                                                                    respond(
+                                                                            ctx,
+                                                                            written,
+                                                                            subdirectoryName,
+                                                                            fsName,
+                                                                            metadata,
+                                                                            size,
+                                                                            archivedTime)));
                                 }));
     }
+
+    private void respond(
+            RoutingContext ctx,
+            CompletableFuture<Metadata> written,
+            String subdirectoryName,
+            String fsName,
+            Metadata metadata,
+            long size,
+            long archivedTime) {
+        try {
+            written.join();
+        } catch (CompletionException | CancellationException e) {
+            logger.error("Metadata set exception", e);
+            ctx.fail(new HttpException(500, e.getCause() != null ? e.getCause() : e));
+            return;
+        }
+
+        try {
+            notificationFactory
+                    .createBuilder()
+                    .metaCategory(NOTIFICATION_CATEGORY)
+                    .metaType(HttpMimeType.JSON)
+                    .message(
+                            Map.of(
+                                    "recording",
+                                    new ArchivedRecordingInfo(
+                                            subdirectoryName,
+                                            fsName,
+                                            webServer
+                                                    .get()
+                                                    .getArchivedDownloadURL(
+                                                            subdirectoryName, fsName),
+                                            webServer
+                                                    .get()
+                                                    .getArchivedReportURL(subdirectoryName, fsName),
+                                            metadata,
+                                            size,
+                                            archivedTime),
+                                    "target",
+                                    subdirectoryName))
+                    .build()
+                    .send();
+        } catch (URISyntaxException | UnknownHostException | SocketException e) {
+            logger.error("Recording metadata exception", e);
+            ctx.fail(new HttpException(500, e));
+            return;
+        }
+
+        ctx.response()
+                .putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime())
+                .end(gson.toJson(Map.of("name", fsName, "metadata", metadata)));
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.v2;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+
+import com.google.gson.Gson;
+
+/**
+ * Base for handlers which compose asynchronous results, ex. from the database, rather than blocking
+ * on them, and so run on the event loop.
+ */
+public abstract class AbstractAsyncV2RequestHandler<T> extends AbstractV2RequestHandler<T> {
+
+    protected AbstractAsyncV2RequestHandler(
+            AuthManager auth, CredentialsManager credentialsManager, Gson gson) {
+        super(auth, credentialsManager, gson);
+    }
+
+    @Override
+    public final boolean isAsync() {
+        return true;
+    }
+
+    @Override
+    protected abstract CompletableFuture<IntermediateResponse<T>> handleAsync(
+            RequestParameters params) throws Exception;
+
+    /** Handle the request, blocking until it is complete. */
+    @Override
+    public final IntermediateResponse<T> handle(RequestParameters params) throws Exception {
+        try {
+            return handleAsync(params).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -21,7 +21,11 @@ import java.io.File;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -39,12 +43,14 @@ import io.cryostat.net.web.http.api.ApiResponse;
 import io.cryostat.net.web.http.api.ApiResultData;
 
 import com.google.gson.Gson;
+import io.vertx.core.Context;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.HttpException;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 
 public abstract class AbstractV2RequestHandler<T> implements RequestHandler {
 
@@ -69,9 +75,19 @@ public abstract class AbstractV2RequestHandler<T> implements RequestHandler {
     public abstract IntermediateResponse<T> handle(RequestParameters requestParams)
             throws Exception;
 
+    /**
+     * Handle the request without blocking. The default implementation handles the request
+     * synchronously with {@link #handle(RequestParameters)}.
+     */
+    protected CompletableFuture<IntermediateResponse<T>> handleAsync(
+            RequestParameters requestParams) throws Exception {
+        return CompletableFuture.completedFuture(handle(requestParams));
+    }
+
     @Override
     public final void handle(RoutingContext ctx) {
         RequestParameters requestParams = RequestParameters.from(ctx);
+        CompletableFuture<IntermediateResponse<T>> response;
         try {
             if (requiresAuthentication()) {
                 boolean permissionGranted =
@@ -83,21 +99,63 @@ public abstract class AbstractV2RequestHandler<T> implements RequestHandler {
                     throw new ApiException(401, "HTTP Authorization Failure");
                 }
             }
-            writeResponse(ctx, handle(requestParams));
-        } catch (ApiException | HttpException e) {
-            throw e;
-        } catch (Exception e) {
-            if (AbstractAuthenticatedRequestHandler.isAuthenticationFailure(e)) {
-                throw new ApiException(401, "HTTP Unauthorized", e);
-            }
-            if (AbstractAuthenticatedRequestHandler.isAuthorizationFailure(e)) {
-                throw new ApiException(403, "HTTP Forbidden", e);
+            response = handleAsync(requestParams);
+            if (response.isDone()) {
+                writeResponse(ctx, response.join());
+                return;
             }
-            if (AbstractAuthenticatedRequestHandler.isTargetConnectionFailure(e)) {
-                handleConnectionException(ctx, e);
+        } catch (CompletionException e) {
+            throw toApiException(ctx, unwrap(e));
+        } catch (Exception e) {
+            throw toApiException(ctx, e);
+        }
+        Context context = ctx.vertx().getOrCreateContext();
+        response.whenComplete(
+                (r, t) ->
+                        context.runOnContext(
+                                v -> {
+                                    try {
+                                        if (t != null) {
+                                            throw toApiException(ctx, unwrap(t));
+                                        }
+                                        writeResponse(ctx, r);
+                                    } catch (RuntimeException e) {
+                                        ctx.fail(e);
+                                    }
+                                }));
+    }
+
+    private RuntimeException toApiException(RoutingContext ctx, Exception e) {
+        if (e instanceof ApiException || e instanceof HttpException) {
+            return (RuntimeException) e;
+        }
+        if (AbstractAuthenticatedRequestHandler.isAuthenticationFailure(e)) {
+            return new ApiException(401, "HTTP Unauthorized", e);
+        }
+        if (AbstractAuthenticatedRequestHandler.isAuthorizationFailure(e)) {
+            return new ApiException(403, "HTTP Forbidden", e);
+        }
+        if (AbstractAuthenticatedRequestHandler.isTargetConnectionFailure(e)) {
+            ApiException connectionFailure = toConnectionFailure(ctx, e);
+            if (connectionFailure != null) {
+                return connectionFailure;
             }
-            throw new ApiException(500, e);
         }
+        if (ExceptionUtils.indexOfType(e, RejectedExecutionException.class) >= 0) {
+            return new ApiException(503, "Service Unavailable", "Database Busy", e);
+        }
+        return new ApiException(500, e);
+    }
+
+    private static Exception unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException)
+                && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return (Exception) t;
     }
 
     protected Future<Boolean> validateRequestAuthorization(String authHeader) throws Exception {
@@ -163,6 +221,11 @@ public abstract class AbstractV2RequestHandler<T> implements RequestHandler {
             response.setStatusMessage(intermediateResponse.getStatusMessage());
         }
         intermediateResponse.getHeaders().forEach(response::putHeader);
+        if (intermediateResponse.getStatusCode() == 304) {
+            // Not Modified responses must not have a body
+            response.end();
+            return;
+        }
         HttpMimeType contentType = HttpMimeType.fromString(ctx.getAcceptableContentType());
         if (contentType == HttpMimeType.UNKNOWN && !produces().isEmpty()) {
             contentType = produces().get(0);
@@ -204,19 +267,20 @@ public abstract class AbstractV2RequestHandler<T> implements RequestHandler {
         return requireNonBlank(new JsonObject(params.getBody()).getString(key), key);
     }
 
-    private void handleConnectionException(RoutingContext ctx, Exception e) {
+    private ApiException toConnectionFailure(RoutingContext ctx, Exception e) {
         if (AbstractAuthenticatedRequestHandler.isJmxAuthFailure(e)) {
             ctx.response().putHeader(JMX_AUTHENTICATE_HEADER, "Basic");
-            throw new ApiException(427, "Authentication Failure", "JMX Authentication Failure", e);
+            return new ApiException(427, "Authentication Failure", "JMX Authentication Failure", e);
         }
         if (AbstractAuthenticatedRequestHandler.isUnknownTargetFailure(e)) {
-            throw new ApiException(404, "Connection Failure", "Target Not Found", e);
+            return new ApiException(404, "Connection Failure", "Target Not Found", e);
         }
         if (AbstractAuthenticatedRequestHandler.isJmxSslFailure(e)) {
-            throw new ApiException(502, "Connection Failure", "Target SSL Untrusted", e);
+            return new ApiException(502, "Connection Failure", "Target SSL Untrusted", e);
         }
         if (AbstractAuthenticatedRequestHandler.isServiceTypeFailure(e)) {
-            throw new ApiException(504, "Connection Failure", "Non-JMX Port", e);
+            return new ApiException(504, "Connection Failure", "Non-JMX Port", e);
         }
+        return null;
     }
 }
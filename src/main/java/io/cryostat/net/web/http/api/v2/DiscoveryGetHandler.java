@@ -30,6 +30,7 @@ import io.cryostat.net.web.http.api.ApiVersion;
 import io.cryostat.platform.discovery.EnvironmentNode;
 
 import com.google.gson.Gson;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
 
 class DiscoveryGetHandler extends AbstractV2RequestHandler<EnvironmentNode> {
@@ -83,6 +84,28 @@ class DiscoveryGetHandler extends AbstractV2RequestHandler<EnvironmentNode> {
 
     @Override
     public IntermediateResponse<EnvironmentNode> handle(RequestParameters params) throws Exception {
-        return new IntermediateResponse<EnvironmentNode>().body(storage.getDiscoveryTree());
+        DiscoveryStorage.VersionedTree tree = storage.getVersionedDiscoveryTree();
+        String etag = String.format("\"%s-%d\"", tree.epoch(), tree.version());
+        IntermediateResponse<EnvironmentNode> response =
+                new IntermediateResponse<EnvironmentNode>().addHeader(HttpHeaders.ETAG, etag);
+        if (matches(params.getHeaders().getAll(HttpHeaders.IF_NONE_MATCH), etag)) {
+            return response.statusCode(304);
+        }
+        return response.body(tree.tree());
+    }
+
+    private static boolean matches(List<String> ifNoneMatch, String etag) {
+        for (String header : ifNoneMatch) {
+            for (String tag : header.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 }
@@ -87,6 +87,7 @@ class RecordingGetHandler extends AbstractAssetJwtConsumingHandler {
         String recordingName = ctx.pathParam("recordingName");
         try {
             Path archivedRecording = recordingArchiveHelper.getRecordingPath(recordingName).get();
+            recordingArchiveHelper.markRecordingDownloaded(archivedRecording);
             ctx.response()
                     .putHeader(
                             HttpHeaders.CONTENT_DISPOSITION,
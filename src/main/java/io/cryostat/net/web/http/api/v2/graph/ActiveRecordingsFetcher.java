@@ -28,7 +28,7 @@ import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
 import io.cryostat.net.web.http.api.v2.graph.ActiveRecordingsFetcher.Active;
 import io.cryostat.net.web.http.api.v2.graph.RecordingsFetcher.Recordings;
-import io.cryostat.net.web.http.api.v2.graph.labels.LabelSelectorMatcher;
+import io.cryostat.recordings.RecordingMetadataManager;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import graphql.schema.DataFetchingEnvironment;
@@ -40,9 +40,12 @@ import graphql.schema.DataFetchingEnvironment;
                         + " the GraphQL engine")
 class ActiveRecordingsFetcher extends AbstractPermissionedDataFetcher<Active> {
 
+    private final RecordingMetadataManager metadataManager;
+
     @Inject
-    ActiveRecordingsFetcher(AuthManager auth) {
+    ActiveRecordingsFetcher(AuthManager auth, RecordingMetadataManager metadataManager) {
         super(auth);
+        this.metadataManager = metadataManager;
     }
 
     @Override
@@ -88,14 +91,23 @@ class ActiveRecordingsFetcher extends AbstractPermissionedDataFetcher<Active> {
 
         if (filter.contains(FilterInput.Key.LABELS)) {
             List<String> labels = filter.get(FilterInput.Key.LABELS);
-            for (String label : labels) {
+            if (source.jvmId != null) {
+                recordings =
+                        metadataManager.filterByLabels(
+                                source.jvmId,
+                                recordings,
+                                GraphRecordingDescriptor::getName,
+                                GraphRecordingDescriptor::getMetadata,
+                                labels);
+            } else {
+                // the target's JVM ID was not known when it was discovered, so resolve it here
                 recordings =
-                        recordings.stream()
-                                .filter(
-                                        r ->
-                                                LabelSelectorMatcher.parse(label)
-                                                        .test(r.getMetadata().getLabels()))
-                                .collect(Collectors.toList());
+                        metadataManager.filterByLabels(
+                                recordings,
+                                r -> source.targetId,
+                                GraphRecordingDescriptor::getName,
+                                GraphRecordingDescriptor::getMetadata,
+                                labels);
             }
         }
         if (filter.contains(FilterInput.Key.STATE)) {
@@ -29,8 +29,8 @@ import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
 import io.cryostat.net.web.http.api.v2.graph.ArchivedRecordingsFetcher.AggregateInfo;
 import io.cryostat.net.web.http.api.v2.graph.ArchivedRecordingsFetcher.Archived;
-import io.cryostat.net.web.http.api.v2.graph.labels.LabelSelectorMatcher;
 import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.RecordingMetadataManager;
 import io.cryostat.rules.ArchivedRecordingInfo;
 
 import graphql.schema.DataFetchingEnvironment;
@@ -40,12 +40,17 @@ import org.slf4j.LoggerFactory;
 class AllArchivedRecordingsFetcher extends AbstractPermissionedDataFetcher<Archived> {
 
     private final RecordingArchiveHelper archiveHelper;
+    private final RecordingMetadataManager metadataManager;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     @Inject
-    AllArchivedRecordingsFetcher(AuthManager auth, RecordingArchiveHelper archiveHelper) {
+    AllArchivedRecordingsFetcher(
+            AuthManager auth,
+            RecordingArchiveHelper archiveHelper,
+            RecordingMetadataManager metadataManager) {
         super(auth);
         this.archiveHelper = archiveHelper;
+        this.metadataManager = metadataManager;
     }
 
     @Override
@@ -90,44 +95,15 @@ class AllArchivedRecordingsFetcher extends AbstractPermissionedDataFetcher<Archi
         }
         if (filter.contains(FilterInput.Key.LABELS)) {
             List<String> labels = filter.get(FilterInput.Key.LABELS);
-            for (String label : labels) {
-                recordings =
-                        recordings.stream()
-                                .filter(
-                                        r ->
-                                                LabelSelectorMatcher.parse(label)
-                                                        .test(r.getMetadata().getLabels()))
-                                .collect(Collectors.toList());
-            }
-        }
-        if (filter.contains(FilterInput.Key.SIZE_GE)) {
-            long fileSize = filter.get(FilterInput.Key.SIZE_GE);
-            recordings =
-                    recordings.stream()
-                            .filter(r -> r.getSize() >= fileSize)
-                            .collect(Collectors.toList());
-        }
-        if (filter.contains(FilterInput.Key.SIZE_LE)) {
-            long fileSize = filter.get(FilterInput.Key.SIZE_LE);
-            recordings =
-                    recordings.stream()
-                            .filter(r -> r.getSize() <= fileSize)
-                            .collect(Collectors.toList());
-        }
-        if (filter.contains(FilterInput.Key.ARCHIVED_TIME_AFTER)) {
-            long startTime = filter.get(FilterInput.Key.ARCHIVED_TIME_AFTER);
-            recordings =
-                    recordings.stream()
-                            .filter(r -> r.getArchivedTime() >= startTime)
-                            .collect(Collectors.toList());
-        }
-        if (filter.contains(FilterInput.Key.ARCHIVED_TIME_BEFORE)) {
-            long endTime = filter.get(FilterInput.Key.ARCHIVED_TIME_BEFORE);
             recordings =
-                    recordings.stream()
-                            .filter(r -> r.getArchivedTime() <= endTime)
-                            .collect(Collectors.toList());
+                    metadataManager.filterByLabels(
+                            recordings,
+                            ArchivedRecordingInfo::getServiceUri,
+                            ArchivedRecordingInfo::getName,
+                            ArchivedRecordingInfo::getMetadata,
+                            labels);
         }
+        recordings = ArchivedRecordingsFetcher.filterArchived(filter, recordings);
 
         Archived archived = new Archived();
         AggregateInfo aggregate = new AggregateInfo();
@@ -0,0 +1,93 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.v2.graph;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.RecordingSlice;
+import io.cryostat.rules.ArchivedRecordingInfo;
+
+import graphql.schema.DataFetchingEnvironment;
+
+class ArchivedRecordingSliceFetcher extends AbstractPermissionedDataFetcher<Map<String, Object>> {
+
+    private final RecordingArchiveHelper recordingArchiveHelper;
+
+    @Inject
+    ArchivedRecordingSliceFetcher(AuthManager auth, RecordingArchiveHelper recordingArchiveHelper) {
+        super(auth);
+        this.recordingArchiveHelper = recordingArchiveHelper;
+    }
+
+    @Override
+    Set<String> applicableContexts() {
+        return Set.of("ArchivedRecording");
+    }
+
+    @Override
+    String name() {
+        return "slice";
+    }
+
+    @Override
+    public Set<ResourceAction> resourceActions() {
+        return EnumSet.of(ResourceAction.READ_RECORDING);
+    }
+
+    @Override
+    public Map<String, Object> getAuthenticated(DataFetchingEnvironment environment)
+            throws Exception {
+        ArchivedRecordingInfo source = environment.getSource();
+        Long startArg = environment.getArgument("start");
+        Long endArg = environment.getArgument("end");
+        long start = startArg == null ? 0 : startArg;
+        long end = endArg == null ? Long.MAX_VALUE : endArg;
+        if (start < 0 || start > end) {
+            throw new IllegalArgumentException(
+                    "start must be non-negative and must not be after end");
+        }
+        RecordingSlice slice =
+                recordingArchiveHelper
+                        .getRecordingSlice(source.getServiceUri(), source.getName(), start, end)
+                        .get();
+        if (slice.isEmpty()) {
+            return null;
+        }
+        StringBuilder downloadUrl = new StringBuilder(source.getDownloadUrl()).append("/slice");
+        downloadUrl.append("?start=").append(start);
+        if (endArg != null) {
+            downloadUrl.append("&end=").append(end);
+        }
+        return Map.of(
+                "downloadUrl",
+                downloadUrl.toString(),
+                "startTime",
+                slice.getStartTime(),
+                "endTime",
+                slice.getEndTime(),
+                "chunkCount",
+                slice.getChunkCount(),
+                "size",
+                slice.getLength());
+    }
+}
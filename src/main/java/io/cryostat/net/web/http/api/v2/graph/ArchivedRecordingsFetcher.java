@@ -28,7 +28,7 @@ import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
 import io.cryostat.net.web.http.api.v2.graph.ArchivedRecordingsFetcher.Archived;
 import io.cryostat.net.web.http.api.v2.graph.RecordingsFetcher.Recordings;
-import io.cryostat.net.web.http.api.v2.graph.labels.LabelSelectorMatcher;
+import io.cryostat.recordings.RecordingMetadataManager;
 import io.cryostat.rules.ArchivedRecordingInfo;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -41,9 +41,12 @@ import graphql.schema.DataFetchingEnvironment;
                         + " the GraphQL engine")
 class ArchivedRecordingsFetcher extends AbstractPermissionedDataFetcher<Archived> {
 
+    private final RecordingMetadataManager metadataManager;
+
     @Inject
-    ArchivedRecordingsFetcher(AuthManager auth) {
+    ArchivedRecordingsFetcher(AuthManager auth, RecordingMetadataManager metadataManager) {
         super(auth);
+        this.metadataManager = metadataManager;
     }
 
     @Override
@@ -87,16 +90,43 @@ class ArchivedRecordingsFetcher extends AbstractPermissionedDataFetcher<Archived
 
         if (filter.contains(FilterInput.Key.LABELS)) {
             List<String> labels = filter.get(FilterInput.Key.LABELS);
-            for (String label : labels) {
+            if (source.jvmId != null) {
+                recordings =
+                        metadataManager.filterByLabels(
+                                source.jvmId,
+                                recordings,
+                                ArchivedRecordingInfo::getName,
+                                ArchivedRecordingInfo::getMetadata,
+                                labels);
+            } else {
+                // the target's JVM ID was not known when it was discovered, so resolve it here
                 recordings =
-                        recordings.stream()
-                                .filter(
-                                        r ->
-                                                LabelSelectorMatcher.parse(label)
-                                                        .test(r.getMetadata().getLabels()))
-                                .collect(Collectors.toList());
+                        metadataManager.filterByLabels(
+                                recordings,
+                                r -> source.targetId,
+                                ArchivedRecordingInfo::getName,
+                                ArchivedRecordingInfo::getMetadata,
+                                labels);
             }
         }
+        recordings = filterArchived(filter, recordings);
+
+        Archived archived = new Archived();
+        AggregateInfo aggregate = new AggregateInfo();
+        archived.data = recordings;
+        aggregate.count = archived.data.size();
+        aggregate.size = archived.data.stream().mapToLong(ArchivedRecordingInfo::getSize).sum();
+        archived.aggregate = aggregate;
+
+        return archived;
+    }
+
+    /**
+     * Apply the size, archival time, recording time range and event type filters shared by the
+     * per-target and fleet-wide archived recording queries.
+     */
+    static List<ArchivedRecordingInfo> filterArchived(
+            FilterInput filter, List<ArchivedRecordingInfo> recordings) {
         if (filter.contains(FilterInput.Key.SIZE_GE)) {
             long fileSize = filter.get(FilterInput.Key.SIZE_GE);
             recordings =
@@ -125,15 +155,53 @@ class ArchivedRecordingsFetcher extends AbstractPermissionedDataFetcher<Archived
                             .filter(r -> r.getArchivedTime() <= endTime)
                             .collect(Collectors.toList());
         }
-
-        Archived archived = new Archived();
-        AggregateInfo aggregate = new AggregateInfo();
-        archived.data = recordings;
-        aggregate.count = archived.data.size();
-        aggregate.size = archived.data.stream().mapToLong(ArchivedRecordingInfo::getSize).sum();
-        archived.aggregate = aggregate;
-
-        return archived;
+        if (filter.contains(FilterInput.Key.START_TIME_BEFORE)
+                || filter.contains(FilterInput.Key.START_TIME_AFTER)
+                || filter.contains(FilterInput.Key.END_TIME_BEFORE)
+                || filter.contains(FilterInput.Key.END_TIME_AFTER)) {
+            // recordings archived before chunk summaries were indexed report zero start and end
+            // times, which would otherwise satisfy every *Before bound
+            recordings =
+                    recordings.stream()
+                            .filter(r -> r.getChunkCount() > 0)
+                            .collect(Collectors.toList());
+        }
+        if (filter.contains(FilterInput.Key.START_TIME_BEFORE)) {
+            long startTime = filter.get(FilterInput.Key.START_TIME_BEFORE);
+            recordings =
+                    recordings.stream()
+                            .filter(r -> r.getStartTime() <= startTime)
+                            .collect(Collectors.toList());
+        }
+        if (filter.contains(FilterInput.Key.START_TIME_AFTER)) {
+            long startTime = filter.get(FilterInput.Key.START_TIME_AFTER);
+            recordings =
+                    recordings.stream()
+                            .filter(r -> r.getStartTime() >= startTime)
+                            .collect(Collectors.toList());
+        }
+        if (filter.contains(FilterInput.Key.END_TIME_BEFORE)) {
+            long endTime = filter.get(FilterInput.Key.END_TIME_BEFORE);
+            recordings =
+                    recordings.stream()
+                            .filter(r -> r.getEndTime() <= endTime)
+                            .collect(Collectors.toList());
+        }
+        if (filter.contains(FilterInput.Key.END_TIME_AFTER)) {
+            long endTime = filter.get(FilterInput.Key.END_TIME_AFTER);
+            recordings =
+                    recordings.stream()
+                            .filter(r -> r.getEndTime() >= endTime)
+                            .collect(Collectors.toList());
+        }
+        if (filter.contains(FilterInput.Key.EVENT_TYPE)) {
+            String eventType = filter.get(FilterInput.Key.EVENT_TYPE);
+            recordings =
+                    recordings.stream()
+                            .filter(r -> r.getEventTypes().contains(eventType))
+                            .collect(Collectors.toList());
+        }
+        return recordings;
     }
 
     static class Archived {
@@ -17,6 +17,7 @@ package io.cryostat.net.web.http.api.v2.graph;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
@@ -37,6 +38,9 @@ import graphql.schema.DataFetchingEnvironment;
 class EnvironmentNodesFetcher extends AbstractPermissionedDataFetcher<List<EnvironmentNode>> {
 
     private final RootNodeFetcher rootNodeFetcher;
+    // the discovery tree is shared until its content changes, so its environment nodes are only
+    // collected again when a different tree is returned
+    private volatile Flattened flattened;
 
     @Inject
     EnvironmentNodesFetcher(AuthManager auth, RootNodeFetcher rootNodeFetcher) {
@@ -69,7 +73,7 @@ class EnvironmentNodesFetcher extends AbstractPermissionedDataFetcher<List<Envir
             throws Exception {
         FilterInput filter = FilterInput.from(environment);
         EnvironmentNode root = rootNodeFetcher.get(environment);
-        Set<EnvironmentNode> nodes = flattenEnvNodes(root);
+        Set<EnvironmentNode> nodes = environmentNodesOf(root);
 
         if (filter.contains(FilterInput.Key.ID)) {
             int id = filter.get(FilterInput.Key.ID);
@@ -106,6 +110,15 @@ class EnvironmentNodesFetcher extends AbstractPermissionedDataFetcher<List<Envir
         return new ArrayList<>(nodes);
     }
 
+    private Set<EnvironmentNode> environmentNodesOf(EnvironmentNode root) {
+        Flattened current = flattened;
+        if (current == null || current.root() != root) {
+            current = new Flattened(root, Collections.unmodifiableSet(flattenEnvNodes(root)));
+            flattened = current;
+        }
+        return current.nodes();
+    }
+
     Set<EnvironmentNode> flattenEnvNodes(EnvironmentNode root) {
         return new HashSet<>(recurse(root, e -> e instanceof EnvironmentNode));
     }
@@ -135,4 +148,6 @@ class EnvironmentNodesFetcher extends AbstractPermissionedDataFetcher<List<Envir
         }
         return result;
     }
+
+    private record Flattened(EnvironmentNode root, Set<EnvironmentNode> nodes) {}
 }
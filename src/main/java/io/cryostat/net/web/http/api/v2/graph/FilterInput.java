@@ -57,6 +57,9 @@ class FilterInput {
         DURATION_LE("durationMsLessThanEqual"),
         START_TIME_BEFORE("startTimeMsBeforeEqual"),
         START_TIME_AFTER("startTimeMsAfterEqual"),
+        END_TIME_BEFORE("endTimeMsBeforeEqual"),
+        END_TIME_AFTER("endTimeMsAfterEqual"),
+        EVENT_TYPE("eventType"),
         SIZE_GE("sizeBytesGreaterThanEqual"),
         SIZE_LE("sizeBytesLessThanEqual"),
         ARCHIVED_TIME_BEFORE("archivedTimeMsBeforeEqual"),
@@ -177,8 +177,9 @@ public abstract class GraphModule {
     abstract AbstractPermissionedDataFetcher<?> bindRecordingsFetcher(RecordingsFetcher apdf);
 
     @Provides
-    static ActiveRecordingsFetcher provideActiveRecordingsFetcher(AuthManager auth) {
-        return new ActiveRecordingsFetcher(auth);
+    static ActiveRecordingsFetcher provideActiveRecordingsFetcher(
+            AuthManager auth, RecordingMetadataManager metadataManager) {
+        return new ActiveRecordingsFetcher(auth, metadataManager);
     }
 
     @Binds
@@ -188,8 +189,10 @@ public abstract class GraphModule {
 
     @Provides
     static AllArchivedRecordingsFetcher provideAllArchivedRecordingsFetcher(
-            AuthManager auth, RecordingArchiveHelper recordingArchiveHelper) {
-        return new AllArchivedRecordingsFetcher(auth, recordingArchiveHelper);
+            AuthManager auth,
+            RecordingArchiveHelper recordingArchiveHelper,
+            RecordingMetadataManager metadataManager) {
+        return new AllArchivedRecordingsFetcher(auth, recordingArchiveHelper, metadataManager);
     }
 
     @Binds
@@ -198,8 +201,9 @@ public abstract class GraphModule {
             AllArchivedRecordingsFetcher apdf);
 
     @Provides
-    static ArchivedRecordingsFetcher provideArchivedRecordingsFetcher(AuthManager auth) {
-        return new ArchivedRecordingsFetcher(auth);
+    static ArchivedRecordingsFetcher provideArchivedRecordingsFetcher(
+            AuthManager auth, RecordingMetadataManager metadataManager) {
+        return new ArchivedRecordingsFetcher(auth, metadataManager);
     }
 
     @Binds
@@ -207,6 +211,17 @@ public abstract class GraphModule {
     abstract AbstractPermissionedDataFetcher<?> bindArchivedRecordingsFetcher(
             ArchivedRecordingsFetcher apdf);
 
+    @Provides
+    static ArchivedRecordingSliceFetcher provideArchivedRecordingSliceFetcher(
+            AuthManager auth, RecordingArchiveHelper recordingArchiveHelper) {
+        return new ArchivedRecordingSliceFetcher(auth, recordingArchiveHelper);
+    }
+
+    @Binds
+    @IntoSet
+    abstract AbstractPermissionedDataFetcher<?> bindArchivedRecordingSliceFetcher(
+            ArchivedRecordingSliceFetcher apdf);
+
     @Provides
     static EnvironmentNodeChildrenFetcher provideEnvironmentNodeChildrenFetcher(AuthManager auth) {
         return new EnvironmentNodeChildrenFetcher(auth);
@@ -102,6 +102,8 @@ class RecordingsFetcher extends AbstractPermissionedDataFetcher<Recordings> {
         ServiceRef target = source.getTarget();
         String targetId = target.getServiceUri().toString();
         Recordings recordings = new Recordings();
+        recordings.jvmId = target.getJvmId();
+        recordings.targetId = targetId;
 
         List<String> requestedFields =
                 environment.getSelectionSet().getFields().stream()
@@ -166,6 +168,8 @@ class RecordingsFetcher extends AbstractPermissionedDataFetcher<Recordings> {
     }
 
     static class Recordings {
+        String jvmId;
+        String targetId;
         List<GraphRecordingDescriptor> active;
         List<ArchivedRecordingInfo> archived;
     }
@@ -16,6 +16,7 @@
 package io.cryostat.net.web.http.api.v2.graph.labels;
 
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -36,6 +37,16 @@ public class EqualityMatcher implements LabelMatcher {
         return key;
     }
 
+    @Override
+    public Set<String> getValues() {
+        return Set.of(value);
+    }
+
+    @Override
+    public boolean isNegated() {
+        return operator == Operator.NOT_EQUAL;
+    }
+
     @Override
     public boolean test(String s) {
         return operator.with(value).test(s);
@@ -15,8 +15,18 @@
  */
 package io.cryostat.net.web.http.api.v2.graph.labels;
 
+import java.util.Set;
 import java.util.function.Predicate;
 
-interface LabelMatcher extends Predicate<String> {
+public interface LabelMatcher extends Predicate<String> {
     String getKey();
+
+    /** The label values which satisfy this matcher, or empty if any value of the key does. */
+    Set<String> getValues();
+
+    /**
+     * Whether this matcher is satisfied when the key does not have any of the values, rather than
+     * when it does.
+     */
+    boolean isNegated();
 }
@@ -18,6 +18,7 @@ package io.cryostat.net.web.http.api.v2.graph.labels;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -62,6 +63,10 @@ public class LabelSelectorMatcher implements Predicate<Map<String, String>> {
         return this.matchers.stream().allMatch(m -> m.test(labels.get(m.getKey())));
     }
 
+    public List<LabelMatcher> getMatchers() {
+        return Collections.unmodifiableList(matchers);
+    }
+
     public static LabelSelectorMatcher parse(String clause) throws IllegalArgumentException {
         Collection<Function<String, LabelMatcher>> parsers =
                 Arrays.asList(
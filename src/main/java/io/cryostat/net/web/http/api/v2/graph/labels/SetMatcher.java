@@ -42,6 +42,16 @@ public class SetMatcher implements LabelMatcher {
         return key;
     }
 
+    @Override
+    public Set<String> getValues() {
+        return Set.copyOf(values);
+    }
+
+    @Override
+    public boolean isNegated() {
+        return operator == Operator.NOT_IN || operator == Operator.DOES_NOT_EXIST;
+    }
+
     @Override
     public boolean test(String s) {
         return operator.with(values).test(s);
@@ -16,14 +16,17 @@
 package io.cryostat.platform;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 import com.google.gson.annotations.SerializedName;
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -203,66 +206,72 @@ public class ServiceRef {
         return new Compare(src);
     }
 
+    /**
+     * The difference between a previous and a current collection of refs. A ref in only one of the
+     * collections is {@link #updated()} if a ref with the same service URI is in only the other,
+     * and is otherwise {@link #added()} or {@link #removed()}. The difference is computed once,
+     * when the current refs are given, in a single pass over each collection using hash lookups, so
+     * it takes time linear in the number of refs.
+     */
     public static class Compare {
-        private Collection<ServiceRef> previous, current;
+        private final Collection<ServiceRef> previous;
+        private Set<ServiceRef> added = new HashSet<>();
+        private Set<ServiceRef> removed = new HashSet<>();
+        private Set<ServiceRef> updated = new HashSet<>();
 
         public Compare(Collection<ServiceRef> previous) {
             this.previous = new HashSet<>(previous);
         }
 
         public Compare to(Collection<ServiceRef> current) {
-            this.current = new HashSet<>(current);
+            Set<ServiceRef> currentSet = new HashSet<>(current);
+
+            List<ServiceRef> addedOrUpdated = new ArrayList<>();
+            Set<URI> addedOrUpdatedUris = new HashSet<>();
+            for (ServiceRef ref : currentSet) {
+                if (!previous.contains(ref)) {
+                    addedOrUpdated.add(ref);
+                    addedOrUpdatedUris.add(ref.getServiceUri());
+                }
+            }
+
+            Set<ServiceRef> removed = new HashSet<>();
+            Set<URI> removedOrUpdatedUris = new HashSet<>();
+            for (ServiceRef ref : previous) {
+                if (!currentSet.contains(ref)) {
+                    removedOrUpdatedUris.add(ref.getServiceUri());
+                    if (!addedOrUpdatedUris.contains(ref.getServiceUri())) {
+                        removed.add(ref);
+                    }
+                }
+            }
+
+            Set<ServiceRef> added = new HashSet<>();
+            Set<ServiceRef> updated = new HashSet<>();
+            for (ServiceRef ref : addedOrUpdated) {
+                if (removedOrUpdatedUris.contains(ref.getServiceUri())) {
+                    updated.add(ref);
+                } else {
+                    added.add(ref);
+                }
+            }
+
+            this.added = added;
+            this.removed = removed;
+            this.updated = updated;
             return this;
         }
 
         public Collection<ServiceRef> added() {
-            return removeAllUpdatedRefs(addedOrUpdatedRefs(), updated());
+            return Collections.unmodifiableSet(added);
         }
 
         public Collection<ServiceRef> removed() {
-            return removeAllUpdatedRefs(removedOrUpdatedRefs(), updated());
+            return Collections.unmodifiableSet(removed);
         }
 
         public Collection<ServiceRef> updated() {
-            Collection<ServiceRef> updated = new HashSet<>();
-            intersection(removedOrUpdatedRefs(), addedOrUpdatedRefs(), false)
-                    .forEach((ref) -> updated.add(ref));
-            return updated;
-        }
-
-        private Collection<ServiceRef> addedOrUpdatedRefs() {
-            Collection<ServiceRef> added = new HashSet<>(current);
-            added.removeAll(previous);
-            return added;
-        }
-
-        private Collection<ServiceRef> removedOrUpdatedRefs() {
-            Collection<ServiceRef> removed = new HashSet<>(previous);
-            removed.removeAll(current);
-            return removed;
-        }
-
-        private Collection<ServiceRef> removeAllUpdatedRefs(
-                Collection<ServiceRef> src, Collection<ServiceRef> updated) {
-            Collection<ServiceRef> tnSet = new HashSet<>(src);
-            intersection(src, updated, true).stream().forEach((ref) -> tnSet.remove(ref));
-            return tnSet;
-        }
-
-        private Collection<ServiceRef> intersection(
-                Collection<ServiceRef> src, Collection<ServiceRef> other, boolean keepOld) {
-            final Collection<ServiceRef> intersection = new HashSet<>();
-
-            // Manual removal since ServiceRef also compares jvmId
-            for (ServiceRef srcRef : src) {
-                for (ServiceRef otherRef : other) {
-                    if (Objects.equals(srcRef.getServiceUri(), otherRef.getServiceUri())) {
-                        intersection.add(keepOld ? srcRef : otherRef);
-                    }
-                }
-            }
-
-            return intersection;
+            return Collections.unmodifiableSet(updated);
         }
     }
 }
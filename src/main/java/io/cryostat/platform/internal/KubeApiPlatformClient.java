@@ -337,14 +337,10 @@ public class KubeApiPlatformClient extends AbstractPlatformClient {
                 return;
             }
 
-            ServiceRef.compare(previousRefs).to(currentRefs).updated().stream()
-                    .forEach(sr -> notifyAsyncTargetDiscovery(EventKind.MODIFIED, sr));
-
-            ServiceRef.compare(previousRefs).to(currentRefs).added().stream()
-                    .forEach(sr -> notifyAsyncTargetDiscovery(EventKind.FOUND, sr));
-
-            ServiceRef.compare(previousRefs).to(currentRefs).removed().stream()
-                    .forEach(sr -> notifyAsyncTargetDiscovery(EventKind.LOST, sr));
+            ServiceRef.Compare diff = ServiceRef.compare(previousRefs).to(currentRefs);
+            diff.updated().forEach(sr -> notifyAsyncTargetDiscovery(EventKind.MODIFIED, sr));
+            diff.added().forEach(sr -> notifyAsyncTargetDiscovery(EventKind.FOUND, sr));
+            diff.removed().forEach(sr -> notifyAsyncTargetDiscovery(EventKind.LOST, sr));
         }
 
         @Override
@@ -0,0 +1,403 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
+
+import io.cryostat.core.sys.Clock;
+import io.cryostat.core.sys.FileSystem;
+import io.cryostat.util.events.AbstractEventEmitter;
+import io.cryostat.util.events.EventType;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the recordings stored in the archive. The index is built once by scanning the
+ * archive directory at startup and is afterwards kept up to date by {@link RecordingArchiveHelper}
+ * as recordings are saved, uploaded, downloaded, and deleted, so that consumers such as the {@link
+ * ArchiveRetentionEngine} can query archive sizes without walking the disk.
+ *
+ * <p>Each entry also carries a {@link RecordingSummary} of the recording's chunk headers. Summaries
+ * are read once when a recording enters the archive and persisted alongside the index, so that
+ * rebuilding the index at startup only needs to read recordings which have not been seen before.
+ */
+public class ArchiveIndex
+        extends AbstractEventEmitter<ArchiveIndex.IndexEvent, ArchiveIndex.Entry> {
+
+    private static final String CONNECT_URL = "connectUrl";
+    private static final String SUMMARY_SUFFIX = ".json";
+
+    private final Path archivedRecordingsPath;
+    private final Path summariesPath;
+    private final FileSystem fs;
+    private final Gson gson;
+    private final Clock clock;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Map<String, Map<String, Entry>> entries = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> subdirectoryBytes = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    ArchiveIndex(
+            Path archivedRecordingsPath,
+            Path summariesPath,
+            FileSystem fs,
+            Gson gson,
+            Clock clock) {
+        this.archivedRecordingsPath = archivedRecordingsPath;
+        this.summariesPath = summariesPath;
+        this.fs = fs;
+        this.gson = gson;
+        this.clock = clock;
+    }
+
+    public synchronized void rebuild() throws IOException {
+        entries.clear();
+        subdirectoryBytes.clear();
+        totalBytes.set(0);
+        if (!fs.isDirectory(archivedRecordingsPath)) {
+            return;
+        }
+        for (String subdirectoryName : fs.listDirectoryChildren(archivedRecordingsPath)) {
+            if (RecordingArchiveHelper.TEMP_UPLOADS_SUBDIRECTORY.equals(subdirectoryName)) {
+                continue;
+            }
+            Path subdirectory = archivedRecordingsPath.resolve(subdirectoryName);
+            if (!fs.isDirectory(subdirectory)) {
+                continue;
+            }
+            for (String filename : fs.listDirectoryChildren(subdirectory)) {
+                if (CONNECT_URL.equals(filename)) {
+                    continue;
+                }
+                index(subdirectoryName, filename, null).ifPresent(e -> putEntry(e));
+            }
+        }
+        pruneSummaries();
+        logger.info("Archive index rebuilt: {} recordings, {} bytes", size(), totalBytes.get());
+    }
+
+    /**
+     * Index a recording which has been written into the archive. This reads the recording's chunk
+     * headers unless a persisted summary for a file of the same size already exists, so it should
+     * not be called from an event loop thread.
+     */
+    public Optional<Entry> add(Path recordingPath) {
+        return add(recordingPath, null);
+    }
+
+    /**
+     * Index a recording which has been written into the archive, using a summary that was already
+     * read from the same file, ex. while validating an upload.
+     */
+    public Optional<Entry> add(Path recordingPath, RecordingSummary summary) {
+        Optional<Entry> entry = resolve(recordingPath).flatMap(p -> index(p[0], p[1], summary));
+        entry.ifPresent(
+                e -> {
+                    putEntry(e);
+                    emit(IndexEvent.ADDED, e);
+                });
+        return entry;
+    }
+
+    public Optional<Entry> remove(Path recordingPath) {
+        return resolve(recordingPath).flatMap(p -> remove(p[0], p[1]));
+    }
+
+    public Optional<Entry> remove(String subdirectoryName, String filename) {
+        Map<String, Entry> subdirectoryEntries = entries.get(subdirectoryName);
+        if (subdirectoryEntries == null) {
+            return Optional.empty();
+        }
+        Entry entry = subdirectoryEntries.remove(filename);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        deleteSummary(subdirectoryName, filename);
+        subdirectoryBytes
+                .computeIfAbsent(subdirectoryName, k -> new AtomicLong())
+                .addAndGet(-entry.getSize());
+        totalBytes.addAndGet(-entry.getSize());
+        emit(IndexEvent.REMOVED, entry);
+        return Optional.of(entry);
+    }
+
+    public void touch(Path recordingPath) {
+        resolve(recordingPath)
+                .map(p -> entries.getOrDefault(p[0], Map.of()).get(p[1]))
+                .ifPresent(
+                        e -> {
+                            e.lastAccessTime = clock.now().toEpochMilli();
+                            emit(IndexEvent.ACCESSED, e);
+                        });
+    }
+
+    public Optional<Entry> getEntry(String subdirectoryName, String filename) {
+        return Optional.ofNullable(entries.getOrDefault(subdirectoryName, Map.of()).get(filename));
+    }
+
+    public List<Entry> getEntries() {
+        List<Entry> list = new ArrayList<>();
+        entries.values().forEach(m -> list.addAll(m.values()));
+        return list;
+    }
+
+    public List<Entry> getEntries(String subdirectoryName) {
+        return new ArrayList<>(entries.getOrDefault(subdirectoryName, Map.of()).values());
+    }
+
+    public Set<String> getSubdirectories() {
+        return Set.copyOf(entries.keySet());
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public long getTotalBytes(String subdirectoryName) {
+        AtomicLong bytes = subdirectoryBytes.get(subdirectoryName);
+        return bytes == null ? 0 : bytes.get();
+    }
+
+    public int size() {
+        return entries.values().stream().mapToInt(Map::size).sum();
+    }
+
+    void putEntry(Entry entry) {
+        Entry previous =
+                entries.computeIfAbsent(entry.getSubdirectoryName(), k -> new ConcurrentHashMap<>())
+                        .put(entry.getFilename(), entry);
+        long delta = entry.getSize() - (previous == null ? 0 : previous.getSize());
+        subdirectoryBytes
+                .computeIfAbsent(entry.getSubdirectoryName(), k -> new AtomicLong())
+                .addAndGet(delta);
+        totalBytes.addAndGet(delta);
+    }
+
+    private Optional<Entry> index(
+            String subdirectoryName, String filename, RecordingSummary summary) {
+        Path path = archivedRecordingsPath.resolve(subdirectoryName).resolve(filename);
+        try {
+            if (!fs.isRegularFile(path)) {
+                return Optional.empty();
+            }
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            long archivedTime = attrs.creationTime().toMillis();
+            if (summary == null) {
+                summary = summarize(subdirectoryName, filename, path, attrs.size());
+            } else {
+                writeSummary(subdirectoryName, filename, attrs.size(), summary);
+            }
+            return Optional.of(
+                    new Entry(
+                            subdirectoryName,
+                            filename,
+                            attrs.size(),
+                            archivedTime,
+                            Math.max(archivedTime, attrs.lastAccessTime().toMillis()),
+                            summary));
+        } catch (IOException e) {
+            logger.warn("Failed to index archived recording {}: {}", path, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private RecordingSummary summarize(
+            String subdirectoryName, String filename, Path path, long size) {
+        Path summaryPath = getSummaryPath(subdirectoryName, filename);
+        try {
+            if (fs.isRegularFile(summaryPath)) {
+                PersistedSummary persisted =
+                        gson.fromJson(fs.readString(summaryPath), PersistedSummary.class);
+                if (persisted != null && persisted.size == size && persisted.summary != null) {
+                    return persisted.summary;
+                }
+            }
+        } catch (IOException | JsonParseException e) {
+            logger.warn("Failed to read recording summary {}: {}", summaryPath, e.getMessage());
+        }
+        try {
+            RecordingSummary summary = RecordingSummary.read(path);
+            writeSummary(subdirectoryName, filename, size, summary);
+            return summary;
+        } catch (IOException | CouldNotLoadRecordingException e) {
+            logger.warn("Failed to read chunk headers of {}: {}", path, e.toString());
+            return null;
+        }
+    }
+
+    private void writeSummary(
+            String subdirectoryName, String filename, long size, RecordingSummary summary) {
+        Path summaryPath = getSummaryPath(subdirectoryName, filename);
+        try {
+            fs.createDirectories(summaryPath.getParent());
+            fs.writeString(
+                    summaryPath,
+                    gson.toJson(new PersistedSummary(size, summary)),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            logger.warn("Failed to persist recording summary {}: {}", summaryPath, e.getMessage());
+        }
+    }
+
+    private void deleteSummary(String subdirectoryName, String filename) {
+        Path summaryPath = getSummaryPath(subdirectoryName, filename);
+        try {
+            fs.deleteIfExists(summaryPath);
+        } catch (IOException e) {
+            logger.warn("Failed to delete recording summary {}: {}", summaryPath, e.getMessage());
+        }
+    }
+
+    /** Remove persisted summaries of recordings which are no longer in the archive. */
+    private void pruneSummaries() throws IOException {
+        if (!fs.isDirectory(summariesPath)) {
+            return;
+        }
+        for (String subdirectoryName : fs.listDirectoryChildren(summariesPath)) {
+            Path subdirectory = summariesPath.resolve(subdirectoryName);
+            if (!fs.isDirectory(subdirectory)) {
+                continue;
+            }
+            Map<String, Entry> subdirectoryEntries =
+                    entries.getOrDefault(subdirectoryName, Map.of());
+            for (String summaryName : fs.listDirectoryChildren(subdirectory)) {
+                String filename = StringUtils.removeEnd(summaryName, SUMMARY_SUFFIX);
+                if (!subdirectoryEntries.containsKey(filename)) {
+                    fs.deleteIfExists(subdirectory.resolve(summaryName));
+                }
+            }
+        }
+    }
+
+    private Path getSummaryPath(String subdirectoryName, String filename) {
+        return summariesPath.resolve(subdirectoryName).resolve(filename + SUMMARY_SUFFIX);
+    }
+
+    private Optional<String[]> resolve(Path recordingPath) {
+        Path root = archivedRecordingsPath.toAbsolutePath().normalize();
+        Path absolute = recordingPath.toAbsolutePath().normalize();
+        if (!absolute.startsWith(root)) {
+            return Optional.empty();
+        }
+        Path relative = root.relativize(absolute);
+        if (relative.getNameCount() != 2) {
+            return Optional.empty();
+        }
+        return Optional.of(
+                new String[] {relative.getName(0).toString(), relative.getName(1).toString()});
+    }
+
+    public enum IndexEvent implements EventType {
+        ADDED,
+        REMOVED,
+        ACCESSED,
+        ;
+    }
+
+    public static class Entry {
+        private final String subdirectoryName;
+        private final String filename;
+        private final long size;
+        private final long archivedTime;
+        private volatile long lastAccessTime;
+        private final RecordingSummary summary;
+
+        Entry(
+                String subdirectoryName,
+                String filename,
+                long size,
+                long archivedTime,
+                long lastAccessTime) {
+            this(subdirectoryName, filename, size, archivedTime, lastAccessTime, null);
+        }
+
+        Entry(
+                String subdirectoryName,
+                String filename,
+                long size,
+                long archivedTime,
+                long lastAccessTime,
+                RecordingSummary summary) {
+            this.subdirectoryName = Objects.requireNonNull(subdirectoryName);
+            this.filename = Objects.requireNonNull(filename);
+            this.size = size;
+            this.archivedTime = archivedTime;
+            this.lastAccessTime = lastAccessTime;
+            this.summary = summary;
+        }
+
+        public String getSubdirectoryName() {
+            return subdirectoryName;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getArchivedTime() {
+            return archivedTime;
+        }
+
+        public long getLastAccessTime() {
+            return lastAccessTime;
+        }
+
+        /** Empty if the recording's chunk headers could not be read. */
+        public Optional<RecordingSummary> getSummary() {
+            return Optional.ofNullable(summary);
+        }
+
+        @Override
+        public String toString() {
+            return subdirectoryName + "/" + filename;
+        }
+    }
+
+    static class PersistedSummary {
+        final long size;
+        final RecordingSummary summary;
+
+        PersistedSummary(long size, RecordingSummary summary) {
+            this.size = size;
+            this.summary = summary;
+        }
+    }
+}
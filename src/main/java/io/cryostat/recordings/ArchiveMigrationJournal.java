@@ -0,0 +1,179 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import io.cryostat.core.sys.FileSystem;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checkpoint of the startup migration of the archive layout. Before the recordings of a legacy
+ * subdirectory are moved, the destination subdirectory it was resolved to is recorded, and once all
+ * of its recordings have been moved the subdirectory is marked complete. Each change is appended to
+ * the journal as one JSON record per line, so recording a change costs the same however many
+ * subdirectories have been migrated. If Cryostat stops part-way through a migration the next run
+ * replays the records, skips the subdirectories which were already completed and resumes the others
+ * into the same destinations without reconnecting to their targets. A record torn by a crash while
+ * it was being appended is ignored.
+ *
+ * <p>Once the migration has finished the journal is deleted, or, if some subdirectories could not
+ * be completed, compacted to a single record for each subdirectory.
+ */
+class ArchiveMigrationJournal {
+
+    private final Path journalPath;
+    private final FileSystem fs;
+    private final Gson gson;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    ArchiveMigrationJournal(Path journalPath, FileSystem fs, Gson gson) {
+        this.journalPath = journalPath;
+        this.fs = fs;
+        this.gson = gson;
+    }
+
+    /**
+     * Read the checkpoint left by a previous, unfinished migration, if any.
+     *
+     * @return true if a previous migration is being resumed
+     */
+    synchronized boolean load() {
+        entries.clear();
+        if (!fs.isRegularFile(journalPath)) {
+            return false;
+        }
+        try {
+            List<String> lines = fs.readString(journalPath).lines().toList();
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.isBlank()) {
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = gson.fromJson(line, Entry.class);
+                } catch (JsonParseException e) {
+                    if (i == lines.size() - 1) {
+                        logger.warn("Ignoring incomplete archive migration journal record");
+                        break;
+                    }
+                    throw e;
+                }
+                if (entry != null && entry.subdirectory != null) {
+                    entries.put(entry.subdirectory, entry);
+                }
+            }
+            return !entries.isEmpty();
+        } catch (IOException | JsonParseException e) {
+            logger.warn(
+                    "Failed to read archive migration journal {}: {}", journalPath, e.getMessage());
+            entries.clear();
+            return false;
+        }
+    }
+
+    synchronized boolean isComplete(String subdirectoryName) {
+        Entry entry = entries.get(subdirectoryName);
+        return entry != null && entry.complete;
+    }
+
+    /**
+     * @return the subdirectory which a previous run began moving this subdirectory's recordings
+     *     into
+     */
+    synchronized Optional<String> getDestination(String subdirectoryName) {
+        return Optional.ofNullable(entries.get(subdirectoryName)).map(e -> e.destination);
+    }
+
+    /**
+     * @return true if a previous run resolved some legacy subdirectory to this subdirectory, which
+     *     therefore already has the current layout
+     */
+    synchronized boolean isDestination(String subdirectoryName) {
+        return entries.values().stream().anyMatch(e -> subdirectoryName.equals(e.destination));
+    }
+
+    synchronized void begin(String subdirectoryName, String destination) throws IOException {
+        append(new Entry(subdirectoryName, destination, false));
+    }
+
+    synchronized void complete(String subdirectoryName) throws IOException {
+        Entry entry = entries.get(subdirectoryName);
+        append(new Entry(subdirectoryName, entry == null ? null : entry.destination, true));
+    }
+
+    synchronized void finish() throws IOException {
+        if (entries.values().stream().allMatch(e -> e.complete)) {
+            entries.clear();
+            fs.deleteIfExists(journalPath);
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : entries.values()) {
+            sb.append(gson.toJson(entry)).append('\n');
+        }
+        Path tmp = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        fs.writeString(
+                tmp,
+                sb.toString(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        Files.move(
+                tmp,
+                journalPath,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void append(Entry entry) throws IOException {
+        fs.createDirectories(journalPath.getParent());
+        fs.writeString(
+                journalPath,
+                gson.toJson(entry) + "\n",
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND,
+                StandardOpenOption.WRITE);
+        entries.put(entry.subdirectory, entry);
+    }
+
+    static class Entry {
+        final String subdirectory;
+        final String destination;
+        final boolean complete;
+
+        Entry(String subdirectory, String destination, boolean complete) {
+            this.subdirectory = subdirectory;
+            this.destination = destination;
+            this.complete = complete;
+        }
+    }
+}
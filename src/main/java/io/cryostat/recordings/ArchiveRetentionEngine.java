@@ -0,0 +1,320 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import io.cryostat.core.sys.Clock;
+import io.cryostat.messaging.notifications.NotificationFactory;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.util.events.Event;
+import io.cryostat.util.events.EventListener;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.vertx.core.AbstractVerticle;
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Enforces archive-wide retention limits: a global byte quota, a per-JVM (per archive subdirectory)
+ * byte quota, and a maximum recording age. Enforcement reads sizes and timestamps from the {@link
+ * ArchiveIndex} rather than the filesystem, runs periodically, and is also triggered whenever a
+ * newly indexed recording pushes the archive over a quota. Recordings labelled with {@link
+ * #PINNED_LABEL}{@code =true} are never evicted.
+ */
+public class ArchiveRetentionEngine extends AbstractVerticle
+        implements EventListener<ArchiveIndex.IndexEvent, ArchiveIndex.Entry> {
+
+    public static final String PINNED_LABEL = "cryostat.io/pinned";
+    static final String NOTIFICATION_CATEGORY = "ArchivedRecordingsEvicted";
+
+    private final ArchiveIndex archiveIndex;
+    private final RecordingArchiveHelper recordingArchiveHelper;
+    private final RecordingMetadataManager recordingMetadataManager;
+    private final JvmIdHelper jvmIdHelper;
+    private final NotificationFactory notificationFactory;
+    private final ExecutorService executor;
+    private final Clock clock;
+    private final long maxBytes;
+    private final long maxBytesPerJvm;
+    private final Duration maxAge;
+    private final EvictionPolicy evictionPolicy;
+    private final Duration period;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private long timerId = -1;
+
+    ArchiveRetentionEngine(
+            ArchiveIndex archiveIndex,
+            RecordingArchiveHelper recordingArchiveHelper,
+            RecordingMetadataManager recordingMetadataManager,
+            JvmIdHelper jvmIdHelper,
+            NotificationFactory notificationFactory,
+            ExecutorService executor,
+            Clock clock,
+            long maxBytes,
+            long maxBytesPerJvm,
+            Duration maxAge,
+            EvictionPolicy evictionPolicy,
+            Duration period) {
+        this.archiveIndex = archiveIndex;
+        this.recordingArchiveHelper = recordingArchiveHelper;
+        this.recordingMetadataManager = recordingMetadataManager;
+        this.jvmIdHelper = jvmIdHelper;
+        this.notificationFactory = notificationFactory;
+        this.executor = executor;
+        this.clock = clock;
+        this.maxBytes = maxBytes;
+        this.maxBytesPerJvm = maxBytesPerJvm;
+        this.maxAge = maxAge;
+        this.evictionPolicy = evictionPolicy;
+        this.period = period;
+    }
+
+    @Override
+    public void start() {
+        if (!isEnabled()) {
+            logger.info("Archive retention limits not configured");
+            return;
+        }
+        logger.info(
+                "Archive retention: maxBytes={} maxBytesPerJvm={} maxAge={} policy={}",
+                maxBytes,
+                maxBytesPerJvm,
+                maxAge,
+                evictionPolicy);
+        archiveIndex.addListener(this);
+        timerId = getVertx().setPeriodic(period.toMillis(), id -> scheduleEnforcement());
+    }
+
+    @Override
+    public void stop() {
+        if (timerId >= 0) {
+            getVertx().cancelTimer(timerId);
+            timerId = -1;
+        }
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void onEvent(Event<ArchiveIndex.IndexEvent, ArchiveIndex.Entry> event) {
+        if (event.getEventType() != ArchiveIndex.IndexEvent.ADDED) {
+            return;
+        }
+        if (isOverQuota(event.getPayload().getSubdirectoryName())) {
+            scheduleEnforcement();
+        }
+    }
+
+    boolean isEnabled() {
+        return maxBytes > 0 || maxBytesPerJvm > 0 || !maxAge.isZero();
+    }
+
+    boolean isOverQuota(String subdirectoryName) {
+        return (maxBytes > 0 && archiveIndex.getTotalBytes() > maxBytes)
+                || (maxBytesPerJvm > 0
+                        && archiveIndex.getTotalBytes(subdirectoryName) > maxBytesPerJvm);
+    }
+
+    void scheduleEnforcement() {
+        if (!pending.compareAndSet(false, true)) {
+            return;
+        }
+        executor.submit(
+                () -> {
+                    pending.set(false);
+                    try {
+                        enforce();
+                    } catch (Exception e) {
+                        logger.error("Archive retention enforcement failed", e);
+                    }
+                });
+    }
+
+    synchronized List<ArchiveIndex.Entry> enforce() {
+        ArchiveRetentionEnforced evt = new ArchiveRetentionEnforced();
+        evt.begin();
+        Map<ArchiveIndex.Entry, Boolean> pinned = new HashMap<>();
+        List<ArchiveIndex.Entry> evicted = new ArrayList<>();
+
+        if (!maxAge.isZero()) {
+            long cutoff = clock.now().toEpochMilli() - maxAge.toMillis();
+            archiveIndex.getEntries().stream()
+                    .filter(e -> e.getArchivedTime() < cutoff)
+                    .sorted(Comparator.comparingLong(ArchiveIndex.Entry::getArchivedTime))
+                    .filter(e -> !isPinned(pinned, e))
+                    .forEach(e -> evict(e, evicted));
+        }
+        if (maxBytesPerJvm > 0) {
+            for (String subdirectoryName : archiveIndex.getSubdirectories()) {
+                evictUntilWithin(
+                        archiveIndex.getEntries(subdirectoryName),
+                        () -> archiveIndex.getTotalBytes(subdirectoryName),
+                        maxBytesPerJvm,
+                        pinned,
+                        evicted);
+            }
+        }
+        if (maxBytes > 0) {
+            evictUntilWithin(
+                    archiveIndex.getEntries(),
+                    archiveIndex::getTotalBytes,
+                    maxBytes,
+                    pinned,
+                    evicted);
+        }
+
+        long bytesFreed = evicted.stream().mapToLong(ArchiveIndex.Entry::getSize).sum();
+        evt.setRecordingsEvicted(evicted.size());
+        evt.setBytesFreed(bytesFreed);
+        evt.setArchiveBytes(archiveIndex.getTotalBytes());
+        evt.end();
+        if (evt.shouldCommit()) {
+            evt.commit();
+        }
+
+        if (!evicted.isEmpty()) {
+            logger.info(
+                    "Archive retention evicted {} recordings ({} bytes)",
+                    evicted.size(),
+                    bytesFreed);
+            notificationFactory
+                    .createBuilder()
+                    .metaCategory(NOTIFICATION_CATEGORY)
+                    .metaType(HttpMimeType.JSON)
+                    .message(
+                            Map.of(
+                                    "recordings",
+                                    evicted.stream().map(ArchiveIndex.Entry::toString).toList(),
+                                    "bytesFreed",
+                                    bytesFreed))
+                    .build()
+                    .send();
+        }
+        return evicted;
+    }
+
+    private void evictUntilWithin(
+            List<ArchiveIndex.Entry> candidates,
+            LongSupplier currentBytes,
+            long limit,
+            Map<ArchiveIndex.Entry, Boolean> pinned,
+            List<ArchiveIndex.Entry> evicted) {
+        // only pay for sorting once a quota has actually been exceeded
+        if (currentBytes.getAsLong() <= limit) {
+            return;
+        }
+        candidates.sort(evictionPolicy.comparator);
+        for (ArchiveIndex.Entry entry : candidates) {
+            if (currentBytes.getAsLong() <= limit) {
+                return;
+            }
+            if (isPinned(pinned, entry)) {
+                continue;
+            }
+            evict(entry, evicted);
+        }
+        if (currentBytes.getAsLong() > limit) {
+            logger.warn(
+                    "Archive retention could not satisfy quota of {} bytes, {} bytes remain",
+                    limit,
+                    currentBytes.getAsLong());
+        }
+    }
+
+    private void evict(ArchiveIndex.Entry entry, List<ArchiveIndex.Entry> evicted) {
+        try {
+            recordingArchiveHelper
+                    .deleteRecordingFromPath(entry.getSubdirectoryName(), entry.getFilename())
+                    .get();
+            // the delete normally updates the index itself, but make sure the entry does not
+            // continue counting against the quota if the file was already gone
+            archiveIndex.remove(entry.getSubdirectoryName(), entry.getFilename());
+            evicted.add(entry);
+        } catch (InterruptedException | ExecutionException e) {
+            logger.warn("Archive retention failed to delete {}: {}", entry, e.getMessage());
+        }
+    }
+
+    private boolean isPinned(Map<ArchiveIndex.Entry, Boolean> cache, ArchiveIndex.Entry entry) {
+        return cache.computeIfAbsent(
+                entry,
+                e -> {
+                    try {
+                        String jvmId = jvmIdHelper.subdirectoryNameToJvmId(e.getSubdirectoryName());
+                        return recordingMetadataManager
+                                .findMetadata(jvmId, e.getFilename())
+                                .map(m -> Boolean.parseBoolean(m.getLabels().get(PINNED_LABEL)))
+                                .orElse(false);
+                    } catch (IOException ioe) {
+                        logger.warn("Could not read metadata for {}, treating as pinned", e);
+                        return true;
+                    }
+                });
+    }
+
+    public enum EvictionPolicy {
+        OLDEST(Comparator.comparingLong(ArchiveIndex.Entry::getArchivedTime)),
+        LEAST_RECENTLY_DOWNLOADED(
+                Comparator.comparingLong(ArchiveIndex.Entry::getLastAccessTime)
+                        .thenComparingLong(ArchiveIndex.Entry::getArchivedTime)),
+        ;
+
+        private final Comparator<ArchiveIndex.Entry> comparator;
+
+        EvictionPolicy(Comparator<ArchiveIndex.Entry> comparator) {
+            this.comparator = comparator;
+        }
+    }
+
+    @Name("io.cryostat.recordings.ArchiveRetentionEngine.ArchiveRetentionEnforced")
+    @Label("Archive Retention Enforcement")
+    @Category("Cryostat")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class ArchiveRetentionEnforced extends jdk.jfr.Event {
+        int recordingsEvicted;
+        long bytesFreed;
+        long archiveBytes;
+
+        void setRecordingsEvicted(int recordingsEvicted) {
+            this.recordingsEvicted = recordingsEvicted;
+        }
+
+        void setBytesFreed(long bytesFreed) {
+            this.bytesFreed = bytesFreed;
+        }
+
+        void setArchiveBytes(long archiveBytes) {
+            this.archiveBytes = archiveBytes;
+        }
+    }
+}
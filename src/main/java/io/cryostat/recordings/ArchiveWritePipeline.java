@@ -0,0 +1,407 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import io.cryostat.messaging.notifications.NotificationFactory;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves recording data from a blocking source stream (ie. a target's JFR stream) into a Vert.x
+ * {@link AsyncFile} in bounded chunks. The reader side blocks only its own worker thread, and
+ * stalls whenever the file's write queue is full, so at most {@code maxBytesInFlight} bytes are
+ * ever buffered per transfer. Callers receive a {@link Transfer} handle which may be used to await
+ * or cancel the write.
+ */
+public class ArchiveWritePipeline {
+
+    static final String STARTED_NOTIFICATION_CATEGORY = "ArchiveWriteStarted";
+    static final String PROGRESS_NOTIFICATION_CATEGORY = "ArchiveWriteProgress";
+    static final long DRAIN_TIMEOUT_SECONDS = 30;
+
+    private final Vertx vertx;
+    private final ExecutorService executor;
+    private final NotificationFactory notificationFactory;
+    private final int chunkSize;
+    private final int maxBytesInFlight;
+    private final long progressIntervalBytes;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+    // entries exist only while a target has transfers running, see acquireInFlight
+    private final Map<String, TargetInFlight> bytesInFlight = new ConcurrentHashMap<>();
+
+    ArchiveWritePipeline(
+            Vertx vertx,
+            ExecutorService executor,
+            NotificationFactory notificationFactory,
+            int chunkSize,
+            int maxBytesInFlight,
+            long progressIntervalBytes) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        if (maxBytesInFlight < chunkSize) {
+            throw new IllegalArgumentException(
+                    "Maximum bytes in flight must be at least one chunk");
+        }
+        this.vertx = vertx;
+        this.executor = executor;
+        this.notificationFactory = notificationFactory;
+        this.chunkSize = chunkSize;
+        this.maxBytesInFlight = maxBytesInFlight;
+        this.progressIntervalBytes = progressIntervalBytes;
+        FlightRecorder.addPeriodicEvent(ArchiveBytesInFlight.class, this::emitBytesInFlight);
+    }
+
+    /**
+     * Begin asynchronously writing the source stream to the destination path. The source stream is
+     * always closed once the transfer completes, fails, or is cancelled. Partially written
+     * destination files are removed if the transfer does not complete successfully.
+     *
+     * @param targetId the connectUrl of the target the data originates from, used for progress
+     *     notifications and per-target metrics
+     * @param recordingName the name of the recording being written
+     * @param source the stream of recording data
+     * @param destination the final file location
+     * @param sourceAlive checked before each chunk to determine if the source is still usable, ie.
+     *     that the target connection has not been closed
+     */
+    public Transfer write(
+            String targetId,
+            String recordingName,
+            InputStream source,
+            Path destination,
+            BooleanSupplier sourceAlive) {
+        Transfer transfer =
+                new Transfer(UUID.randomUUID().toString(), targetId, recordingName, destination);
+        transfers.put(transfer.getId(), transfer);
+        transfer.future.whenComplete((n, t) -> transfers.remove(transfer.getId()));
+        try {
+            executor.submit(() -> pump(transfer, source, sourceAlive));
+        } catch (RuntimeException e) {
+            closeQuietly(source);
+            transfer.future.completeExceptionally(e);
+        }
+        return transfer;
+    }
+
+    public boolean cancel(String transferId) {
+        Transfer transfer = transfers.get(transferId);
+        if (transfer == null) {
+            return false;
+        }
+        return transfer.cancel();
+    }
+
+    public long getBytesInFlight(String targetId) {
+        TargetInFlight inFlight = bytesInFlight.get(targetId);
+        return inFlight == null ? 0 : inFlight.bytes.get();
+    }
+
+    private AtomicLong acquireInFlight(String targetId) {
+        return bytesInFlight.compute(
+                        targetId,
+                        (k, v) -> {
+                            TargetInFlight inFlight = v == null ? new TargetInFlight() : v;
+                            inFlight.transfers++;
+                            return inFlight;
+                        })
+                .bytes;
+    }
+
+    private void releaseInFlight(String targetId) {
+        bytesInFlight.computeIfPresent(targetId, (k, v) -> --v.transfers == 0 ? null : v);
+    }
+
+    private void pump(Transfer transfer, InputStream source, BooleanSupplier sourceAlive) {
+        ArchiveWriteCompleted evt =
+                new ArchiveWriteCompleted(transfer.getTargetId(), transfer.getRecordingName());
+        evt.begin();
+        AtomicLong targetInFlight = acquireInFlight(transfer.getTargetId());
+        AtomicReference<Throwable> writeFailure = new AtomicReference<>();
+        AsyncFile file = null;
+        boolean created = false;
+        long lastProgress = 0;
+        try (source) {
+            file =
+                    vertx.fileSystem()
+                            .openBlocking(
+                                    transfer.getDestination().toString(),
+                                    new OpenOptions()
+                                            .setCreateNew(true)
+                                            .setWrite(true)
+                                            .setRead(false));
+            created = true;
+            notify(transfer, STARTED_NOTIFICATION_CATEGORY);
+            file.setWriteQueueMaxSize(maxBytesInFlight);
+            file.exceptionHandler(t -> writeFailure.compareAndSet(null, t));
+
+            byte[] buf = new byte[chunkSize];
+            int n;
+            while ((n = source.read(buf)) != -1) {
+                if (transfer.cancelled) {
+                    throw new CancellationException();
+                }
+                if (writeFailure.get() != null) {
+                    throw new IOException(writeFailure.get());
+                }
+                if (!sourceAlive.getAsBoolean()) {
+                    throw new IOException(
+                            "Target connection unexpectedly closed while archiving recording");
+                }
+                if (n == 0) {
+                    continue;
+                }
+                awaitDrain(file);
+                int len = n;
+                targetInFlight.addAndGet(len);
+                file.write(Buffer.buffer(Arrays.copyOf(buf, len)))
+                        .onComplete(
+                                ar -> {
+                                    targetInFlight.addAndGet(-len);
+                                    if (ar.failed()) {
+                                        writeFailure.compareAndSet(null, ar.cause());
+                                    }
+                                });
+                long total = transfer.bytesWritten.addAndGet(len);
+                if (progressIntervalBytes > 0 && total - lastProgress >= progressIntervalBytes) {
+                    lastProgress = total;
+                    notify(transfer, PROGRESS_NOTIFICATION_CATEGORY);
+                }
+            }
+            if (transfer.cancelled) {
+                throw new CancellationException();
+            }
+            file.close().toCompletionStage().toCompletableFuture().get();
+            file = null;
+            if (writeFailure.get() != null) {
+                throw new IOException(writeFailure.get());
+            }
+            evt.setBytes(transfer.getBytesWritten());
+            transfer.future.complete(transfer.getBytesWritten());
+        } catch (Throwable t) {
+            evt.setExceptionThrown(true);
+            if (file != null) {
+                file.close();
+            }
+            if (created) {
+                deleteQuietly(transfer.getDestination());
+            }
+            if (t instanceof CancellationException) {
+                logger.info(
+                        "Archive transfer {} of {} cancelled",
+                        transfer.getId(),
+                        transfer.getRecordingName());
+            } else {
+                logger.error("Archive transfer {} failed", transfer.getId(), t);
+            }
+            transfer.future.completeExceptionally(t);
+        } finally {
+            releaseInFlight(transfer.getTargetId());
+            evt.end();
+            if (evt.shouldCommit()) {
+                evt.commit();
+            }
+        }
+    }
+
+    private void awaitDrain(AsyncFile file) throws Exception {
+        if (!file.writeQueueFull()) {
+            return;
+        }
+        CompletableFuture<Void> drained = new CompletableFuture<>();
+        file.drainHandler(v -> drained.complete(null));
+        // the queue may have drained before the handler was installed
+        if (!file.writeQueueFull()) {
+            drained.complete(null);
+        }
+        drained.get(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void notify(Transfer transfer, String category) {
+        try {
+            notificationFactory
+                    .createOwnedResourceBuilder(transfer.getTargetId(), category)
+                    .messageEntry("transferId", transfer.getId())
+                    .messageEntry("recording", transfer.getRecordingName())
+                    .messageEntry("bytesWritten", transfer.getBytesWritten())
+                    .build()
+                    .send();
+        } catch (Exception e) {
+            logger.warn("Failed to send {} notification", category, e);
+        }
+    }
+
+    private void emitBytesInFlight() {
+        bytesInFlight.forEach(
+                (targetId, inFlight) -> {
+                    ArchiveBytesInFlight evt =
+                            new ArchiveBytesInFlight(targetId, inFlight.bytes.get());
+                    evt.commit();
+                });
+    }
+
+    private void closeQuietly(InputStream source) {
+        try {
+            source.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close archive source stream", e);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Failed to remove partial archive {}", path, e);
+        }
+    }
+
+    // the transfer count is only modified within the map's atomic compute operations
+    private static class TargetInFlight {
+        private final AtomicLong bytes = new AtomicLong();
+        private int transfers;
+    }
+
+    public static class Transfer {
+        private final String id;
+        private final String targetId;
+        private final String recordingName;
+        private final Path destination;
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+        private volatile boolean cancelled;
+
+        Transfer(String id, String targetId, String recordingName, Path destination) {
+            this.id = Objects.requireNonNull(id);
+            this.targetId = Objects.requireNonNull(targetId);
+            this.recordingName = Objects.requireNonNull(recordingName);
+            this.destination = Objects.requireNonNull(destination);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getTargetId() {
+            return targetId;
+        }
+
+        public String getRecordingName() {
+            return recordingName;
+        }
+
+        public Path getDestination() {
+            return destination;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten.get();
+        }
+
+        /**
+         * @return a future completing with the total number of bytes written once the destination
+         *     file has been closed
+         */
+        @SuppressFBWarnings(
+                value = "EI_EXPOSE_REP",
+                justification = "Callers compose on the completion of the transfer")
+        public CompletableFuture<Long> getFuture() {
+            return future;
+        }
+
+        public boolean cancel() {
+            if (future.isDone()) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+    }
+
+    @Name("io.cryostat.recordings.ArchiveWritePipeline.ArchiveWriteCompleted")
+    @Label("Archive Write")
+    @Category("Cryostat")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class ArchiveWriteCompleted extends Event {
+        String targetId;
+        String recordingName;
+        long bytes;
+        boolean exceptionThrown;
+
+        ArchiveWriteCompleted(String targetId, String recordingName) {
+            this.targetId = targetId;
+            this.recordingName = recordingName;
+        }
+
+        void setBytes(long bytes) {
+            this.bytes = bytes;
+        }
+
+        void setExceptionThrown(boolean exceptionThrown) {
+            this.exceptionThrown = exceptionThrown;
+        }
+    }
+
+    @Name("io.cryostat.recordings.ArchiveWritePipeline.ArchiveBytesInFlight")
+    @Label("Archive Bytes In Flight")
+    @Category("Cryostat")
+    @Period("1 s")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class ArchiveBytesInFlight extends Event {
+        String targetId;
+        long bytesInFlight;
+
+        ArchiveBytesInFlight(String targetId, long bytesInFlight) {
+            this.targetId = targetId;
+            this.bytesInFlight = bytesInFlight;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
+import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
+
+import jdk.jfr.EventType;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Incremental parser for the chunk and record headers of a JFR recording. Bytes are pushed in as
+ * they are read or received, so that a recording can be validated and summarized in the same pass
+ * that writes it to disk, and a malformed recording is rejected as soon as the offending bytes
+ * arrive. Event payloads are skipped without being decoded.
+ */
+class JfrChunkParser {
+
+    static final byte[] MAGIC = {'F', 'L', 'R', 0};
+    static final int HEADER_SIZE = 68;
+    private static final int FEATURE_COMPRESSED_INTS = 1;
+    private static final long METADATA_TYPE_ID = 0;
+    private static final long CONSTANT_POOL_TYPE_ID = 1;
+
+    private enum State {
+        CHUNK_HEADER,
+        RECORD_SIZE,
+        RECORD_TYPE,
+        RECORD_BODY,
+    }
+
+    private final ByteBuffer header;
+    private final Set<Long> typeIds;
+    private State state = State.CHUNK_HEADER;
+    private long startNanos = Long.MAX_VALUE;
+    private long endNanos = Long.MIN_VALUE;
+    private int chunkCount;
+    private long bytesParsed;
+
+    private boolean compressed;
+    private long chunkRemaining;
+    private long recordSize;
+    private long recordHeaderBytes;
+    private long recordRemaining;
+    private long value;
+    private int valueBytes;
+
+    JfrChunkParser() {
+        this.header = ByteBuffer.allocate(HEADER_SIZE);
+        this.typeIds = new HashSet<>();
+    }
+
+    /** Copy the state of another parser, so that parsing can be rolled back to this point. */
+    JfrChunkParser(JfrChunkParser other) {
+        this.header = ByteBuffer.allocate(HEADER_SIZE);
+        this.header.put(other.header.duplicate().flip());
+        this.typeIds = new HashSet<>(other.typeIds);
+        this.state = other.state;
+        this.startNanos = other.startNanos;
+        this.endNanos = other.endNanos;
+        this.chunkCount = other.chunkCount;
+        this.bytesParsed = other.bytesParsed;
+        this.compressed = other.compressed;
+        this.chunkRemaining = other.chunkRemaining;
+        this.recordSize = other.recordSize;
+        this.recordHeaderBytes = other.recordHeaderBytes;
+        this.recordRemaining = other.recordRemaining;
+        this.value = other.value;
+        this.valueBytes = other.valueBytes;
+    }
+
+    void update(byte[] b, int off, int len) throws InvalidJfrFileException {
+        int end = off + len;
+        int pos = off;
+        while (pos < end) {
+            switch (state) {
+                case CHUNK_HEADER:
+                    int n = Math.min(header.remaining(), end - pos);
+                    header.put(b, pos, n);
+                    pos += n;
+                    if (header.position() >= MAGIC.length && header.position() - n < MAGIC.length) {
+                        checkMagic();
+                    }
+                    if (!header.hasRemaining()) {
+                        beginChunk();
+                    }
+                    break;
+                case RECORD_SIZE:
+                case RECORD_TYPE:
+                    if (readValue(b[pos++])) {
+                        endRecordHeaderField();
+                    }
+                    break;
+                case RECORD_BODY:
+                    int skip = (int) Math.min(recordRemaining, end - pos);
+                    pos += skip;
+                    recordRemaining -= skip;
+                    if (recordRemaining == 0) {
+                        endRecord();
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException(state.name());
+            }
+        }
+        bytesParsed += len;
+    }
+
+    /**
+     * @throws InvalidJfrFileException if the bytes so far do not end on a chunk boundary or do not
+     *     contain any chunks
+     */
+    void checkComplete() throws InvalidJfrFileException {
+        if (state != State.CHUNK_HEADER || header.position() != 0 || chunkCount < 1) {
+            throw new InvalidJfrFileException();
+        }
+    }
+
+    long getBytesParsed() {
+        return bytesParsed;
+    }
+
+    int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Complete the summary of a fully parsed recording, mapping the event type IDs seen in its
+     * records to names using the metadata of the recording file that the parsed bytes were written
+     * to.
+     */
+    RecordingSummary summarize(Path recording) throws IOException, CouldNotLoadRecordingException {
+        checkComplete();
+        Set<String> eventTypes = new HashSet<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            for (EventType type : file.readEventTypes()) {
+                if (typeIds.contains(type.getId())) {
+                    eventTypes.add(type.getName());
+                }
+            }
+        } catch (IOException e) {
+            throw new InvalidJfrFileException(e);
+        }
+        return new RecordingSummary(
+                TimeUnit.NANOSECONDS.toMillis(startNanos),
+                TimeUnit.NANOSECONDS.toMillis(endNanos),
+                chunkCount,
+                eventTypes);
+    }
+
+    private void checkMagic() throws InvalidJfrFileException {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i]) {
+                throw new InvalidJfrFileException();
+            }
+        }
+    }
+
+    private void beginChunk() throws InvalidJfrFileException {
+        header.flip();
+        header.position(MAGIC.length);
+        short major = header.getShort();
+        header.getShort(); // minor
+        long chunkSize = header.getLong();
+        header.getLong(); // constant pool offset
+        header.getLong(); // metadata offset
+        long chunkStartNanos = header.getLong();
+        long chunkDurationNanos = header.getLong();
+        header.getLong(); // start ticks
+        header.getLong(); // ticks per second
+        int features = header.getInt();
+        header.clear();
+        if ((major != 1 && major != 2) || chunkSize < HEADER_SIZE || chunkDurationNanos < 0) {
+            throw new InvalidJfrFileException();
+        }
+        compressed = major < 2 || (features & FEATURE_COMPRESSED_INTS) != 0;
+        startNanos = Math.min(startNanos, chunkStartNanos);
+        endNanos = Math.max(endNanos, chunkStartNanos + chunkDurationNanos);
+        chunkRemaining = chunkSize - HEADER_SIZE;
+        if (chunkRemaining == 0) {
+            chunkCount++;
+        } else {
+            beginRecord();
+        }
+    }
+
+    private void beginRecord() {
+        state = State.RECORD_SIZE;
+        recordHeaderBytes = 0;
+        value = 0;
+        valueBytes = 0;
+    }
+
+    /**
+     * Accumulate one byte of a record header field. Chunks written with compressed integers encode
+     * the record size and type ID as LEB128 varints, otherwise as a fixed-width big-endian int and
+     * long respectively.
+     *
+     * @return true if the field is complete
+     */
+    private boolean readValue(byte b) {
+        recordHeaderBytes++;
+        if (!compressed) {
+            value = (value << 8) | (b & 0xFF);
+            valueBytes++;
+            return valueBytes == (state == State.RECORD_SIZE ? Integer.BYTES : Long.BYTES);
+        }
+        if (valueBytes == 8) {
+            // the ninth byte contributes all eight of its bits
+            value |= (long) (b & 0xFF) << 56;
+            return true;
+        }
+        value |= (long) (b & 0x7F) << (7 * valueBytes);
+        valueBytes++;
+        return (b & 0x80) == 0;
+    }
+
+    private void endRecordHeaderField() throws InvalidJfrFileException {
+        long field = compressed ? value : (state == State.RECORD_SIZE ? (int) value : value);
+        value = 0;
+        valueBytes = 0;
+        if (state == State.RECORD_SIZE) {
+            recordSize = field;
+            state = State.RECORD_TYPE;
+            return;
+        }
+        if (recordSize <= recordHeaderBytes || recordSize > chunkRemaining) {
+            throw new InvalidJfrFileException();
+        }
+        if (field != METADATA_TYPE_ID && field != CONSTANT_POOL_TYPE_ID) {
+            typeIds.add(field);
+        }
+        recordRemaining = recordSize - recordHeaderBytes;
+        state = State.RECORD_BODY;
+    }
+
+    private void endRecord() {
+        chunkRemaining -= recordSize;
+        if (chunkRemaining > 0) {
+            beginRecord();
+            return;
+        }
+        chunkCount++;
+        state = State.CHUNK_HEADER;
+    }
+}
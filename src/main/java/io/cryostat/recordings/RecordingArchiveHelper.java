@@ -17,7 +17,6 @@ package io.cryostat.recordings;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
@@ -25,21 +24,28 @@ import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.CancellationException;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -50,8 +56,6 @@ import javax.inject.Named;
 import javax.inject.Provider;
 
 import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
-import org.openjdk.jmc.flightrecorder.internal.FlightRecordingLoader;
-import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
 import org.openjdk.jmc.rjmx.services.jfr.IRecordingDescriptor;
 
 import io.cryostat.MainModule;
@@ -76,6 +80,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.file.OpenOptions;
 import io.vertx.ext.web.FileUpload;
 import org.apache.commons.codec.binary.Base32;
 import org.apache.commons.io.FileUtils;
@@ -96,10 +101,18 @@ public class RecordingArchiveHelper {
     private final NotificationFactory notificationFactory;
     private final JvmIdHelper jvmIdHelper;
     private final Vertx vertx;
+    private final ArchiveWritePipeline archiveWritePipeline;
+    private final ArchiveIndex archiveIndex;
+    private final Map<String, RecordingSummary> validatedUploads = new ConcurrentHashMap<>();
     private final Base32 base32;
+    private final ArchiveMigrationJournal migrationJournal;
+    private final int migrationParallelism;
+    // legacy subdirectory name -> connectUrl, for subdirectories not yet migrated
+    private final Map<String, String> legacySubdirectories = new ConcurrentHashMap<>();
 
     private static final String SAVE_NOTIFICATION_CATEGORY = "ActiveRecordingSaved";
     private static final String DELETE_NOTIFICATION_CATEGORY = "ArchivedRecordingDeleted";
+    private static final String UPLOAD_NOTIFICATION_CATEGORY = "ArchivedRecordingCreated";
     private static final long FS_TIMEOUT_SECONDS = 1;
 
     public static final String RECORDING_NAME_ERR_MSG =
@@ -132,7 +145,11 @@ public class RecordingArchiveHelper {
             NotificationFactory notificationFactory,
             JvmIdHelper jvmIdHelper,
             Vertx vertx,
-            Base32 base32) {
+            ArchiveWritePipeline archiveWritePipeline,
+            ArchiveIndex archiveIndex,
+            Base32 base32,
+            ArchiveMigrationJournal migrationJournal,
+            int migrationParallelism) {
         this.fs = fs;
         this.webServerProvider = webServerProvider;
         this.archivedRecordingsPath = archivedRecordingsPath;
@@ -144,121 +161,160 @@ public class RecordingArchiveHelper {
         this.notificationFactory = notificationFactory;
         this.jvmIdHelper = jvmIdHelper;
         this.vertx = vertx;
+        this.archiveWritePipeline = archiveWritePipeline;
+        this.archiveIndex = archiveIndex;
         this.base32 = base32;
+        this.migrationJournal = migrationJournal;
+        this.migrationParallelism = migrationParallelism;
     }
 
-    // startup migration for archived recordings
-    protected void migrate(ExecutorService executor) throws Exception {
-        List<String> subdirectories = fs.listDirectoryChildren(archivedRecordingsPath);
-        List<Future<Void>> futures = new ArrayList<>(subdirectories.size());
-        for (String subdirectoryName : subdirectories) {
-            Future<Void> future =
-                    executor.submit(
-                            () -> {
-                                Path subdirectoryPath = null;
-                                try {
-                                    if (jvmIdHelper.isSpecialDirectory(subdirectoryName)) {
-                                        logger.info(
-                                                "Skipping archive migration: appears to be a"
-                                                        + " special location: {}",
-                                                subdirectoryName);
-                                        return null;
-                                    }
-                                    logger.info(
-                                            "Found archived recordings subdirectory: {}",
-                                            subdirectoryName);
-
-                                    subdirectoryPath =
-                                            archivedRecordingsPath.resolve(subdirectoryName);
-                                    String connectUrl;
-                                    try {
-                                        connectUrl = getConnectUrlFromPath(subdirectoryPath).get();
-                                        logger.info("Found connectUrl: {}", connectUrl);
-                                    } catch (InterruptedException | ExecutionException e) {
-                                        // try to migrate the recording to the new structure
-                                        connectUrl =
-                                                new String(
-                                                        base32.decode(subdirectoryName),
-                                                        StandardCharsets.UTF_8);
-                                    }
-                                    String jvmId = jvmIdHelper.getJvmId(connectUrl);
-                                    Path encodedJvmIdPath = getRecordingSubdirectoryPath(jvmId);
-                                    if (Objects.equals(subdirectoryPath, encodedJvmIdPath)) {
-                                        logger.info(
-                                                "Skipping {} - no change in ID", subdirectoryPath);
-                                        return null;
-                                    }
-                                    logger.info(
-                                            "Migrating recordings from {} to {}",
-                                            subdirectoryPath,
-                                            encodedJvmIdPath);
-                                    if (!fs.exists(encodedJvmIdPath)) {
-                                        fs.createDirectory(encodedJvmIdPath);
-                                        fs.writeString(
-                                                encodedJvmIdPath.resolve(CONNECT_URL),
-                                                connectUrl,
-                                                StandardOpenOption.CREATE);
-                                    }
-                                    fs.deleteIfExists(subdirectoryPath.resolve(CONNECT_URL));
-                                    for (String file : fs.listDirectoryChildren(subdirectoryPath)) {
-                                        Path oldLocation = subdirectoryPath.resolve(file);
-                                        Path newLocation = encodedJvmIdPath.resolve(file);
-                                        logger.info("{} -> {}", oldLocation, newLocation);
-                                        Files.move(oldLocation, newLocation);
-                                    }
-                                    FileUtils.deleteQuietly(subdirectoryPath.toFile());
-                                } catch (JvmIdGetException e) {
-                                    logger.warn(
-                                            "Failed to migrate archived recordings for {} - no"
-                                                    + " connection to {}",
-                                            subdirectoryName,
-                                            e.getTarget());
-                                    Path lostPath =
-                                            archivedRecordingsPath.resolve(
-                                                    LOST_RECORDINGS_SUBDIRECTORY);
-                                    if (!fs.exists(lostPath)) {
-                                        fs.createDirectory(lostPath);
-                                    }
-                                    for (String file : fs.listDirectoryChildren(subdirectoryPath)) {
-                                        if (file.equals(CONNECT_URL)) {
-                                            continue;
-                                        }
-                                        Path oldLocation = subdirectoryPath.resolve(file);
-                                        Path newLocation = lostPath.resolve(file);
-                                        logger.info(
-                                                "Moving lost recordings: {} -> {}",
-                                                oldLocation,
-                                                newLocation);
-                                        Files.move(oldLocation, newLocation);
-                                        String jvmId =
-                                                jvmIdHelper.subdirectoryNameToJvmId(
-                                                        subdirectoryName);
-                                        Metadata m =
-                                                recordingMetadataManager
-                                                        .deleteRecordingMetadataIfExists(
-                                                                jvmId, file);
-                                        if (m != null) {
-                                            recordingMetadataManager.setRecordingMetadataFromPath(
-                                                    LOST_RECORDINGS_SUBDIRECTORY, file, m);
-                                        } else {
-                                            logger.warn(
-                                                    "No metadata found for lost recording {}",
-                                                    oldLocation);
-                                        }
-                                    }
-                                    FileUtils.deleteQuietly(subdirectoryPath.toFile());
-                                } catch (IOException e) {
-                                    logger.warn("IO exception", e);
-                                } catch (CancellationException e) {
-                                    logger.error("Task cancellation exception", e);
-                                }
-                                return null;
-                            });
-            futures.add(future);
+    /**
+     * Startup migration of archived recordings from subdirectories named after target connection
+     * URLs into subdirectories named after target JVM IDs. Subdirectories are migrated concurrently
+     * by a bounded pool of threads and progress is checkpointed in the {@link
+     * ArchiveMigrationJournal}, so an interrupted migration resumes where it stopped. Until a
+     * legacy subdirectory has been migrated, {@link #getRecordingPath(String, String)} also looks
+     * for recordings there.
+     */
+    protected void migrate() throws Exception {
+        if (migrationJournal.load()) {
+            logger.info("Resuming interrupted archive migration");
+        }
+        Map<String, String> pending = new LinkedHashMap<>();
+        for (String subdirectoryName : fs.listDirectoryChildren(archivedRecordingsPath)) {
+            if (jvmIdHelper.isSpecialDirectory(subdirectoryName)) {
+                logger.info(
+                        "Skipping archive migration: appears to be a special location: {}",
+                        subdirectoryName);
+                continue;
+            }
+            if (migrationJournal.isComplete(subdirectoryName)
+                    || migrationJournal.isDestination(subdirectoryName)) {
+                logger.info("Skipping {} - already migrated", subdirectoryName);
+                continue;
+            }
+            Path subdirectoryPath = archivedRecordingsPath.resolve(subdirectoryName);
+            if (!fs.isDirectory(subdirectoryPath)) {
+                continue;
+            }
+            String connectUrl;
+            try {
+                connectUrl = getConnectUrlFromPath(subdirectoryPath).get();
+            } catch (InterruptedException | ExecutionException e) {
+                // try to migrate the recording to the new structure
+                connectUrl = new String(base32.decode(subdirectoryName), StandardCharsets.UTF_8);
+            }
+            pending.put(subdirectoryName, connectUrl);
+        }
+        legacySubdirectories.putAll(pending);
+
+        ExecutorService executor = Executors.newFixedThreadPool(migrationParallelism);
+        try {
+            List<Future<Void>> futures = new ArrayList<>(pending.size());
+            for (Map.Entry<String, String> entry : pending.entrySet()) {
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    migrateSubdirectory(entry.getKey(), entry.getValue());
+                                    return null;
+                                }));
+            }
+            for (var f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        archiveIndex.rebuild();
+        migrationJournal.finish();
+    }
+
+    private void migrateSubdirectory(String subdirectoryName, String connectUrl)
+            throws InterruptedException, ExecutionException {
+        Path subdirectoryPath = archivedRecordingsPath.resolve(subdirectoryName);
+        try {
+            logger.info("Found archived recordings subdirectory: {}", subdirectoryName);
+            String encodedJvmId;
+            Optional<String> destination = migrationJournal.getDestination(subdirectoryName);
+            if (destination.isPresent()) {
+                encodedJvmId = destination.get();
+            } else {
+                encodedJvmId =
+                        jvmIdHelper.jvmIdToSubdirectoryName(jvmIdHelper.getJvmId(connectUrl));
+            }
+            Path encodedJvmIdPath = archivedRecordingsPath.resolve(encodedJvmId);
+            if (Objects.equals(subdirectoryPath, encodedJvmIdPath)) {
+                logger.info("Skipping {} - no change in ID", subdirectoryPath);
+                legacySubdirectories.remove(subdirectoryName);
+                migrationJournal.complete(subdirectoryName);
+                return;
+            }
+            migrationJournal.begin(subdirectoryName, encodedJvmId);
+            logger.info("Migrating recordings from {} to {}", subdirectoryPath, encodedJvmIdPath);
+            if (!fs.exists(encodedJvmIdPath)) {
+                fs.createDirectory(encodedJvmIdPath);
+                fs.writeString(
+                        encodedJvmIdPath.resolve(CONNECT_URL),
+                        connectUrl,
+                        StandardOpenOption.CREATE);
+            }
+            // the connectUrl file is removed last so that the remaining recordings can still be
+            // found by target until they have all been moved
+            for (String file : fs.listDirectoryChildren(subdirectoryPath)) {
+                if (file.equals(CONNECT_URL)) {
+                    continue;
+                }
+                Path oldLocation = subdirectoryPath.resolve(file);
+                Path newLocation = encodedJvmIdPath.resolve(file);
+                logger.info("{} -> {}", oldLocation, newLocation);
+                Files.move(oldLocation, newLocation);
+            }
+            legacySubdirectories.remove(subdirectoryName);
+            FileUtils.deleteQuietly(subdirectoryPath.toFile());
+            migrationJournal.complete(subdirectoryName);
+        } catch (JvmIdGetException e) {
+            logger.warn(
+                    "Failed to migrate archived recordings for {} - no connection to {}",
+                    subdirectoryName,
+                    e.getTarget());
+            try {
+                moveLostRecordings(subdirectoryName, subdirectoryPath);
+                legacySubdirectories.remove(subdirectoryName);
+                migrationJournal.complete(subdirectoryName);
+            } catch (IOException ioe) {
+                logger.warn("IO exception", ioe);
+            }
+        } catch (IOException e) {
+            logger.warn("IO exception", e);
+        }
+    }
+
+    private void moveLostRecordings(String subdirectoryName, Path subdirectoryPath)
+            throws IOException, InterruptedException, ExecutionException {
+        Path lostPath = archivedRecordingsPath.resolve(LOST_RECORDINGS_SUBDIRECTORY);
+        synchronized (this) {
+            if (!fs.exists(lostPath)) {
+                fs.createDirectory(lostPath);
+            }
         }
-        for (var f : futures) {
-            f.get();
+        String jvmId = jvmIdHelper.subdirectoryNameToJvmId(subdirectoryName);
+        for (String file : fs.listDirectoryChildren(subdirectoryPath)) {
+            if (file.equals(CONNECT_URL)) {
+                continue;
+            }
+            Path oldLocation = subdirectoryPath.resolve(file);
+            Path newLocation = lostPath.resolve(file);
+            logger.info("Moving lost recordings: {} -> {}", oldLocation, newLocation);
+            Files.move(oldLocation, newLocation);
+            Metadata m = recordingMetadataManager.deleteRecordingMetadataIfExists(jvmId, file);
+            if (m != null) {
+                recordingMetadataManager.setRecordingMetadataFromPath(
+                        LOST_RECORDINGS_SUBDIRECTORY, file, m);
+            } else {
+                logger.warn("No metadata found for lost recording {}", oldLocation);
+            }
         }
+        FileUtils.deleteQuietly(subdirectoryPath.toFile());
     }
 
     protected void transferArchivesIfRestarted(String targetId) {
@@ -352,19 +408,13 @@ public class RecordingArchiveHelper {
         return archivedRecordingsPath.resolve(subdirectory);
     }
 
-    @SuppressFBWarnings(
-            value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
-            justification =
-                    "SpotBugs false positive. validateSavePath() ensures that the getParent() and"
-                            + " getFileName() of the Path are not null, barring some exceptional"
-                            + " circumstance like some external filesystem access race.")
     public Future<ArchivedRecordingInfo> saveRecording(
             ConnectionDescriptor connectionDescriptor, String recordingName) {
 
         CompletableFuture<ArchivedRecordingInfo> future = new CompletableFuture<>();
 
         try {
-            Path savePath =
+            ArchiveWritePipeline.Transfer transfer =
                     targetConnectionManager.executeConnectedTask(
                             connectionDescriptor,
                             connection -> {
@@ -373,41 +423,77 @@ public class RecordingArchiveHelper {
 
                                 if (descriptor.isPresent()) {
                                     return writeRecordingToDestination(
-                                            connection, descriptor.get());
+                                            connectionDescriptor, connection, descriptor.get());
                                 } else {
                                     throw new RecordingNotFoundException(
                                             "active recordings", recordingName);
                                 }
                             });
-            validateSavePath(recordingName, savePath);
-            Path filenamePath = savePath.getFileName();
-            String filename = filenamePath.toString();
-            String targetId = connectionDescriptor.getTargetId();
-            Metadata metadata =
-                    recordingMetadataManager
-                            .copyMetadataToArchives(connectionDescriptor, recordingName, filename)
-                            .get();
-            ArchivedRecordingInfo archivedRecordingInfo =
-                    new ArchivedRecordingInfo(
-                            targetId,
-                            filename,
-                            webServerProvider.get().getArchivedDownloadURL(targetId, filename),
-                            webServerProvider.get().getArchivedReportURL(targetId, filename),
-                            metadata,
-                            getFileSize(filename),
-                            getArchivedTime(filename));
-            future.complete(archivedRecordingInfo);
-            notificationFactory
-                    .createOwnedResourceBuilder(targetId, SAVE_NOTIFICATION_CATEGORY)
-                    .messageEntry("recording", archivedRecordingInfo)
-                    .build()
-                    .send();
+            // the target lock is released at this point and the data transfer continues on the
+            // pipeline's own executor
+            transfer.getFuture()
+                    .whenComplete(
+                            (bytes, t) -> {
+                                if (t != null) {
+                                    future.completeExceptionally(t);
+                                    return;
+                                }
+                                try {
+                                    completeSave(
+                                            connectionDescriptor,
+                                            recordingName,
+                                            transfer.getDestination(),
+                                            future);
+                                } catch (Exception e) {
+                                    future.completeExceptionally(e);
+                                }
+                            });
         } catch (Exception e) {
             future.completeExceptionally(e);
         }
         return future;
     }
 
+    @SuppressFBWarnings(
+            value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
+            justification =
+                    "SpotBugs false positive. validateSavePath() ensures that the getParent() and"
+                            + " getFileName() of the Path are not null, barring some exceptional"
+                            + " circumstance like some external filesystem access race.")
+    private void completeSave(
+            ConnectionDescriptor connectionDescriptor,
+            String recordingName,
+            Path savePath,
+            CompletableFuture<ArchivedRecordingInfo> future)
+            throws Exception {
+        validateSavePath(recordingName, savePath);
+        RecordingSummary summary =
+                archiveIndex.add(savePath).flatMap(ArchiveIndex.Entry::getSummary).orElse(null);
+        Path filenamePath = savePath.getFileName();
+        String filename = filenamePath.toString();
+        String targetId = connectionDescriptor.getTargetId();
+        Metadata metadata =
+                recordingMetadataManager
+                        .copyMetadataToArchives(connectionDescriptor, recordingName, filename)
+                        .get();
+        ArchivedRecordingInfo archivedRecordingInfo =
+                new ArchivedRecordingInfo(
+                        targetId,
+                        filename,
+                        webServerProvider.get().getArchivedDownloadURL(targetId, filename),
+                        webServerProvider.get().getArchivedReportURL(targetId, filename),
+                        metadata,
+                        getFileSize(filename),
+                        getArchivedTime(filename),
+                        summary);
+        future.complete(archivedRecordingInfo);
+        notificationFactory
+                .createOwnedResourceBuilder(targetId, SAVE_NOTIFICATION_CATEGORY)
+                .messageEntry("recording", archivedRecordingInfo)
+                .build()
+                .send();
+    }
+
     @SuppressFBWarnings(
             value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
             justification =
@@ -424,7 +510,10 @@ public class RecordingArchiveHelper {
             validateSavePath(recordingName, recordingPath);
             Path filenamePath = recordingPath.getFileName();
             String filename = filenamePath.toString();
-            String targetId = getConnectUrlFromPath(subdirectoryPath).get();
+            String targetId =
+                    jvmIdHelper.isSpecialDirectory(subdirectoryName)
+                            ? subdirectoryName
+                            : getConnectUrlFromPath(subdirectoryPath).get();
             ArchivedRecordingInfo archivedRecordingInfo =
                     new ArchivedRecordingInfo(
                             targetId,
@@ -441,6 +530,7 @@ public class RecordingArchiveHelper {
                     .build()
                     .send();
             fs.deleteIfExists(recordingPath);
+            archiveIndex.remove(recordingPath);
             checkEmptySubdirectory(subdirectoryPath);
             future.complete(archivedRecordingInfo);
         } catch (IOException | URISyntaxException | InterruptedException | ExecutionException e) {
@@ -480,6 +570,7 @@ public class RecordingArchiveHelper {
         String subdirectoryName = null;
         try {
             fs.deleteIfExists(archivedRecording);
+            archiveIndex.remove(archivedRecording);
             validateSavePath(recordingName, archivedRecording);
             Path parentPath = archivedRecording.getParent();
             Path filenamePath = archivedRecording.getFileName();
@@ -619,6 +710,7 @@ public class RecordingArchiveHelper {
                         specificRecordingsPath.toString(), "is not a directory");
             }
             WebServer webServer = webServerProvider.get();
+            String subdirectoryName = String.valueOf(specificRecordingsPath.getFileName());
             List<ArchivedRecordingInfo> archivedRecordings = new ArrayList<>();
             this.fs.listDirectoryChildren(specificRecordingsPath).stream()
                     .filter(filename -> !filename.equals(CONNECT_URL))
@@ -633,7 +725,8 @@ public class RecordingArchiveHelper {
                                             recordingMetadataManager.getMetadata(
                                                     new ConnectionDescriptor(targetId), file),
                                             getFileSize(file),
-                                            getArchivedTime(file));
+                                            getArchivedTime(file),
+                                            getSummary(subdirectoryName, file));
                                 } catch (IOException | URISyntaxException e) {
                                     logger.warn("Recording list exception", e);
                                     return null;
@@ -672,39 +765,8 @@ public class RecordingArchiveHelper {
                 Path subdirectory = archivedRecordingsPath.resolve(subdirectoryName);
                 String targetId = getConnectUrlFromPath(subdirectory).get();
                 String jvmId = jvmIdHelper.subdirectoryNameToJvmId(subdirectoryName);
-                List<String> files = this.fs.listDirectoryChildren(subdirectory);
                 List<ArchivedRecordingInfo> temp =
-                        files.stream()
-                                .filter(filename -> !filename.equals(CONNECT_URL))
-                                .map(
-                                        file -> {
-                                            try {
-                                                // FIXME: string replacing
-                                                return new ArchivedRecordingInfo(
-                                                        targetId,
-                                                        file,
-                                                        webServer
-                                                                .getArchivedDownloadURL(jvmId, file)
-                                                                .replace(
-                                                                        "beta/recordings",
-                                                                        "beta/fs/recordings"),
-                                                        webServer
-                                                                .getArchivedReportURL(jvmId, file)
-                                                                .replace(
-                                                                        "beta/reports",
-                                                                        "beta/fs/reports"),
-                                                        recordingMetadataManager
-                                                                .getMetadataFromPathIfExists(
-                                                                        jvmId, file),
-                                                        getFileSize(file),
-                                                        getArchivedTime(file));
-                                            } catch (IOException | URISyntaxException e) {
-                                                logger.warn("Directory walk exception", e);
-                                                return null;
-                                            }
-                                        })
-                                .filter(Objects::nonNull)
-                                .collect(Collectors.toList());
+                        listRecordingsFromPath(webServer, subdirectoryName, targetId, jvmId);
                 directories.add(new ArchiveDirectory(targetId, jvmId, temp));
             }
             future.complete(directories);
@@ -714,6 +776,62 @@ public class RecordingArchiveHelper {
         return future;
     }
 
+    /** List the recordings archived for the target JVM with the given jvmId. */
+    public Future<List<ArchivedRecordingInfo>> getRecordingsFromPath(String jvmId) {
+        CompletableFuture<List<ArchivedRecordingInfo>> future = new CompletableFuture<>();
+        try {
+            String subdirectoryName = jvmIdHelper.jvmIdToSubdirectoryName(jvmId);
+            Path subdirectory = archivedRecordingsPath.resolve(subdirectoryName);
+            if (!fs.isDirectory(subdirectory)) {
+                future.complete(List.of());
+                return future;
+            }
+            String targetId =
+                    jvmIdHelper.isSpecialDirectory(subdirectoryName)
+                            ? subdirectoryName
+                            : getConnectUrlFromPath(subdirectory).get();
+            future.complete(
+                    listRecordingsFromPath(
+                            webServerProvider.get(), subdirectoryName, targetId, jvmId));
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private List<ArchivedRecordingInfo> listRecordingsFromPath(
+            WebServer webServer, String subdirectoryName, String targetId, String jvmId)
+            throws IOException {
+        Path subdirectory = archivedRecordingsPath.resolve(subdirectoryName);
+        return this.fs.listDirectoryChildren(subdirectory).stream()
+                .filter(filename -> !filename.equals(CONNECT_URL))
+                .map(
+                        file -> {
+                            try {
+                                // FIXME: string replacing
+                                return new ArchivedRecordingInfo(
+                                        targetId,
+                                        file,
+                                        webServer
+                                                .getArchivedDownloadURL(jvmId, file)
+                                                .replace("beta/recordings", "beta/fs/recordings"),
+                                        webServer
+                                                .getArchivedReportURL(jvmId, file)
+                                                .replace("beta/reports", "beta/fs/reports"),
+                                        recordingMetadataManager.getMetadataFromPathIfExists(
+                                                jvmId, file),
+                                        getFileSize(file),
+                                        getArchivedTime(file),
+                                        getSummary(subdirectoryName, file));
+                            } catch (IOException | URISyntaxException e) {
+                                logger.warn("Directory walk exception", e);
+                                return null;
+                            }
+                        })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
     public Future<List<ArchivedRecordingInfo>> getRecordings() {
         CompletableFuture<List<ArchivedRecordingInfo>> future = new CompletableFuture<>();
 
@@ -753,7 +871,8 @@ public class RecordingArchiveHelper {
                                                                 new ConnectionDescriptor(targetId),
                                                                 file),
                                                         getFileSize(file),
-                                                        getArchivedTime(file));
+                                                        getArchivedTime(file),
+                                                        getSummary(subdirectoryName, file));
                                             } catch (IOException | URISyntaxException e) {
                                                 logger.warn("Recording list exception", e);
                                                 return null;
@@ -811,6 +930,9 @@ public class RecordingArchiveHelper {
                         StandardOpenOption.CREATE);
             }
             Path archivedRecording = searchSubdirectory(subdirectory, recordingName);
+            if (archivedRecording == null) {
+                archivedRecording = searchLegacySubdirectories(sourceTarget, recordingName);
+            }
             if (archivedRecording == null) {
                 throw new RecordingNotFoundException(sourceTarget, recordingName);
             }
@@ -822,6 +944,45 @@ public class RecordingArchiveHelper {
         return future;
     }
 
+    public void markRecordingDownloaded(Path recordingPath) {
+        archiveIndex.touch(recordingPath);
+    }
+
+    /**
+     * Select the chunks of an archived recording which overlap the closed range [from, to] of epoch
+     * milliseconds. If the archive index already knows that the recording does not cover any of the
+     * range then the recording is not read at all.
+     */
+    @SuppressFBWarnings(
+            value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
+            justification =
+                    "getRecordingPath() validates that archived recordings have a parent"
+                            + " subdirectory and a file name")
+    public Future<RecordingSlice> getRecordingSlice(
+            String sourceTarget, String recordingName, long from, long to) {
+        CompletableFuture<RecordingSlice> future = new CompletableFuture<>();
+        try {
+            Path archivedRecording = getRecordingPath(sourceTarget, recordingName).get();
+            Optional<RecordingSummary> summary =
+                    archiveIndex
+                            .getEntry(
+                                    archivedRecording.getParent().getFileName().toString(),
+                                    archivedRecording.getFileName().toString())
+                            .flatMap(ArchiveIndex.Entry::getSummary);
+            if (summary.isPresent() && !summary.get().overlaps(from, to)) {
+                future.complete(RecordingSlice.empty(archivedRecording));
+                return future;
+            }
+            future.complete(RecordingSlice.read(archivedRecording, from, to));
+        } catch (InterruptedException
+                | ExecutionException
+                | IOException
+                | CouldNotLoadRecordingException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     private Path searchSubdirectory(Path subdirectory, String recordingName) {
         Path recordingPath = null;
         try {
@@ -838,6 +999,25 @@ public class RecordingArchiveHelper {
         return recordingPath;
     }
 
+    /**
+     * Look for a recording in the legacy subdirectories of a target which the startup migration has
+     * not yet moved into the target's JVM ID subdirectory.
+     */
+    private Path searchLegacySubdirectories(String sourceTarget, String recordingName) {
+        for (Map.Entry<String, String> entry : legacySubdirectories.entrySet()) {
+            if (!sourceTarget.equals(entry.getValue())) {
+                continue;
+            }
+            Path recordingPath =
+                    searchSubdirectory(
+                            archivedRecordingsPath.resolve(entry.getKey()), recordingName);
+            if (recordingPath != null) {
+                return recordingPath;
+            }
+        }
+        return null;
+    }
+
     private Optional<Path> searchSubdirectories(
             List<String> subdirectories, Path parent, String recordingName) {
         // TODO refactor this into nicer streaming
@@ -890,7 +1070,10 @@ public class RecordingArchiveHelper {
         }
     }
 
-    Path writeRecordingToDestination(JFRConnection connection, IRecordingDescriptor descriptor)
+    ArchiveWritePipeline.Transfer writeRecordingToDestination(
+            ConnectionDescriptor connectionDescriptor,
+            JFRConnection connection,
+            IRecordingDescriptor descriptor)
             throws IOException, URISyntaxException, FlightRecorderException, Exception {
         URI serviceUri = URIUtil.getConnectionUri(connection);
         String jvmId = jvmIdHelper.getJvmId(serviceUri.toString());
@@ -944,9 +1127,9 @@ public class RecordingArchiveHelper {
         }
         destination += ".jfr";
         Path destinationPath = specificRecordingsPath.resolve(destination);
-        try (BufferedInputStream bufferedStream =
-                new BufferedInputStream(connection.getService().openStream(descriptor, false))) {
-
+        BufferedInputStream bufferedStream =
+                new BufferedInputStream(connection.getService().openStream(descriptor, false));
+        try {
             // Check if recording stream is non-empty
             int readLimit = 1; // arbitrary number greater than 0
             bufferedStream.mark(readLimit);
@@ -961,10 +1144,18 @@ public class RecordingArchiveHelper {
             }
 
             bufferedStream.reset();
-
-            fs.copy(bufferedStream, destinationPath);
+        } catch (Exception e) {
+            bufferedStream.close();
+            throw e;
         }
-        return destinationPath;
+
+        // the pipeline takes ownership of the stream and closes it when the transfer is done
+        return archiveWritePipeline.write(
+                connectionDescriptor.getTargetId(),
+                descriptor.getName(),
+                bufferedStream,
+                destinationPath,
+                () -> targetConnectionManager.markConnectionInUse(connectionDescriptor));
     }
 
     private Optional<IRecordingDescriptor> getDescriptorByName(
@@ -975,6 +1166,13 @@ public class RecordingArchiveHelper {
                 .findFirst();
     }
 
+    private RecordingSummary getSummary(String subdirectoryName, String filename) {
+        return archiveIndex
+                .getEntry(subdirectoryName, filename)
+                .flatMap(ArchiveIndex.Entry::getSummary)
+                .orElse(null);
+    }
+
     private long getFileSize(String recordingName) {
         try {
             return Files.size(getRecordingPath(recordingName).get());
@@ -1074,7 +1272,14 @@ public class RecordingArchiveHelper {
             String tmpFile,
             String connectUrl,
             int counter,
-            Handler<AsyncResult<String>> handler) {
+            Handler<AsyncResult<String>> resultHandler) {
+        // the validated summary is only needed until this save attempt settles, whether it
+        // succeeds or fails, so drop it on every completion path
+        Handler<AsyncResult<String>> handler =
+                res -> {
+                    validatedUploads.remove(tmpFile);
+                    resultHandler.handle(res);
+                };
         // TODO byte-sized rename limit is arbitrary. Probably plenty since recordings
         // are also differentiated by second-resolution timestamp
         if (counter >= Byte.MAX_VALUE) {
@@ -1122,7 +1327,7 @@ public class RecordingArchiveHelper {
                                         tmpFile,
                                         connectUrl,
                                         counter + 1,
-                                        handler);
+                                        resultHandler);
                                 return;
                             }
 
@@ -1132,11 +1337,16 @@ public class RecordingArchiveHelper {
                                             tmpFile,
                                             specificRecordingsPath.resolve(filename).toString(),
                                             (res2) -> {
+                                                RecordingSummary summary =
+                                                        validatedUploads.get(tmpFile);
                                                 if (res2.failed()) {
                                                     handler.handle(
                                                             makeFailedAsyncResult(res2.cause()));
                                                     return;
                                                 }
+                                                archiveIndex.add(
+                                                        specificRecordingsPath.resolve(filename),
+                                                        summary);
                                                 handler.handle(makeAsyncResult(filename));
                                             });
                         });
@@ -1146,14 +1356,10 @@ public class RecordingArchiveHelper {
         vertx.executeBlocking(
                 event -> {
                     try {
-                        // try loading chunk info to see if it's a valid file
-                        try (var is = new BufferedInputStream(new FileInputStream(recordingFile))) {
-                            var supplier = FlightRecordingLoader.createChunkSupplier(is);
-                            var chunks = FlightRecordingLoader.readChunkInfo(supplier);
-                            if (chunks.size() < 1) {
-                                throw new InvalidJfrFileException();
-                            }
-                        }
+                        // reading the chunk headers validates the file, and the summary is kept
+                        // for the archive index once the upload is moved into place
+                        validatedUploads.put(
+                                recordingFile, RecordingSummary.read(Path.of(recordingFile)));
                         event.complete();
                     } catch (CouldNotLoadRecordingException | IOException e) {
                         event.fail(e);
@@ -1179,6 +1385,173 @@ public class RecordingArchiveHelper {
                 });
     }
 
+    /**
+     * Open a new file in the temporary uploads directory for a recording which will be streamed in,
+     * validated, and digested in a single pass. The uploads directory is within the archive path,
+     * so {@link #saveUploadStream} can move the completed file into place with an atomic rename
+     * rather than a copy.
+     *
+     * @param maxBytes the maximum size of the upload, or zero for no limit
+     */
+    public void openUploadStream(
+            long maxBytes, Handler<AsyncResult<RecordingUploadStream>> handler) {
+        Path tmpFile =
+                archivedRecordingsPath
+                        .resolve(TEMP_UPLOADS_SUBDIRECTORY)
+                        .resolve(UUID.randomUUID().toString());
+        vertx.fileSystem()
+                .open(
+                        tmpFile.toString(),
+                        new OpenOptions().setCreateNew(true).setWrite(true),
+                        res ->
+                                handler.handle(
+                                        res.map(
+                                                file ->
+                                                        new RecordingUploadStream(
+                                                                file, tmpFile, maxBytes))));
+    }
+
+    /**
+     * Move a completely written upload stream into the archive subdirectory, then prune the
+     * subdirectory to {@code maxFiles} recordings, apply the uploaded labels, and notify clients
+     * that the recording was created. The first free name from {@code basename.<counter>.jfr}
+     * onward is reserved by creating it exclusively, then the upload is renamed over the
+     * reservation, so concurrent uploads of the same recording name do not race each other.
+     *
+     * @param metadata the uploaded labels, or null if the upload did not include any
+     */
+    public void saveUploadStream(
+            String subdirectoryName,
+            String basename,
+            int counter,
+            RecordingUploadStream upload,
+            String connectUrl,
+            int maxFiles,
+            Metadata metadata,
+            Handler<AsyncResult<String>> handler) {
+        vertx.<String>executeBlocking(
+                event -> {
+                    try {
+                        RecordingSummary summary = upload.summarize();
+                        Path specificRecordingsPath =
+                                archivedRecordingsPath.resolve(subdirectoryName);
+                        if (!fs.exists(specificRecordingsPath)) {
+                            fs.createDirectories(specificRecordingsPath);
+                            if (!subdirectoryName.equals(UPLOADED_RECORDINGS_SUBDIRECTORY)) {
+                                fs.writeString(
+                                        specificRecordingsPath.resolve(CONNECT_URL),
+                                        connectUrl,
+                                        StandardOpenOption.CREATE);
+                            }
+                        }
+                        Path dest = reserveUploadPath(specificRecordingsPath, basename, counter);
+                        Files.move(
+                                upload.getPath(),
+                                dest,
+                                StandardCopyOption.ATOMIC_MOVE,
+                                StandardCopyOption.REPLACE_EXISTING);
+                        archiveIndex.add(dest, summary);
+                        String filename = dest.getFileName().toString();
+                        publishUpload(
+                                subdirectoryName,
+                                connectUrl,
+                                basename,
+                                filename,
+                                maxFiles,
+                                metadata,
+                                upload.getBytesWritten());
+                        event.complete(filename);
+                    } catch (CouldNotLoadRecordingException e) {
+                        event.fail(new ApiException(400, "Not a valid JFR recording file", e));
+                    } catch (IOException
+                            | InterruptedException
+                            | ExecutionException
+                            | URISyntaxException e) {
+                        event.fail(e);
+                    }
+                },
+                res -> {
+                    if (res.failed()) {
+                        deleteUploadStream(upload);
+                        handler.handle(makeFailedAsyncResult(res.cause()));
+                        return;
+                    }
+                    handler.handle(makeAsyncResult(res.result()));
+                });
+    }
+
+    private void publishUpload(
+            String subdirectoryName,
+            String connectUrl,
+            String basename,
+            String filename,
+            int maxFiles,
+            Metadata metadata,
+            long size)
+            throws InterruptedException, ExecutionException, IOException, URISyntaxException {
+        pruneTargetUploads(subdirectoryName, maxFiles);
+        if (metadata != null) {
+            recordingMetadataManager
+                    .setRecordingMetadataFromPath(subdirectoryName, filename, metadata)
+                    .get();
+        } else {
+            metadata = new Metadata();
+        }
+        notificationFactory
+                .createOwnedResourceBuilder(connectUrl, UPLOAD_NOTIFICATION_CATEGORY)
+                .messageEntry(
+                        "recording",
+                        new ArchivedRecordingInfo(
+                                connectUrl,
+                                filename,
+                                webServerProvider
+                                        .get()
+                                        .getArchivedDownloadURL(connectUrl, filename),
+                                webServerProvider.get().getArchivedReportURL(connectUrl, filename),
+                                metadata,
+                                size,
+                                getArchivedTimeFromBasename(basename)))
+                .build()
+                .send();
+    }
+
+    private long getArchivedTimeFromBasename(String basename) {
+        Matcher m = RECORDING_FILENAME_PATTERN.matcher(basename);
+        return m.matches()
+                ? getArchivedTimeFromTimestamp(m.group(3))
+                : Instant.now().toEpochMilli();
+    }
+
+    private Path reserveUploadPath(Path specificRecordingsPath, String basename, int counter)
+            throws IOException {
+        // TODO byte-sized rename limit is arbitrary. Probably plenty since recordings
+        // are also differentiated by second-resolution timestamp
+        for (int i = counter; i < Byte.MAX_VALUE; i++) {
+            String filename = i > 1 ? basename + "." + i + ".jfr" : basename + ".jfr";
+            Path dest = specificRecordingsPath.resolve(filename);
+            try {
+                return Files.createFile(dest);
+            } catch (FileAlreadyExistsException e) {
+                logger.trace("Upload destination {} already exists", dest);
+            }
+        }
+        throw new IOException(
+                "The recording cannot be saved because another recording with the same name exists"
+                    + " and you have reached the maximum attempts allowed for renaming a file.");
+    }
+
+    public void deleteUploadStream(RecordingUploadStream upload) {
+        vertx.fileSystem()
+                .delete(
+                        upload.getPath().toString(),
+                        res -> {
+                            if (res.failed() && !(res.cause() instanceof NoSuchFileException)) {
+                                logger.warn(
+                                        "Failed to delete temporary upload {}", upload.getPath());
+                            }
+                        });
+    }
+
     public void deleteTempFileUpload(FileUpload upload) {
         Path p =
                 archivedRecordingsPath
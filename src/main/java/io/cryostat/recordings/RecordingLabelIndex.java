@@ -0,0 +1,230 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import io.cryostat.net.web.http.api.v2.graph.labels.LabelMatcher;
+import io.cryostat.net.web.http.api.v2.graph.labels.LabelSelectorMatcher;
+
+/**
+ * In-memory inverted index of the labels of active and archived recordings, mapping each label key
+ * and value to the names of the recordings carrying it, per target JVM. Label selectors are
+ * answered by intersecting the recordings of the most selective positive matcher with those of the
+ * other matchers, and removing the recordings of negated matchers, rather than by testing the
+ * labels of every recording. Recordings without labels are not indexed.
+ *
+ * <p>The labels of a JVM's recordings are loaded into the index the first time that JVM is queried,
+ * so that startup does not need to read the labels of every recording ever stored. Updates to the
+ * labels of a JVM which has not been loaded yet are ignored, since they will be read when it is.
+ * Loads run outside the index's monitor, so a slow read for one JVM does not block queries and
+ * updates for others. Updates made while a JVM is loading are replayed over the loaded labels.
+ */
+class RecordingLabelIndex {
+
+    private final Function<String, Map<String, Map<String, String>>> loader;
+    private final Map<String, JvmIndex> jvms = new HashMap<>();
+    // updates made to JVMs while they are loading, keyed by recording name, with removed
+    // recordings mapped to no labels
+    private final Map<String, Map<String, Map<String, String>>> loading = new HashMap<>();
+
+    /**
+     * @param loader reads the labels of the recordings of a JVM ID, keyed by recording name
+     */
+    RecordingLabelIndex(Function<String, Map<String, Map<String, String>>> loader) {
+        this.loader = loader;
+    }
+
+    synchronized void put(String jvmId, String recordingName, Map<String, String> labels) {
+        Map<String, Map<String, String>> updates = loading.get(jvmId);
+        if (updates != null) {
+            updates.put(recordingName, Map.copyOf(labels));
+        }
+        JvmIndex index = jvms.get(jvmId);
+        if (index == null) {
+            return;
+        }
+        index.remove(recordingName);
+        if (!labels.isEmpty()) {
+            index.put(recordingName, labels);
+        }
+    }
+
+    synchronized void remove(String jvmId, String recordingName) {
+        Map<String, Map<String, String>> updates = loading.get(jvmId);
+        if (updates != null) {
+            updates.put(recordingName, Map.of());
+        }
+        JvmIndex index = jvms.get(jvmId);
+        if (index != null) {
+            index.remove(recordingName);
+        }
+    }
+
+    /**
+     * Discard the indexed labels of a JVM ID, ex. after they have been moved to another JVM ID, so
+     * that they are loaded again on its next query.
+     */
+    synchronized void invalidate(String jvmId) {
+        jvms.remove(jvmId);
+        // a load already in progress may have read the labels being invalidated, so it must not
+        // be installed
+        loading.remove(jvmId);
+    }
+
+    /** The names of the labelled recordings of a JVM which satisfy every selector. */
+    Set<String> select(String jvmId, List<LabelSelectorMatcher> selectors) {
+        Map<String, Map<String, String>> updates;
+        synchronized (this) {
+            JvmIndex index = jvms.get(jvmId);
+            if (index != null) {
+                return index.select(selectors);
+            }
+            updates = loading.computeIfAbsent(jvmId, k -> new HashMap<>());
+        }
+        Map<String, Map<String, String>> loaded = loader.apply(jvmId);
+        synchronized (this) {
+            JvmIndex index = jvms.get(jvmId);
+            if (index == null) {
+                index = new JvmIndex();
+                loaded.forEach(index::replace);
+                updates.forEach(index::replace);
+                if (loading.get(jvmId) == updates) {
+                    loading.remove(jvmId);
+                    jvms.put(jvmId, index);
+                }
+            }
+            return index.select(selectors);
+        }
+    }
+
+    private static class JvmIndex {
+        private final Map<String, Map<String, String>> labels = new HashMap<>();
+        private final Map<String, Map<String, Set<String>>> postings = new HashMap<>();
+        private final Map<String, Set<String>> keys = new HashMap<>();
+
+        void put(String recordingName, Map<String, String> recordingLabels) {
+            labels.put(recordingName, Map.copyOf(recordingLabels));
+            recordingLabels.forEach(
+                    (key, value) -> {
+                        keys.computeIfAbsent(key, k -> new HashSet<>()).add(recordingName);
+                        postings.computeIfAbsent(key, k -> new HashMap<>())
+                                .computeIfAbsent(value, v -> new HashSet<>())
+                                .add(recordingName);
+                    });
+        }
+
+        /** Index the recording's labels in place of any it had, or drop it if it has none. */
+        void replace(String recordingName, Map<String, String> recordingLabels) {
+            remove(recordingName);
+            if (!recordingLabels.isEmpty()) {
+                put(recordingName, recordingLabels);
+            }
+        }
+
+        Set<String> select(List<LabelSelectorMatcher> selectors) {
+            if (labels.isEmpty()) {
+                return Set.of();
+            }
+            List<LabelMatcher> positive = new ArrayList<>();
+            List<LabelMatcher> negated = new ArrayList<>();
+            for (LabelSelectorMatcher selector : selectors) {
+                for (LabelMatcher matcher : selector.getMatchers()) {
+                    (matcher.isNegated() ? negated : positive).add(matcher);
+                }
+            }
+            positive.sort(Comparator.comparingInt(this::count));
+
+            Set<String> result;
+            if (positive.isEmpty()) {
+                result = new HashSet<>(labels.keySet());
+            } else {
+                result = new HashSet<>();
+                postings(positive.get(0)).forEach(result::addAll);
+            }
+            for (int i = 1; i < positive.size() && !result.isEmpty(); i++) {
+                List<Set<String>> postings = postings(positive.get(i));
+                result.removeIf(name -> postings.stream().noneMatch(p -> p.contains(name)));
+            }
+            for (LabelMatcher matcher : negated) {
+                if (result.isEmpty()) {
+                    break;
+                }
+                for (Set<String> p : postings(matcher)) {
+                    result.removeAll(p);
+                }
+            }
+            return result;
+        }
+
+        void remove(String recordingName) {
+            Map<String, String> removed = labels.remove(recordingName);
+            if (removed == null) {
+                return;
+            }
+            removed.forEach(
+                    (key, value) -> {
+                        removeFrom(keys, key, recordingName);
+                        Map<String, Set<String>> values = postings.get(key);
+                        removeFrom(values, value, recordingName);
+                        if (values.isEmpty()) {
+                            postings.remove(key);
+                        }
+                    });
+        }
+
+        /**
+         * The sets of recordings which carry the matcher's key with any of its values, or with any
+         * value at all if the matcher does not specify values.
+         */
+        List<Set<String>> postings(LabelMatcher matcher) {
+            if (matcher.getValues().isEmpty()) {
+                Set<String> any = keys.get(matcher.getKey());
+                return any == null ? List.of() : List.of(any);
+            }
+            Map<String, Set<String>> values = postings.getOrDefault(matcher.getKey(), Map.of());
+            List<Set<String>> result = new ArrayList<>();
+            for (String value : matcher.getValues()) {
+                Set<String> p = values.get(value);
+                if (p != null) {
+                    result.add(p);
+                }
+            }
+            return result;
+        }
+
+        int count(LabelMatcher matcher) {
+            return postings(matcher).stream().mapToInt(Collection::size).sum();
+        }
+
+        private static void removeFrom(
+                Map<String, Set<String>> map, String key, String recordingName) {
+            Set<String> set = map.get(key);
+            set.remove(recordingName);
+            if (set.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+}
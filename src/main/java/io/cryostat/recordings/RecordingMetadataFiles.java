@@ -0,0 +1,120 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import io.cryostat.core.sys.FileSystem;
+import io.cryostat.recordings.RecordingMetadataManager.Metadata;
+import io.cryostat.recordings.RecordingMetadataManager.StoredRecordingMetadata;
+
+import com.google.gson.Gson;
+import org.apache.commons.codec.binary.Base32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copy of the stored recording labels in the per-recording JSON files used by previous versions.
+ * Used while the database does not outlive the process, so that the files remain a durable copy of
+ * every label, which is loaded into the database again at each startup. Each file is written only
+ * after the labels it holds have been committed to the database.
+ */
+class RecordingMetadataFiles {
+
+    private final Path recordingMetadataDir;
+    private final FileSystem fs;
+    private final JvmIdHelper jvmIdHelper;
+    private final Gson gson;
+    private final Base32 base32;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    RecordingMetadataFiles(
+            Path recordingMetadataDir,
+            FileSystem fs,
+            JvmIdHelper jvmIdHelper,
+            Gson gson,
+            Base32 base32) {
+        this.recordingMetadataDir = recordingMetadataDir;
+        this.fs = fs;
+        this.jvmIdHelper = jvmIdHelper;
+        this.gson = gson;
+        this.base32 = base32;
+    }
+
+    void write(List<StoredRecordingLabels> labels) {
+        for (StoredRecordingLabels stored : labels) {
+            try {
+                Path subdirectory = subdirectoryOf(stored.getJvmId());
+                if (!fs.isDirectory(subdirectory)) {
+                    fs.createDirectory(subdirectory);
+                }
+                fs.writeString(
+                        subdirectory.resolve(filenameOf(stored.getRecordingName())),
+                        gson.toJson(
+                                StoredRecordingMetadata.of(
+                                        stored.getTargetId(),
+                                        stored.getJvmId(),
+                                        stored.getRecordingName(),
+                                        new Metadata(stored.getLabels()))),
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                logger.error(
+                        "Could not write metadata file of {} for {}",
+                        stored.getRecordingName(),
+                        stored.getJvmId(),
+                        e);
+            }
+        }
+    }
+
+    void delete(String jvmId, String recordingName) {
+        Path subdirectory = subdirectoryOf(jvmId);
+        try {
+            fs.deleteIfExists(subdirectory.resolve(filenameOf(recordingName)));
+            deleteIfEmpty(subdirectory);
+        } catch (IOException e) {
+            logger.error("Could not delete metadata file of {} for {}", recordingName, jvmId, e);
+        }
+    }
+
+    /** Replace the files of one JVM ID with those of the labels now stored for another. */
+    void reassign(String oldJvmId, List<StoredRecordingLabels> reassigned) {
+        write(reassigned);
+        for (StoredRecordingLabels stored : reassigned) {
+            delete(oldJvmId, stored.getRecordingName());
+        }
+    }
+
+    private Path subdirectoryOf(String jvmId) {
+        return recordingMetadataDir.resolve(jvmIdHelper.jvmIdToSubdirectoryName(jvmId));
+    }
+
+    private String filenameOf(String recordingName) {
+        return base32.encodeAsString(recordingName.getBytes(StandardCharsets.UTF_8)) + ".json";
+    }
+
+    private void deleteIfEmpty(Path subdirectory) throws IOException {
+        if (fs.isDirectory(subdirectory) && fs.listDirectoryChildren(subdirectory).isEmpty()) {
+            fs.deleteIfExists(subdirectory);
+        }
+    }
+}
@@ -21,20 +21,28 @@ import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import javax.inject.Provider;
 import javax.script.ScriptException;
@@ -43,9 +51,11 @@ import io.cryostat.configuration.CredentialsManager;
 import io.cryostat.core.net.Credentials;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.discovery.DiscoveryStorage;
+import io.cryostat.messaging.notifications.Notification;
 import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.net.ConnectionDescriptor;
 import io.cryostat.net.TargetConnectionManager;
+import io.cryostat.net.web.http.api.v2.graph.labels.LabelSelectorMatcher;
 import io.cryostat.platform.PlatformClient;
 import io.cryostat.platform.ServiceRef;
 import io.cryostat.platform.TargetDiscoveryEvent;
@@ -54,15 +64,19 @@ import io.cryostat.util.events.EventListener;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Promise;
 import io.vertx.core.eventbus.EventBus;
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 import org.apache.commons.codec.binary.Base32;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
-import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,6 +85,8 @@ public class RecordingMetadataManager extends AbstractVerticle
 
     public static final String NOTIFICATION_CATEGORY = "RecordingMetadataUpdated";
     private static final String UPLOADS = RecordingArchiveHelper.UPLOADED_RECORDINGS_SUBDIRECTORY;
+    // written once the metadata files have been migrated into a persistent database
+    static final String MIGRATED_MARKER = ".migrated";
 
     private final ExecutorService executor;
     private final Path recordingMetadataDir;
@@ -85,9 +101,17 @@ public class RecordingMetadataManager extends AbstractVerticle
     private final JvmIdHelper jvmIdHelper;
     private final Gson gson;
     private final Base32 base32;
+    private final StoredRecordingLabelsDao dao;
+    private final RecordingMetadataWriter writer;
+    private final RecordingLabelIndex labelIndex;
+    private final int validationParallelism;
+    private final boolean retainMetadataFiles;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final CountDownLatch migrationLatch = new CountDownLatch(1);
+    // confined to the executor thread: discovery events are deferred until the background phase
+    // of startup has finished
+    private boolean migrated;
+    private final List<Runnable> deferred = new ArrayList<>();
 
     RecordingMetadataManager(
             ExecutorService executor,
@@ -102,7 +126,11 @@ public class RecordingMetadataManager extends AbstractVerticle
             NotificationFactory notificationFactory,
             JvmIdHelper jvmIdHelper,
             Gson gson,
-            Base32 base32) {
+            Base32 base32,
+            StoredRecordingLabelsDao dao,
+            RecordingMetadataWriter writer,
+            int validationParallelism,
+            boolean retainMetadataFiles) {
         this.executor = executor;
         this.recordingMetadataDir = recordingMetadataDir;
         this.archivedRecordingsPath = archivedRecordingsPath;
@@ -116,244 +144,51 @@ public class RecordingMetadataManager extends AbstractVerticle
         this.jvmIdHelper = jvmIdHelper;
         this.gson = gson;
         this.base32 = base32;
+        this.dao = dao;
+        this.writer = writer;
+        this.validationParallelism = validationParallelism;
+        this.retainMetadataFiles = retainMetadataFiles;
+        this.labelIndex = new RecordingLabelIndex(this::loadLabels);
+        // index labels only once they are committed, so a failed write leaves no trace
+        this.writer.onCommit(
+                committed ->
+                        committed.forEach(
+                                stored ->
+                                        labelIndex.put(
+                                                stored.getJvmId(),
+                                                stored.getRecordingName(),
+                                                stored.getLabels())));
     }
 
+    private Map<String, Map<String, String>> loadLabels(String jvmId) {
+        // only committed labels are indexed, any committed while the database is read are replayed
+        // by the index
+        Map<String, Map<String, String>> labels = new HashMap<>();
+        for (StoredRecordingLabels stored : dao.findByJvmId(jvmId)) {
+            labels.put(stored.getRecordingName(), stored.getLabels());
+        }
+        return labels;
+    }
+
+    /**
+     * Only the one-time import of metadata files written by previous versions is done before the
+     * verticle is started. The labels of each target JVM are loaded on first use, and the labels of
+     * active recordings which may have been lost while Cryostat was down are validated against
+     * their targets in the background once discovery has started. The background phase runs on this
+     * manager's executor, ahead of the discovery events that wait for it. Each phase is timed by a
+     * {@link MetadataStartupPhase} event.
+     */
     @Override
     public void start(Promise<Void> future) {
         this.platformClient.addTargetDiscoveryListener(this);
         this.jvmIdHelper.addListener(this);
-        Map<StoredRecordingMetadata, Path> staleMetadata =
-                new HashMap<StoredRecordingMetadata, Path>();
+        MetadataStartupPhase startup = beginPhase("Recording metadata startup");
+        List<StoredRecordingMetadata> staleMetadata = new ArrayList<>();
         RecordingArchiveHelper archiveHelper = archiveHelperProvider.get();
         try {
-            this.fs.listDirectoryChildren(recordingMetadataDir).stream()
-                    .peek(n -> logger.info("Peeking contents of metadata directory: {}", n))
-                    .map(recordingMetadataDir::resolve)
-                    .forEach(
-                            subdirectory -> {
-                                if (fs.isDirectory(subdirectory)) {
-                                    try {
-                                        String subdirectoryName =
-                                                subdirectory.getFileName().toString();
-                                        if (jvmIdHelper.isSpecialDirectory(subdirectoryName)) {
-                                            logger.info(
-                                                    "Skipping metadata validation: appears to be a"
-                                                            + " special location: {}",
-                                                    subdirectoryName);
-                                            return;
-                                        } else if (this.fs
-                                                .listDirectoryChildren(subdirectory)
-                                                .isEmpty()) {
-                                            logger.info(
-                                                    "Deleting empty recording metadata directory:"
-                                                            + " {}",
-                                                    subdirectory);
-                                            this.fs.deleteIfExists(subdirectory);
-                                        } else {
-                                            this.fs.listDirectoryChildren(subdirectory).stream()
-                                                    .peek(
-                                                            n ->
-                                                                    logger.trace(
-                                                                            "Recording"
-                                                                                    + " Metadata"
-                                                                                    + " file:"
-                                                                                    + " {}",
-                                                                            n))
-                                                    .map(subdirectory::resolve)
-                                                    .filter(fs::isRegularFile)
-                                                    .filter(
-                                                            path ->
-                                                                    !path.getFileName()
-                                                                            .toString()
-                                                                            .equals("connectUrl"))
-                                                    .map(
-                                                            path -> {
-                                                                try {
-                                                                    return Pair.of(
-                                                                            fs.readFile(path),
-                                                                            path);
-                                                                } catch (IOException ioe) {
-                                                                    logger.error(
-                                                                            "Could not read"
-                                                                                    + " metadata"
-                                                                                    + " file"
-                                                                                    + " {}, msg:"
-                                                                                    + " {}",
-                                                                            path,
-                                                                            ioe.getMessage());
-                                                                    deleteMetadataPathIfExists(
-                                                                            path);
-                                                                    return null;
-                                                                }
-                                                            })
-                                                    .filter(Objects::nonNull)
-                                                    .forEach(
-                                                            pair -> {
-                                                                try (BufferedReader br =
-                                                                        pair.getLeft()) {
-                                                                    StoredRecordingMetadata srm =
-                                                                            gson.fromJson(
-                                                                                    br,
-                                                                                    StoredRecordingMetadata
-                                                                                            .class);
-                                                                    Path file = pair.getRight();
-                                                                    String targetId =
-                                                                            srm.getTargetId();
-                                                                    String recordingName =
-                                                                            srm.getRecordingName();
-                                                                    // jvmId should always exist
-                                                                    // since we are using directory
-                                                                    // structure
-                                                                    if (srm.getJvmId() != null) {
-                                                                        try {
-                                                                            if (!isArchivedRecording(
-                                                                                    recordingName)) {
-                                                                                logger.info(
-                                                                                        "Potentially"
-                                                                                            + " stale"
-                                                                                            + " metadata"
-                                                                                            + " file:"
-                                                                                            + " {}, for"
-                                                                                            + " target:"
-                                                                                            + " {}",
-                                                                                        recordingName,
-                                                                                        targetId);
-                                                                                staleMetadata.put(
-                                                                                        srm, file);
-                                                                                return;
-                                                                            }
-                                                                        } catch (IOException e) {
-                                                                            logger.error(
-                                                                                    "Could not"
-                                                                                        + " check"
-                                                                                        + " if recording"
-                                                                                        + " {} exists"
-                                                                                        + " on target"
-                                                                                        + " {}, msg:"
-                                                                                        + " {}",
-                                                                                    recordingName,
-                                                                                    targetId,
-                                                                                    e.getMessage());
-                                                                        }
-                                                                    } else {
-                                                                        logger.warn(
-                                                                                "Invalid metadata"
-                                                                                    + " with no"
-                                                                                    + " jvmId"
-                                                                                    + " originating"
-                                                                                    + " from {}",
-                                                                                targetId);
-                                                                        deleteMetadataPathIfExists(
-                                                                                file);
-                                                                    }
-                                                                } catch (IOException ioe) {
-                                                                    logger.error(
-                                                                            "Metadata"
-                                                                                + " deserialization"
-                                                                                + " exception",
-                                                                            ioe);
-                                                                }
-                                                            });
-                                        }
-                                    } catch (IOException e) {
-                                        logger.error(
-                                                "Could not read metadata subdirectory"
-                                                        + " {}, msg: {}",
-                                                subdirectory,
-                                                e.getMessage());
-                                    }
-                                }
-                                /* TODO: This is a ONE-TIME migration check for the old metadata files that were stored without a directory
-                                (remove after 2.2.0 release and replace with subdirectory::fs.isDirectory (ignore files))? */
-                                else if (fs.isRegularFile(subdirectory)) {
-                                    StoredRecordingMetadata srm;
-                                    try (BufferedReader br = fs.readFile(subdirectory)) {
-                                        srm = gson.fromJson(br, StoredRecordingMetadata.class);
-                                    } catch (Exception e) {
-                                        logger.error(
-                                                "Could not read file {} in recordingMetadata"
-                                                        + " directory, msg: {}",
-                                                subdirectory,
-                                                e.getMessage());
-                                        deleteMetadataPathIfExists(subdirectory);
-                                        return;
-                                    }
-                                    logger.info("Found old metadata file: {}", subdirectory);
-                                    String targetId = srm.getTargetId();
-                                    String recordingName = srm.getRecordingName();
-                                    if (targetId.equals("archives")) {
-                                        try {
-                                            if (isArchivedRecording(recordingName)) {
-
-                                                Path recordingPath =
-                                                        archiveHelper
-                                                                .getRecordingPath(recordingName)
-                                                                .get();
-                                                String subdirectoryName =
-                                                        recordingPath
-                                                                .getParent()
-                                                                .getFileName()
-                                                                .toString();
-                                                String newTargetId =
-                                                        new String(
-                                                                base32.decode(subdirectoryName),
-                                                                StandardCharsets.UTF_8);
-                                                logger.info(
-                                                        "Found metadata corresponding"
-                                                                + " to archived recording:"
-                                                                + " {}",
-                                                        recordingName);
-                                                setRecordingMetadata(
-                                                        new ConnectionDescriptor(newTargetId),
-                                                        recordingName,
-                                                        new Metadata(srm.getLabels()));
-                                            } else {
-                                                logger.warn(
-                                                        "Found metadata for lost"
-                                                                + " archived recording: {}",
-                                                        recordingName,
-                                                        subdirectory);
-                                                deleteMetadataPathIfExists(subdirectory);
-                                            }
-                                        } catch (InterruptedException | ExecutionException e) {
-                                            logger.error(
-                                                    "Couldn't get recording path {}",
-                                                    recordingName);
-                                        } catch (IOException e) {
-                                            logger.error(
-                                                    "Couldn't check if recording was"
-                                                            + " archived {}",
-                                                    recordingName);
-                                        }
-
-                                    } else {
-                                        logger.info(
-                                                "Potentially stale metadata file: {}, for target:"
-                                                        + " {}",
-                                                recordingName,
-                                                targetId);
-                                        staleMetadata.put(srm, subdirectory);
-                                        return;
-                                    }
-                                    try {
-                                        fs.deleteIfExists(subdirectory);
-                                        logger.info("Removed old metadata file: {}", subdirectory);
-                                    } catch (IOException e) {
-                                        logger.error(
-                                                "Failed to delete metadata file {}," + " msg: {}",
-                                                subdirectory,
-                                                e.getCause());
-                                    }
-                                } else {
-                                    logger.warn(
-                                            "Recording metadata subdirectory {} is"
-                                                    + " neither a directory nor a file",
-                                            subdirectory);
-                                    throw new IllegalStateException(
-                                            subdirectory + " is neither a directory nor a file");
-                                }
-                            });
-
+            MetadataStartupPhase phase = beginPhase("Metadata file migration");
+            migrateMetadataFiles(archiveHelper, staleMetadata);
+            endPhase(phase);
             future.complete();
         } catch (IOException e) {
             logger.error(
@@ -370,59 +205,111 @@ public class RecordingMetadataManager extends AbstractVerticle
                             "Event bus [{}]: {}",
                             DiscoveryStorage.DISCOVERY_STARTUP_ADDRESS,
                             message.body());
-                    new Thread(
-                                    () -> {
-                                        try {
-                                            logger.info("Starting archive migration");
-                                            archiveHelper.migrate(executor);
-                                            logger.info("Successfully migrated archives");
-                                            pruneStaleMetadata(staleMetadata);
-                                            logger.info("Successfully pruned all stale metadata");
-                                        } catch (Exception e) {
-                                            logger.warn(
-                                                    "Couldn't read archived recordings directory",
-                                                    e);
-                                        } finally {
-                                            migrationLatch.countDown();
-                                        }
-                                    })
-                            .start();
+                    executor.execute(
+                            () -> {
+                                try {
+                                    logger.info("Starting archive migration");
+                                    MetadataStartupPhase phase = beginPhase("Archive migration");
+                                    archiveHelper.migrate();
+                                    endPhase(phase);
+
+                                    phase = beginPhase("Stale metadata scan");
+                                    staleMetadata.addAll(findStaleMetadata());
+                                    endPhase(phase);
+
+                                    phase = beginPhase("Stale metadata pruning");
+                                    pruneStaleMetadata(staleMetadata);
+                                    endPhase(phase);
+                                    endPhase(startup);
+                                } catch (Exception e) {
+                                    logger.warn("Couldn't read archived recordings directory", e);
+                                } finally {
+                                    migrated = true;
+                                    deferred.forEach(Runnable::run);
+                                    deferred.clear();
+                                }
+                            });
                 });
     }
 
+    private MetadataStartupPhase beginPhase(String phase) {
+        MetadataStartupPhase evt = new MetadataStartupPhase(phase);
+        evt.begin();
+        return evt;
+    }
+
+    private void endPhase(MetadataStartupPhase evt) {
+        evt.end();
+        evt.commit();
+        logger.info(
+                "{} completed in {}ms",
+                evt.phase,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - evt.beginNanos));
+    }
+
+    /**
+     * The stored labels of recordings which are neither archived nor uploaded, and so may belong to
+     * active recordings which were lost while Cryostat was down.
+     */
+    private List<StoredRecordingMetadata> findStaleMetadata() throws IOException {
+        Set<String> archivedRecordings = getArchivedRecordingNames();
+        List<StoredRecordingMetadata> staleMetadata = new ArrayList<>();
+        for (StoredRecordingLabels stored : dao.getAll()) {
+            String jvmId = stored.getJvmId();
+            if (jvmIdHelper.isSpecialDirectory(jvmIdHelper.jvmIdToSubdirectoryName(jvmId))
+                    || archivedRecordings.contains(stored.getRecordingName())) {
+                continue;
+            }
+            logger.info(
+                    "Potentially stale metadata: {}, for target: {}",
+                    stored.getRecordingName(),
+                    stored.getTargetId());
+            staleMetadata.add(
+                    StoredRecordingMetadata.of(
+                            stored.getTargetId(),
+                            jvmId,
+                            stored.getRecordingName(),
+                            new Metadata(stored.getLabels())));
+        }
+        return staleMetadata;
+    }
+
     @Override
     public void stop() {
         this.platformClient.removeTargetDiscoveryListener(this);
+        writer.flush();
     }
 
     @Override
     public void accept(TargetDiscoveryEvent tde) {
         executor.execute(
                 () -> {
-                    try {
-                        migrationLatch.await();
-                    } catch (InterruptedException e) {
-                        logger.error("Migration wait exception", e);
-                    }
-
-                    switch (tde.getEventKind()) {
-                        case FOUND:
-                            handleFoundTarget(tde.getServiceRef());
-                            break;
-                        case LOST:
-                            // don't handle directly, let the JvmIdHelper invalidate its cached
-                            // ID and inform us of that occurrence, and use that invalidation
-                            // message to clear our stored metadata
-                            break;
-                        case MODIFIED:
-                            handleFoundTarget(tde.getServiceRef());
-                            break;
-                        default:
-                            break;
+                    if (!migrated) {
+                        deferred.add(() -> handle(tde));
+                        return;
                     }
+                    handle(tde);
                 });
     }
 
+    private void handle(TargetDiscoveryEvent tde) {
+        switch (tde.getEventKind()) {
+            case FOUND:
+                handleFoundTarget(tde.getServiceRef());
+                break;
+            case LOST:
+                // don't handle directly, let the JvmIdHelper invalidate its cached
+                // ID and inform us of that occurrence, and use that invalidation
+                // message to clear our stored metadata
+                break;
+            case MODIFIED:
+                handleFoundTarget(tde.getServiceRef());
+                break;
+            default:
+                break;
+        }
+    }
+
     private void handleFoundTarget(ServiceRef serviceRef) {
         ConnectionDescriptor cd;
         try {
@@ -449,49 +336,201 @@ public class RecordingMetadataManager extends AbstractVerticle
         }
     }
 
-    // Pre-condition: staleMetadata is Mapping of metadata to its filesystem path, pertaining to any
-    // previously active recording
-    private void pruneStaleMetadata(Map<StoredRecordingMetadata, Path> staleMetadata) {
-        logger.info("Beginning to prune potentially stale metadata...");
-        staleMetadata.forEach(
-                (srm, path) -> {
-                    String targetId = srm.getTargetId();
-                    String recordingName = srm.getRecordingName();
-                    ConnectionDescriptor cd;
-                    try {
-                        cd = getConnectionDescriptorWithCredentials(targetId);
-                    } catch (Exception e) {
+    /**
+     * One-time migration of the JSON metadata files written by previous versions into the database.
+     * Each file is deleted once its labels have been stored, and the migration is marked as done so
+     * that it is not repeated.
+     *
+     * <p>If the database does not outlive this process, the files are instead kept, and every label
+     * change is written through to them by {@link RecordingMetadataFiles}, so they are loaded into
+     * the fresh database at each startup and labels such as retention pins are not lost on restart.
+     */
+    private void migrateMetadataFiles(
+            RecordingArchiveHelper archiveHelper, List<StoredRecordingMetadata> staleMetadata)
+            throws IOException {
+        if (!fs.isDirectory(recordingMetadataDir)) {
+            return;
+        }
+        Path marker = recordingMetadataDir.resolve(MIGRATED_MARKER);
+        if (!retainMetadataFiles && fs.exists(marker)) {
+            return;
+        }
+        for (String child : fs.listDirectoryChildren(recordingMetadataDir)) {
+            if (child.equals(MIGRATED_MARKER)) {
+                continue;
+            }
+            Path subdirectory = recordingMetadataDir.resolve(child);
+            if (fs.isDirectory(subdirectory)) {
+                for (String filename : fs.listDirectoryChildren(subdirectory)) {
+                    Path file = subdirectory.resolve(filename);
+                    if (!fs.isRegularFile(file) || filename.equals("connectUrl")) {
+                        continue;
+                    }
+                    StoredRecordingMetadata srm;
+                    try (BufferedReader br = fs.readFile(file)) {
+                        srm = gson.fromJson(br, StoredRecordingMetadata.class);
+                    } catch (IOException | JsonParseException e) {
                         logger.error(
-                                "Could not get credentials for targetId {}, msg: {}",
-                                targetId,
-                                e.getMessage());
-                        return;
+                                "Could not read metadata file {}, msg: {}", file, e.getMessage());
+                        deleteMetadataPathIfExists(file);
+                        continue;
                     }
-                    logger.info(
-                            "Attempting to prune potentially stale recording metadata {}, from"
-                                    + " target {}, on path {}",
-                            recordingName,
-                            targetId,
-                            path);
-                    if (!targetRecordingExists(cd, recordingName)) {
-                        // recording was lost
-                        logger.info("Active recording lost {}, deleting...", recordingName);
-                        deleteMetadataPathIfExists(path);
-                    } else {
-                        // target still up
-                        logger.info(
-                                "Found active recording corresponding to recording metadata: {}",
-                                recordingName);
-                        try {
-                            setRecordingMetadata(cd, recordingName, new Metadata(srm.getLabels()));
-                        } catch (IOException e) {
-                            logger.error(
-                                    "Could not set metadata for recording: {}, msg: {}",
+                    if (srm == null || srm.getJvmId() == null) {
+                        logger.warn("Invalid metadata with no jvmId in {}", file);
+                        deleteMetadataPathIfExists(file);
+                        continue;
+                    }
+                    dao.put(
+                            srm.getTargetId(),
+                            srm.getJvmId(),
+                            srm.getRecordingName(),
+                            srm.getLabels());
+                    logger.info("Migrated metadata file {}", file);
+                    if (!retainMetadataFiles) {
+                        deleteMetadataPathIfExists(file);
+                    }
+                }
+                if (!retainMetadataFiles && fs.exists(subdirectory)) {
+                    deleteSubdirectoryIfEmpty(subdirectory);
+                }
+            }
+            /* TODO: This is a ONE-TIME migration check for the old metadata files that were stored without a directory
+            (remove after 2.2.0 release and replace with subdirectory::fs.isDirectory (ignore files))? */
+            else if (fs.isRegularFile(subdirectory)) {
+                StoredRecordingMetadata srm;
+                try (BufferedReader br = fs.readFile(subdirectory)) {
+                    srm = gson.fromJson(br, StoredRecordingMetadata.class);
+                } catch (Exception e) {
+                    logger.error(
+                            "Could not read file {} in recordingMetadata directory, msg: {}",
+                            subdirectory,
+                            e.getMessage());
+                    deleteMetadataPathIfExists(subdirectory);
+                    continue;
+                }
+                logger.info("Found old metadata file: {}", subdirectory);
+                String targetId = srm.getTargetId();
+                String recordingName = srm.getRecordingName();
+                if (targetId.equals("archives")) {
+                    try {
+                        if (isArchivedRecording(recordingName)) {
+                            Path recordingPath =
+                                    archiveHelper.getRecordingPath(recordingName).get();
+                            String subdirectoryName =
+                                    recordingPath
+                                            .getName(recordingPath.getNameCount() - 2)
+                                            .toString();
+                            String newTargetId =
+                                    new String(
+                                            base32.decode(subdirectoryName),
+                                            StandardCharsets.UTF_8);
+                            logger.info(
+                                    "Found metadata corresponding to archived recording: {}",
+                                    recordingName);
+                            setRecordingMetadata(
+                                    new ConnectionDescriptor(newTargetId),
                                     recordingName,
-                                    e.getMessage());
+                                    new Metadata(srm.getLabels()));
+                        } else {
+                            logger.warn(
+                                    "Found metadata for lost archived recording: {}",
+                                    recordingName);
                         }
+                    } catch (InterruptedException | ExecutionException e) {
+                        logger.error("Couldn't get recording path {}", recordingName);
+                    } catch (IOException e) {
+                        logger.error("Couldn't check if recording was archived {}", recordingName);
                     }
-                });
+                } else {
+                    logger.info(
+                            "Potentially stale metadata file: {}, for target: {}",
+                            recordingName,
+                            targetId);
+                    staleMetadata.add(srm);
+                }
+                try {
+                    fs.deleteIfExists(subdirectory);
+                    logger.info("Removed old metadata file: {}", subdirectory);
+                } catch (IOException e) {
+                    logger.error(
+                            "Failed to delete metadata file {}, msg: {}",
+                            subdirectory,
+                            e.getCause());
+                }
+            } else {
+                logger.warn(
+                        "Recording metadata subdirectory {} is neither a directory nor a file",
+                        subdirectory);
+                throw new IllegalStateException(
+                        subdirectory + " is neither a directory nor a file");
+            }
+        }
+        if (!retainMetadataFiles) {
+            fs.writeString(
+                    marker,
+                    "",
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+    }
+
+    // Pre-condition: staleMetadata pertains to previously active recordings
+    private void pruneStaleMetadata(List<StoredRecordingMetadata> staleMetadata)
+            throws InterruptedException, ExecutionException {
+        logger.info(
+                "Beginning to prune {} potentially stale metadata entries...",
+                staleMetadata.size());
+        ExecutorService validator = Executors.newFixedThreadPool(validationParallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>(staleMetadata.size());
+            for (StoredRecordingMetadata srm : staleMetadata) {
+                futures.add(validator.submit(() -> pruneStaleMetadata(srm)));
+            }
+            for (var f : futures) {
+                f.get();
+            }
+        } finally {
+            validator.shutdown();
+        }
+    }
+
+    private void pruneStaleMetadata(StoredRecordingMetadata srm) {
+        String targetId = srm.getTargetId();
+        String recordingName = srm.getRecordingName();
+        ConnectionDescriptor cd;
+        try {
+            cd = getConnectionDescriptorWithCredentials(targetId);
+        } catch (Exception e) {
+            logger.error(
+                    "Could not get credentials for targetId {}, msg: {}", targetId, e.getMessage());
+            return;
+        }
+        logger.info(
+                "Attempting to prune potentially stale recording metadata {}, from" + " target {}",
+                recordingName,
+                targetId);
+        if (!targetRecordingExists(cd, recordingName)) {
+            // recording was lost
+            logger.info("Active recording lost {}, deleting...", recordingName);
+            if (srm.getJvmId() != null) {
+                writer.remove(srm.getJvmId(), recordingName);
+                labelIndex.remove(srm.getJvmId(), recordingName);
+            }
+        } else {
+            // target still up
+            logger.info(
+                    "Found active recording corresponding to recording metadata: {}",
+                    recordingName);
+            try {
+                setRecordingMetadata(cd, recordingName, new Metadata(srm.getLabels()));
+            } catch (IOException e) {
+                logger.error(
+                        "Could not set metadata for recording: {}, msg: {}",
+                        recordingName,
+                        e.getMessage());
+            }
+        }
     }
 
     public Future<Metadata> setRecordingMetadataFromPath(
@@ -507,25 +546,25 @@ public class RecordingMetadataManager extends AbstractVerticle
                         .get();
         String jvmId = jvmIdHelper.subdirectoryNameToJvmId(subdirectoryName);
 
-        Path metadataPath = this.getMetadataPath(jvmId, recordingName);
-        fs.writeString(
-                metadataPath,
-                gson.toJson(StoredRecordingMetadata.of(connectUrl, jvmId, recordingName, metadata)),
-                StandardOpenOption.WRITE,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING);
-
-        notificationFactory
-                .createOwnedResourceBuilder(connectUrl, NOTIFICATION_CATEGORY)
-                .messageEntry("recordingName", recordingName)
-                .messageEntry("metadata", metadata)
-                .build()
-                .send();
-
-        return CompletableFuture.completedFuture(metadata);
+        Notification notification =
+                notificationFactory
+                        .createOwnedResourceBuilder(connectUrl, NOTIFICATION_CATEGORY)
+                        .messageEntry("recordingName", recordingName)
+                        .messageEntry("metadata", metadata)
+                        .build();
+
+        CompletableFuture<Void> written =
+                writer.put(connectUrl, jvmId, recordingName, metadata.getLabels());
+
+        // only acknowledge the update once it is durable
+        return written.thenApply(
+                v -> {
+                    notification.send();
+                    return metadata;
+                });
     }
 
-    public Future<Metadata> setRecordingMetadata(
+    public CompletableFuture<Metadata> setRecordingMetadata(
             ConnectionDescriptor connectionDescriptor,
             String recordingName,
             Metadata metadata,
@@ -536,33 +575,34 @@ public class RecordingMetadataManager extends AbstractVerticle
         Objects.requireNonNull(metadata);
         String jvmId = jvmIdHelper.getJvmId(connectionDescriptor);
 
-        Path metadataPath = this.getMetadataPath(jvmId, recordingName);
-        fs.writeString(
-                metadataPath,
-                gson.toJson(
-                        StoredRecordingMetadata.of(
-                                connectionDescriptor.getTargetId(),
-                                jvmId,
-                                recordingName,
-                                metadata)),
-                StandardOpenOption.WRITE,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING);
-
-        if (issueNotification) {
-            notificationFactory
-                    .createOwnedResourceBuilder(
-                            connectionDescriptor.getTargetId(), NOTIFICATION_CATEGORY)
-                    .messageEntry("recordingName", recordingName)
-                    .messageEntry("metadata", metadata)
-                    .build()
-                    .send();
-        }
-
-        return CompletableFuture.completedFuture(metadata);
-    }
-
-    public Future<Metadata> setRecordingMetadata(
+        Notification notification =
+                issueNotification
+                        ? notificationFactory
+                                .createOwnedResourceBuilder(
+                                        connectionDescriptor.getTargetId(), NOTIFICATION_CATEGORY)
+                                .messageEntry("recordingName", recordingName)
+                                .messageEntry("metadata", metadata)
+                                .build()
+                        : null;
+
+        CompletableFuture<Void> written =
+                writer.put(
+                        connectionDescriptor.getTargetId(),
+                        jvmId,
+                        recordingName,
+                        metadata.getLabels());
+
+        // only acknowledge the update once it is durable
+        return written.thenApply(
+                v -> {
+                    if (notification != null) {
+                        notification.send();
+                    }
+                    return metadata;
+                });
+    }
+
+    public CompletableFuture<Metadata> setRecordingMetadata(
             ConnectionDescriptor connectionDescriptor, String recordingName, Metadata metadata)
             throws IOException {
         Objects.requireNonNull(connectionDescriptor);
@@ -571,7 +611,7 @@ public class RecordingMetadataManager extends AbstractVerticle
         return setRecordingMetadata(connectionDescriptor, recordingName, metadata, false);
     }
 
-    public Future<Metadata> setRecordingMetadata(String recordingName, Metadata metadata)
+    public CompletableFuture<Metadata> setRecordingMetadata(String recordingName, Metadata metadata)
             throws IOException {
         Objects.requireNonNull(recordingName);
         Objects.requireNonNull(metadata);
@@ -584,41 +624,110 @@ public class RecordingMetadataManager extends AbstractVerticle
         Objects.requireNonNull(connectionDescriptor);
         Objects.requireNonNull(recordingName);
 
-        Metadata metadata = null;
-
         String jvmId;
         if (connectionDescriptor.getTargetId().equals(UPLOADS)) {
             jvmId = UPLOADS;
         } else {
             jvmId = jvmIdHelper.getJvmId(connectionDescriptor);
         }
-
-        Path metadataPath = getMetadataPath(jvmId, recordingName);
-        if (!fs.isRegularFile(metadataPath)) {
-            metadata = new Metadata();
-            fs.writeString(metadataPath, gson.toJson(metadata));
-        } else {
-            try (BufferedReader br = fs.readFile(metadataPath)) {
-                metadata = gson.fromJson(br, Metadata.class);
-            }
-        }
-        return metadata;
+        return findMetadata(jvmId, recordingName).orElseGet(Metadata::new);
     }
 
     // Public metadata getter which doesn't rely on target being available
     public Metadata getMetadataFromPathIfExists(String jvmId, String recordingName)
             throws IOException {
+        return findMetadata(jvmId, recordingName).orElseGet(Metadata::new);
+    }
+
+    public Optional<Metadata> findMetadata(String jvmId, String recordingName) throws IOException {
         Objects.requireNonNull(jvmId);
         Objects.requireNonNull(recordingName);
-        Path metadataPath = getMetadataPath(jvmId, recordingName);
-        if (!fs.isRegularFile(metadataPath)) {
-            Metadata metadata = new Metadata();
-            fs.writeString(metadataPath, gson.toJson(metadata));
-            return metadata;
+        Optional<Map<String, String>> pending = writer.find(jvmId, recordingName);
+        if (pending.isPresent()) {
+            return pending.map(Metadata::new);
         }
-        try (BufferedReader br = fs.readFile(metadataPath)) {
-            return gson.fromJson(br, Metadata.class);
+        return dao.find(jvmId, recordingName).map(s -> new Metadata(s.getLabels()));
+    }
+
+    /**
+     * Select the recordings of a target JVM whose labels satisfy every one of the label selectors.
+     * Recordings which have labels are selected by the in-memory label index. Recordings without
+     * any labels are not indexed, so they are selected by testing the selectors against an empty
+     * label set.
+     */
+    public <T> List<T> filterByLabels(
+            String jvmId,
+            List<T> recordings,
+            Function<T, String> name,
+            Function<T, Metadata> metadata,
+            List<String> labelSelectors) {
+        List<LabelSelectorMatcher> selectors = parseSelectors(labelSelectors);
+        return recordings.stream()
+                .filter(selectForJvm(jvmId, selectors, name, metadata))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Select the recordings of any number of targets whose labels satisfy every one of the label
+     * selectors, as {@link #filterByLabels(String, List, Function, Function, List)}. Recordings are
+     * grouped by target, and each target's recordings are selected by the label index of its JVM.
+     * The recordings of targets whose JVM ID cannot be resolved are selected by testing the
+     * selectors against their labels.
+     */
+    public <T> List<T> filterByLabels(
+            List<T> recordings,
+            Function<T, String> targetId,
+            Function<T, String> name,
+            Function<T, Metadata> metadata,
+            List<String> labelSelectors) {
+        List<LabelSelectorMatcher> selectors = parseSelectors(labelSelectors);
+        Map<String, Predicate<T>> byTarget = new HashMap<>();
+        return recordings.stream()
+                .filter(
+                        r ->
+                                byTarget.computeIfAbsent(
+                                                targetId.apply(r),
+                                                t -> selectForTarget(t, selectors, name, metadata))
+                                        .test(r))
+                .collect(Collectors.toList());
+    }
+
+    private List<LabelSelectorMatcher> parseSelectors(List<String> labelSelectors) {
+        return labelSelectors.stream()
+                .map(LabelSelectorMatcher::parse)
+                .collect(Collectors.toList());
+    }
+
+    private <T> Predicate<T> selectForTarget(
+            String targetId,
+            List<LabelSelectorMatcher> selectors,
+            Function<T, String> name,
+            Function<T, Metadata> metadata) {
+        String jvmId;
+        if (UPLOADS.equals(targetId)) {
+            jvmId = UPLOADS;
+        } else {
+            try {
+                jvmId = jvmIdHelper.getJvmId(targetId);
+            } catch (JvmIdHelper.JvmIdGetException e) {
+                logger.warn("Could not resolve JVM ID of {}, msg: {}", targetId, e.getMessage());
+                return r -> selectors.stream().allMatch(s -> s.test(metadata.apply(r).getLabels()));
+            }
         }
+        return selectForJvm(jvmId, selectors, name, metadata);
+    }
+
+    private <T> Predicate<T> selectForJvm(
+            String jvmId,
+            List<LabelSelectorMatcher> selectors,
+            Function<T, String> name,
+            Function<T, Metadata> metadata) {
+        boolean matchesUnlabelled = selectors.stream().allMatch(s -> s.test(Map.of()));
+        Set<String> matched = labelIndex.select(jvmId, selectors);
+        return r ->
+                metadata.apply(r).getLabels().isEmpty()
+                        ? matchesUnlabelled
+                        : matched.contains(name.apply(r));
     }
 
     public Metadata deleteRecordingMetadataIfExists(
@@ -635,17 +744,9 @@ public class RecordingMetadataManager extends AbstractVerticle
         Objects.requireNonNull(jvmId);
         Objects.requireNonNull(recordingName);
 
-        Path metadataPath = this.getMetadataPath(jvmId, recordingName);
-        if (fs.isRegularFile(metadataPath)) {
-            try (BufferedReader br = fs.readFile(metadataPath)) {
-                Metadata metadata = gson.fromJson(br, Metadata.class);
-                if (fs.deleteIfExists(metadataPath)) {
-                    deleteSubdirectoryIfEmpty(metadataPath.getParent());
-                }
-                return metadata;
-            }
-        }
-        return null;
+        Metadata removed = writer.remove(jvmId, recordingName).map(Metadata::new).orElse(null);
+        labelIndex.remove(jvmId, recordingName);
+        return removed;
     }
 
     public Future<Metadata> copyMetadataToArchives(
@@ -716,26 +817,9 @@ public class RecordingMetadataManager extends AbstractVerticle
             }
 
             logger.info("[{}] Metadata transfer: {} -> {}", targetId, oldJvmId, newJvmId);
-            Path oldParent = getMetadataPath(oldJvmId);
-            for (String encodedFilename : fs.listDirectoryChildren(oldParent)) {
-                Path oldMetadataPath = oldParent.resolve(encodedFilename);
-                try (BufferedReader storedMetadata = fs.readFile(oldMetadataPath)) {
-                    StoredRecordingMetadata srm =
-                            gson.fromJson(storedMetadata, StoredRecordingMetadata.class);
-                    String recordingName = srm.recordingName;
-                    StoredRecordingMetadata updatedSrm =
-                            StoredRecordingMetadata.of(targetId, newJvmId, recordingName, srm);
-                    Path newLocation = getMetadataPath(newJvmId, recordingName);
-                    fs.writeString(newLocation, gson.toJson(updatedSrm));
-
-                    fs.deleteIfExists(oldMetadataPath);
-                } catch (Exception e) {
-                    logger.error("Metadata could not be transferred", e);
-                }
-            }
-            if (fs.listDirectoryChildren(oldParent).isEmpty()) {
-                fs.deleteIfExists(oldParent);
-            }
+            writer.reassign(oldJvmId, newJvmId, targetId);
+            labelIndex.invalidate(oldJvmId);
+            labelIndex.invalidate(newJvmId);
             logger.info(
                     "[{}] Metadata successfully transferred: {} -> {}",
                     targetId,
@@ -748,15 +832,12 @@ public class RecordingMetadataManager extends AbstractVerticle
 
     private void removeLostTargetMetadata(String jvmId) {
         try {
-            for (String encodedFilename : fs.listDirectoryChildren(getMetadataPath(jvmId))) {
-                String recordingName =
-                        new String(base32.decode(encodedFilename), StandardCharsets.UTF_8);
-                try {
-                    if (!isArchivedRecording(recordingName)) {
-                        deleteRecordingMetadataIfExists(jvmId, recordingName);
-                    }
-                } catch (IOException e) {
-                    logger.error("Metadata deletion exception", e);
+            Set<String> archivedRecordings = getArchivedRecordingNames();
+            writer.flush();
+            for (StoredRecordingLabels stored : dao.findByJvmId(jvmId)) {
+                if (!archivedRecordings.contains(stored.getRecordingName())) {
+                    writer.remove(jvmId, stored.getRecordingName());
+                    labelIndex.remove(jvmId, stored.getRecordingName());
                 }
             }
         } catch (IOException e) {
@@ -764,6 +845,20 @@ public class RecordingMetadataManager extends AbstractVerticle
         }
     }
 
+    private Set<String> getArchivedRecordingNames() throws IOException {
+        Set<String> names = new HashSet<>();
+        if (!fs.isDirectory(archivedRecordingsPath)) {
+            return names;
+        }
+        for (String subdirectory : fs.listDirectoryChildren(archivedRecordingsPath)) {
+            Path path = archivedRecordingsPath.resolve(subdirectory);
+            if (fs.isDirectory(path)) {
+                names.addAll(fs.listDirectoryChildren(path));
+            }
+        }
+        return names;
+    }
+
     private boolean isArchivedRecording(String recordingName) throws IOException {
         try {
             return this.fs.listDirectoryChildren(archivedRecordingsPath).stream()
@@ -819,26 +914,6 @@ public class RecordingMetadataManager extends AbstractVerticle
         }
     }
 
-    private Path getMetadataPath(String jvmId) throws IOException {
-        String subdirectory = jvmIdHelper.jvmIdToSubdirectoryName(jvmId);
-
-        Path parentDir = recordingMetadataDir.resolve(subdirectory);
-        if (parentDir == null) {
-            throw new IllegalStateException();
-        }
-        if (!fs.isDirectory(parentDir)) {
-            fs.createDirectory(parentDir);
-        }
-        return parentDir;
-    }
-
-    private Path getMetadataPath(String jvmId, String recordingName) throws IOException {
-        Path subdirectory = getMetadataPath(jvmId);
-        String filename =
-                base32.encodeAsString(recordingName.getBytes(StandardCharsets.UTF_8)) + ".json";
-        return subdirectory.resolve(filename);
-    }
-
     private boolean deleteMetadataPathIfExists(Path path) {
         if (fs.exists(path)) {
             try {
@@ -951,6 +1026,22 @@ public class RecordingMetadataManager extends AbstractVerticle
         }
     }
 
+    @Name("io.cryostat.recordings.RecordingMetadataManager.MetadataStartupPhase")
+    @Label("Recording Metadata Startup Phase")
+    @Category("Cryostat")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class MetadataStartupPhase extends jdk.jfr.Event {
+        String phase;
+        // not recorded, only used to log the phase duration
+        transient long beginNanos = System.nanoTime();
+
+        MetadataStartupPhase(String phase) {
+            this.phase = phase;
+        }
+    }
+
     public static class Metadata {
         protected final Map<String, String> labels;
 
@@ -0,0 +1,240 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind buffer for recording labels. Labels set for a recording are held for a short delay,
+ * during which further updates to the same recording replace them, and are then written to the
+ * database together with every other pending update in a single transaction. The future returned
+ * for an update completes only once the labels it set, or labels which replaced them, have been
+ * committed, so that callers can defer acknowledging the update until it is durable.
+ *
+ * <p>Pending labels are visible to {@link #find} before they are written. Removals and
+ * reassignments go straight to the database, ordered after any write already in progress, and
+ * supersede pending updates of the recordings they affect.
+ *
+ * <p>If given {@link RecordingMetadataFiles}, every committed change is also copied to the metadata
+ * files, ordered with the database writes.
+ *
+ * <p>Listeners registered with {@link #onCommit} are told of every batch of labels once it has been
+ * committed, in commit order, so that anything derived from the stored labels never holds labels
+ * which failed to be written.
+ */
+class RecordingMetadataWriter {
+
+    private final StoredRecordingLabelsDao dao;
+    private final ScheduledExecutorService scheduler;
+    private final long delayMs;
+    // null unless the database does not outlive the process
+    private final RecordingMetadataFiles files;
+    private final Map<Key, Pending> pending = new LinkedHashMap<>();
+    private final Object writeLock = new Object();
+    private final List<Consumer<List<StoredRecordingLabels>>> commitListeners =
+            new CopyOnWriteArrayList<>();
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private ScheduledFuture<?> scheduled;
+
+    RecordingMetadataWriter(
+            StoredRecordingLabelsDao dao, ScheduledExecutorService scheduler, long delayMs) {
+        this(dao, scheduler, delayMs, null);
+    }
+
+    RecordingMetadataWriter(
+            StoredRecordingLabelsDao dao,
+            ScheduledExecutorService scheduler,
+            long delayMs,
+            RecordingMetadataFiles files) {
+        this.dao = dao;
+        this.scheduler = scheduler;
+        this.delayMs = delayMs;
+        this.files = files;
+    }
+
+    void onCommit(Consumer<List<StoredRecordingLabels>> listener) {
+        commitListeners.add(listener);
+    }
+
+    /**
+     * Queue the labels of a recording to be written, replacing any labels still pending for it.
+     *
+     * @return completes once the labels have been committed to the database
+     */
+    synchronized CompletableFuture<Void> put(
+            String targetId, String jvmId, String recordingName, Map<String, String> labels) {
+        Key key = new Key(jvmId, recordingName);
+        Pending p = pending.get(key);
+        if (p == null || p.writing) {
+            p = new Pending();
+            pending.put(key, p);
+        }
+        p.targetId = targetId;
+        p.labels = Map.copyOf(labels);
+        if (scheduled == null) {
+            scheduled = scheduler.schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+        }
+        return p.future;
+    }
+
+    /** The labels pending for a recording which have not yet been committed, if any. */
+    synchronized Optional<Map<String, String>> find(String jvmId, String recordingName) {
+        return Optional.ofNullable(pending.get(new Key(jvmId, recordingName))).map(p -> p.labels);
+    }
+
+    /**
+     * Discard any labels pending for a recording and remove its stored labels.
+     *
+     * @return the labels the recording had, pending or stored
+     */
+    Optional<Map<String, String>> remove(String jvmId, String recordingName) {
+        synchronized (writeLock) {
+            Pending p;
+            synchronized (this) {
+                p = pending.remove(new Key(jvmId, recordingName));
+            }
+            Optional<Map<String, String>> stored =
+                    dao.remove(jvmId, recordingName).map(StoredRecordingLabels::getLabels);
+            if (files != null) {
+                files.delete(jvmId, recordingName);
+            }
+            if (p == null) {
+                return stored;
+            }
+            p.future.complete(null);
+            return Optional.of(p.labels);
+        }
+    }
+
+    /** Write any pending labels, then move the stored labels of one JVM ID to another. */
+    void reassign(String oldJvmId, String newJvmId, String targetId) {
+        synchronized (writeLock) {
+            flush();
+            dao.reassign(oldJvmId, newJvmId, targetId);
+            if (files != null) {
+                files.reassign(oldJvmId, dao.findByJvmId(newJvmId));
+            }
+        }
+    }
+
+    /** Write every pending update now, ex. on shutdown, rather than waiting for the delay. */
+    void flush() {
+        synchronized (writeLock) {
+            List<Map.Entry<Key, Pending>> batch;
+            synchronized (this) {
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                    scheduled = null;
+                }
+                batch = new ArrayList<>(pending.entrySet());
+                batch.forEach(e -> e.getValue().writing = true);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<StoredRecordingLabels> labels = new ArrayList<>(batch.size());
+            for (Map.Entry<Key, Pending> e : batch) {
+                labels.add(
+                        new StoredRecordingLabels(
+                                e.getValue().targetId,
+                                e.getKey().jvmId,
+                                e.getKey().recordingName,
+                                e.getValue().labels));
+            }
+            Exception failure = null;
+            try {
+                dao.putAll(labels);
+                logger.debug("Wrote labels of {} recordings", labels.size());
+            } catch (Exception e) {
+                logger.error("Failed to write labels of {} recordings", labels.size(), e);
+                failure = e;
+            }
+            if (failure == null) {
+                if (files != null) {
+                    files.write(labels);
+                }
+                for (Consumer<List<StoredRecordingLabels>> listener : commitListeners) {
+                    try {
+                        listener.accept(labels);
+                    } catch (Exception e) {
+                        logger.error("Label commit listener failed", e);
+                    }
+                }
+            }
+            synchronized (this) {
+                for (Map.Entry<Key, Pending> e : batch) {
+                    pending.remove(e.getKey(), e.getValue());
+                }
+            }
+            for (Map.Entry<Key, Pending> e : batch) {
+                if (failure == null) {
+                    e.getValue().future.complete(null);
+                } else {
+                    e.getValue().future.completeExceptionally(failure);
+                }
+            }
+        }
+    }
+
+    private static class Pending {
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private String targetId;
+        private Map<String, String> labels;
+        private boolean writing;
+    }
+
+    private static class Key {
+        private final String jvmId;
+        private final String recordingName;
+
+        Key(String jvmId, String recordingName) {
+            this.jvmId = Objects.requireNonNull(jvmId);
+            this.recordingName = Objects.requireNonNull(recordingName);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return jvmId.equals(other.jvmId) && recordingName.equals(other.recordingName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(jvmId, recordingName);
+        }
+    }
+}
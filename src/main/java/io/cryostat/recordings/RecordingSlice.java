@@ -0,0 +1,189 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * The chunks of a JFR recording file which overlap a period of time. Each chunk of a recording
+ * carries its own metadata and constant pools, so any subset of the chunks concatenated together is
+ * itself a well-formed recording. The overlapping chunks are found by reading only the fixed-size
+ * header of each chunk and seeking past its body, so slicing a short period out of a long recording
+ * reads very little of the file.
+ */
+public class RecordingSlice {
+
+    private final Path recording;
+    private final List<Range> ranges;
+    private final long startTime;
+    private final long endTime;
+    private final int chunkCount;
+
+    private RecordingSlice(
+            Path recording, List<Range> ranges, long startTime, long endTime, int chunkCount) {
+        this.recording = recording;
+        this.ranges = Collections.unmodifiableList(ranges);
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.chunkCount = chunkCount;
+    }
+
+    /**
+     * Walk the chunk headers of the recording and select the chunks which cover any part of the
+     * closed range [from, to] of epoch milliseconds.
+     *
+     * @throws InvalidJfrFileException if the chunk headers are not well-formed
+     */
+    public static RecordingSlice read(Path recording, long from, long to)
+            throws IOException, InvalidJfrFileException {
+        List<Range> ranges = new ArrayList<>();
+        long startTime = Long.MAX_VALUE;
+        long endTime = Long.MIN_VALUE;
+        int chunkCount = 0;
+        ByteBuffer header = ByteBuffer.allocate(JfrChunkParser.HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(recording, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                throw new InvalidJfrFileException();
+            }
+            long position = 0;
+            while (position < size) {
+                header.clear();
+                while (header.hasRemaining()) {
+                    if (channel.read(header, position + header.position()) < 0) {
+                        throw new InvalidJfrFileException();
+                    }
+                }
+                header.flip();
+                for (byte b : JfrChunkParser.MAGIC) {
+                    if (header.get() != b) {
+                        throw new InvalidJfrFileException();
+                    }
+                }
+                short major = header.getShort();
+                header.getShort(); // minor
+                long chunkSize = header.getLong();
+                header.getLong(); // constant pool offset
+                header.getLong(); // metadata offset
+                long chunkStartNanos = header.getLong();
+                long chunkDurationNanos = header.getLong();
+                if ((major != 1 && major != 2)
+                        || chunkSize < JfrChunkParser.HEADER_SIZE
+                        || chunkSize > size - position
+                        || chunkDurationNanos < 0) {
+                    throw new InvalidJfrFileException();
+                }
+                long chunkStart = TimeUnit.NANOSECONDS.toMillis(chunkStartNanos);
+                long chunkEnd = TimeUnit.NANOSECONDS.toMillis(chunkStartNanos + chunkDurationNanos);
+                if (chunkStart <= to && chunkEnd >= from) {
+                    Range last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+                    if (last != null && last.offset + last.length == position) {
+                        ranges.set(
+                                ranges.size() - 1, new Range(last.offset, last.length + chunkSize));
+                    } else {
+                        ranges.add(new Range(position, chunkSize));
+                    }
+                    startTime = Math.min(startTime, chunkStart);
+                    endTime = Math.max(endTime, chunkEnd);
+                    chunkCount++;
+                }
+                position += chunkSize;
+            }
+        }
+        if (chunkCount == 0) {
+            return empty(recording);
+        }
+        return new RecordingSlice(recording, ranges, startTime, endTime, chunkCount);
+    }
+
+    /** A slice which selects none of the recording's chunks. */
+    public static RecordingSlice empty(Path recording) {
+        return new RecordingSlice(recording, List.of(), 0, 0, 0);
+    }
+
+    public Path getRecording() {
+        return recording;
+    }
+
+    /** Epoch milliseconds at which the earliest selected chunk begins, or 0 if there are none. */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /** Epoch milliseconds at which the latest selected chunk ends, or 0 if there are none. */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public boolean isEmpty() {
+        return chunkCount == 0;
+    }
+
+    /** Total size in bytes of the selected chunks. */
+    public long getLength() {
+        return ranges.stream().mapToLong(r -> r.length).sum();
+    }
+
+    /**
+     * Stream the selected chunks to the destination in file order, reading each contiguous run of
+     * chunks in turn with backpressure from the destination. The destination is ended once every
+     * chunk has been written, but is left open if reading fails part-way.
+     */
+    public Future<Void> pipeTo(Vertx vertx, WriteStream<Buffer> destination) {
+        Future<Void> piped = Future.succeededFuture();
+        for (Range range : ranges) {
+            piped =
+                    piped.compose(
+                            v ->
+                                    RecordingStreams.pipeRange(
+                                            vertx,
+                                            recording,
+                                            range.offset,
+                                            range.length,
+                                            destination));
+        }
+        return piped.compose(v -> destination.end());
+    }
+
+    private static class Range {
+        final long offset;
+        final long length;
+
+        Range(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
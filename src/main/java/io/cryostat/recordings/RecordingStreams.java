@@ -0,0 +1,205 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * Streams archived recording files into a single download. Files are read one at a time and piped
+ * to the destination with backpressure, so only a bounded amount of any file is ever held in memory
+ * and nothing is staged on disk.
+ */
+public class RecordingStreams {
+
+    private RecordingStreams() {}
+
+    /**
+     * Stream the recordings back to back. JFR recordings are sequences of self-contained chunks, so
+     * the concatenation of several recordings is itself a well-formed recording. The destination is
+     * ended once every recording has been written, but is left open if reading fails part-way.
+     */
+    public static Future<Void> concatenate(
+            Vertx vertx, List<Path> recordings, WriteStream<Buffer> destination) {
+        Future<Void> piped = Future.succeededFuture();
+        for (Path recording : recordings) {
+            piped = piped.compose(v -> pipeRange(vertx, recording, 0, Long.MAX_VALUE, destination));
+        }
+        return piped.compose(v -> destination.end());
+    }
+
+    /**
+     * Stream the recordings as the entries of a zip archive, compressing each as it is read. The
+     * destination is ended once the archive is complete, but is left open if reading fails
+     * part-way.
+     *
+     * @param entries the recording files to include, keyed by their entry names in the archive
+     */
+    public static Future<Void> zip(
+            Vertx vertx, Map<String, Path> entries, WriteStream<Buffer> destination) {
+        ZipWriteStream zip = new ZipWriteStream(destination);
+        Future<Void> piped = Future.succeededFuture();
+        for (Map.Entry<String, Path> entry : entries.entrySet()) {
+            piped =
+                    piped.compose(v -> zip.putNextEntry(entry.getKey()))
+                            .compose(
+                                    v ->
+                                            pipeRange(
+                                                    vertx,
+                                                    entry.getValue(),
+                                                    0,
+                                                    Long.MAX_VALUE,
+                                                    zip));
+        }
+        return piped.compose(v -> zip.finish()).compose(v -> destination.end());
+    }
+
+    /**
+     * Pipe {@code length} bytes of a file, beginning at {@code offset}, to the destination without
+     * ending it. A length of {@link Long#MAX_VALUE} reads to the end of the file.
+     */
+    static Future<Void> pipeRange(
+            Vertx vertx, Path file, long offset, long length, WriteStream<Buffer> destination) {
+        OpenOptions options = new OpenOptions().setRead(true).setWrite(false).setCreate(false);
+        return vertx.fileSystem()
+                .open(file.toString(), options)
+                .compose(
+                        f -> {
+                            f.setReadPos(offset).setReadLength(length);
+                            return f.pipe()
+                                    .endOnComplete(false)
+                                    .to(destination)
+                                    .eventually(v -> f.close());
+                        });
+    }
+
+    /**
+     * Deflates the bytes written to it into zip entries, forwarding the compressed output to the
+     * destination after every write so that the destination's write queue, not this stream, applies
+     * backpressure to the source.
+     */
+    private static class ZipWriteStream implements WriteStream<Buffer> {
+        private final WriteStream<Buffer> destination;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private final ZipOutputStream zip = new ZipOutputStream(pending);
+
+        ZipWriteStream(WriteStream<Buffer> destination) {
+            this.destination = destination;
+            // recordings are compressed on the event loop as they are read, so favour speed
+            zip.setLevel(Deflater.BEST_SPEED);
+        }
+
+        Future<Void> putNextEntry(String name) {
+            try {
+                zip.putNextEntry(new ZipEntry(name));
+            } catch (IOException e) {
+                return Future.failedFuture(e);
+            }
+            return flush();
+        }
+
+        Future<Void> finish() {
+            try {
+                zip.finish();
+            } catch (IOException e) {
+                return Future.failedFuture(e);
+            }
+            return flush();
+        }
+
+        private Future<Void> flush() {
+            if (pending.size() == 0) {
+                return Future.succeededFuture();
+            }
+            Buffer buffer = Buffer.buffer(pending.toByteArray());
+            pending.reset();
+            return destination.write(buffer);
+        }
+
+        @Override
+        public ZipWriteStream exceptionHandler(Handler<Throwable> handler) {
+            destination.exceptionHandler(handler);
+            return this;
+        }
+
+        @Override
+        public Future<Void> write(Buffer data) {
+            try {
+                zip.write(data.getBytes());
+            } catch (IOException e) {
+                return Future.failedFuture(e);
+            }
+            return flush();
+        }
+
+        @Override
+        public void write(Buffer data, Handler<AsyncResult<Void>> handler) {
+            Future<Void> f = write(data);
+            if (handler != null) {
+                f.onComplete(handler);
+            }
+        }
+
+        @Override
+        public Future<Void> end() {
+            try {
+                zip.closeEntry();
+            } catch (IOException e) {
+                return Future.failedFuture(e);
+            }
+            return flush();
+        }
+
+        @Override
+        public void end(Handler<AsyncResult<Void>> handler) {
+            Future<Void> f = end();
+            if (handler != null) {
+                f.onComplete(handler);
+            }
+        }
+
+        @Override
+        public ZipWriteStream setWriteQueueMaxSize(int maxSize) {
+            destination.setWriteQueueMaxSize(maxSize);
+            return this;
+        }
+
+        @Override
+        public boolean writeQueueFull() {
+            return destination.writeQueueFull();
+        }
+
+        @Override
+        public ZipWriteStream drainHandler(Handler<Void> handler) {
+            destination.drainHandler(handler);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
+import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * Time range, chunk count, and event types of a JFR recording file, read once when the recording
+ * enters the archive so that archived recordings can be filtered by the period they cover without
+ * being reopened.
+ */
+public class RecordingSummary {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final long startTime;
+    private final long endTime;
+    private final int chunkCount;
+    private final SortedSet<String> eventTypes;
+
+    public RecordingSummary(long startTime, long endTime, int chunkCount, Set<String> eventTypes) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.chunkCount = chunkCount;
+        this.eventTypes = new TreeSet<>(Objects.requireNonNull(eventTypes));
+    }
+
+    /** Epoch milliseconds at which the earliest chunk in the recording begins. */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /** Epoch milliseconds at which the latest chunk in the recording ends. */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /** Names of the event types with at least one event in the recording. */
+    public SortedSet<String> getEventTypes() {
+        return Collections.unmodifiableSortedSet(eventTypes);
+    }
+
+    /**
+     * @return true if the recording covers any part of the closed range [from, to]
+     */
+    public boolean overlaps(long from, long to) {
+        return startTime <= to && endTime >= from;
+    }
+
+    /**
+     * Walk the chunk headers of the recording and the record headers within each chunk. Event
+     * payloads are skipped without being decoded, and only the metadata event is parsed in order to
+     * map event type IDs back to names.
+     *
+     * @throws InvalidJfrFileException if the file is not a well-formed JFR recording
+     */
+    public static RecordingSummary read(Path recording)
+            throws IOException, CouldNotLoadRecordingException {
+        JfrChunkParser parser = new JfrChunkParser();
+        try (InputStream in = Files.newInputStream(recording)) {
+            byte[] buf = new byte[READ_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                parser.update(buf, 0, read);
+            }
+        }
+        return parser.summarize(recording);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RecordingSummary)) {
+            return false;
+        }
+        RecordingSummary other = (RecordingSummary) o;
+        return new EqualsBuilder()
+                .append(startTime, other.startTime)
+                .append(endTime, other.endTime)
+                .append(chunkCount, other.chunkCount)
+                .append(eventTypes, other.eventTypes)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(startTime)
+                .append(endTime)
+                .append(chunkCount)
+                .append(eventTypes)
+                .hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%d chunk(s) covering [%d, %d], %d event types",
+                chunkCount, startTime, endTime, eventTypes.size());
+    }
+}
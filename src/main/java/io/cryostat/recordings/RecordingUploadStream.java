@@ -0,0 +1,227 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
+import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
+
+import io.cryostat.net.web.http.api.v2.ApiException;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * Write stream for an uploaded recording which validates the JFR chunk structure, enforces the
+ * upload size limit, and computes a SHA-256 digest of the bytes as they pass through to the
+ * temporary upload file. A write that would exceed the size limit or that contains malformed
+ * recording data fails immediately, so that a bad upload is rejected without being buffered to disk
+ * in full.
+ *
+ * <p>A recording uploaded in several parts is written through one stream per part, each continuing
+ * from the validation and digest state of the last part that was accepted.
+ */
+public class RecordingUploadStream implements WriteStream<Buffer> {
+
+    private final WriteStream<Buffer> delegate;
+    private final Path path;
+    private final long maxBytes;
+    private final JfrChunkParser parser;
+    private final MessageDigest digest;
+    private final boolean requireComplete;
+    private Throwable failure;
+
+    RecordingUploadStream(WriteStream<Buffer> delegate, Path path, long maxBytes) {
+        this(delegate, path, maxBytes, true);
+    }
+
+    /**
+     * @param requireComplete whether ending the stream should fail if the bytes written so far do
+     *     not end on a chunk boundary. False for the parts of a multi-part upload.
+     */
+    RecordingUploadStream(
+            WriteStream<Buffer> delegate, Path path, long maxBytes, boolean requireComplete) {
+        this(delegate, path, maxBytes, new JfrChunkParser(), newDigest(), requireComplete);
+    }
+
+    private RecordingUploadStream(
+            WriteStream<Buffer> delegate,
+            Path path,
+            long maxBytes,
+            JfrChunkParser parser,
+            MessageDigest digest,
+            boolean requireComplete) {
+        this.delegate = delegate;
+        this.path = path;
+        this.maxBytes = maxBytes;
+        this.parser = parser;
+        this.digest = digest;
+        this.requireComplete = requireComplete;
+    }
+
+    /**
+     * Continue this upload with another part written to {@code delegate}. The returned stream
+     * starts from a copy of this stream's state, so this stream is left untouched if the part
+     * fails.
+     */
+    RecordingUploadStream continueWith(WriteStream<Buffer> delegate) {
+        return new RecordingUploadStream(
+                delegate, path, maxBytes, new JfrChunkParser(parser), cloneDigest(), false);
+    }
+
+    /** Path of the temporary file that the upload is written to. */
+    public Path getPath() {
+        return path;
+    }
+
+    public long getBytesWritten() {
+        return parser.getBytesParsed();
+    }
+
+    /** Hex-encoded SHA-256 digest of the bytes written so far. */
+    public String getSha256() {
+        return HexFormat.of().formatHex(cloneDigest().digest());
+    }
+
+    /** Whether the bytes written so far form a complete recording, ending on a chunk boundary. */
+    boolean isComplete() {
+        try {
+            parser.checkComplete();
+            return true;
+        } catch (InvalidJfrFileException e) {
+            return false;
+        }
+    }
+
+    RecordingSummary summarize() throws IOException, CouldNotLoadRecordingException {
+        return parser.summarize(path);
+    }
+
+    @Override
+    public RecordingUploadStream exceptionHandler(Handler<Throwable> handler) {
+        delegate.exceptionHandler(handler);
+        return this;
+    }
+
+    @Override
+    public Future<Void> write(Buffer data) {
+        if (failure == null) {
+            inspect(data);
+        }
+        if (failure != null) {
+            return Future.failedFuture(failure);
+        }
+        return delegate.write(data);
+    }
+
+    @Override
+    public void write(Buffer data, Handler<AsyncResult<Void>> handler) {
+        Future<Void> f = write(data);
+        if (handler != null) {
+            f.onComplete(handler);
+        }
+    }
+
+    @Override
+    public Future<Void> end() {
+        if (failure == null && requireComplete) {
+            try {
+                parser.checkComplete();
+            } catch (InvalidJfrFileException e) {
+                failure = invalidRecording(e);
+            }
+        }
+        if (failure != null) {
+            // close the file regardless, but report the reason the upload was rejected
+            Throwable t = failure;
+            return delegate.end().transform(ar -> Future.failedFuture(t));
+        }
+        return delegate.end();
+    }
+
+    @Override
+    public void end(Handler<AsyncResult<Void>> handler) {
+        Future<Void> f = end();
+        if (handler != null) {
+            f.onComplete(handler);
+        }
+    }
+
+    @Override
+    public RecordingUploadStream setWriteQueueMaxSize(int maxSize) {
+        delegate.setWriteQueueMaxSize(maxSize);
+        return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return delegate.writeQueueFull();
+    }
+
+    @Override
+    public RecordingUploadStream drainHandler(Handler<Void> handler) {
+        delegate.drainHandler(handler);
+        return this;
+    }
+
+    private void inspect(Buffer data) {
+        int len = data.length();
+        if (maxBytes > 0 && parser.getBytesParsed() + len > maxBytes) {
+            failure =
+                    new ApiException(
+                            413,
+                            String.format(
+                                    "Recording upload exceeds the maximum size of %d bytes",
+                                    maxBytes));
+            return;
+        }
+        byte[] bytes = data.getBytes();
+        digest.update(bytes);
+        try {
+            parser.update(bytes, 0, len);
+        } catch (InvalidJfrFileException e) {
+            failure = invalidRecording(e);
+        }
+    }
+
+    private MessageDigest cloneDigest() {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ApiException invalidRecording(Throwable cause) {
+        return new ApiException(400, "Not a valid JFR recording file", cause);
+    }
+}
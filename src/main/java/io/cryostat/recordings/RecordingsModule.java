@@ -20,12 +20,14 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
 import java.util.Set;
 import java.util.concurrent.Executors;
 
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
+import javax.persistence.EntityManagerFactory;
 
 import org.openjdk.jmc.flightrecorder.configuration.recording.RecordingOptionsBuilder;
 
@@ -45,6 +47,8 @@ import io.cryostat.net.TargetConnectionManager;
 import io.cryostat.net.reports.ReportService;
 import io.cryostat.net.web.WebModule;
 import io.cryostat.net.web.WebServer;
+import io.cryostat.storage.DatabaseExecutor;
+import io.cryostat.storage.StorageModule;
 
 import com.github.benmanes.caffeine.cache.Scheduler;
 import com.google.gson.Gson;
@@ -58,6 +62,17 @@ import org.apache.commons.codec.binary.Base32;
 public abstract class RecordingsModule {
 
     public static final String METADATA_SUBDIRECTORY = "metadata";
+    public static final String ARCHIVE_INDEX_SUBDIRECTORY = "archive-index";
+    public static final String ARCHIVE_MIGRATION_JOURNAL = "archive-migration.jsonl";
+    static final int DEFAULT_ARCHIVE_WRITE_CHUNK_SIZE = 64 * 1024;
+    static final long DEFAULT_ARCHIVE_WRITE_PROGRESS_INTERVAL_BYTES = 16 * 1024 * 1024;
+    static final int DEFAULT_ARCHIVE_WRITE_MAX_CONCURRENT = 8;
+    static final long DEFAULT_ARCHIVE_RETENTION_PERIOD_SECONDS = 60;
+    static final long DEFAULT_ARCHIVE_UPLOAD_SESSION_TTL_SECONDS = 900;
+    static final int DEFAULT_ARCHIVE_UPLOAD_SESSIONS_PER_JVM = 2;
+    static final int DEFAULT_ARCHIVE_MIGRATION_PARALLELISM = 4;
+    static final int DEFAULT_METADATA_VALIDATION_PARALLELISM = 4;
+    static final long DEFAULT_METADATA_WRITE_DELAY_MS = 50;
 
     @Provides
     @Named(Variables.JMX_CONNECTION_TIMEOUT)
@@ -72,6 +87,41 @@ public abstract class RecordingsModule {
                 env.getEnv(Variables.PUSH_MAX_FILES_ENV, String.valueOf(Integer.MAX_VALUE)));
     }
 
+    @Provides
+    @Named(Variables.ARCHIVE_UPLOAD_MAX_BYTES)
+    static long provideArchiveUploadMaxBytes(Environment env) {
+        return Math.max(0, Long.parseLong(env.getEnv(Variables.ARCHIVE_UPLOAD_MAX_BYTES, "0")));
+    }
+
+    @Provides
+    @Singleton
+    static UploadSessionManager provideUploadSessionManager(
+            RecordingArchiveHelper recordingArchiveHelper,
+            Clock clock,
+            @Named(MainModule.RECORDINGS_PATH) Path archivedRecordingsPath,
+            @Named(Variables.ARCHIVE_UPLOAD_MAX_BYTES) long maxUploadBytes,
+            Environment env) {
+        return new UploadSessionManager(
+                recordingArchiveHelper,
+                clock,
+                archivedRecordingsPath.resolve(RecordingArchiveHelper.TEMP_UPLOADS_SUBDIRECTORY),
+                maxUploadBytes,
+                Duration.ofSeconds(
+                        Math.max(
+                                1,
+                                Long.parseLong(
+                                        env.getEnv(
+                                                Variables.ARCHIVE_UPLOAD_SESSION_TTL_SECONDS,
+                                                String.valueOf(
+                                                        DEFAULT_ARCHIVE_UPLOAD_SESSION_TTL_SECONDS))))),
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                env.getEnv(
+                                        Variables.ARCHIVE_UPLOAD_SESSIONS_PER_JVM,
+                                        String.valueOf(DEFAULT_ARCHIVE_UPLOAD_SESSIONS_PER_JVM)))));
+    }
+
     @Provides
     @Singleton
     static RecordingTargetHelper provideRecordingTargetHelper(
@@ -112,7 +162,19 @@ public abstract class RecordingsModule {
             NotificationFactory notificationFactory,
             JvmIdHelper jvmIdHelper,
             Vertx vertx,
-            Base32 base32) {
+            ArchiveWritePipeline archiveWritePipeline,
+            ArchiveIndex archiveIndex,
+            Base32 base32,
+            @Named(ConfigurationModule.CONFIGURATION_PATH) Path confDir,
+            Gson gson,
+            Environment env) {
+        int migrationParallelism =
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                env.getEnv(
+                                        Variables.ARCHIVE_MIGRATION_PARALLELISM,
+                                        String.valueOf(DEFAULT_ARCHIVE_MIGRATION_PARALLELISM))));
         return new RecordingArchiveHelper(
                 fs,
                 webServerProvider,
@@ -125,7 +187,98 @@ public abstract class RecordingsModule {
                 notificationFactory,
                 jvmIdHelper,
                 vertx,
-                base32);
+                archiveWritePipeline,
+                archiveIndex,
+                base32,
+                new ArchiveMigrationJournal(confDir.resolve(ARCHIVE_MIGRATION_JOURNAL), fs, gson),
+                migrationParallelism);
+    }
+
+    @Provides
+    @Singleton
+    static ArchiveWritePipeline provideArchiveWritePipeline(
+            Vertx vertx, NotificationFactory notificationFactory, Environment env) {
+        int chunkSize =
+                Integer.parseInt(
+                        env.getEnv(
+                                Variables.ARCHIVE_WRITE_CHUNK_SIZE,
+                                String.valueOf(DEFAULT_ARCHIVE_WRITE_CHUNK_SIZE)));
+        int maxBytesInFlight =
+                Integer.parseInt(
+                        env.getEnv(
+                                Variables.ARCHIVE_WRITE_MAX_BYTES_IN_FLIGHT,
+                                String.valueOf(8 * chunkSize)));
+        long progressInterval =
+                Long.parseLong(
+                        env.getEnv(
+                                Variables.ARCHIVE_WRITE_PROGRESS_INTERVAL_BYTES,
+                                String.valueOf(DEFAULT_ARCHIVE_WRITE_PROGRESS_INTERVAL_BYTES)));
+        int maxConcurrent =
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                env.getEnv(
+                                        Variables.ARCHIVE_WRITE_MAX_CONCURRENT,
+                                        String.valueOf(DEFAULT_ARCHIVE_WRITE_MAX_CONCURRENT))));
+        return new ArchiveWritePipeline(
+                vertx,
+                Executors.newFixedThreadPool(maxConcurrent),
+                notificationFactory,
+                chunkSize,
+                maxBytesInFlight,
+                progressInterval);
+    }
+
+    @Provides
+    @Singleton
+    static ArchiveIndex provideArchiveIndex(
+            @Named(ConfigurationModule.CONFIGURATION_PATH) Path confDir,
+            @Named(MainModule.RECORDINGS_PATH) Path archivedRecordingsPath,
+            FileSystem fs,
+            Gson gson,
+            Clock clock) {
+        return new ArchiveIndex(
+                archivedRecordingsPath,
+                confDir.resolve(ARCHIVE_INDEX_SUBDIRECTORY),
+                fs,
+                gson,
+                clock);
+    }
+
+    @Provides
+    @Singleton
+    static ArchiveRetentionEngine provideArchiveRetentionEngine(
+            ArchiveIndex archiveIndex,
+            RecordingArchiveHelper recordingArchiveHelper,
+            RecordingMetadataManager recordingMetadataManager,
+            JvmIdHelper jvmIdHelper,
+            NotificationFactory notificationFactory,
+            Clock clock,
+            Environment env) {
+        return new ArchiveRetentionEngine(
+                archiveIndex,
+                recordingArchiveHelper,
+                recordingMetadataManager,
+                jvmIdHelper,
+                notificationFactory,
+                Executors.newSingleThreadExecutor(),
+                clock,
+                Long.parseLong(env.getEnv(Variables.ARCHIVE_MAX_BYTES, "0")),
+                Long.parseLong(env.getEnv(Variables.ARCHIVE_MAX_BYTES_PER_JVM, "0")),
+                Duration.ofSeconds(
+                        Long.parseLong(env.getEnv(Variables.ARCHIVE_MAX_AGE_SECONDS, "0"))),
+                ArchiveRetentionEngine.EvictionPolicy.valueOf(
+                        env.getEnv(
+                                Variables.ARCHIVE_EVICTION_POLICY,
+                                ArchiveRetentionEngine.EvictionPolicy.OLDEST.name())),
+                Duration.ofSeconds(
+                        Math.max(
+                                1,
+                                Long.parseLong(
+                                        env.getEnv(
+                                                Variables.ARCHIVE_RETENTION_PERIOD_SECONDS,
+                                                String.valueOf(
+                                                        DEFAULT_ARCHIVE_RETENTION_PERIOD_SECONDS))))));
     }
 
     @Provides
@@ -145,11 +298,16 @@ public abstract class RecordingsModule {
         return new RecordingOptionsCustomizer(cw);
     }
 
+    @Provides
+    @Singleton
+    static StoredRecordingLabelsDao provideStoredRecordingLabelsDao(
+            EntityManagerFactory emf, DatabaseExecutor executor) {
+        return new StoredRecordingLabelsDao(emf, executor);
+    }
+
     @Provides
     @Singleton
     static RecordingMetadataManager provideRecordingMetadataManager(
-            // FIXME Use a database connection or create a new filesystem path instead of
-            // CONFIGURATION_PATH
             @Named(ConfigurationModule.CONFIGURATION_PATH) Path confDir,
             @Named(MainModule.RECORDINGS_PATH) Path archivedRecordingsPath,
             @Named(Variables.JMX_CONNECTION_TIMEOUT) long connectionTimeoutSeconds,
@@ -161,7 +319,23 @@ public abstract class RecordingsModule {
             NotificationFactory notificationFactory,
             JvmIdHelper jvmIdHelper,
             Gson gson,
-            Base32 base32) {
+            Base32 base32,
+            StoredRecordingLabelsDao dao,
+            Environment env) {
+        int validationParallelism =
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                env.getEnv(
+                                        Variables.METADATA_VALIDATION_PARALLELISM,
+                                        String.valueOf(DEFAULT_METADATA_VALIDATION_PARALLELISM))));
+        long writeDelayMs =
+                Math.max(
+                        0,
+                        Long.parseLong(
+                                env.getEnv(
+                                        Variables.METADATA_WRITE_DELAY_MS,
+                                        String.valueOf(DEFAULT_METADATA_WRITE_DELAY_MS))));
         try {
             Path metadataDir = confDir.resolve(METADATA_SUBDIRECTORY);
             if (!fs.isDirectory(metadataDir)) {
@@ -173,8 +347,10 @@ public abstract class RecordingsModule {
                                         PosixFilePermission.OWNER_WRITE,
                                         PosixFilePermission.OWNER_EXECUTE)));
             }
+            boolean databasePersistent = StorageModule.isDatabasePersistent(env);
             return new RecordingMetadataManager(
-                    Executors.newSingleThreadExecutor(),
+                    Executors.newSingleThreadExecutor(
+                            r -> new Thread(r, "cryostat-recording-metadata")),
                     metadataDir,
                     archivedRecordingsPath,
                     connectionTimeoutSeconds,
@@ -186,7 +362,18 @@ public abstract class RecordingsModule {
                     notificationFactory,
                     jvmIdHelper,
                     gson,
-                    base32);
+                    base32,
+                    dao,
+                    new RecordingMetadataWriter(
+                            dao,
+                            Executors.newSingleThreadScheduledExecutor(),
+                            writeDelayMs,
+                            databasePersistent
+                                    ? null
+                                    : new RecordingMetadataFiles(
+                                            metadataDir, fs, jvmIdHelper, gson, base32)),
+                    validationParallelism,
+                    !databasePersistent);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
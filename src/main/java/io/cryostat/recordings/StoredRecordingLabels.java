@@ -0,0 +1,133 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.MapKeyColumn;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * The labels of one active or archived recording belonging to a target JVM. The labels themselves
+ * are stored in a separate (recording, key, value) table indexed on key and value, so that label
+ * selectors can be answered by the database.
+ */
+@Entity
+@Table(
+        uniqueConstraints = @UniqueConstraint(columnNames = {"jvmId", "recordingName"}),
+        indexes = @Index(columnList = "jvmId"))
+public class StoredRecordingLabels {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    @Column(updatable = false)
+    private int id;
+
+    @Column(nullable = false)
+    private String targetId;
+
+    @Column(nullable = false)
+    private String jvmId;
+
+    @Column(nullable = false)
+    private String recordingName;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(
+            name = "RecordingLabel",
+            joinColumns = @JoinColumn(name = "recordingId"),
+            indexes = @Index(columnList = "labelKey, labelValue"))
+    @MapKeyColumn(name = "labelKey")
+    @Column(name = "labelValue", nullable = false, length = 1024)
+    private Map<String, String> labels;
+
+    StoredRecordingLabels() {}
+
+    StoredRecordingLabels(
+            String targetId, String jvmId, String recordingName, Map<String, String> labels) {
+        this.targetId = targetId;
+        this.jvmId = jvmId;
+        this.recordingName = recordingName;
+        this.labels = new HashMap<>(labels);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTargetId() {
+        return targetId;
+    }
+
+    public String getJvmId() {
+        return jvmId;
+    }
+
+    public String getRecordingName() {
+        return recordingName;
+    }
+
+    public Map<String, String> getLabels() {
+        return new HashMap<>(labels);
+    }
+
+    void setTargetId(String targetId) {
+        this.targetId = targetId;
+    }
+
+    void setJvmId(String jvmId) {
+        this.jvmId = jvmId;
+    }
+
+    void setLabels(Map<String, String> labels) {
+        this.labels.clear();
+        this.labels.putAll(labels);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(jvmId, recordingName);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        StoredRecordingLabels other = (StoredRecordingLabels) obj;
+        return Objects.equals(jvmId, other.jvmId)
+                && Objects.equals(recordingName, other.recordingName);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import io.cryostat.storage.AbstractDao;
+import io.cryostat.storage.DatabaseExecutor;
+
+class StoredRecordingLabelsDao extends AbstractDao<Integer, StoredRecordingLabels> {
+
+    StoredRecordingLabelsDao(EntityManagerFactory emf, DatabaseExecutor executor) {
+        super(StoredRecordingLabels.class, emf, executor);
+    }
+
+    Optional<StoredRecordingLabels> find(String jvmId, String recordingName) {
+        return withEntityManager(entityManager -> find(entityManager, jvmId, recordingName));
+    }
+
+    List<StoredRecordingLabels> findByJvmId(String jvmId) {
+        Objects.requireNonNull(jvmId);
+        return withEntityManager(
+                entityManager ->
+                        entityManager
+                                .createQuery(
+                                        "SELECT s FROM StoredRecordingLabels s WHERE s.jvmId ="
+                                                + " :jvmId",
+                                        klazz)
+                                .setParameter("jvmId", jvmId)
+                                .getResultList());
+    }
+
+    /** Create or replace the labels of a recording. */
+    void put(String targetId, String jvmId, String recordingName, Map<String, String> labels) {
+        putAll(List.of(new StoredRecordingLabels(targetId, jvmId, recordingName, labels)));
+    }
+
+    /** Create or replace the labels of several recordings in a single transaction. */
+    void putAll(Collection<StoredRecordingLabels> labels) {
+        try {
+            inTransaction(
+                    entityManager -> {
+                        for (StoredRecordingLabels l : labels) {
+                            Optional<StoredRecordingLabels> existing =
+                                    find(entityManager, l.getJvmId(), l.getRecordingName());
+                            if (existing.isPresent()) {
+                                existing.get().setTargetId(l.getTargetId());
+                                existing.get().setLabels(l.getLabels());
+                            } else {
+                                entityManager.persist(
+                                        new StoredRecordingLabels(
+                                                l.getTargetId(),
+                                                l.getJvmId(),
+                                                l.getRecordingName(),
+                                                l.getLabels()));
+                            }
+                        }
+                        return null;
+                    });
+        } catch (Exception e) {
+            logger.error("Persist exception", e);
+            throw e;
+        }
+    }
+
+    Optional<StoredRecordingLabels> remove(String jvmId, String recordingName) {
+        try {
+            return inTransaction(
+                    entityManager -> {
+                        Optional<StoredRecordingLabels> stored =
+                                find(entityManager, jvmId, recordingName);
+                        stored.ifPresent(entityManager::remove);
+                        return stored;
+                    });
+        } catch (Exception e) {
+            logger.error("Delete exception", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Move the labels of every recording of one JVM ID to another, ex. after the target restarted.
+     * Labels already stored for a recording of the same name under the new JVM ID are replaced.
+     *
+     * @return the number of recordings moved
+     */
+    int reassign(String oldJvmId, String newJvmId, String targetId) {
+        try {
+            return inTransaction(
+                    entityManager -> {
+                        List<StoredRecordingLabels> list =
+                                entityManager
+                                        .createQuery(
+                                                "SELECT s FROM StoredRecordingLabels s WHERE"
+                                                        + " s.jvmId = :jvmId",
+                                                klazz)
+                                        .setParameter("jvmId", oldJvmId)
+                                        .getResultList();
+                        for (StoredRecordingLabels stored : list) {
+                            Optional<StoredRecordingLabels> existing =
+                                    find(entityManager, newJvmId, stored.getRecordingName());
+                            if (existing.isPresent()) {
+                                existing.get().setTargetId(targetId);
+                                existing.get().setLabels(stored.getLabels());
+                                entityManager.remove(stored);
+                            } else {
+                                stored.setJvmId(newJvmId);
+                                stored.setTargetId(targetId);
+                            }
+                        }
+                        return list.size();
+                    });
+        } catch (Exception e) {
+            logger.error("Update exception", e);
+            throw e;
+        }
+    }
+
+    private Optional<StoredRecordingLabels> find(
+            EntityManager entityManager, String jvmId, String recordingName) {
+        Objects.requireNonNull(jvmId);
+        Objects.requireNonNull(recordingName);
+        return entityManager
+                .createQuery(
+                        "SELECT s FROM StoredRecordingLabels s WHERE s.jvmId = :jvmId AND"
+                                + " s.recordingName = :recordingName",
+                        klazz)
+                .setParameter("jvmId", jvmId)
+                .setParameter("recordingName", recordingName)
+                .getResultList()
+                .stream()
+                .findFirst();
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.cryostat.core.sys.Clock;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.RecordingMetadataManager.Metadata;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.FileSystem;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.streams.ReadStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks resumable recording uploads. A session is created for a target JVM's recording, receives
+ * the recording as a sequence of numbered parts, and is then committed to the archive. Each part is
+ * written at its offset directly into the session's temporary upload file, and validated and
+ * digested as it streams in by continuing the {@link RecordingUploadStream} state of the previous
+ * part, so the parts never need to be re-read or copied to assemble the recording. A part that
+ * fails part-way is truncated away so that the client can retry it.
+ *
+ * <p>Sessions that receive no parts within the configured TTL are discarded along with their
+ * temporary files, and the number of sessions in progress for any one target JVM is limited.
+ * Sessions are held in memory, so any temporary upload files older than the TTL are left over from
+ * a previous run and are deleted at startup.
+ */
+public class UploadSessionManager extends AbstractVerticle {
+
+    private final RecordingArchiveHelper recordingArchiveHelper;
+    private final Clock clock;
+    private final Path uploadsPath;
+    private final long maxBytes;
+    private final Duration ttl;
+    private final int maxSessionsPerJvm;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // held while counting and adding sessions, so that concurrent creates respect the limit
+    private final Object createLock = new Object();
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private long timerId = -1;
+
+    UploadSessionManager(
+            RecordingArchiveHelper recordingArchiveHelper,
+            Clock clock,
+            Path uploadsPath,
+            long maxBytes,
+            Duration ttl,
+            int maxSessionsPerJvm) {
+        this.recordingArchiveHelper = recordingArchiveHelper;
+        this.clock = clock;
+        this.uploadsPath = uploadsPath;
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+        this.maxSessionsPerJvm = maxSessionsPerJvm;
+    }
+
+    @Override
+    public void start(Promise<Void> future) {
+        long period = Math.max(1_000, Math.min(ttl.toMillis(), 60_000));
+        deleteStaleUploads()
+                .onComplete(
+                        ar -> {
+                            timerId = getVertx().setPeriodic(period, id -> expireSessions());
+                            future.complete();
+                        });
+    }
+
+    @Override
+    public void stop() {
+        if (timerId >= 0) {
+            getVertx().cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    /**
+     * Begin a resumable upload of a recording which will be archived under {@code basename} in
+     * {@code subdirectoryName} when committed.
+     *
+     * @param metadata the labels to apply to the committed recording, or null for none
+     */
+    public Future<Session> create(
+            String jvmId,
+            String subdirectoryName,
+            String connectUrl,
+            String basename,
+            int counter,
+            Metadata metadata) {
+        Session session;
+        synchronized (createLock) {
+            long inProgress = sessions.values().stream().filter(s -> s.jvmId.equals(jvmId)).count();
+            if (inProgress >= maxSessionsPerJvm) {
+                return Future.failedFuture(
+                        new ApiException(
+                                429,
+                                String.format(
+                                        "Too many uploads in progress for %s, at most %d are"
+                                                + " allowed",
+                                        jvmId, maxSessionsPerJvm)));
+            }
+            String id = UUID.randomUUID().toString();
+            session =
+                    new Session(
+                            id,
+                            jvmId,
+                            subdirectoryName,
+                            connectUrl,
+                            basename,
+                            counter,
+                            metadata,
+                            uploadsPath.resolve(id));
+            session.touch();
+            sessions.put(id, session);
+        }
+        return getVertx()
+                .fileSystem()
+                .createFile(session.path.toString())
+                .<Session>map(v -> session)
+                .onFailure(t -> sessions.remove(session.id));
+    }
+
+    /**
+     * @throws ApiException 404 if there is no such session for the target JVM
+     */
+    public Session get(String jvmId, String id) throws ApiException {
+        Session session = sessions.get(id);
+        if (session == null || !session.jvmId.equals(jvmId)) {
+            throw new ApiException(404, String.format("No upload %s for %s", id, jvmId));
+        }
+        return session;
+    }
+
+    /**
+     * Write the numbered part of an upload beginning at {@code offset}. Parts must be written in
+     * order, one at a time, with each part beginning where the last accepted part ended. The part
+     * body is paused immediately and resumed once the upload file is ready to receive it.
+     */
+    public Future<Session> write(
+            String jvmId, String id, int part, long offset, ReadStream<Buffer> body) {
+        Session session;
+        RecordingUploadStream previous;
+        try {
+            session = get(jvmId, id);
+            previous = session.beginPart(part, offset);
+        } catch (ApiException e) {
+            return Future.failedFuture(e);
+        }
+        body.pause();
+        FileSystem fs = getVertx().fileSystem();
+        String path = session.path.toString();
+        return fs.open(path, new OpenOptions().setWrite(true).setCreate(false))
+                .compose(
+                        file -> {
+                            file.setWritePos(offset);
+                            RecordingUploadStream stream =
+                                    previous == null
+                                            ? new RecordingUploadStream(
+                                                    file, session.path, maxBytes, false)
+                                            : previous.continueWith(file);
+                            return body.pipeTo(stream).map(v -> stream);
+                        })
+                .transform(
+                        ar -> {
+                            if (ar.succeeded()) {
+                                session.endPart(ar.result());
+                                return Future.succeededFuture(session);
+                            }
+                            // discard whatever made it to disk so that the part can be retried
+                            return fs.truncate(path, offset)
+                                    .transform(
+                                            truncated -> {
+                                                if (truncated.succeeded()) {
+                                                    session.abandonPart();
+                                                } else {
+                                                    logger.warn(
+                                                            "Failed to truncate upload {}",
+                                                            path,
+                                                            truncated.cause());
+                                                    sessions.remove(id);
+                                                    delete(session);
+                                                }
+                                                return Future.failedFuture(ar.cause());
+                                            });
+                        });
+    }
+
+    /**
+     * Archive the recording assembled from the parts of an upload, ending the session.
+     *
+     * @return the archived recording's file name
+     */
+    public Future<String> commit(String jvmId, String id, int maxFiles) {
+        Session session;
+        RecordingUploadStream upload;
+        try {
+            session = get(jvmId, id);
+            upload = session.beginCommit();
+        } catch (ApiException e) {
+            return Future.failedFuture(e);
+        }
+        sessions.remove(id);
+        Promise<String> promise = Promise.promise();
+        recordingArchiveHelper.saveUploadStream(
+                session.subdirectoryName,
+                session.basename,
+                session.counter,
+                upload,
+                session.connectUrl,
+                maxFiles,
+                session.metadata,
+                promise);
+        return promise.future();
+    }
+
+    /** Discard an upload and its partially uploaded data. */
+    public Future<Void> abort(String jvmId, String id) {
+        Session session;
+        try {
+            session = get(jvmId, id);
+            session.beginAbort();
+        } catch (ApiException e) {
+            return Future.failedFuture(e);
+        }
+        sessions.remove(id);
+        return delete(session);
+    }
+
+    void expireSessions() {
+        long now = clock.now().toEpochMilli();
+        for (Session session : List.copyOf(sessions.values())) {
+            if (session.expire(now)) {
+                sessions.remove(session.id);
+                logger.info("Upload {} for {} expired", session.id, session.jvmId);
+                delete(session);
+            }
+        }
+    }
+
+    Future<Void> deleteStaleUploads() {
+        long cutoff = clock.now().toEpochMilli() - ttl.toMillis();
+        return getVertx()
+                .fileSystem()
+                .readDir(uploadsPath.toString())
+                .compose(
+                        files ->
+                                Future.join(
+                                        files.stream().map(f -> deleteIfStale(f, cutoff)).toList()))
+                .<Void>mapEmpty()
+                .onFailure(t -> logger.warn("Failed to clean up stale uploads", t));
+    }
+
+    private Future<Void> deleteIfStale(String file, long cutoff) {
+        FileSystem fs = getVertx().fileSystem();
+        return fs.props(file)
+                .compose(
+                        props -> {
+                            if (!props.isRegularFile() || props.lastModifiedTime() >= cutoff) {
+                                return Future.succeededFuture();
+                            }
+                            logger.info("Deleting stale upload {}", file);
+                            return fs.delete(file);
+                        });
+    }
+
+    private Future<Void> delete(Session session) {
+        return getVertx()
+                .fileSystem()
+                .delete(session.path.toString())
+                .onFailure(t -> logger.warn("Failed to delete upload {}", session.path, t));
+    }
+
+    public class Session {
+        private final String id;
+        private final String jvmId;
+        private final String subdirectoryName;
+        private final String connectUrl;
+        private final String basename;
+        private final int counter;
+        private final Metadata metadata;
+        private final Path path;
+        private RecordingUploadStream accepted;
+        private int nextPart = 1;
+        private long expiresAt;
+        private boolean busy;
+
+        Session(
+                String id,
+                String jvmId,
+                String subdirectoryName,
+                String connectUrl,
+                String basename,
+                int counter,
+                Metadata metadata,
+                Path path) {
+            this.id = id;
+            this.jvmId = jvmId;
+            this.subdirectoryName = subdirectoryName;
+            this.connectUrl = connectUrl;
+            this.basename = basename;
+            this.counter = counter;
+            this.metadata = metadata;
+            this.path = path;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public synchronized int getNextPart() {
+            return nextPart;
+        }
+
+        public synchronized long getOffset() {
+            return accepted == null ? 0 : accepted.getBytesWritten();
+        }
+
+        public synchronized long getExpiresAt() {
+            return expiresAt;
+        }
+
+        /** Hex-encoded SHA-256 digest of the parts accepted so far, or null if there are none. */
+        public synchronized String getSha256() {
+            return accepted == null ? null : accepted.getSha256();
+        }
+
+        /** The labels to apply to the committed recording. */
+        public Metadata getMetadata() {
+            return metadata == null ? new Metadata() : metadata;
+        }
+
+        private synchronized RecordingUploadStream beginPart(int part, long offset)
+                throws ApiException {
+            checkIdle();
+            if (part != nextPart) {
+                throw new ApiException(409, String.format("Expected part %d", nextPart));
+            }
+            if (offset != getOffset()) {
+                throw new ApiException(409, String.format("Expected offset %d", getOffset()));
+            }
+            busy = true;
+            return accepted;
+        }
+
+        private synchronized void endPart(RecordingUploadStream stream) {
+            accepted = stream;
+            nextPart++;
+            busy = false;
+            touch();
+        }
+
+        private synchronized void abandonPart() {
+            busy = false;
+            touch();
+        }
+
+        private synchronized RecordingUploadStream beginCommit() throws ApiException {
+            checkIdle();
+            if (accepted == null || !accepted.isComplete()) {
+                throw new ApiException(400, "Upload does not yet contain a complete JFR recording");
+            }
+            busy = true;
+            return accepted;
+        }
+
+        private synchronized void beginAbort() throws ApiException {
+            checkIdle();
+            busy = true;
+        }
+
+        private synchronized boolean expire(long now) {
+            if (busy || now < expiresAt) {
+                return false;
+            }
+            busy = true;
+            return true;
+        }
+
+        private void checkIdle() throws ApiException {
+            if (busy) {
+                throw new ApiException(409, "Upload is busy with another request");
+            }
+        }
+
+        private synchronized void touch() {
+            expiresAt = clock.now().toEpochMilli() + ttl.toMillis();
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.rules;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.cryostat.core.sys.Clock;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the periodic archival of automated rule recordings on a hashed timing wheel, which
+ * ticks once per second regardless of how many archivers are scheduled. Runs start on the tick of
+ * the second they are due in.
+ *
+ * <p>Each archiver's first run is offset by a phase derived from its target JVM and rule, spread
+ * across a configurable fraction of the archival period, so that a rule matching many targets does
+ * not archive from all of them in the same second. The phase is added to the initial delay, so a
+ * first run may come up to that fraction of a period later than the initial delay alone. Due runs
+ * are started in order subject to a global and a per-rule limit on concurrent runs, and wait their
+ * turn otherwise. A run which comes due while the archiver's previous run is still waiting or in
+ * progress has overrun its period, and is either skipped or coalesced into a single catch-up run
+ * started when the previous one ends.
+ *
+ * <p>The scheduler owns its executors and shuts them down when it is stopped, so it cannot be
+ * restarted.
+ */
+class ArchivalScheduler {
+
+    static final long TICK_MILLIS = 1_000;
+    static final int WHEEL_SIZE = 512;
+
+    enum OverrunPolicy {
+        SKIP,
+        CATCH_UP,
+        ;
+    }
+
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService workers;
+    private final Clock clock;
+    private final int jitterPercent;
+    private final int maxConcurrent;
+    private final int maxConcurrentPerRule;
+    private final OverrunPolicy overrunPolicy;
+    private final List<List<Entry>> wheel;
+    private final Queue<Entry> ready = new ArrayDeque<>();
+    private final Map<String, Integer> runningPerRule = new HashMap<>();
+    private final Runnable statsEmitter = this::emitStats;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private ScheduledFuture<?> tickTask;
+    private long lastTick;
+    private int running;
+    private long runs;
+    private long skipped;
+    private long maxLagMillis;
+
+    ArchivalScheduler(
+            ScheduledExecutorService ticker,
+            ExecutorService workers,
+            Clock clock,
+            int jitterPercent,
+            int maxConcurrent,
+            int maxConcurrentPerRule,
+            OverrunPolicy overrunPolicy) {
+        this.ticker = ticker;
+        this.workers = workers;
+        this.clock = clock;
+        this.jitterPercent = jitterPercent;
+        this.maxConcurrent = maxConcurrent;
+        this.maxConcurrentPerRule = maxConcurrentPerRule;
+        this.overrunPolicy = overrunPolicy;
+        this.wheel = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        this.lastTick = now() / TICK_MILLIS;
+    }
+
+    synchronized void start() {
+        if (tickTask != null) {
+            return;
+        }
+        if (ticker.isShutdown()) {
+            throw new IllegalStateException("Archival scheduler has been stopped");
+        }
+        this.lastTick = now() / TICK_MILLIS;
+        this.tickTask =
+                ticker.scheduleAtFixedRate(
+                        this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        FlightRecorder.addPeriodicEvent(ArchivalSchedulerStats.class, statsEmitter);
+    }
+
+    synchronized void stop() {
+        if (tickTask == null) {
+            return;
+        }
+        tickTask.cancel(false);
+        tickTask = null;
+        FlightRecorder.removePeriodicEvent(statsEmitter);
+        // runs in progress are left to finish, but no more are started
+        ticker.shutdown();
+        workers.shutdown();
+    }
+
+    /**
+     * Schedule a periodic archiver. The returned future never completes normally. Cancelling it
+     * stops any further runs from starting and releases the archiver's place in the schedule, but
+     * does not interrupt a run in progress.
+     */
+    synchronized Future<?> schedule(
+            String jvmId, Rule rule, Runnable task, long initialDelaySeconds, long periodSeconds) {
+        long period = TimeUnit.SECONDS.toMillis(periodSeconds);
+        Entry entry =
+                new Entry(
+                        jvmId,
+                        rule.getName(),
+                        task,
+                        period,
+                        now()
+                                + TimeUnit.SECONDS.toMillis(initialDelaySeconds)
+                                + phase(jvmId, rule, period));
+        place(entry);
+        entry.handle.whenComplete((v, t) -> unschedule(entry));
+        return entry.handle;
+    }
+
+    /** Start any runs which have come due. Called once per tick, and by tests to advance time. */
+    synchronized void tick() {
+        long now = now();
+        long tick = now / TICK_MILLIS;
+        // a stalled ticker catches up, but never needs to visit a bucket twice
+        long from = Math.max(lastTick + 1, tick - WHEEL_SIZE + 1);
+        List<Entry> due = new ArrayList<>();
+        for (long t = from; t <= tick; t++) {
+            Iterator<Entry> it = wheel.get((int) (t % WHEEL_SIZE)).iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.handle.isDone()) {
+                    it.remove();
+                } else if (entry.deadline / TICK_MILLIS <= tick) {
+                    it.remove();
+                    due.add(entry);
+                }
+            }
+        }
+        lastTick = Math.max(lastTick, tick);
+        due.sort((a, b) -> Long.compare(a.deadline, b.deadline));
+        for (Entry entry : due) {
+            fire(entry, now);
+        }
+        drain(now);
+    }
+
+    synchronized int getScheduled() {
+        int scheduled = 0;
+        for (List<Entry> bucket : wheel) {
+            scheduled += bucket.size();
+        }
+        return scheduled;
+    }
+
+    synchronized int getRunning() {
+        return running;
+    }
+
+    synchronized int getWaiting() {
+        return ready.size();
+    }
+
+    synchronized long getRuns() {
+        return runs;
+    }
+
+    synchronized long getSkipped() {
+        return skipped;
+    }
+
+    private void fire(Entry entry, long now) {
+        if (entry.running || entry.waiting) {
+            overrun(entry, entry.deadline);
+        } else {
+            entry.waiting = true;
+            entry.dueAt = entry.deadline;
+            ready.add(entry);
+        }
+        entry.deadline += entry.period;
+        if (entry.deadline / TICK_MILLIS <= now / TICK_MILLIS) {
+            // the scheduler itself fell behind by more than a whole period
+            long missed = (now - entry.deadline) / entry.period + 1;
+            overrun(entry, entry.deadline);
+            skipped += overrunPolicy == OverrunPolicy.SKIP ? missed - 1 : 0;
+            entry.deadline += missed * entry.period;
+        }
+        place(entry);
+    }
+
+    private void overrun(Entry entry, long dueAt) {
+        if (overrunPolicy == OverrunPolicy.SKIP) {
+            skipped++;
+            logger.debug(
+                    "Skipped overrunning archival of rule {} for {}", entry.ruleName, entry.jvmId);
+        } else if (!entry.catchUp) {
+            entry.catchUp = true;
+            entry.catchUpDueAt = dueAt;
+        }
+    }
+
+    private void drain(long now) {
+        List<Runnable> starts = new ArrayList<>();
+        Iterator<Entry> it = ready.iterator();
+        while (it.hasNext() && running < maxConcurrent) {
+            Entry entry = it.next();
+            if (entry.handle.isDone()) {
+                entry.waiting = false;
+                it.remove();
+                continue;
+            }
+            if (runningPerRule.getOrDefault(entry.ruleName, 0) >= maxConcurrentPerRule) {
+                continue;
+            }
+            it.remove();
+            starts.add(begin(entry, now));
+        }
+        // submitted only once the queue is no longer being iterated, in case a run ends at once
+        starts.forEach(workers::execute);
+    }
+
+    private Runnable begin(Entry entry, long now) {
+        entry.waiting = false;
+        entry.running = true;
+        running++;
+        runningPerRule.merge(entry.ruleName, 1, Integer::sum);
+        long lag = Math.max(0, now - entry.dueAt);
+        runs++;
+        maxLagMillis = Math.max(maxLagMillis, lag);
+
+        ArchivalRun evt = new ArchivalRun(entry.jvmId, entry.ruleName, lag);
+        return () -> {
+            evt.begin();
+            try {
+                entry.task.run();
+            } catch (RuntimeException e) {
+                logger.error("Archival exception", e);
+            } finally {
+                evt.end();
+                if (evt.shouldCommit()) {
+                    evt.commit();
+                }
+                end(entry);
+            }
+        };
+    }
+
+    private synchronized void end(Entry entry) {
+        long now = now();
+        entry.running = false;
+        running--;
+        runningPerRule.computeIfPresent(entry.ruleName, (k, v) -> v > 1 ? v - 1 : null);
+        if (entry.catchUp && !entry.handle.isDone()) {
+            entry.catchUp = false;
+            entry.waiting = true;
+            entry.dueAt = entry.catchUpDueAt;
+            ready.add(entry);
+        }
+        drain(now);
+    }
+
+    private void place(Entry entry) {
+        long tick = Math.max(entry.deadline / TICK_MILLIS, lastTick + 1);
+        entry.bucket = (int) (tick % WHEEL_SIZE);
+        wheel.get(entry.bucket).add(entry);
+    }
+
+    private synchronized void unschedule(Entry entry) {
+        wheel.get(entry.bucket).remove(entry);
+        if (entry.waiting) {
+            entry.waiting = false;
+            ready.remove(entry);
+        }
+    }
+
+    /**
+     * A stable offset for the archiver within the first {@code jitterPercent} of its period, so
+     * that archivers for the same rule are spread evenly and keep their phase across restarts.
+     */
+    private long phase(String jvmId, Rule rule, long period) {
+        long spread = period * jitterPercent / 100;
+        if (spread <= 0) {
+            return 0;
+        }
+        long h = (String.valueOf(jvmId) + '\0' + rule.getName()).hashCode();
+        // murmur3 finalizer, so that similar jvmIds do not land on neighbouring phases
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return Math.floorMod(h, spread);
+    }
+
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMillis(clock.getMonotonicTime());
+    }
+
+    private synchronized void emitStats() {
+        ArchivalSchedulerStats evt =
+                new ArchivalSchedulerStats(
+                        getScheduled(), running, ready.size(), runs, skipped, maxLagMillis);
+        maxLagMillis = 0;
+        evt.commit();
+    }
+
+    private static class Entry {
+        final String jvmId;
+        final String ruleName;
+        final Runnable task;
+        final long period;
+        final CompletableFuture<Void> handle = new CompletableFuture<>();
+        long deadline;
+        long dueAt;
+        long catchUpDueAt;
+        int bucket;
+        boolean waiting;
+        boolean running;
+        boolean catchUp;
+
+        Entry(String jvmId, String ruleName, Runnable task, long period, long deadline) {
+            this.jvmId = jvmId;
+            this.ruleName = ruleName;
+            this.task = task;
+            this.period = period;
+            this.deadline = deadline;
+        }
+    }
+
+    @Name("io.cryostat.rules.ArchivalScheduler.ArchivalRun")
+    @Label("Periodic Archival")
+    @Category("Cryostat")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class ArchivalRun extends Event {
+        String jvmId;
+        String rule;
+
+        @Label("Schedule Lag (ms)")
+        long lagMillis;
+
+        ArchivalRun(String jvmId, String rule, long lagMillis) {
+            this.jvmId = jvmId;
+            this.rule = rule;
+            this.lagMillis = lagMillis;
+        }
+    }
+
+    @Name("io.cryostat.rules.ArchivalScheduler.ArchivalSchedulerStats")
+    @Label("Periodic Archival Scheduler")
+    @Category("Cryostat")
+    @Period("10 s")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class ArchivalSchedulerStats extends Event {
+        int scheduled;
+        int running;
+        int waiting;
+        long runs;
+        long skipped;
+
+        @Label("Maximum Schedule Lag (ms)")
+        long maxLagMillis;
+
+        ArchivalSchedulerStats(
+                int scheduled,
+                int running,
+                int waiting,
+                long runs,
+                long skipped,
+                long maxLagMillis) {
+            this.scheduled = scheduled;
+            this.running = running;
+            this.waiting = waiting;
+            this.runs = runs;
+            this.skipped = skipped;
+            this.maxLagMillis = maxLagMillis;
+        }
+    }
+}
@@ -15,7 +15,11 @@
  */
 package io.cryostat.rules;
 
+import java.util.Collections;
+import java.util.Set;
+
 import io.cryostat.recordings.RecordingMetadataManager.Metadata;
+import io.cryostat.recordings.RecordingSummary;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -30,6 +34,11 @@ public class ArchivedRecordingInfo {
     private final Metadata metadata;
     private final long size;
     private final long archivedTime;
+    private final long startTime;
+    private final long endTime;
+    private final int chunkCount;
+    // omitted from JSON responses since a recording may contain hundreds of event types
+    private final transient Set<String> eventTypes;
 
     public ArchivedRecordingInfo(
             String serviceUri,
@@ -39,6 +48,18 @@ public class ArchivedRecordingInfo {
             Metadata metadata,
             long size,
             long archivedTime) {
+        this(serviceUri, name, downloadUrl, reportUrl, metadata, size, archivedTime, null);
+    }
+
+    public ArchivedRecordingInfo(
+            String serviceUri,
+            String name,
+            String downloadUrl,
+            String reportUrl,
+            Metadata metadata,
+            long size,
+            long archivedTime,
+            RecordingSummary summary) {
         this.serviceUri = serviceUri;
         this.name = name;
         this.downloadUrl = downloadUrl;
@@ -46,6 +67,10 @@ public class ArchivedRecordingInfo {
         this.metadata = metadata;
         this.size = size;
         this.archivedTime = archivedTime;
+        this.startTime = summary == null ? 0 : summary.getStartTime();
+        this.endTime = summary == null ? 0 : summary.getEndTime();
+        this.chunkCount = summary == null ? 0 : summary.getChunkCount();
+        this.eventTypes = summary == null ? Set.of() : summary.getEventTypes();
     }
 
     public String getServiceUri() {
@@ -76,6 +101,24 @@ public class ArchivedRecordingInfo {
         return this.archivedTime;
     }
 
+    /** Epoch milliseconds at which the recording data begins, or 0 if unknown. */
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    /** Epoch milliseconds at which the recording data ends, or 0 if unknown. */
+    public long getEndTime() {
+        return this.endTime;
+    }
+
+    public int getChunkCount() {
+        return this.chunkCount;
+    }
+
+    public Set<String> getEventTypes() {
+        return Collections.unmodifiableSet(this.eventTypes);
+    }
+
     @Override
     public boolean equals(Object other) {
         if (other == null) {
@@ -96,6 +139,10 @@ public class ArchivedRecordingInfo {
                 .append(metadata, ari.metadata)
                 .append(size, ari.size)
                 .append(archivedTime, ari.archivedTime)
+                .append(startTime, ari.startTime)
+                .append(endTime, ari.endTime)
+                .append(chunkCount, ari.chunkCount)
+                .append(eventTypes, ari.eventTypes)
                 .isEquals();
     }
 
@@ -109,6 +156,10 @@ public class ArchivedRecordingInfo {
                 .append(metadata)
                 .append(size)
                 .append(archivedTime)
+                .append(startTime)
+                .append(endTime)
+                .append(chunkCount)
+                .append(eventTypes)
                 .hashCode();
     }
 }
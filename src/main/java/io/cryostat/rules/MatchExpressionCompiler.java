@@ -0,0 +1,697 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.rules;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import io.cryostat.platform.ServiceRef;
+
+import org.openjdk.nashorn.api.tree.ArrayAccessTree;
+import org.openjdk.nashorn.api.tree.BinaryTree;
+import org.openjdk.nashorn.api.tree.CompilationUnitTree;
+import org.openjdk.nashorn.api.tree.ExpressionStatementTree;
+import org.openjdk.nashorn.api.tree.ExpressionTree;
+import org.openjdk.nashorn.api.tree.FunctionCallTree;
+import org.openjdk.nashorn.api.tree.IdentifierTree;
+import org.openjdk.nashorn.api.tree.LiteralTree;
+import org.openjdk.nashorn.api.tree.MemberSelectTree;
+import org.openjdk.nashorn.api.tree.ParenthesizedTree;
+import org.openjdk.nashorn.api.tree.Parser;
+import org.openjdk.nashorn.api.tree.RegExpLiteralTree;
+import org.openjdk.nashorn.api.tree.Tree;
+import org.openjdk.nashorn.api.tree.UnaryTree;
+
+/**
+ * Compiles match expressions written in a common subset of JavaScript into Java objects which
+ * evaluate them directly against a {@link ServiceRef}, without a script engine or the bindings it
+ * needs. The subset covers the {@code target} properties, member and string-keyed index access,
+ * string, number, boolean and null literals, unary {@code -}, {@code ==}, {@code !=}, {@code ===},
+ * {@code !==}, {@code &&}, {@code ||}, {@code !}, {@code in}, regular expression {@code test()}
+ * calls, the string {@code length} property and the string methods {@code includes}, {@code
+ * startsWith}, {@code endsWith}, {@code indexOf}, {@code toLowerCase}, {@code toUpperCase} and
+ * {@code trim}.
+ *
+ * <p>Expressions outside the subset are not compiled. An expression that is compiled may still meet
+ * a value whose JavaScript semantics are not reproduced here, ex. an object compared to a string,
+ * in which case evaluation throws {@link UnsupportedEvaluationException} and the caller should fall
+ * back to the script engine.
+ */
+class MatchExpressionCompiler {
+
+    static final Object UNDEFINED =
+            new Object() {
+                @Override
+                public String toString() {
+                    return "undefined";
+                }
+            };
+
+    // Nashorn resolves these against the Java Map itself rather than its entries
+    private static final Set<String> MAP_MEMBER_NAMES = new HashSet<>();
+
+    static {
+        for (Method m : Map.class.getMethods()) {
+            MAP_MEMBER_NAMES.add(m.getName());
+        }
+        for (Method m : Object.class.getMethods()) {
+            MAP_MEMBER_NAMES.add(m.getName());
+        }
+        MAP_MEMBER_NAMES.addAll(Set.of("empty", "class", "length"));
+    }
+
+    private static final Pattern NUMERIC =
+            Pattern.compile("[+-]?(?:(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][+-]?\\d+)?|Infinity)");
+
+    // what Nashorn's trim() and string to number conversion remove, which differs from
+    // String::strip, ex. no-break space and the byte order mark
+    private static final String JS_WHITESPACE =
+            "\t\n\u000B\f\r \u00A0\u1680\u180E\u2000\u2001\u2002\u2003\u2004\u2005\u2006"
+                    + "\u2007\u2008\u2009\u200A\u2028\u2029\u202F\u205F\u3000\uFEFF";
+
+    private final Parser parser = Parser.create();
+
+    /**
+     * @return the compiled expression, or empty if it uses anything outside the supported subset
+     */
+    synchronized Optional<CompiledMatchExpression> compile(String matchExpression) {
+        try {
+            CompilationUnitTree cut = parser.parse("", matchExpression, null);
+            if (cut == null || cut.getSourceElements().size() != 1) {
+                return Optional.empty();
+            }
+            Tree statement = cut.getSourceElements().get(0);
+            if (statement.getKind() != Tree.Kind.EXPRESSION_STATEMENT) {
+                return Optional.empty();
+            }
+            Node node = compile(((ExpressionStatementTree) statement).getExpression());
+            return Optional.of(ref -> node.evaluate(ref));
+        } catch (NotCompilableException e) {
+            return Optional.empty();
+        } catch (RuntimeException e) {
+            // parse errors are reported by the script engine fallback
+            return Optional.empty();
+        }
+    }
+
+    private Node compile(ExpressionTree tree) {
+        switch (tree.getKind()) {
+            case PARENTHESIZED:
+                return compile(((ParenthesizedTree) tree).getExpression());
+            case STRING_LITERAL:
+            case BOOLEAN_LITERAL:
+                {
+                    Object value = ((LiteralTree) tree).getValue();
+                    return ref -> value;
+                }
+            case NUMBER_LITERAL:
+                {
+                    Object value = ((LiteralTree) tree).getValue();
+                    if (!(value instanceof Number)) {
+                        throw new NotCompilableException();
+                    }
+                    Double d = ((Number) value).doubleValue();
+                    return ref -> d;
+                }
+            case NULL_LITERAL:
+                return ref -> null;
+            case IDENTIFIER:
+                {
+                    String name = ((IdentifierTree) tree).getName();
+                    if ("target".equals(name)) {
+                        return TargetObject::new;
+                    } else if ("undefined".equals(name)) {
+                        return ref -> UNDEFINED;
+                    }
+                    throw new NotCompilableException();
+                }
+            case MEMBER_SELECT:
+                {
+                    MemberSelectTree select = (MemberSelectTree) tree;
+                    Node object = compile(select.getExpression());
+                    String key = select.getIdentifier();
+                    return ref -> property(object.evaluate(ref), key);
+                }
+            case ARRAY_ACCESS:
+                {
+                    ArrayAccessTree access = (ArrayAccessTree) tree;
+                    Node object = compile(access.getExpression());
+                    Node index = compile(access.getIndex());
+                    return ref -> {
+                        Object key = index.evaluate(ref);
+                        if (!(key instanceof String)) {
+                            throw new UnsupportedEvaluationException();
+                        }
+                        return property(object.evaluate(ref), (String) key);
+                    };
+                }
+            case EQUAL_TO:
+                {
+                    BinaryTree binary = (BinaryTree) tree;
+                    Node left = compile(binary.getLeftOperand());
+                    Node right = compile(binary.getRightOperand());
+                    return ref -> looseEquals(left.evaluate(ref), right.evaluate(ref));
+                }
+            case NOT_EQUAL_TO:
+                {
+                    BinaryTree binary = (BinaryTree) tree;
+                    Node left = compile(binary.getLeftOperand());
+                    Node right = compile(binary.getRightOperand());
+                    return ref -> !looseEquals(left.evaluate(ref), right.evaluate(ref));
+                }
+            case STRICT_EQUAL_TO:
+                {
+                    BinaryTree binary = (BinaryTree) tree;
+                    Node left = compile(binary.getLeftOperand());
+                    Node right = compile(binary.getRightOperand());
+                    return ref -> strictEquals(left.evaluate(ref), right.evaluate(ref));
+                }
+            case STRICT_NOT_EQUAL_TO:
+                {
+                    BinaryTree binary = (BinaryTree) tree;
+                    Node left = compile(binary.getLeftOperand());
+                    Node right = compile(binary.getRightOperand());
+                    return ref -> !strictEquals(left.evaluate(ref), right.evaluate(ref));
+                }
+            case CONDITIONAL_AND:
+                {
+                    BinaryTree binary = (BinaryTree) tree;
+                    Node left = compile(binary.getLeftOperand());
+                    Node right = compile(binary.getRightOperand());
+                    return ref -> {
+                        Object l = left.evaluate(ref);
+                        return isTruthy(l) ? right.evaluate(ref) : l;
+                    };
+                }
+            case CONDITIONAL_OR:
+                {
+                    BinaryTree binary = (BinaryTree) tree;
+                    Node left = compile(binary.getLeftOperand());
+                    Node right = compile(binary.getRightOperand());
+                    return ref -> {
+                        Object l = left.evaluate(ref);
+                        return isTruthy(l) ? l : right.evaluate(ref);
+                    };
+                }
+            case LOGICAL_COMPLEMENT:
+                {
+                    Node operand = compile(((UnaryTree) tree).getExpression());
+                    return ref -> !isTruthy(operand.evaluate(ref));
+                }
+            case UNARY_MINUS:
+                {
+                    Node operand = compile(((UnaryTree) tree).getExpression());
+                    return ref -> -toNumber(operand.evaluate(ref));
+                }
+            case IN:
+                {
+                    BinaryTree binary = (BinaryTree) tree;
+                    Node left = compile(binary.getLeftOperand());
+                    Node right = compile(binary.getRightOperand());
+                    return ref -> {
+                        Object key = left.evaluate(ref);
+                        Object object = right.evaluate(ref);
+                        if (!(key instanceof String) || !(object instanceof JsObject)) {
+                            throw new UnsupportedEvaluationException();
+                        }
+                        return ((JsObject) object).has((String) key);
+                    };
+                }
+            case FUNCTION_INVOCATION:
+                return compileCall((FunctionCallTree) tree);
+            default:
+                throw new NotCompilableException();
+        }
+    }
+
+    private Node compileCall(FunctionCallTree call) {
+        if (call.getFunctionSelect().getKind() != Tree.Kind.MEMBER_SELECT) {
+            throw new NotCompilableException();
+        }
+        MemberSelectTree select = (MemberSelectTree) call.getFunctionSelect();
+        String method = select.getIdentifier();
+        List<Node> args = new ArrayList<>();
+        for (ExpressionTree arg : call.getArguments()) {
+            args.add(compile(arg));
+        }
+
+        if (select.getExpression().getKind() == Tree.Kind.REGEXP_LITERAL) {
+            if (!"test".equals(method) || args.size() != 1) {
+                throw new NotCompilableException();
+            }
+            RegExpLiteralTree literal = (RegExpLiteralTree) select.getExpression();
+            Pattern pattern = compileRegExp(literal.getPattern(), literal.getOptions());
+            boolean ignoreCase = literal.getOptions().indexOf('i') >= 0;
+            Node arg = args.get(0);
+            return ref -> {
+                String input = regExpInput(arg.evaluate(ref));
+                checkRegExpInput(input, ignoreCase);
+                return pattern.matcher(input).find();
+            };
+        }
+
+        Function<String, Object> noArgs;
+        switch (method) {
+            case "toLowerCase":
+                noArgs = s -> s.toLowerCase(Locale.ROOT);
+                break;
+            case "toUpperCase":
+                noArgs = s -> s.toUpperCase(Locale.ROOT);
+                break;
+            case "trim":
+                noArgs = MatchExpressionCompiler::trim;
+                break;
+            default:
+                noArgs = null;
+                break;
+        }
+        Node receiver = compile(select.getExpression());
+        if (noArgs != null) {
+            if (!args.isEmpty()) {
+                throw new NotCompilableException();
+            }
+            return ref -> noArgs.apply(stringReceiver(receiver.evaluate(ref)));
+        }
+
+        StringMethod oneArg;
+        switch (method) {
+            case "includes":
+                oneArg = String::contains;
+                break;
+            case "startsWith":
+                oneArg = String::startsWith;
+                break;
+            case "endsWith":
+                oneArg = String::endsWith;
+                break;
+            case "indexOf":
+                oneArg = (s, a) -> (double) s.indexOf(a);
+                break;
+            default:
+                throw new NotCompilableException();
+        }
+        if (args.size() != 1) {
+            throw new NotCompilableException();
+        }
+        Node arg = args.get(0);
+        return ref -> {
+            String s = stringReceiver(receiver.evaluate(ref));
+            Object a = arg.evaluate(ref);
+            if (!(a instanceof String)) {
+                throw new UnsupportedEvaluationException();
+            }
+            return oneArg.apply(s, (String) a);
+        };
+    }
+
+    /**
+     * Translate a JavaScript regular expression into an equivalent Java pattern, rejecting any
+     * construct which the two syntaxes do not interpret identically.
+     */
+    static Pattern compileRegExp(String source, String options) {
+        int flags = 0;
+        for (char c : options.toCharArray()) {
+            switch (c) {
+                case 'i':
+                    flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+                    break;
+                case 'm':
+                    flags |= Pattern.MULTILINE;
+                    break;
+                case 'g':
+                    // test() is evaluated against a fresh literal each time, so lastIndex is unused
+                    break;
+                default:
+                    throw new NotCompilableException();
+            }
+        }
+        boolean ignoreCase = (flags & Pattern.CASE_INSENSITIVE) != 0;
+        boolean inClass = false;
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (Character.isSurrogate(c) || (ignoreCase && c > 0x7f)) {
+                throw new NotCompilableException();
+            }
+            char next = i + 1 < source.length() ? source.charAt(i + 1) : 0;
+            if (c == '\\') {
+                if ("dDwWtnrf".indexOf(next) >= 0
+                        || (next != 0 && "\\/.-[](){}*+?^$|".indexOf(next) >= 0)) {
+                    i++;
+                    continue;
+                }
+                if ((next == 'x' || next == 'u')
+                        && i + 2 < source.length()
+                        && source.charAt(i + 2) != '{') {
+                    // the hex digits which follow are validated by the Java pattern compiler
+                    i++;
+                    continue;
+                }
+                throw new NotCompilableException();
+            }
+            if (inClass) {
+                if (c == '[' || (c == '&' && next == '&')) {
+                    throw new NotCompilableException();
+                } else if (c == ']') {
+                    inClass = false;
+                }
+            } else if (c == '[') {
+                if (next == ']'
+                        || (next == '^'
+                                && i + 2 < source.length()
+                                && source.charAt(i + 2) == ']')) {
+                    throw new NotCompilableException();
+                }
+                inClass = true;
+                if (next == '^') {
+                    i++;
+                }
+            } else if (c == '(' && next == '?') {
+                char kind = i + 2 < source.length() ? source.charAt(i + 2) : 0;
+                if (kind != ':' && kind != '=' && kind != '!') {
+                    throw new NotCompilableException();
+                }
+            } else if ((c == '*' || c == '+' || c == '?' || c == '}') && next == '+') {
+                // possessive quantifiers exist only in Java
+                throw new NotCompilableException();
+            }
+        }
+        try {
+            return Pattern.compile(source, flags);
+        } catch (PatternSyntaxException e) {
+            throw new NotCompilableException();
+        }
+    }
+
+    /**
+     * Java and JavaScript patterns disagree on line terminators ({@code $} before a final newline,
+     * {@code .} and U+0085), on supplementary characters (code points versus UTF-16 units) and on
+     * case folding outside of ASCII, none of which are expected in target metadata.
+     */
+    private static void checkRegExpInput(String input, boolean ignoreCase) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '\n'
+                    || c == '\r'
+                    || c == '\u0085'
+                    || c == '\u2028'
+                    || c == '\u2029'
+                    || Character.isSurrogate(c)
+                    || (ignoreCase && c > 0x7f)) {
+                throw new UnsupportedEvaluationException();
+            }
+        }
+    }
+
+    private static Object property(Object object, String key) {
+        if (object instanceof JsObject) {
+            return ((JsObject) object).get(key);
+        }
+        if (object instanceof String && "length".equals(key)) {
+            return (double) ((String) object).length();
+        }
+        // property access on null or undefined is a TypeError, other cases are not reproduced
+        throw new UnsupportedEvaluationException();
+    }
+
+    private static String stringReceiver(Object o) {
+        if (!(o instanceof String)) {
+            throw new UnsupportedEvaluationException();
+        }
+        return (String) o;
+    }
+
+    private static String regExpInput(Object o) {
+        if (o instanceof String) {
+            return (String) o;
+        } else if (o == null) {
+            return "null";
+        } else if (o == UNDEFINED) {
+            return "undefined";
+        } else if (o instanceof Boolean) {
+            return o.toString();
+        }
+        throw new UnsupportedEvaluationException();
+    }
+
+    static boolean isTruthy(Object o) {
+        if (o == null || o == UNDEFINED) {
+            return false;
+        } else if (o instanceof Boolean) {
+            return (Boolean) o;
+        } else if (o instanceof Double) {
+            double d = (Double) o;
+            return d != 0 && !Double.isNaN(d);
+        } else if (o instanceof String) {
+            return !((String) o).isEmpty();
+        }
+        return true;
+    }
+
+    static boolean strictEquals(Object a, Object b) {
+        if (a == null || a == UNDEFINED || b == null || b == UNDEFINED) {
+            return a == b;
+        }
+        if (a instanceof JsObject || b instanceof JsObject) {
+            throw new UnsupportedEvaluationException();
+        }
+        if (a instanceof Double && b instanceof Double) {
+            return ((Double) a).doubleValue() == ((Double) b).doubleValue();
+        }
+        return a.equals(b);
+    }
+
+    static boolean looseEquals(Object a, Object b) {
+        boolean aNullish = a == null || a == UNDEFINED;
+        boolean bNullish = b == null || b == UNDEFINED;
+        if (aNullish || bNullish) {
+            return aNullish && bNullish;
+        }
+        if (a instanceof JsObject || b instanceof JsObject) {
+            throw new UnsupportedEvaluationException();
+        }
+        if (a.getClass().equals(b.getClass())) {
+            return strictEquals(a, b);
+        }
+        return toNumber(a) == toNumber(b);
+    }
+
+    private static double toNumber(Object o) {
+        if (o == null) {
+            return 0;
+        } else if (o == UNDEFINED) {
+            return Double.NaN;
+        } else if (o instanceof JsObject) {
+            throw new UnsupportedEvaluationException();
+        } else if (o instanceof Double) {
+            return (Double) o;
+        } else if (o instanceof Boolean) {
+            return ((Boolean) o) ? 1 : 0;
+        }
+        String s = trim((String) o);
+        if (s.isEmpty()) {
+            return 0;
+        }
+        if (s.length() > 2 && s.charAt(0) == '0' && (s.charAt(1) == 'x' || s.charAt(1) == 'X')) {
+            try {
+                return Long.parseLong(s.substring(2), 16);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        if (!NUMERIC.matcher(s).matches()) {
+            return Double.NaN;
+        }
+        return Double.parseDouble(s);
+    }
+
+    private static String trim(String s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && JS_WHITESPACE.indexOf(s.charAt(start)) >= 0) {
+            start++;
+        }
+        while (end > start && JS_WHITESPACE.indexOf(s.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return s.substring(start, end);
+    }
+
+    /** A compiled match expression. */
+    @FunctionalInterface
+    interface CompiledMatchExpression {
+        /**
+         * @return the value of the expression, with JavaScript undefined represented as null
+         * @throws UnsupportedEvaluationException if the expression must instead be evaluated by the
+         *     script engine for this target
+         */
+        default Object evaluate(ServiceRef serviceRef) {
+            Object result = evaluateRaw(serviceRef);
+            return result == UNDEFINED ? null : result;
+        }
+
+        Object evaluateRaw(ServiceRef serviceRef);
+    }
+
+    @FunctionalInterface
+    private interface Node {
+        Object evaluate(ServiceRef serviceRef);
+    }
+
+    @FunctionalInterface
+    private interface StringMethod {
+        Object apply(String receiver, String argument);
+    }
+
+    private interface JsObject {
+        Object get(String key);
+
+        boolean has(String key);
+    }
+
+    private static class MapObject implements JsObject {
+        private final Map<?, String> map;
+        private final Function<String, Object> keyMapper;
+
+        MapObject(Map<?, String> map, Function<String, Object> keyMapper) {
+            this.map = map;
+            this.keyMapper = keyMapper;
+        }
+
+        @Override
+        public Object get(String key) {
+            Object k = mapKey(key);
+            if (k == null || !map.containsKey(k)) {
+                return UNDEFINED;
+            }
+            return map.get(k);
+        }
+
+        @Override
+        public boolean has(String key) {
+            Object k = mapKey(key);
+            return k != null && map.containsKey(k);
+        }
+
+        private Object mapKey(String key) {
+            if (MAP_MEMBER_NAMES.contains(key)) {
+                throw new UnsupportedEvaluationException();
+            }
+            return keyMapper.apply(key);
+        }
+    }
+
+    private static class TargetObject implements JsObject {
+        private static final Set<String> KEYS =
+                Set.of("connectUrl", "jvmId", "alias", "labels", "annotations");
+        private final ServiceRef ref;
+
+        TargetObject(ServiceRef ref) {
+            this.ref = ref;
+        }
+
+        @Override
+        public Object get(String key) {
+            if (MAP_MEMBER_NAMES.contains(key)) {
+                throw new UnsupportedEvaluationException();
+            }
+            switch (key) {
+                case "connectUrl":
+                    return ref.getServiceUri().toString();
+                case "jvmId":
+                    return ref.getJvmId();
+                case "alias":
+                    return ref.getAlias().orElse(null);
+                case "labels":
+                    return new MapObject(ref.getLabels(), k -> k);
+                case "annotations":
+                    return new AnnotationsObject(ref);
+                default:
+                    return UNDEFINED;
+            }
+        }
+
+        @Override
+        public boolean has(String key) {
+            if (MAP_MEMBER_NAMES.contains(key)) {
+                throw new UnsupportedEvaluationException();
+            }
+            return KEYS.contains(key);
+        }
+    }
+
+    private static class AnnotationsObject implements JsObject {
+        private final ServiceRef ref;
+
+        AnnotationsObject(ServiceRef ref) {
+            this.ref = ref;
+        }
+
+        @Override
+        public Object get(String key) {
+            if (MAP_MEMBER_NAMES.contains(key)) {
+                throw new UnsupportedEvaluationException();
+            }
+            switch (key) {
+                case "platform":
+                    return new MapObject(ref.getPlatformAnnotations(), k -> k);
+                case "cryostat":
+                    return new MapObject(
+                            ref.getCryostatAnnotations(), AnnotationsObject::annotationKey);
+                default:
+                    return UNDEFINED;
+            }
+        }
+
+        @Override
+        public boolean has(String key) {
+            if (MAP_MEMBER_NAMES.contains(key)) {
+                throw new UnsupportedEvaluationException();
+            }
+            return "platform".equals(key) || "cryostat".equals(key);
+        }
+
+        private static Object annotationKey(String name) {
+            for (ServiceRef.AnnotationKey key : ServiceRef.AnnotationKey.values()) {
+                if (key.name().equals(name)) {
+                    return key;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** The expression uses a construct outside of the compiled subset. */
+    private static class NotCompilableException extends RuntimeException {}
+
+    /**
+     * The compiled expression met values for which it does not reproduce JavaScript semantics, and
+     * must be evaluated by the script engine instead.
+     */
+    static class UnsupportedEvaluationException extends RuntimeException {
+        UnsupportedEvaluationException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -15,12 +15,19 @@
  */
 package io.cryostat.rules;
 
-import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 
 import io.cryostat.storage.AbstractDao;
+import io.cryostat.storage.DatabaseExecutor;
+import io.cryostat.storage.EntityCacheFactory;
 
 class MatchExpressionDao extends AbstractDao<Integer, MatchExpression> {
-    MatchExpressionDao(EntityManager em) {
-        super(MatchExpression.class, em);
+    MatchExpressionDao(
+            EntityManagerFactory emf, DatabaseExecutor executor, EntityCacheFactory caches) {
+        super(
+                MatchExpression.class,
+                emf,
+                executor,
+                caches.create(MatchExpression.class, MatchExpression::getId));
     }
 }
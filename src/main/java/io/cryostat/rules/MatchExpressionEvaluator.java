@@ -19,6 +19,7 @@ import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.CompletionException;
 
 import javax.script.Bindings;
@@ -27,6 +28,8 @@ import javax.script.ScriptException;
 
 import io.cryostat.configuration.CredentialsManager;
 import io.cryostat.platform.ServiceRef;
+import io.cryostat.rules.MatchExpressionCompiler.CompiledMatchExpression;
+import io.cryostat.rules.MatchExpressionCompiler.UnsupportedEvaluationException;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
@@ -42,6 +45,8 @@ import org.slf4j.LoggerFactory;
 public class MatchExpressionEvaluator {
 
     private final ScriptEngine scriptEngine;
+    private final MatchExpressionCompiler compiler = new MatchExpressionCompiler();
+    private final LoadingCache<String, Optional<CompiledMatchExpression>> compiled;
     private final LoadingCache<Pair<String, ServiceRef>, Boolean> cache;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -50,6 +55,7 @@ public class MatchExpressionEvaluator {
             CredentialsManager credentialsManager,
             RuleRegistry ruleRegistry) {
         this.scriptEngine = scriptEngine;
+        this.compiled = Caffeine.newBuilder().maximumSize(256).build(compiler::compile);
         this.cache =
                 Caffeine.newBuilder()
                         .maximumSize(1024) // should this be configurable?
@@ -80,7 +86,7 @@ public class MatchExpressionEvaluator {
     }
 
     private boolean compute(String matchExpression, ServiceRef serviceRef) throws ScriptException {
-        Object r = this.scriptEngine.eval(matchExpression, createBindings(serviceRef));
+        Object r = evaluate(matchExpression, serviceRef);
         if (r == null) {
             throw new ScriptException(
                     String.format(
@@ -96,7 +102,28 @@ public class MatchExpressionEvaluator {
         }
     }
 
+    /**
+     * Evaluate the expression directly in Java if it was compiled and its semantics are reproduced
+     * for this target, otherwise with the script engine.
+     */
+    private Object evaluate(String matchExpression, ServiceRef serviceRef) throws ScriptException {
+        Optional<CompiledMatchExpression> expr = compiled.get(matchExpression);
+        if (expr != null && expr.isPresent()) {
+            try {
+                return expr.get().evaluate(serviceRef);
+            } catch (UnsupportedEvaluationException e) {
+                logger.trace(
+                        "Evaluating {} with script engine for {}", matchExpression, serviceRef);
+            }
+        }
+        // the script engine is not thread safe, unlike the compiled expressions
+        synchronized (scriptEngine) {
+            return this.scriptEngine.eval(matchExpression, createBindings(serviceRef));
+        }
+    }
+
     private void invalidateCache(String matchExpression) {
+        compiled.invalidate(matchExpression);
         var it = cache.asMap().keySet().iterator();
         while (it.hasNext()) {
             Pair<String, ServiceRef> entry = it.next();
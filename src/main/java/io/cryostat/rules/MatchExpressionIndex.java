@@ -0,0 +1,315 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.rules;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import javax.script.ScriptException;
+
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.platform.PlatformClient;
+import io.cryostat.platform.ServiceRef;
+import io.cryostat.platform.TargetDiscoveryEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintains which discovered targets each rule and credentials match expression applies to, in both
+ * directions. An expression is indexed the first time it is looked up, by evaluating it against
+ * every known target in parallel batches, and is dropped when its rule or credentials are removed.
+ * Target discovery events evaluate only the found or modified target against the indexed
+ * expressions, so lookups for known targets and indexed expressions never evaluate anything.
+ *
+ * <p>Targets are keyed by their full {@link ServiceRef}, so a lookup for a target which has changed
+ * since it was last discovered is evaluated directly rather than answered from stale entries. They
+ * are also keyed by service URI, so that a lost or replaced target is found without a scan.
+ * Expressions are never evaluated while the index's monitor is held.
+ */
+public class MatchExpressionIndex implements Consumer<TargetDiscoveryEvent> {
+
+    static final int BATCH_SIZE = 64;
+    static final int MAX_EXPRESSIONS = 1024;
+
+    private final MatchExpressionEvaluator evaluator;
+    private final PlatformClient platformClient;
+    private final Executor executor;
+    // insertion ordered, so the oldest expression is evicted first once the index is full
+    private final Map<String, Set<ServiceRef>> targetsByExpression = new LinkedHashMap<>();
+    private final Map<ServiceRef, Set<String>> expressionsByTarget = new HashMap<>();
+    private final Map<URI, ServiceRef> targetsByUri = new HashMap<>();
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private boolean seeded;
+
+    MatchExpressionIndex(
+            MatchExpressionEvaluator evaluator,
+            PlatformClient platformClient,
+            CredentialsManager credentialsManager,
+            RuleRegistry ruleRegistry,
+            Executor executor) {
+        this.evaluator = evaluator;
+        this.platformClient = platformClient;
+        this.executor = executor;
+
+        platformClient.addTargetDiscoveryListener(this);
+        credentialsManager.addListener(
+                e -> {
+                    switch (e.getEventType()) {
+                        case REMOVED:
+                            invalidate(e.getPayload());
+                            break;
+                        default:
+                            // ignore
+                            break;
+                    }
+                });
+        ruleRegistry.addListener(
+                e -> {
+                    switch (e.getEventType()) {
+                        case REMOVED:
+                            invalidate(e.getPayload().getMatchExpression());
+                            break;
+                        default:
+                            // ignore
+                            break;
+                    }
+                });
+    }
+
+    public boolean applies(String matchExpression, ServiceRef serviceRef) throws ScriptException {
+        boolean known;
+        synchronized (this) {
+            seed();
+            known = expressionsByTarget.containsKey(serviceRef);
+            Set<ServiceRef> targets = targetsByExpression.get(matchExpression);
+            if (known && targets != null) {
+                return targets.contains(serviceRef);
+            }
+        }
+        if (!known) {
+            return evaluator.applies(matchExpression, serviceRef);
+        }
+        return getMatchingTargets(matchExpression).contains(serviceRef);
+    }
+
+    public Set<ServiceRef> getMatchingTargets(String matchExpression) throws ScriptException {
+        List<ServiceRef> pending;
+        synchronized (this) {
+            seed();
+            Set<ServiceRef> targets = targetsByExpression.get(matchExpression);
+            if (targets != null) {
+                return new HashSet<>(targets);
+            }
+            pending = new ArrayList<>(expressionsByTarget.keySet());
+        }
+
+        Set<ServiceRef> evaluated = new HashSet<>();
+        Set<ServiceRef> matched = new HashSet<>();
+        while (true) {
+            matched.addAll(evaluate(matchExpression, pending));
+            evaluated.addAll(pending);
+
+            synchronized (this) {
+                Set<ServiceRef> targets = targetsByExpression.get(matchExpression);
+                if (targets != null) {
+                    return new HashSet<>(targets);
+                }
+                // targets discovered while the batches ran are evaluated in another round
+                pending = new ArrayList<>();
+                for (ServiceRef ref : expressionsByTarget.keySet()) {
+                    if (!evaluated.contains(ref)) {
+                        pending.add(ref);
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    continue;
+                }
+                targets = new HashSet<>();
+                for (Map.Entry<ServiceRef, Set<String>> entry : expressionsByTarget.entrySet()) {
+                    if (matched.contains(entry.getKey())) {
+                        targets.add(entry.getKey());
+                        entry.getValue().add(matchExpression);
+                    }
+                }
+                targetsByExpression.put(matchExpression, targets);
+                if (targetsByExpression.size() > MAX_EXPRESSIONS) {
+                    unindex(targetsByExpression.keySet().iterator().next());
+                }
+                return new HashSet<>(targets);
+            }
+        }
+    }
+
+    public synchronized void invalidate(String matchExpression) {
+        unindex(matchExpression);
+    }
+
+    @Override
+    public void accept(TargetDiscoveryEvent tde) {
+        switch (tde.getEventKind()) {
+            case FOUND:
+            case MODIFIED:
+                put(tde.getServiceRef());
+                break;
+            case LOST:
+                synchronized (this) {
+                    seed();
+                    removeTarget(tde.getServiceRef().getServiceUri());
+                }
+                break;
+            default:
+                throw new UnsupportedOperationException(tde.getEventKind().toString());
+        }
+    }
+
+    private void put(ServiceRef serviceRef) {
+        Set<String> pending;
+        synchronized (this) {
+            seed();
+            pending = new HashSet<>(targetsByExpression.keySet());
+        }
+
+        Set<String> evaluated = new HashSet<>();
+        Set<String> matched = new HashSet<>();
+        Set<String> failed = new HashSet<>();
+        while (true) {
+            for (String expression : pending) {
+                evaluate(expression, serviceRef, matched, failed);
+            }
+            evaluated.addAll(pending);
+
+            synchronized (this) {
+                // expressions indexed while this target was evaluated are evaluated in another
+                // round
+                pending = new HashSet<>(targetsByExpression.keySet());
+                pending.removeAll(evaluated);
+                if (!pending.isEmpty()) {
+                    continue;
+                }
+                removeTarget(serviceRef.getServiceUri());
+                ServiceRef ref = new ServiceRef(serviceRef);
+                Set<String> expressions = new HashSet<>();
+                expressionsByTarget.put(ref, expressions);
+                targetsByUri.put(ref.getServiceUri(), ref);
+                for (String expression : matched) {
+                    Set<ServiceRef> targets = targetsByExpression.get(expression);
+                    if (targets != null) {
+                        targets.add(ref);
+                        expressions.add(expression);
+                    }
+                }
+                // drop failing expressions so that the next lookup evaluates and reports the
+                // failure
+                failed.forEach(this::unindex);
+                return;
+            }
+        }
+    }
+
+    private void evaluate(
+            String expression, ServiceRef serviceRef, Set<String> matched, Set<String> failed) {
+        try {
+            if (evaluator.applies(expression, serviceRef)) {
+                matched.add(expression);
+            }
+        } catch (ScriptException e) {
+            logger.warn("Script exception", e);
+            failed.add(expression);
+        }
+    }
+
+    private Set<ServiceRef> evaluate(String matchExpression, List<ServiceRef> targets)
+            throws ScriptException {
+        List<CompletableFuture<List<ServiceRef>>> batches = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i += BATCH_SIZE) {
+            List<ServiceRef> batch = targets.subList(i, Math.min(targets.size(), i + BATCH_SIZE));
+            batches.add(
+                    CompletableFuture.supplyAsync(
+                            () -> {
+                                List<ServiceRef> matched = new ArrayList<>();
+                                for (ServiceRef ref : batch) {
+                                    try {
+                                        if (evaluator.applies(matchExpression, ref)) {
+                                            matched.add(ref);
+                                        }
+                                    } catch (ScriptException e) {
+                                        throw new CompletionException(e);
+                                    }
+                                }
+                                return matched;
+                            },
+                            executor));
+        }
+        Set<ServiceRef> result = new HashSet<>();
+        try {
+            for (CompletableFuture<List<ServiceRef>> batch : batches) {
+                result.addAll(batch.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ScriptException) {
+                throw (ScriptException) e.getCause();
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    private void seed() {
+        if (seeded) {
+            return;
+        }
+        seeded = true;
+        for (ServiceRef ref : platformClient.listDiscoverableServices()) {
+            if (!targetsByUri.containsKey(ref.getServiceUri())) {
+                ServiceRef copy = new ServiceRef(ref);
+                targetsByUri.put(copy.getServiceUri(), copy);
+                expressionsByTarget.put(copy, new HashSet<>());
+            }
+        }
+    }
+
+    private void removeTarget(URI serviceUri) {
+        ServiceRef ref = targetsByUri.remove(serviceUri);
+        if (ref == null) {
+            return;
+        }
+        for (String expression : expressionsByTarget.remove(ref)) {
+            targetsByExpression.get(expression).remove(ref);
+        }
+    }
+
+    private void unindex(String matchExpression) {
+        Set<ServiceRef> targets = targetsByExpression.remove(matchExpression);
+        if (targets == null) {
+            return;
+        }
+        for (ServiceRef ref : targets) {
+            expressionsByTarget.get(ref).remove(matchExpression);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 import javax.script.ScriptException;
@@ -75,6 +76,18 @@ public class MatchExpressionManager {
         return dao.delete(id);
     }
 
+    public CompletableFuture<Optional<MatchExpression>> getAsync(int id) {
+        return dao.getAsync(id);
+    }
+
+    public CompletableFuture<List<MatchExpression>> getAllAsync() {
+        return dao.getAllAsync();
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(int id) {
+        return dao.deleteAsync(id);
+    }
+
     public Set<ServiceRef> resolveMatchingTargets(int id) {
         Optional<MatchExpression> matchExpression = dao.get(id);
         if (matchExpression.isEmpty()) {
@@ -26,7 +26,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import javax.script.ScriptException;
@@ -54,7 +53,11 @@ import io.cryostat.rules.RuleRegistry.RuleEvent;
 import io.cryostat.util.events.Event;
 import io.cryostat.util.events.EventListener;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.vertx.core.AbstractVerticle;
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -72,9 +75,11 @@ public class RuleProcessor extends AbstractVerticle implements Consumer<TargetDi
     private final RecordingTargetHelper recordingTargetHelper;
     private final RecordingMetadataManager metadataManager;
     private final PeriodicArchiverFactory periodicArchiverFactory;
+    private final ArchivalScheduler archivalScheduler;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final Map<Pair<String, Rule>, Future<?>> tasks;
+    private final Map<String, CompletableFuture<Void>> lanes = new ConcurrentHashMap<>();
 
     RuleProcessor(
             ScheduledExecutorService executor,
@@ -86,7 +91,8 @@ public class RuleProcessor extends AbstractVerticle implements Consumer<TargetDi
             RecordingArchiveHelper recordingArchiveHelper,
             RecordingTargetHelper recordingTargetHelper,
             RecordingMetadataManager metadataManager,
-            PeriodicArchiverFactory periodicArchiverFactory) {
+            PeriodicArchiverFactory periodicArchiverFactory,
+            ArchivalScheduler archivalScheduler) {
         this.executor = executor;
         this.platformClient = platformClient;
         this.registry = registry;
@@ -97,6 +103,7 @@ public class RuleProcessor extends AbstractVerticle implements Consumer<TargetDi
         this.recordingTargetHelper = recordingTargetHelper;
         this.metadataManager = metadataManager;
         this.periodicArchiverFactory = periodicArchiverFactory;
+        this.archivalScheduler = archivalScheduler;
         this.tasks = new ConcurrentHashMap<>();
 
         this.registry.addListener(this.ruleListener());
@@ -105,6 +112,7 @@ public class RuleProcessor extends AbstractVerticle implements Consumer<TargetDi
 
     @Override
     public void start() {
+        this.archivalScheduler.start();
         this.platformClient.addTargetDiscoveryListener(this);
     }
 
@@ -113,6 +121,7 @@ public class RuleProcessor extends AbstractVerticle implements Consumer<TargetDi
         this.platformClient.removeTargetDiscoveryListener(this);
         this.tasks.forEach((ruleExecution, task) -> task.cancel(false));
         this.tasks.clear();
+        this.archivalScheduler.stop();
     }
 
     EventListener<RuleRegistry.RuleEvent, Rule> ruleListener() {
@@ -145,11 +154,7 @@ public class RuleProcessor extends AbstractVerticle implements Consumer<TargetDi
             private void activateRule(Event<RuleEvent, Rule> event) {
                 executor.submit(
                         () -> {
-                            platformClient.listDiscoverableServices().stream()
-                                    .filter(
-                                            serviceRef ->
-                                                    registry.applies(
-                                                            event.getPayload(), serviceRef))
+                            registry.getTargets(event.getPayload())
                                     .forEach(
                                             serviceRef -> activate(event.getPayload(), serviceRef));
                         });
@@ -196,34 +201,76 @@ public class RuleProcessor extends AbstractVerticle implements Consumer<TargetDi
         };
     }
 
+    /**
+     * Handle a discovery event on the executor. Events for the same target are processed in the
+     * order they were received, one at a time, while events for different targets are processed
+     * concurrently.
+     */
     @Override
-    public synchronized void accept(TargetDiscoveryEvent tde) {
+    public void accept(TargetDiscoveryEvent tde) {
+        ServiceRef serviceRef = tde.getServiceRef();
+        Runnable task;
         switch (tde.getEventKind()) {
             case FOUND:
-                activateAllRulesFor(tde.getServiceRef());
+            case MODIFIED:
+                RuleActivation activation = new RuleActivation(serviceRef);
+                activation.begin();
+                task = () -> activateAllRulesFor(serviceRef, activation);
                 break;
             case LOST:
-                deactivate(null, tde.getServiceRef());
-                break;
-            case MODIFIED:
-                activateAllRulesFor(tde.getServiceRef());
+                task = () -> deactivate(null, serviceRef);
                 break;
             default:
                 throw new UnsupportedOperationException(tde.getEventKind().toString());
         }
+        serially(serviceRef, task);
     }
 
-    private void activateAllRulesFor(ServiceRef serviceRef) {
+    private void activateAllRulesFor(ServiceRef serviceRef, RuleActivation activation) {
+        activation.queuedMillis = activation.elapsedMillis();
         registry.getRules(serviceRef)
                 .forEach(
                         rule -> {
                             if (rule.isEnabled()) {
-                                activate(rule, serviceRef);
+                                activateNow(rule, serviceRef);
+                                activation.rules++;
                             }
                         });
+        activation.end();
+        activation.commit();
     }
 
     private void activate(Rule rule, ServiceRef serviceRef) {
+        serially(serviceRef, () -> activateNow(rule, serviceRef));
+    }
+
+    /**
+     * Run the task after any tasks previously submitted for the same target have completed. Targets
+     * are identified by service URI, which unlike the JVM ID is known from the first event.
+     */
+    private void serially(ServiceRef serviceRef, Runnable task) {
+        String key = serviceRef.getServiceUri().toString();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = lanes.put(key, done);
+        Runnable run =
+                () -> {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        logger.error("Rule activation exception", e);
+                    } finally {
+                        lanes.remove(key, done);
+                        done.complete(null);
+                    }
+                };
+        if (previous == null) {
+            executor.execute(run);
+        } else {
+            previous.whenComplete((v, t) -> executor.execute(run));
+        }
+    }
+
+    private void activateNow(Rule rule, ServiceRef serviceRef) {
         if (StringUtils.isBlank(serviceRef.getJvmId())) {
             this.logger.trace(
                     "Target {} has no JVM ID, aborting rule activation",
@@ -248,59 +295,56 @@ public class RuleProcessor extends AbstractVerticle implements Consumer<TargetDi
         this.logger.trace(
                 "Activating rule {} for target {}", rule.getName(), serviceRef.getServiceUri());
 
-        executor.submit(
-                () -> {
-                    try {
-                        Credentials credentials = credentialsManager.getCredentials(serviceRef);
-                        if (rule.isArchiver()) {
-                            try {
-                                archiveRuleRecording(
-                                        new ConnectionDescriptor(serviceRef, credentials), rule);
-                            } catch (Exception e) {
-                                logger.error("Archival exception", e);
-                            }
-                        } else {
-                            try {
-                                if (!startRuleRecording(
-                                        new ConnectionDescriptor(serviceRef, credentials), rule)) {
-                                    return;
-                                }
-                            } catch (Exception e) {
-                                logger.error("Start exception", e);
-                                return;
-                            }
+        try {
+            Credentials credentials = credentialsManager.getCredentials(serviceRef);
+            if (rule.isArchiver()) {
+                try {
+                    archiveRuleRecording(new ConnectionDescriptor(serviceRef, credentials), rule);
+                } catch (Exception e) {
+                    logger.error("Archival exception", e);
+                }
+            } else {
+                try {
+                    if (!startRuleRecording(
+                            new ConnectionDescriptor(serviceRef, credentials), rule)) {
+                        return;
+                    }
+                } catch (Exception e) {
+                    logger.error("Start exception", e);
+                    return;
+                }
 
-                            if (tasks.containsKey(key)) {
-                                tasks.get(key).cancel(false);
-                            }
+                if (tasks.containsKey(key)) {
+                    tasks.get(key).cancel(false);
+                }
 
-                            PeriodicArchiver periodicArchiver =
-                                    periodicArchiverFactory.create(
-                                            serviceRef,
-                                            credentialsManager,
-                                            rule,
-                                            recordingArchiveHelper,
-                                            this::archivalFailureHandler);
-                            int initialDelay = rule.getInitialDelaySeconds();
-                            int archivalPeriodSeconds = rule.getArchivalPeriodSeconds();
-                            if (initialDelay <= 0) {
-                                initialDelay = archivalPeriodSeconds;
-                            }
-                            if (rule.getPreservedArchives() <= 0 || archivalPeriodSeconds <= 0) {
-                                return;
-                            }
-                            Future<?> task =
-                                    executor.scheduleAtFixedRate(
-                                            periodicArchiver::run,
-                                            initialDelay,
-                                            archivalPeriodSeconds,
-                                            TimeUnit.SECONDS);
-                            tasks.put(key, task);
-                        }
-                    } catch (ScriptException e) {
-                        logger.error("Script exception", e);
-                    }
-                });
+                PeriodicArchiver periodicArchiver =
+                        periodicArchiverFactory.create(
+                                serviceRef,
+                                credentialsManager,
+                                rule,
+                                recordingArchiveHelper,
+                                this::archivalFailureHandler);
+                int initialDelay = rule.getInitialDelaySeconds();
+                int archivalPeriodSeconds = rule.getArchivalPeriodSeconds();
+                if (initialDelay <= 0) {
+                    initialDelay = archivalPeriodSeconds;
+                }
+                if (rule.getPreservedArchives() <= 0 || archivalPeriodSeconds <= 0) {
+                    return;
+                }
+                Future<?> task =
+                        archivalScheduler.schedule(
+                                serviceRef.getJvmId(),
+                                rule,
+                                periodicArchiver::run,
+                                initialDelay,
+                                archivalPeriodSeconds);
+                tasks.put(key, task);
+            }
+        } catch (ScriptException e) {
+            logger.error("Script exception", e);
+        }
     }
 
     private void deactivate(Rule rule, ServiceRef serviceRef) {
@@ -435,4 +479,30 @@ public class RuleProcessor extends AbstractVerticle implements Consumer<TargetDi
             return false;
         }
     }
+
+    @Name("io.cryostat.rules.RuleProcessor.RuleActivation")
+    @Label("Rule Activation")
+    @Category("Cryostat")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class RuleActivation extends jdk.jfr.Event {
+        String jvmId;
+        String serviceUri;
+        int rules;
+
+        @Label("Queued (ms)")
+        long queuedMillis;
+
+        private final transient long received = System.nanoTime();
+
+        RuleActivation(ServiceRef serviceRef) {
+            this.jvmId = serviceRef.getJvmId();
+            this.serviceUri = serviceRef.getServiceUri().toString();
+        }
+
+        long elapsedMillis() {
+            return (System.nanoTime() - received) / 1_000_000;
+        }
+    }
 }
@@ -40,7 +40,7 @@ import org.slf4j.LoggerFactory;
 public class RuleRegistry extends AbstractEventEmitter<RuleEvent, Rule> {
 
     private final Path rulesDir;
-    private final Lazy<MatchExpressionEvaluator> matchExpressionEvaluator;
+    private final Lazy<MatchExpressionIndex> matchExpressionIndex;
     private final FileSystem fs;
     private final Set<Rule> rules;
     private final Gson gson;
@@ -48,11 +48,11 @@ public class RuleRegistry extends AbstractEventEmitter<RuleEvent, Rule> {
 
     RuleRegistry(
             Path rulesDir,
-            Lazy<MatchExpressionEvaluator> matchExpressionEvaluator,
+            Lazy<MatchExpressionIndex> matchExpressionIndex,
             FileSystem fs,
             Gson gson) {
         this.rulesDir = rulesDir;
-        this.matchExpressionEvaluator = matchExpressionEvaluator;
+        this.matchExpressionIndex = matchExpressionIndex;
         this.fs = fs;
         this.gson = gson;
         this.rules = new HashSet<>();
@@ -110,7 +110,7 @@ public class RuleRegistry extends AbstractEventEmitter<RuleEvent, Rule> {
 
     public boolean applies(Rule rule, ServiceRef serviceRef) {
         try {
-            return matchExpressionEvaluator.get().applies(rule.getMatchExpression(), serviceRef);
+            return matchExpressionIndex.get().applies(rule.getMatchExpression(), serviceRef);
         } catch (ScriptException se) {
             logger.error("Script exception", se);
             try {
@@ -122,6 +122,20 @@ public class RuleRegistry extends AbstractEventEmitter<RuleEvent, Rule> {
         }
     }
 
+    public Set<ServiceRef> getTargets(Rule rule) {
+        try {
+            return matchExpressionIndex.get().getMatchingTargets(rule.getMatchExpression());
+        } catch (ScriptException se) {
+            logger.error("Script exception", se);
+            try {
+                deleteRule(rule);
+            } catch (IOException ioe) {
+                logger.error("Delete exception", ioe);
+            }
+            return Set.of();
+        }
+    }
+
     public Set<Rule> getRules(ServiceRef serviceRef) {
         if (!serviceRef.getAlias().isPresent()) {
             return Set.of();
@@ -19,14 +19,18 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
-import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.script.ScriptEngine;
 
 import io.cryostat.configuration.ConfigurationModule;
 import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.configuration.Variables;
+import io.cryostat.core.sys.Clock;
+import io.cryostat.core.sys.Environment;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.discovery.DiscoveryStorage;
 import io.cryostat.net.TargetConnectionManager;
@@ -34,6 +38,8 @@ import io.cryostat.recordings.RecordingArchiveHelper;
 import io.cryostat.recordings.RecordingMetadataManager;
 import io.cryostat.recordings.RecordingOptionsBuilderFactory;
 import io.cryostat.recordings.RecordingTargetHelper;
+import io.cryostat.storage.DatabaseExecutor;
+import io.cryostat.storage.EntityCacheFactory;
 
 import com.google.gson.Gson;
 import dagger.Lazy;
@@ -44,12 +50,15 @@ import dagger.Provides;
 public abstract class RulesModule {
     public static final String RULES_SUBDIRECTORY = "rules";
     public static final String RULES_WEB_CLIENT = "RULES_WEB_CLIENT";
+    static final int DEFAULT_RULE_ARCHIVE_JITTER_PERCENT = 10;
+    static final int DEFAULT_RULE_ARCHIVE_MAX_CONCURRENT = 4;
+    static final int DEFAULT_RULE_ARCHIVE_MAX_CONCURRENT_PER_RULE = 2;
 
     @Provides
     @Singleton
     static RuleRegistry provideRuleRegistry(
             @Named(ConfigurationModule.CONFIGURATION_PATH) Path confDir,
-            Lazy<MatchExpressionEvaluator> matchExpressionEvaluator,
+            Lazy<MatchExpressionIndex> matchExpressionIndex,
             FileSystem fs,
             Gson gson) {
         try {
@@ -57,7 +66,7 @@ public abstract class RulesModule {
             if (!fs.isDirectory(rulesDir)) {
                 Files.createDirectory(rulesDir);
             }
-            return new RuleRegistry(rulesDir, matchExpressionEvaluator, fs, gson);
+            return new RuleRegistry(rulesDir, matchExpressionIndex, fs, gson);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -65,8 +74,9 @@ public abstract class RulesModule {
 
     @Provides
     @Singleton
-    static MatchExpressionDao provideMatchExpressionDao(EntityManager em) {
-        return new MatchExpressionDao(em);
+    static MatchExpressionDao provideMatchExpressionDao(
+            EntityManagerFactory emf, DatabaseExecutor executor, EntityCacheFactory caches) {
+        return new MatchExpressionDao(emf, executor, caches);
     }
 
     @Provides
@@ -96,6 +106,21 @@ public abstract class RulesModule {
         return new MatchExpressionEvaluator(scriptEngine, credentialsManager, ruleRegistry);
     }
 
+    @Provides
+    @Singleton
+    static MatchExpressionIndex provideMatchExpressionIndex(
+            MatchExpressionEvaluator matchExpressionEvaluator,
+            DiscoveryStorage storage,
+            CredentialsManager credentialsManager,
+            RuleRegistry ruleRegistry) {
+        return new MatchExpressionIndex(
+                matchExpressionEvaluator,
+                storage,
+                credentialsManager,
+                ruleRegistry,
+                ForkJoinPool.commonPool());
+    }
+
     @Provides
     @Singleton
     static RuleProcessor provideRuleProcessor(
@@ -107,7 +132,8 @@ public abstract class RulesModule {
             RecordingArchiveHelper recordingArchiveHelper,
             RecordingTargetHelper recordingTargetHelper,
             RecordingMetadataManager metadataManager,
-            PeriodicArchiverFactory periodicArchiverFactory) {
+            PeriodicArchiverFactory periodicArchiverFactory,
+            ArchivalScheduler archivalScheduler) {
         return new RuleProcessor(
                 Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors() * 2),
                 storage,
@@ -118,7 +144,45 @@ public abstract class RulesModule {
                 recordingArchiveHelper,
                 recordingTargetHelper,
                 metadataManager,
-                periodicArchiverFactory);
+                periodicArchiverFactory,
+                archivalScheduler);
+    }
+
+    @Provides
+    @Singleton
+    static ArchivalScheduler provideArchivalScheduler(Clock clock, Environment env) {
+        int maxConcurrent =
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                env.getEnv(
+                                        Variables.RULE_ARCHIVE_MAX_CONCURRENT,
+                                        String.valueOf(DEFAULT_RULE_ARCHIVE_MAX_CONCURRENT))));
+        return new ArchivalScheduler(
+                Executors.newSingleThreadScheduledExecutor(),
+                Executors.newFixedThreadPool(maxConcurrent),
+                clock,
+                Math.min(
+                        100,
+                        Math.max(
+                                0,
+                                Integer.parseInt(
+                                        env.getEnv(
+                                                Variables.RULE_ARCHIVE_JITTER_PERCENT,
+                                                String.valueOf(
+                                                        DEFAULT_RULE_ARCHIVE_JITTER_PERCENT))))),
+                maxConcurrent,
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                env.getEnv(
+                                        Variables.RULE_ARCHIVE_MAX_CONCURRENT_PER_RULE,
+                                        String.valueOf(
+                                                DEFAULT_RULE_ARCHIVE_MAX_CONCURRENT_PER_RULE)))),
+                ArchivalScheduler.OverrunPolicy.valueOf(
+                        env.getEnv(
+                                Variables.RULE_ARCHIVE_OVERRUN_POLICY,
+                                ArchivalScheduler.OverrunPolicy.SKIP.name())));
     }
 
     @Provides
@@ -15,98 +15,350 @@
  */
 package io.cryostat.storage;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
 
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Base for data access objects. Each operation uses its own short-lived {@link EntityManager}, and
+ * so its own pooled database connection, so that operations from different threads run
+ * concurrently. Entities returned by DAO methods are always detached.
+ *
+ * <p>The {@code Async} variants of operations run on the {@link DatabaseExecutor} and return
+ * futures, for callers which must not block.
+ *
+ * <p>DAOs of small, rarely written tables may be given an {@link EntityCache}, in which case reads
+ * are served from the cache and writes are applied to it once committed. The entities returned by
+ * reads of a cached DAO are the cache's own instances and are shared with every other caller, so
+ * they must not be modified. Tables holding secrets should not be cached, since the cache keeps
+ * every row for the life of the process.
+ */
 public abstract class AbstractDao<I, T> {
 
     protected final Class<T> klazz;
-    protected final EntityManager entityManager;
+    protected final EntityManagerFactory entityManagerFactory;
+    protected final DatabaseExecutor executor;
+    protected final EntityCache<I, T> cache;
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
-    protected AbstractDao(Class<T> klazz, EntityManager entityManager) {
+    private volatile boolean versionCreated;
+    // held so that reads served from the cache do not allocate
+    private final Supplier<List<T>> rows = this::loadAll;
+    private final LongSupplier version = this::loadVersion;
+
+    protected AbstractDao(
+            Class<T> klazz, EntityManagerFactory entityManagerFactory, DatabaseExecutor executor) {
+        this(klazz, entityManagerFactory, executor, null);
+    }
+
+    protected AbstractDao(
+            Class<T> klazz,
+            EntityManagerFactory entityManagerFactory,
+            DatabaseExecutor executor,
+            EntityCache<I, T> cache) {
         this.klazz = klazz;
-        this.entityManager = entityManager;
+        this.entityManagerFactory = entityManagerFactory;
+        this.executor = executor;
+        this.cache = cache;
     }
 
     public final T save(T t) {
-        synchronized (entityManager) {
-            Objects.requireNonNull(t);
-            EntityTransaction transaction = entityManager.getTransaction();
-            try {
-                transaction.begin();
-                entityManager.persist(t);
-                transaction.commit();
-                entityManager.detach(t);
-                return t;
-            } catch (Exception e) {
-                if (transaction != null) {
-                    transaction.rollback();
-                }
-                logger.error("Persist exception", e);
-                throw e;
-            }
+        Objects.requireNonNull(t);
+        try {
+            return writeThrough(
+                    entityManager -> {
+                        entityManager.persist(t);
+                        return t;
+                    });
+        } catch (Exception e) {
+            logger.error("Persist exception", e);
+            throw e;
         }
     }
 
     public final boolean delete(I id) {
-        synchronized (entityManager) {
-            Objects.requireNonNull(id);
-            EntityTransaction transaction = entityManager.getTransaction();
-            try {
-                transaction.begin();
-                T t = entityManager.find(klazz, id);
-                entityManager.remove(t);
-                transaction.commit();
-                return true;
-            } catch (Exception e) {
-                if (transaction != null) {
-                    transaction.rollback();
-                }
-                logger.error("Delete exception", e);
-                return false;
-            }
+        Objects.requireNonNull(id);
+        try {
+            return transact(
+                    entityManager -> {
+                        T t = entityManager.find(klazz, id);
+                        entityManager.remove(t);
+                        return true;
+                    },
+                    (deleted, version) -> cache.removeAll(List.of(id), version));
+        } catch (Exception e) {
+            logger.error("Delete exception", e);
+            return false;
         }
     }
 
+    /**
+     * Get the entity with the given ID. If this DAO has a cache, the returned entity is shared and
+     * must not be modified.
+     */
     public final Optional<T> get(I id) {
-        synchronized (entityManager) {
-            Objects.requireNonNull(id);
-            EntityTransaction transaction = entityManager.getTransaction();
-            try {
-                T t = entityManager.find(klazz, id);
-                if (t != null) {
-                    entityManager.detach(t);
-                }
-                return Optional.ofNullable(t);
-            } catch (Exception e) {
-                if (transaction != null) {
-                    transaction.rollback();
-                }
-                throw e;
-            }
+        Objects.requireNonNull(id);
+        if (cache != null) {
+            return Optional.ofNullable(cached().byId().get(id));
         }
+        return withEntityManager(
+                entityManager -> Optional.ofNullable(entityManager.find(klazz, id)));
     }
 
+    /**
+     * Get every entity in the table. If this DAO has a cache, the returned entities are shared and
+     * must not be modified.
+     */
     public final List<T> getAll() {
-        synchronized (entityManager) {
-            CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-            CriteriaQuery<T> cq = cb.createQuery(klazz);
-            Root<T> rootEntry = cq.from(klazz);
-            CriteriaQuery<T> all = cq.select(rootEntry);
-            TypedQuery<T> allQuery = entityManager.createQuery(all);
-            return allQuery.getResultList();
+        if (cache != null) {
+            return cached().values();
+        }
+        return loadAll();
+    }
+
+    private List<T> loadAll() {
+        return withEntityManager(
+                entityManager -> {
+                    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+                    CriteriaQuery<T> cq = cb.createQuery(klazz);
+                    Root<T> rootEntry = cq.from(klazz);
+                    CriteriaQuery<T> all = cq.select(rootEntry);
+                    TypedQuery<T> allQuery = entityManager.createQuery(all);
+                    return allQuery.getResultList();
+                });
+    }
+
+    /** Persist all of the entities in a single transaction. */
+    public final List<T> saveAll(Collection<T> ts) {
+        Objects.requireNonNull(ts);
+        try {
+            return transact(
+                    entityManager -> {
+                        List<T> saved = new ArrayList<>(ts.size());
+                        for (T t : ts) {
+                            entityManager.persist(Objects.requireNonNull(t));
+                            saved.add(t);
+                        }
+                        return saved;
+                    },
+                    (saved, version) -> cache.putAll(saved, version));
+        } catch (Exception e) {
+            logger.error("Persist exception", e);
+            throw e;
+        }
+    }
+
+    /** Get the entities with the given IDs in a single query, omitting any which do not exist. */
+    public final List<T> getAllByIds(Collection<I> ids) {
+        Objects.requireNonNull(ids);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        if (cache != null) {
+            Map<I, T> byId = cached().byId();
+            return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+        }
+        return withEntityManager(
+                entityManager -> {
+                    List<T> found =
+                            entityManager
+                                    .unwrap(Session.class)
+                                    .byMultipleIds(klazz)
+                                    .multiLoad(ids.stream().map(Serializable.class::cast).toList());
+                    found.removeIf(Objects::isNull);
+                    return found;
+                });
+    }
+
+    /**
+     * Delete the entities with the given IDs in a single transaction, ignoring any which do not
+     * exist.
+     *
+     * @return the number of entities deleted
+     */
+    public final int deleteAll(Collection<I> ids) {
+        Objects.requireNonNull(ids);
+        try {
+            return transact(
+                    entityManager -> {
+                        int deleted = 0;
+                        for (I id : ids) {
+                            T t = entityManager.find(klazz, Objects.requireNonNull(id));
+                            if (t != null) {
+                                entityManager.remove(t);
+                                deleted++;
+                            }
+                        }
+                        return deleted;
+                    },
+                    (deleted, version) -> cache.removeAll(ids, version));
+        } catch (Exception e) {
+            logger.error("Delete exception", e);
+            throw e;
+        }
+    }
+
+    public final CompletableFuture<T> saveAsync(T t) {
+        return async(() -> save(t));
+    }
+
+    public final CompletableFuture<Boolean> deleteAsync(I id) {
+        return async(() -> delete(id));
+    }
+
+    public final CompletableFuture<Optional<T>> getAsync(I id) {
+        return async(() -> get(id));
+    }
+
+    public final CompletableFuture<List<T>> getAllAsync() {
+        return async(this::getAll);
+    }
+
+    public final CompletableFuture<List<T>> saveAllAsync(Collection<T> ts) {
+        return async(() -> saveAll(ts));
+    }
+
+    public final CompletableFuture<List<T>> getAllByIdsAsync(Collection<I> ids) {
+        return async(() -> getAllByIds(ids));
+    }
+
+    public final CompletableFuture<Integer> deleteAllAsync(Collection<I> ids) {
+        return async(() -> deleteAll(ids));
+    }
+
+    /** Run a DAO operation on the database executor. */
+    protected final <R> CompletableFuture<R> async(Supplier<R> operation) {
+        return executor.submit(operation);
+    }
+
+    /** Read from the database with an EntityManager which is closed once the read is done. */
+    protected final <R> R withEntityManager(Function<EntityManager, R> fn) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return fn.apply(entityManager);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Perform a unit of work in a single transaction, with an EntityManager which is closed once
+     * the work is done. The transaction is committed if the work completes normally and is rolled
+     * back if it throws. If this DAO has a cache, it is invalidated once the transaction commits.
+     */
+    protected final <R> R inTransaction(Function<EntityManager, R> fn) {
+        return transact(fn, (result, version) -> cache.invalidate());
+    }
+
+    /**
+     * Perform a unit of work which creates or modifies the returned entity in a single transaction,
+     * as {@link #inTransaction(Function)}. If this DAO has a cache, the entity is written to it
+     * once the transaction commits.
+     */
+    protected final T writeThrough(Function<EntityManager, T> fn) {
+        return transact(fn, (t, version) -> cache.putAll(List.of(t), version));
+    }
+
+    private <R> R transact(Function<EntityManager, R> fn, ObjLongConsumer<R> onCommit) {
+        if (cache != null && cache.isVersioned()) {
+            createVersion();
+        }
+        return withEntityManager(
+                entityManager -> {
+                    EntityTransaction transaction = entityManager.getTransaction();
+                    try {
+                        transaction.begin();
+                        R result = fn.apply(entityManager);
+                        long version =
+                                cache != null && cache.isVersioned()
+                                        ? incrementVersion(entityManager)
+                                        : 0;
+                        transaction.commit();
+                        if (cache != null) {
+                            onCommit.accept(result, version);
+                        }
+                        return result;
+                    } catch (RuntimeException e) {
+                        if (transaction.isActive()) {
+                            transaction.rollback();
+                        }
+                        throw e;
+                    }
+                });
+    }
+
+    private EntityCache.Snapshot<I, T> cached() {
+        return cache.snapshot(rows, version);
+    }
+
+    private long loadVersion() {
+        return withEntityManager(
+                entityManager ->
+                        Optional.ofNullable(entityManager.find(TableVersion.class, cache.getName()))
+                                .map(TableVersion::getVersion)
+                                .orElse(0L));
+    }
+
+    /**
+     * Create the table's version row ahead of the first write, in its own transaction, so that
+     * concurrent first writes do not race to insert it.
+     */
+    private void createVersion() {
+        if (versionCreated) {
+            return;
+        }
+        try {
+            withEntityManager(
+                    entityManager -> {
+                        EntityTransaction transaction = entityManager.getTransaction();
+                        transaction.begin();
+                        if (entityManager.find(TableVersion.class, cache.getName()) == null) {
+                            entityManager.persist(new TableVersion(cache.getName(), 0));
+                        }
+                        transaction.commit();
+                        return null;
+                    });
+            versionCreated = true;
+        } catch (PersistenceException e) {
+            // most likely created concurrently, otherwise the write itself will fail
+            logger.debug("Failed to create version of {}", cache.getName(), e);
+        }
+    }
+
+    private long incrementVersion(EntityManager entityManager) {
+        int updated =
+                entityManager
+                        .createQuery(
+                                "UPDATE TableVersion v SET v.version = v.version + 1"
+                                        + " WHERE v.name = :name")
+                        .setParameter("name", cache.getName())
+                        .executeUpdate();
+        if (updated == 0) {
+            entityManager.persist(new TableVersion(cache.getName(), 1));
+            return 1;
         }
+        return entityManager.find(TableVersion.class, cache.getName()).getVersion();
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.storage;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+@Name("io.cryostat.storage.ConnectionPoolStats")
+@Label("JDBC Connection Pool")
+@Category("Cryostat")
+@Period("10 s")
+@SuppressFBWarnings(
+        value = "URF_UNREAD_FIELD",
+        justification = "The event fields are recorded with JFR instead of accessed directly")
+public class ConnectionPoolStats extends Event {
+    int active;
+    int idle;
+    int total;
+    int maximum;
+
+    @Label("Threads Awaiting Connection")
+    int waiting;
+
+    ConnectionPoolStats(HikariPoolMXBean pool, int maximum) {
+        this.active = pool.getActiveConnections();
+        this.idle = pool.getIdleConnections();
+        this.total = pool.getTotalConnections();
+        this.waiting = pool.getThreadsAwaitingConnection();
+        this.maximum = maximum;
+    }
+}
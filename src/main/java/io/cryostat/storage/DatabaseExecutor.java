@@ -0,0 +1,147 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.storage;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+/**
+ * Runs database operations on a dedicated pool of threads, so that callers on the Vert.x event loop
+ * or other latency-sensitive threads can compose the results instead of blocking on them. The
+ * number of operations waiting to run is bounded, and an operation which does not complete within
+ * the timeout, including the time spent waiting in the queue, fails with a {@link
+ * TimeoutException}. An operation which times out before it begins is not run at all.
+ */
+public class DatabaseExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final Duration timeout;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    DatabaseExecutor(int threads, int queueCapacity, Duration timeout) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor =
+                new ThreadPoolExecutor(
+                        threads,
+                        threads,
+                        0,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueCapacity),
+                        r -> {
+                            Thread thread =
+                                    new Thread(r, "cryostat-database-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        this.timeout = timeout;
+    }
+
+    public <R> CompletableFuture<R> submit(Supplier<R> task) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            executor.execute(
+                    () -> {
+                        if (future.isDone()) {
+                            return;
+                        }
+                        try {
+                            future.complete(task.get());
+                        } catch (Throwable t) {
+                            future.completeExceptionally(t);
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            future.completeExceptionally(
+                    new RejectedExecutionException(
+                            String.format(
+                                    "Database queue is full with %d operations waiting",
+                                    executor.getQueue().size()),
+                            e));
+            return future;
+        }
+        return future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete(
+                        (r, t) -> {
+                            if (t instanceof TimeoutException) {
+                                timedOut.incrementAndGet();
+                            }
+                        });
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    public int getActive() {
+        return executor.getActiveCount();
+    }
+
+    public long getCompleted() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    @Name("io.cryostat.storage.DatabaseExecutor.DatabaseExecutorStats")
+    @Label("Database Executor")
+    @Category("Cryostat")
+    @Period("10 s")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class DatabaseExecutorStats extends Event {
+        int queued;
+        int active;
+        long completed;
+        long rejected;
+        long timedOut;
+
+        DatabaseExecutorStats(DatabaseExecutor executor) {
+            this.queued = executor.getQueued();
+            this.active = executor.getActive();
+            this.completed = executor.getCompleted();
+            this.rejected = executor.getRejected();
+            this.timedOut = executor.getTimedOut();
+        }
+    }
+}
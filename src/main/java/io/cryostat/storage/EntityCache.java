@@ -0,0 +1,232 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.storage;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import io.cryostat.core.sys.Clock;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+/**
+ * Read cache holding every row of a small, rarely written table. Reads are served from an immutable
+ * snapshot of the table, which is loaded by the first read after the cache is invalidated. Writes
+ * made through the owning DAO are applied to the snapshot once they are committed, so the snapshot
+ * only needs to be reloaded after writes the DAO cannot describe entity by entity.
+ *
+ * <p>When a version check interval is configured, every write also increments the table's {@link
+ * TableVersion} in the same transaction, and the snapshot is compared against that version at most
+ * once per interval. Writes made by other replicas sharing the database are therefore seen within
+ * the interval. Without a version check interval the cache assumes it is the only writer.
+ */
+public class EntityCache<I, T> {
+
+    private final String name;
+    private final Function<T, I> idOf;
+    private final long versionCheckIntervalNanos;
+    private final Clock clock;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    private Snapshot<I, T> snapshot;
+    // incremented by every write, so that a load which raced with a write is not kept
+    private long generation;
+
+    EntityCache(String name, Function<T, I> idOf, Duration versionCheckInterval, Clock clock) {
+        this.name = name;
+        this.idOf = idOf;
+        this.versionCheckIntervalNanos = Math.max(0, versionCheckInterval.toNanos());
+        this.clock = clock;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    boolean isVersioned() {
+        return versionCheckIntervalNanos > 0;
+    }
+
+    /**
+     * Get the current snapshot of the table, loading it if the cache is empty or has been found to
+     * be stale.
+     *
+     * @param rows loads every row of the table
+     * @param version loads the table's current {@link TableVersion}
+     */
+    Snapshot<I, T> snapshot(Supplier<List<T>> rows, LongSupplier version) {
+        Snapshot<I, T> current;
+        long loadGeneration;
+        synchronized (this) {
+            current = snapshot;
+            loadGeneration = generation;
+        }
+        if (current != null) {
+            long now = clock.getMonotonicTime();
+            if (!isVersioned() || now - current.checkedAt() < versionCheckIntervalNanos) {
+                hits.incrementAndGet();
+                return current;
+            }
+            long latest = version.getAsLong();
+            synchronized (this) {
+                if (snapshot == current && latest == current.version()) {
+                    snapshot = current.checked(now);
+                    hits.incrementAndGet();
+                    return snapshot;
+                } else if (snapshot == current) {
+                    stale.incrementAndGet();
+                    drop();
+                } else if (snapshot != null) {
+                    hits.incrementAndGet();
+                    return snapshot;
+                }
+                loadGeneration = generation;
+            }
+        }
+        misses.incrementAndGet();
+        long loadedVersion = isVersioned() ? version.getAsLong() : 0;
+        Map<I, T> byId = new LinkedHashMap<>();
+        for (T t : rows.get()) {
+            byId.put(idOf.apply(t), t);
+        }
+        Snapshot<I, T> loaded = new Snapshot<>(byId, loadedVersion, clock.getMonotonicTime());
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                snapshot = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    /** Apply committed writes of entities to the snapshot. */
+    void putAll(Collection<T> ts, long version) {
+        written(
+                version,
+                byId -> {
+                    for (T t : ts) {
+                        byId.put(idOf.apply(t), t);
+                    }
+                });
+    }
+
+    /** Apply committed deletions of entities to the snapshot. */
+    void removeAll(Collection<I> ids, long version) {
+        written(version, byId -> byId.keySet().removeAll(ids));
+    }
+
+    /** Discard the snapshot, so that the next read loads the table again. */
+    public synchronized void invalidate() {
+        generation++;
+        drop();
+    }
+
+    public synchronized int getSize() {
+        return snapshot == null ? 0 : snapshot.byId().size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /** The number of times the snapshot was found to be stale due to another replica's write. */
+    public long getStale() {
+        return stale.get();
+    }
+
+    private synchronized void written(long version, Consumer<Map<I, T>> mutation) {
+        generation++;
+        if (snapshot == null) {
+            return;
+        }
+        if (isVersioned() && version != snapshot.version() + 1) {
+            // another replica wrote to the table since the snapshot was loaded
+            stale.incrementAndGet();
+            drop();
+            return;
+        }
+        Map<I, T> byId = new LinkedHashMap<>(snapshot.byId());
+        mutation.accept(byId);
+        snapshot = new Snapshot<>(byId, version, snapshot.checkedAt());
+    }
+
+    private void drop() {
+        if (snapshot != null) {
+            snapshot = null;
+            invalidations.incrementAndGet();
+        }
+    }
+
+    record Snapshot<I, T>(Map<I, T> byId, List<T> values, long version, long checkedAt) {
+        Snapshot(Map<I, T> byId, long version, long checkedAt) {
+            this(Collections.unmodifiableMap(byId), List.copyOf(byId.values()), version, checkedAt);
+        }
+
+        Snapshot<I, T> checked(long now) {
+            return new Snapshot<>(byId, values, version, now);
+        }
+    }
+
+    @Name("io.cryostat.storage.EntityCache.EntityCacheStats")
+    @Label("Database Read Cache")
+    @Category("Cryostat")
+    @Period("10 s")
+    @SuppressFBWarnings(
+            value = "URF_UNREAD_FIELD",
+            justification = "The event fields are recorded with JFR instead of accessed directly")
+    public static class EntityCacheStats extends Event {
+        String entity;
+        int size;
+        long hits;
+        long misses;
+        long invalidations;
+        long stale;
+
+        EntityCacheStats(EntityCache<?, ?> cache) {
+            this.entity = cache.getName();
+            this.size = cache.getSize();
+            this.hits = cache.getHits();
+            this.misses = cache.getMisses();
+            this.invalidations = cache.getInvalidations();
+            this.stale = cache.getStale();
+        }
+    }
+}
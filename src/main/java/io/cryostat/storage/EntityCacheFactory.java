@@ -0,0 +1,49 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.storage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import io.cryostat.core.sys.Clock;
+
+/** Creates the {@link EntityCache}s for DAOs of small, rarely written tables. */
+public class EntityCacheFactory {
+
+    private final Duration versionCheckInterval;
+    private final Clock clock;
+    private final List<EntityCache<?, ?>> caches = new CopyOnWriteArrayList<>();
+
+    EntityCacheFactory(Duration versionCheckInterval, Clock clock) {
+        this.versionCheckInterval = versionCheckInterval;
+        this.clock = clock;
+    }
+
+    public <I, T> EntityCache<I, T> create(Class<T> klazz, Function<T, I> idOf) {
+        EntityCache<I, T> cache =
+                new EntityCache<>(klazz.getName(), idOf, versionCheckInterval, clock);
+        caches.add(cache);
+        return cache;
+    }
+
+    void commitStats() {
+        for (EntityCache<?, ?> cache : caches) {
+            new EntityCache.EntityCacheStats(cache).commit();
+        }
+    }
+}
@@ -15,19 +15,25 @@
  */
 package io.cryostat.storage;
 
+import java.time.Duration;
 import java.util.Properties;
 
 import javax.inject.Singleton;
 import javax.naming.ConfigurationException;
-import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import javax.sql.DataSource;
 
 import io.cryostat.configuration.Variables;
+import io.cryostat.core.sys.Clock;
 import io.cryostat.core.sys.Environment;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import dagger.Module;
 import dagger.Provides;
+import jdk.jfr.FlightRecorder;
 import org.apache.commons.lang3.StringUtils;
 import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
 import org.jasypt.hibernate5.encryptor.HibernatePBEEncryptorRegistry;
@@ -35,27 +41,117 @@ import org.jasypt.hibernate5.encryptor.HibernatePBEEncryptorRegistry;
 @Module
 public abstract class StorageModule {
 
+    static final int DEFAULT_JDBC_POOL_SIZE = 10;
+    static final long DEFAULT_JDBC_POOL_TIMEOUT_MS = 30_000;
+    static final int DEFAULT_JDBC_QUEUE_SIZE = 1_000;
+    static final long DEFAULT_JDBC_OPERATION_TIMEOUT_MS = 60_000;
+    static final long DEFAULT_JDBC_CACHE_VERSION_CHECK_MS = 0;
+    static final String DEFAULT_JDBC_URL =
+            "jdbc:h2:mem:cryostat;DB_CLOSE_DELAY=-1;INIT=create domain if not exists jsonb as"
+                    + " varchar";
+    static final String DEFAULT_HBM2DDL = "create";
+
+    /**
+     * Whether the configured database keeps its contents across restarts. The default in-memory H2
+     * database does not, and neither does any database whose schema is recreated at startup.
+     */
+    public static boolean isDatabasePersistent(Environment env) {
+        String url = env.getEnv(Variables.JDBC_URL, DEFAULT_JDBC_URL);
+        String hbm2ddl = env.getEnv(Variables.HBM2DDL, DEFAULT_HBM2DDL).trim();
+        return !url.contains(":mem:")
+                && !hbm2ddl.equalsIgnoreCase("create")
+                && !hbm2ddl.equalsIgnoreCase("create-drop");
+    }
+
+    @Provides
+    @Singleton
+    static DataSource provideDataSource(Environment env) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("cryostat");
+        config.setDriverClassName(env.getEnv(Variables.JDBC_DRIVER, "org.h2.Driver"));
+        config.setJdbcUrl(env.getEnv(Variables.JDBC_URL, DEFAULT_JDBC_URL));
+        config.setUsername(env.getEnv(Variables.JDBC_USERNAME, "cryostat"));
+        config.setPassword(env.getEnv(Variables.JDBC_PASSWORD, ""));
+        config.setMaximumPoolSize(
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                env.getEnv(
+                                        Variables.JDBC_POOL_SIZE,
+                                        String.valueOf(DEFAULT_JDBC_POOL_SIZE)))));
+        config.setConnectionTimeout(
+                Math.max(
+                        250,
+                        Long.parseLong(
+                                env.getEnv(
+                                        Variables.JDBC_POOL_TIMEOUT_MS,
+                                        String.valueOf(DEFAULT_JDBC_POOL_TIMEOUT_MS)))));
+        HikariDataSource dataSource = new HikariDataSource(config);
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        FlightRecorder.addPeriodicEvent(
+                ConnectionPoolStats.class,
+                () -> new ConnectionPoolStats(pool, dataSource.getMaximumPoolSize()).commit());
+        return dataSource;
+    }
+
+    @Provides
+    @Singleton
+    static DatabaseExecutor provideDatabaseExecutor(Environment env) {
+        int threads =
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                env.getEnv(
+                                        Variables.JDBC_POOL_SIZE,
+                                        String.valueOf(DEFAULT_JDBC_POOL_SIZE))));
+        int queueCapacity =
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                env.getEnv(
+                                        Variables.JDBC_QUEUE_SIZE,
+                                        String.valueOf(DEFAULT_JDBC_QUEUE_SIZE))));
+        long timeoutMs =
+                Math.max(
+                        1,
+                        Long.parseLong(
+                                env.getEnv(
+                                        Variables.JDBC_OPERATION_TIMEOUT_MS,
+                                        String.valueOf(DEFAULT_JDBC_OPERATION_TIMEOUT_MS))));
+        DatabaseExecutor executor =
+                new DatabaseExecutor(threads, queueCapacity, Duration.ofMillis(timeoutMs));
+        FlightRecorder.addPeriodicEvent(
+                DatabaseExecutor.DatabaseExecutorStats.class,
+                () -> new DatabaseExecutor.DatabaseExecutorStats(executor).commit());
+        return executor;
+    }
+
     @Provides
     @Singleton
-    static EntityManagerFactory provideEntityManagerFactory(Environment env) {
+    static EntityCacheFactory provideEntityCacheFactory(Environment env, Clock clock) {
+        long versionCheckMs =
+                Math.max(
+                        0,
+                        Long.parseLong(
+                                env.getEnv(
+                                        Variables.JDBC_CACHE_VERSION_CHECK_MS,
+                                        String.valueOf(DEFAULT_JDBC_CACHE_VERSION_CHECK_MS))));
+        EntityCacheFactory caches =
+                new EntityCacheFactory(Duration.ofMillis(versionCheckMs), clock);
+        FlightRecorder.addPeriodicEvent(EntityCache.EntityCacheStats.class, caches::commitStats);
+        return caches;
+    }
+
+    @Provides
+    @Singleton
+    static EntityManagerFactory provideEntityManagerFactory(
+            DataSource dataSource, Environment env) {
         Properties properties = new Properties();
-        properties.put(
-                "jakarta.persistence.jdbc.driver",
-                env.getEnv(Variables.JDBC_DRIVER, "org.h2.Driver"));
-        properties.put(
-                "jakarta.persistence.jdbc.url",
-                env.getEnv(
-                        Variables.JDBC_URL,
-                        "jdbc:h2:mem:cryostat;DB_CLOSE_DELAY=-1;INIT=create domain if not exists"
-                                + " jsonb as varchar"));
-        properties.put(
-                "jakarta.persistence.jdbc.user", env.getEnv(Variables.JDBC_USERNAME, "cryostat"));
-        properties.put(
-                "jakarta.persistence.jdbc.password", env.getEnv(Variables.JDBC_PASSWORD, ""));
+        properties.put("hibernate.connection.datasource", dataSource);
         properties.put(
                 "hibernate.dialect",
                 env.getEnv(Variables.HIBERNATE_DIALECT, "org.hibernate.dialect.H2Dialect"));
-        properties.put("hibernate.hbm2ddl.auto", env.getEnv(Variables.HBM2DDL, "create"));
+        properties.put("hibernate.hbm2ddl.auto", env.getEnv(Variables.HBM2DDL, DEFAULT_HBM2DDL));
         if (env.hasEnv(Variables.LOG_QUERIES)) {
             properties.put("hibernate.show_sql", "true");
             properties.put("hibernate.format_sql", "true");
@@ -80,10 +176,4 @@ public abstract class StorageModule {
 
         return Persistence.createEntityManagerFactory("io.cryostat", properties);
     }
-
-    @Provides
-    @Singleton
-    static EntityManager provideEntityManager(EntityManagerFactory emf) {
-        return emf.createEntityManager();
-    }
 }
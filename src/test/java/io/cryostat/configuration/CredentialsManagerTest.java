@@ -17,19 +17,29 @@ package io.cryostat.configuration;
 
 import java.net.URI;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.script.ScriptException;
 
 import io.cryostat.MainModule;
 import io.cryostat.core.net.Credentials;
+import io.cryostat.core.net.discovery.JvmDiscoveryClient.EventKind;
 import io.cryostat.core.sys.FileSystem;
 import io.cryostat.platform.PlatformClient;
 import io.cryostat.platform.ServiceRef;
-import io.cryostat.rules.MatchExpressionEvaluator;
+import io.cryostat.platform.TargetDiscoveryEvent;
+import io.cryostat.rules.MatchExpressionIndex;
 import io.cryostat.rules.MatchExpressionValidator;
 
+import com.github.benmanes.caffeine.cache.Ticker;
 import com.google.gson.Gson;
 import org.apache.commons.codec.binary.Base32;
 import org.hamcrest.MatcherAssert;
@@ -40,9 +50,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
-import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.mockito.stubbing.Answer;
 
 @ExtendWith(MockitoExtension.class)
 class CredentialsManagerTest {
@@ -50,12 +58,14 @@ class CredentialsManagerTest {
     CredentialsManager credentialsManager;
     @Mock Path credentialsDir;
     @Mock MatchExpressionValidator matchExpressionValidator;
-    @Mock MatchExpressionEvaluator matchExpressionEvaluator;
+    @Mock MatchExpressionIndex matchExpressionIndex;
     @Mock PlatformClient platformClient;
     @Mock StoredCredentialsDao dao;
     @Mock FileSystem fs;
     Gson gson = MainModule.provideGson();
     Base32 base32 = new Base32();
+    AtomicLong nanos = new AtomicLong();
+    Ticker ticker = nanos::get;
 
     @BeforeEach
     void setup() {
@@ -63,9 +73,10 @@ class CredentialsManagerTest {
                 new CredentialsManager(
                         credentialsDir,
                         matchExpressionValidator,
-                        () -> matchExpressionEvaluator,
+                        () -> matchExpressionIndex,
                         platformClient,
                         dao,
+                        new CredentialsCache(Duration.ofMinutes(1), ticker),
                         fs,
                         gson);
     }
@@ -96,8 +107,7 @@ class CredentialsManagerTest {
         StoredCredentials stored = new StoredCredentials(1, matchExpression, credentials);
 
         ServiceRef serviceRef = new ServiceRef("id", new URI(targetId), "foo");
-        Mockito.when(matchExpressionEvaluator.applies(matchExpression, serviceRef))
-                .thenReturn(true);
+        Mockito.when(matchExpressionIndex.applies(matchExpression, serviceRef)).thenReturn(true);
 
         Mockito.when(dao.save(Mockito.any())).thenReturn(stored);
 
@@ -202,7 +212,7 @@ class CredentialsManagerTest {
         StoredCredentials stored = new StoredCredentials(1, matchExpression, credentials);
         Mockito.when(dao.getAll()).thenReturn(List.of(stored));
 
-        Mockito.when(matchExpressionEvaluator.applies(Mockito.eq(matchExpression), Mockito.any()))
+        Mockito.when(matchExpressionIndex.applies(Mockito.eq(matchExpression), Mockito.any()))
                 .thenAnswer(
                         invocation -> Set.of(target1, target2).contains(invocation.getArgument(1)));
 
@@ -243,17 +253,8 @@ class CredentialsManagerTest {
         StoredCredentials stored = new StoredCredentials(1, matchExpression, credentials);
         Mockito.when(dao.getAll()).thenReturn(List.of(stored));
 
-        Mockito.when(matchExpressionEvaluator.applies(Mockito.eq(matchExpression), Mockito.any()))
-                .thenAnswer(
-                        new Answer<Boolean>() {
-                            @Override
-                            public Boolean answer(InvocationOnMock invocation) throws Throwable {
-                                ServiceRef sr = (ServiceRef) invocation.getArgument(1);
-                                String alias = sr.getAlias().orElseThrow();
-                                return Set.of(target1.getAlias().get(), target2.getAlias().get())
-                                        .contains(alias);
-                            }
-                        });
+        Mockito.when(matchExpressionIndex.getMatchingTargets(matchExpression))
+                .thenReturn(Set.of(target2, target1));
 
         MatcherAssert.assertThat(
                 credentialsManager.getServiceRefsWithCredentials(),
@@ -287,9 +288,8 @@ class CredentialsManagerTest {
                         URI.create("service:jmx:rmi:///jndi/rmi://cryostat:9091/jmxrmi"),
                         "mytarget");
 
-        Mockito.when(platformClient.listDiscoverableServices()).thenReturn(List.of(serviceRef));
-        Mockito.when(matchExpressionEvaluator.applies(matchExpression, serviceRef))
-                .thenReturn(true);
+        Mockito.when(matchExpressionIndex.getMatchingTargets(matchExpression))
+                .thenReturn(Set.of(serviceRef));
 
         Set<ServiceRef> expected = Set.of(serviceRef);
 
@@ -299,4 +299,160 @@ class CredentialsManagerTest {
         MatcherAssert.assertThat(
                 credentialsManager.resolveMatchingTargets(7), Matchers.equalTo(expected));
     }
+
+    @Test
+    void cachesResolvedCredentials() throws Exception {
+        String matchExpression = "some expression";
+        Credentials credentials = new Credentials("user", "pass");
+        StoredCredentials stored = new StoredCredentials(1, matchExpression, credentials);
+        Mockito.when(dao.getAll()).thenReturn(List.of(stored));
+
+        ServiceRef serviceRef = new ServiceRef("id", new URI("foo"), "foo");
+        Mockito.when(matchExpressionIndex.applies(matchExpression, serviceRef)).thenReturn(true);
+
+        MatcherAssert.assertThat(
+                credentialsManager.getCredentials(serviceRef), Matchers.equalTo(credentials));
+        MatcherAssert.assertThat(
+                credentialsManager.getCredentials(serviceRef), Matchers.equalTo(credentials));
+
+        Mockito.verify(dao, Mockito.times(1)).getAll();
+        Mockito.verify(dao, Mockito.never()).get(Mockito.anyInt());
+        Mockito.verify(matchExpressionIndex, Mockito.times(1)).applies(matchExpression, serviceRef);
+    }
+
+    @Test
+    void cachesTargetsWithoutCredentials() throws Exception {
+        String matchExpression = "some expression";
+        StoredCredentials stored =
+                new StoredCredentials(1, matchExpression, new Credentials("user", "pass"));
+        Mockito.when(dao.getAll()).thenReturn(List.of(stored));
+
+        ServiceRef serviceRef = new ServiceRef("id", new URI("foo"), "foo");
+        Mockito.when(matchExpressionIndex.applies(matchExpression, serviceRef)).thenReturn(false);
+
+        MatcherAssert.assertThat(
+                credentialsManager.getCredentials(serviceRef), Matchers.nullValue());
+        MatcherAssert.assertThat(
+                credentialsManager.getCredentials(serviceRef), Matchers.nullValue());
+
+        Mockito.verify(dao, Mockito.times(1)).getAll();
+        Mockito.verify(matchExpressionIndex, Mockito.times(1)).applies(matchExpression, serviceRef);
+    }
+
+    @Test
+    void rereadsDecryptedCredentialsAfterExpiry() throws Exception {
+        String matchExpression = "some expression";
+        Credentials credentials = new Credentials("user", "pass");
+        StoredCredentials stored = new StoredCredentials(1, matchExpression, credentials);
+        Mockito.when(dao.getAll()).thenReturn(List.of(stored));
+        Mockito.when(dao.get(1)).thenReturn(Optional.of(stored));
+
+        ServiceRef serviceRef = new ServiceRef("id", new URI("foo"), "foo");
+        Mockito.when(matchExpressionIndex.applies(matchExpression, serviceRef)).thenReturn(true);
+
+        credentialsManager.getCredentials(serviceRef);
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        MatcherAssert.assertThat(
+                credentialsManager.getCredentials(serviceRef), Matchers.equalTo(credentials));
+
+        Mockito.verify(dao, Mockito.times(1)).getAll();
+        Mockito.verify(dao, Mockito.times(1)).get(1);
+        Mockito.verify(matchExpressionIndex, Mockito.times(1)).applies(matchExpression, serviceRef);
+    }
+
+    @Test
+    void invalidatesCacheWhenCredentialsChange() throws Exception {
+        String matchExpression = "some expression";
+        Credentials credentials = new Credentials("user", "pass");
+        StoredCredentials stored = new StoredCredentials(1, matchExpression, credentials);
+        Mockito.when(dao.getAll()).thenReturn(List.of(stored));
+        Mockito.when(dao.get(1)).thenReturn(Optional.of(stored));
+
+        ServiceRef serviceRef = new ServiceRef("id", new URI("foo"), "foo");
+        Mockito.when(matchExpressionIndex.applies(matchExpression, serviceRef)).thenReturn(true);
+
+        credentialsManager.getCredentials(serviceRef);
+        credentialsManager.delete(1);
+        Mockito.when(dao.getAll()).thenReturn(List.of());
+
+        MatcherAssert.assertThat(
+                credentialsManager.getCredentials(serviceRef), Matchers.nullValue());
+        Mockito.verify(dao, Mockito.times(2)).getAll();
+    }
+
+    @Test
+    void emitsRemovedOnlyOnceCredentialsAreGone() throws Exception {
+        String matchExpression = "some expression";
+        Credentials credentials = new Credentials("user", "pass");
+        StoredCredentials stored = new StoredCredentials(1, matchExpression, credentials);
+        Mockito.when(dao.getAll()).thenReturn(List.of(stored));
+        Mockito.when(dao.get(1)).thenReturn(Optional.of(stored));
+        Mockito.when(dao.delete(1))
+                .thenAnswer(
+                        invocation -> {
+                            Mockito.when(dao.getAll()).thenReturn(List.of());
+                            return true;
+                        });
+
+        ServiceRef serviceRef = new ServiceRef("id", new URI("foo"), "foo");
+        Mockito.when(matchExpressionIndex.applies(matchExpression, serviceRef)).thenReturn(true);
+        credentialsManager.getCredentials(serviceRef);
+
+        List<Credentials> observed = new ArrayList<>();
+        credentialsManager.addListener(
+                event -> {
+                    MatcherAssert.assertThat(
+                            event.getEventType(),
+                            Matchers.equalTo(CredentialsManager.CredentialsEvent.REMOVED));
+                    MatcherAssert.assertThat(event.getPayload(), Matchers.equalTo(matchExpression));
+                    try {
+                        observed.add(credentialsManager.getCredentials(serviceRef));
+                    } catch (ScriptException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+
+        MatcherAssert.assertThat(credentialsManager.delete(1), Matchers.is(true));
+        MatcherAssert.assertThat(observed, Matchers.contains(Matchers.nullValue()));
+    }
+
+    @Test
+    void doesNotEmitRemovedIfNothingWasDeleted() throws Exception {
+        StoredCredentials stored =
+                new StoredCredentials(1, "some expression", new Credentials("user", "pass"));
+        Mockito.when(dao.get(1)).thenReturn(Optional.of(stored));
+        Mockito.when(dao.delete(1)).thenReturn(false);
+        List<Object> events = new ArrayList<>();
+        credentialsManager.addListener(events::add);
+
+        MatcherAssert.assertThat(credentialsManager.delete(1), Matchers.is(false));
+        MatcherAssert.assertThat(events, Matchers.empty());
+    }
+
+    @Test
+    void invalidatesCacheWhenTargetModified() throws Exception {
+        ArgumentCaptor<Consumer<TargetDiscoveryEvent>> listenerCaptor =
+                ArgumentCaptor.forClass(Consumer.class);
+        Mockito.verify(platformClient).addTargetDiscoveryListener(listenerCaptor.capture());
+
+        String matchExpression = "some expression";
+        Credentials credentials = new Credentials("user", "pass");
+        StoredCredentials stored = new StoredCredentials(1, matchExpression, credentials);
+        Mockito.when(dao.getAll()).thenReturn(List.of(stored));
+
+        ServiceRef serviceRef = new ServiceRef("id", new URI("foo"), "foo");
+        Mockito.when(matchExpressionIndex.applies(matchExpression, serviceRef))
+                .thenReturn(true)
+                .thenReturn(false);
+
+        MatcherAssert.assertThat(
+                credentialsManager.getCredentials(serviceRef), Matchers.equalTo(credentials));
+
+        listenerCaptor.getValue().accept(new TargetDiscoveryEvent(EventKind.MODIFIED, serviceRef));
+
+        MatcherAssert.assertThat(
+                credentialsManager.getCredentials(serviceRef), Matchers.nullValue());
+        Mockito.verify(dao, Mockito.times(1)).getAll();
+        Mockito.verify(matchExpressionIndex, Mockito.times(2)).applies(matchExpression, serviceRef);
+    }
 }
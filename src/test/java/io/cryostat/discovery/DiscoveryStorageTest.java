@@ -18,13 +18,13 @@ package io.cryostat.discovery;
 import java.net.URI;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Singleton;
 
@@ -68,6 +68,7 @@ import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -450,7 +451,7 @@ class DiscoveryStorageTest {
                     new PluginInfo(
                             "test-realm", URI.create("http://example.com"), gson.toJson(next));
             Mockito.when(dao.get(Mockito.eq(id))).thenReturn(Optional.of(prevPlugin));
-            Mockito.when(dao.update(Mockito.any(), Mockito.any(Collection.class)))
+            Mockito.when(dao.update(Mockito.any(), Mockito.any(EnvironmentNode.class)))
                     .thenReturn(nextPlugin);
 
             List<TargetDiscoveryEvent> discoveryEvents = new ArrayList<>();
@@ -467,6 +468,421 @@ class DiscoveryStorageTest {
         }
     }
 
+    @Nested
+    class Patching {
+
+        @Test
+        void throwsIfInvalidIdGiven() {
+            Assertions.assertThrows(
+                    NotFoundException.class,
+                    () ->
+                            storage.patch(
+                                    UUID.randomUUID(),
+                                    new DiscoveryDelta(List.of(), List.of(), List.of())));
+        }
+
+        @Test
+        void throwsIfDeltaDoesNotApply() {
+            UUID id = UUID.randomUUID();
+            EnvironmentNode realm =
+                    new EnvironmentNode("test-realm", BaseNodeType.REALM, Map.of(), Set.of());
+            PluginInfo plugin =
+                    new PluginInfo(
+                            "test-realm", URI.create("http://example.com"), gson.toJson(realm));
+            Mockito.when(dao.get(Mockito.eq(id))).thenReturn(Optional.of(plugin));
+
+            DiscoveryDelta delta =
+                    new DiscoveryDelta(
+                            List.of(),
+                            List.of(),
+                            List.of(new DiscoveryDelta.NodeRemoval(List.of(), "JVM/unknown")));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> storage.patch(id, delta));
+            Mockito.verify(dao, Mockito.never())
+                    .update(Mockito.any(UUID.class), Mockito.any(EnvironmentNode.class));
+        }
+
+        @Test
+        void updatesOnlyChangedNodesAndEmitsNotifications() throws Exception {
+            UUID id = UUID.randomUUID();
+            ServiceRef serviceRefA =
+                    new ServiceRef(
+                            "a",
+                            URI.create("service:jmx:rmi:///jndi/rmi://localhost:1/jmxrmi"),
+                            "serviceRefA");
+            ServiceRef serviceRefB =
+                    new ServiceRef(
+                            "b",
+                            URI.create("service:jmx:rmi:///jndi/rmi://localhost:2/jmxrmi"),
+                            "serviceRefB");
+            ServiceRef serviceRefC =
+                    new ServiceRef(
+                            "c",
+                            URI.create("service:jmx:rmi:///jndi/rmi://localhost:3/jmxrmi"),
+                            "serviceRefC");
+            TargetNode targetA = new TargetNode(BaseNodeType.JVM, serviceRefA);
+            TargetNode targetB = new TargetNode(BaseNodeType.JVM, serviceRefB);
+            TargetNode targetC = new TargetNode(BaseNodeType.JVM, serviceRefC);
+            EnvironmentNode agent =
+                    new EnvironmentNode(
+                            "agent-47", BaseNodeType.AGENT, Map.of(), List.of(targetA, targetC));
+            EnvironmentNode realm =
+                    new EnvironmentNode(
+                            "test-realm", BaseNodeType.REALM, Map.of(), List.of(agent, targetB));
+            PluginInfo plugin =
+                    new PluginInfo(
+                            "test-realm", URI.create("http://example.com"), gson.toJson(realm));
+            Mockito.when(dao.get(Mockito.eq(id))).thenReturn(Optional.of(plugin));
+            Mockito.when(dao.update(Mockito.eq(id), Mockito.any(EnvironmentNode.class)))
+                    .thenAnswer(
+                            invocation ->
+                                    new PluginInfo(
+                                            "test-realm",
+                                            URI.create("http://example.com"),
+                                            gson.toJson(
+                                                    (EnvironmentNode) invocation.getArgument(1))));
+
+            ServiceRef modifiedRefA = new ServiceRef(null, serviceRefA.getServiceUri(), "renamedA");
+            ServiceRef serviceRefD =
+                    new ServiceRef(
+                            null,
+                            URI.create("service:jmx:rmi:///jndi/rmi://localhost:4/jmxrmi"),
+                            "serviceRefD");
+            ServiceRef resolvedRefD =
+                    new ServiceRef("d", serviceRefD.getServiceUri(), "serviceRefD");
+            Mockito.when(jvmIdHelper.resolveId(Mockito.any(ServiceRef.class)))
+                    .thenReturn(resolvedRefD);
+
+            List<TargetDiscoveryEvent> discoveryEvents = new ArrayList<>();
+            storage.addTargetDiscoveryListener(discoveryEvents::add);
+
+            List<String> agentPath = List.of(DiscoveryDelta.idOf(agent));
+            DiscoveryDelta delta =
+                    new DiscoveryDelta(
+                            List.of(
+                                    new DiscoveryDelta.NodeChange(
+                                            agentPath,
+                                            new TargetNode(BaseNodeType.JVM, serviceRefD))),
+                            List.of(
+                                    new DiscoveryDelta.NodeChange(
+                                            agentPath,
+                                            new TargetNode(BaseNodeType.JVM, modifiedRefA))),
+                            List.of(
+                                    new DiscoveryDelta.NodeRemoval(
+                                            List.of(), DiscoveryDelta.idOf(targetB))));
+
+            EnvironmentNode patched = storage.patch(id, delta);
+
+            ServiceRef expectedRefA = new ServiceRef("a", serviceRefA.getServiceUri(), "renamedA");
+            TargetNode expectedA = new TargetNode(BaseNodeType.JVM, expectedRefA);
+            TargetNode expectedD = new TargetNode(BaseNodeType.JVM, resolvedRefD);
+            EnvironmentNode expected =
+                    new EnvironmentNode(
+                            "test-realm",
+                            BaseNodeType.REALM,
+                            Map.of(),
+                            List.of(
+                                    new EnvironmentNode(
+                                            "agent-47",
+                                            BaseNodeType.AGENT,
+                                            Map.of(),
+                                            List.of(expectedA, targetC, expectedD))));
+            MatcherAssert.assertThat(patched, Matchers.equalTo(expected));
+            Mockito.verify(dao).update(id, patched);
+            // only the added target's JVM ID is resolved
+            Mockito.verify(jvmIdHelper, Mockito.times(1)).resolveId(Mockito.any());
+            Mockito.verify(jvmIdHelper).resolveId(serviceRefD);
+
+            MatcherAssert.assertThat(
+                    discoveryEvents,
+                    Matchers.containsInAnyOrder(
+                            new TargetDiscoveryEvent(EventKind.MODIFIED, expectedRefA),
+                            new TargetDiscoveryEvent(EventKind.FOUND, resolvedRefD),
+                            new TargetDiscoveryEvent(EventKind.LOST, serviceRefB)));
+        }
+
+        @Test
+        void resolvesJvmIdOfModifiedTargetWithoutOne() throws Exception {
+            UUID id = UUID.randomUUID();
+            ServiceRef unresolved =
+                    new ServiceRef(
+                            null,
+                            URI.create("service:jmx:rmi:///jndi/rmi://localhost:1/jmxrmi"),
+                            "serviceRef");
+            TargetNode target = new TargetNode(BaseNodeType.JVM, unresolved);
+            EnvironmentNode realm =
+                    new EnvironmentNode(
+                            "test-realm", BaseNodeType.REALM, Map.of(), List.of(target));
+            PluginInfo plugin =
+                    new PluginInfo(
+                            "test-realm", URI.create("http://example.com"), gson.toJson(realm));
+            Mockito.when(dao.get(Mockito.eq(id))).thenReturn(Optional.of(plugin));
+            Mockito.when(dao.update(Mockito.eq(id), Mockito.any(EnvironmentNode.class)))
+                    .thenReturn(plugin);
+            ServiceRef renamed = new ServiceRef(null, unresolved.getServiceUri(), "renamed");
+            ServiceRef resolved = new ServiceRef("a", unresolved.getServiceUri(), "renamed");
+            Mockito.when(jvmIdHelper.resolveId(renamed)).thenReturn(resolved);
+
+            EnvironmentNode patched =
+                    storage.patch(
+                            id,
+                            new DiscoveryDelta(
+                                    List.of(),
+                                    List.of(
+                                            new DiscoveryDelta.NodeChange(
+                                                    List.of(),
+                                                    new TargetNode(BaseNodeType.JVM, renamed))),
+                                    List.of()));
+
+            MatcherAssert.assertThat(
+                    patched.getChildren(),
+                    Matchers.contains(new TargetNode(BaseNodeType.JVM, resolved)));
+        }
+
+        @Test
+        void resolvesJvmIdsWithoutLockingPlugin() throws Exception {
+            UUID id = UUID.randomUUID();
+            EnvironmentNode realm =
+                    new EnvironmentNode("test-realm", BaseNodeType.REALM, Map.of(), List.of());
+            PluginInfo plugin =
+                    new PluginInfo(
+                            "test-realm", URI.create("http://example.com"), gson.toJson(realm));
+            Mockito.when(dao.get(Mockito.eq(id))).thenReturn(Optional.of(plugin));
+            ServiceRef serviceRef =
+                    new ServiceRef(
+                            null,
+                            URI.create("service:jmx:rmi:///jndi/rmi://localhost:1/jmxrmi"),
+                            "serviceRef");
+            // the plugin can be deregistered while a slow target is being connected to
+            Mockito.when(jvmIdHelper.resolveId(Mockito.any(ServiceRef.class)))
+                    .thenAnswer(
+                            invocation -> {
+                                CompletableFuture.supplyAsync(() -> storage.deregister(id))
+                                        .get(5, TimeUnit.SECONDS);
+                                return new ServiceRef(
+                                        "a", serviceRef.getServiceUri(), "serviceRef");
+                            });
+            Mockito.when(dao.update(Mockito.eq(id), Mockito.any(EnvironmentNode.class)))
+                    .thenReturn(plugin);
+
+            storage.patch(
+                    id,
+                    new DiscoveryDelta(
+                            List.of(
+                                    new DiscoveryDelta.NodeChange(
+                                            List.of(),
+                                            new TargetNode(BaseNodeType.JVM, serviceRef))),
+                            List.of(),
+                            List.of()));
+
+            Mockito.verify(dao).delete(id);
+        }
+
+        @Test
+        void deregistrationWaitsForPatchInProgress() throws Exception {
+            UUID id = UUID.randomUUID();
+            ServiceRef serviceRef =
+                    new ServiceRef(
+                            "a",
+                            URI.create("service:jmx:rmi:///jndi/rmi://localhost:1/jmxrmi"),
+                            "serviceRef");
+            TargetNode target = new TargetNode(BaseNodeType.JVM, serviceRef);
+            EnvironmentNode realm =
+                    new EnvironmentNode(
+                            "test-realm", BaseNodeType.REALM, Map.of(), List.of(target));
+            PluginInfo plugin =
+                    new PluginInfo(
+                            "test-realm", URI.create("http://example.com"), gson.toJson(realm));
+            Mockito.when(dao.get(Mockito.eq(id))).thenReturn(Optional.of(plugin));
+            List<CompletableFuture<PluginInfo>> deregistrations = new ArrayList<>();
+            Mockito.when(dao.update(Mockito.eq(id), Mockito.any(EnvironmentNode.class)))
+                    .thenAnswer(
+                            invocation -> {
+                                CompletableFuture<PluginInfo> deregistration =
+                                        CompletableFuture.supplyAsync(() -> storage.deregister(id));
+                                deregistrations.add(deregistration);
+                                Thread.sleep(200);
+                                MatcherAssert.assertThat(
+                                        deregistration.isDone(), Matchers.is(false));
+                                return plugin;
+                            });
+
+            storage.patch(
+                    id,
+                    new DiscoveryDelta(
+                            List.of(),
+                            List.of(),
+                            List.of(
+                                    new DiscoveryDelta.NodeRemoval(
+                                            List.of(), DiscoveryDelta.idOf(target)))));
+
+            deregistrations.get(0).get(5, TimeUnit.SECONDS);
+            InOrder inOrder = Mockito.inOrder(dao);
+            inOrder.verify(dao).update(Mockito.eq(id), Mockito.any(EnvironmentNode.class));
+            inOrder.verify(dao).delete(id);
+        }
+    }
+
+    @Nested
+    class TreeChanges {
+
+        @Test
+        void installsPatchedSubtreeWithoutDeserializingIt() throws Exception {
+            UUID id = UUID.randomUUID();
+            TargetNode target =
+                    new TargetNode(
+                            BaseNodeType.JVM,
+                            new ServiceRef(
+                                    "1",
+                                    URI.create("service:jmx:rmi:///jndi/rmi://localhost:1/jmxrmi"),
+                                    "target1"));
+            EnvironmentNode untouched =
+                    new EnvironmentNode("agent-1", BaseNodeType.AGENT, Map.of(), List.of(target));
+            EnvironmentNode agent = new EnvironmentNode("agent-2", BaseNodeType.AGENT);
+            EnvironmentNode realm =
+                    new EnvironmentNode(
+                            "test-realm", BaseNodeType.REALM, Map.of(), List.of(untouched, agent));
+            List<PluginInfo> plugins = new ArrayList<>();
+            plugins.add(
+                    new PluginInfo(
+                            "test-realm", URI.create("http://example.com"), gson.toJson(realm)));
+            Mockito.when(dao.get(Mockito.eq(id)))
+                    .thenAnswer(invocation -> Optional.of(plugins.get(0)));
+            Mockito.when(dao.getAll()).thenAnswer(invocation -> List.copyOf(plugins));
+            Mockito.when(dao.update(Mockito.eq(id), Mockito.any(EnvironmentNode.class)))
+                    .thenAnswer(
+                            invocation -> {
+                                PluginInfo plugin =
+                                        new PluginInfo(
+                                                "test-realm",
+                                                URI.create("http://example.com"),
+                                                gson.toJson(
+                                                        (EnvironmentNode)
+                                                                invocation.getArgument(1)));
+                                plugins.set(0, plugin);
+                                return plugin;
+                            });
+            Mockito.when(jvmIdHelper.resolveId(Mockito.any(ServiceRef.class)))
+                    .thenAnswer(invocation -> invocation.getArgument(0));
+
+            EnvironmentNode before =
+                    (EnvironmentNode) storage.getDiscoveryTree().getChildren().get(0);
+            EnvironmentNode patched =
+                    storage.patch(
+                            id,
+                            new DiscoveryDelta(
+                                    List.of(
+                                            new DiscoveryDelta.NodeChange(
+                                                    List.of(DiscoveryDelta.idOf(agent)),
+                                                    new TargetNode(
+                                                            BaseNodeType.JVM,
+                                                            new ServiceRef(
+                                                                    "2",
+                                                                    URI.create(
+                                                                            "service:jmx:rmi:///jndi/rmi://localhost:2/jmxrmi"),
+                                                                    "target2")))),
+                                    List.of(),
+                                    List.of()));
+
+            EnvironmentNode after =
+                    (EnvironmentNode) storage.getDiscoveryTree().getChildren().get(0);
+            MatcherAssert.assertThat(after, Matchers.sameInstance(patched));
+            MatcherAssert.assertThat(
+                    after.getChildren().get(0), Matchers.sameInstance(before.getChildren().get(0)));
+        }
+
+        @Test
+        void publishesVersionedDeltas() throws Exception {
+            UUID id = UUID.randomUUID();
+            EnvironmentNode agent = new EnvironmentNode("agent-47", BaseNodeType.AGENT);
+            EnvironmentNode realm =
+                    new EnvironmentNode("test-realm", BaseNodeType.REALM, Map.of(), List.of(agent));
+            List<PluginInfo> plugins = new ArrayList<>();
+            plugins.add(
+                    new PluginInfo(
+                            "test-realm", URI.create("http://example.com"), gson.toJson(realm)));
+            Mockito.when(dao.get(Mockito.eq(id)))
+                    .thenAnswer(invocation -> Optional.of(plugins.get(0)));
+            Mockito.when(dao.getAll()).thenAnswer(invocation -> List.copyOf(plugins));
+            Mockito.when(dao.update(Mockito.eq(id), Mockito.any(EnvironmentNode.class)))
+                    .thenAnswer(
+                            invocation -> {
+                                PluginInfo plugin =
+                                        new PluginInfo(
+                                                "test-realm",
+                                                URI.create("http://example.com"),
+                                                gson.toJson(
+                                                        (EnvironmentNode)
+                                                                invocation.getArgument(1)));
+                                plugins.set(0, plugin);
+                                return plugin;
+                            });
+            Mockito.when(jvmIdHelper.resolveId(Mockito.any(ServiceRef.class)))
+                    .thenAnswer(invocation -> invocation.getArgument(0));
+
+            List<DiscoveryStorage.TreeChange> changes = new ArrayList<>();
+            storage.addTreeListener(changes::add);
+
+            List<String> agentPath = List.of(DiscoveryDelta.idOf(agent));
+            TargetNode target1 =
+                    new TargetNode(
+                            BaseNodeType.JVM,
+                            new ServiceRef(
+                                    "1",
+                                    URI.create("service:jmx:rmi:///jndi/rmi://localhost:1/jmxrmi"),
+                                    "target1"));
+            TargetNode target2 =
+                    new TargetNode(
+                            BaseNodeType.JVM,
+                            new ServiceRef(
+                                    "2",
+                                    URI.create("service:jmx:rmi:///jndi/rmi://localhost:2/jmxrmi"),
+                                    "target2"));
+            storage.patch(
+                    id,
+                    new DiscoveryDelta(
+                            List.of(new DiscoveryDelta.NodeChange(agentPath, target1)),
+                            List.of(),
+                            List.of()));
+            storage.patch(
+                    id,
+                    new DiscoveryDelta(
+                            List.of(new DiscoveryDelta.NodeChange(agentPath, target2)),
+                            List.of(),
+                            List.of()));
+
+            MatcherAssert.assertThat(changes, Matchers.hasSize(2));
+            DiscoveryStorage.TreeChange first = changes.get(0);
+            DiscoveryStorage.TreeChange second = changes.get(1);
+            MatcherAssert.assertThat(first.since(), Matchers.equalTo(0L));
+            MatcherAssert.assertThat(second.since(), Matchers.equalTo(first.version()));
+            MatcherAssert.assertThat(second.version(), Matchers.greaterThan(second.since()));
+            MatcherAssert.assertThat(second.epoch(), Matchers.equalTo(first.epoch()));
+
+            // the realm did not exist in the initial empty tree, so it is added whole
+            MatcherAssert.assertThat(first.delta().getAdd(), Matchers.hasSize(1));
+            MatcherAssert.assertThat(first.delta().getAdd().get(0).getParent(), Matchers.empty());
+
+            DiscoveryDelta delta = second.delta();
+            MatcherAssert.assertThat(delta.getRemove(), Matchers.empty());
+            MatcherAssert.assertThat(delta.getModify(), Matchers.empty());
+            MatcherAssert.assertThat(delta.getAdd(), Matchers.hasSize(1));
+            MatcherAssert.assertThat(
+                    delta.getAdd().get(0).getParent(),
+                    Matchers.equalTo(List.of("Realm/test-realm", "CryostatAgent/agent-47")));
+            MatcherAssert.assertThat(delta.getAdd().get(0).getNode(), Matchers.equalTo(target2));
+            MatcherAssert.assertThat(
+                    gson.fromJson(gson.toJson(delta), DiscoveryDelta.class)
+                            .getAdd()
+                            .get(0)
+                            .getNode(),
+                    Matchers.equalTo(target2));
+
+            DiscoveryStorage.VersionedTree tree = storage.getVersionedDiscoveryTree();
+            MatcherAssert.assertThat(tree.version(), Matchers.equalTo(second.version()));
+            MatcherAssert.assertThat(tree.epoch(), Matchers.equalTo(second.epoch()));
+        }
+    }
+
     @Nested
     class Deregistration {
 
@@ -647,6 +1063,60 @@ class DiscoveryStorageTest {
                     tree.getChildren(),
                     Matchers.containsInRelativeOrder(realm2, realm3, realm4, realm1));
         }
+
+        @Test
+        void reusesTreeUntilPluginSubtreesChange() {
+            TargetNode leaf1 =
+                    new TargetNode(
+                            BaseNodeType.JVM,
+                            new ServiceRef(
+                                    "id",
+                                    URI.create("service:jmx:rmi:///jndi/rmi://leaf:1/jmxrmi"),
+                                    "leaf1"));
+            PluginInfo plugin1 = new PluginInfo();
+            plugin1.setSubtree(
+                    gson.toJson(
+                            new EnvironmentNode(
+                                    "realm1", BaseNodeType.REALM, Map.of(), Set.of(leaf1))));
+            PluginInfo plugin2 = new PluginInfo();
+            plugin2.setSubtree(
+                    gson.toJson(new EnvironmentNode("realm2", BaseNodeType.REALM, Map.of())));
+            Mockito.when(dao.getAll()).thenReturn(List.of(plugin1, plugin2));
+
+            EnvironmentNode tree = storage.getDiscoveryTree();
+            List<ServiceRef> services = storage.listDiscoverableServices();
+
+            MatcherAssert.assertThat(storage.getDiscoveryTree(), Matchers.sameInstance(tree));
+            MatcherAssert.assertThat(
+                    storage.listDiscoverableServices(), Matchers.sameInstance(services));
+
+            // the same subtrees in a new list from the DAO do not change the tree
+            Mockito.when(dao.getAll()).thenReturn(List.of(plugin2, plugin1));
+            MatcherAssert.assertThat(storage.getDiscoveryTree(), Matchers.sameInstance(tree));
+
+            TargetNode leaf2 =
+                    new TargetNode(
+                            BaseNodeType.JVM,
+                            new ServiceRef(
+                                    "id",
+                                    URI.create("service:jmx:rmi:///jndi/rmi://leaf:2/jmxrmi"),
+                                    "leaf2"));
+            PluginInfo updated = new PluginInfo();
+            updated.setSubtree(
+                    gson.toJson(
+                            new EnvironmentNode(
+                                    "realm2", BaseNodeType.REALM, Map.of(), Set.of(leaf2))));
+            Mockito.when(dao.getAll()).thenReturn(List.of(plugin1, updated));
+
+            EnvironmentNode updatedTree = storage.getDiscoveryTree();
+            MatcherAssert.assertThat(updatedTree, Matchers.not(Matchers.sameInstance(tree)));
+            MatcherAssert.assertThat(
+                    updatedTree.getChildren().get(0),
+                    Matchers.sameInstance(tree.getChildren().get(0)));
+            MatcherAssert.assertThat(
+                    storage.listDiscoverableServices(),
+                    Matchers.contains(leaf1.getTarget(), leaf2.getTarget()));
+        }
     }
 
     @Nested
@@ -783,16 +1253,13 @@ class DiscoveryStorageTest {
                             "test-realm", URI.create("http://example.com"), gson.toJson(realm1));
 
             Mockito.when(dao.get(Mockito.eq(id))).thenReturn(Optional.of(prevPlugin));
-            Mockito.when(dao.update(Mockito.any(UUID.class), Mockito.any(Collection.class)))
+            Mockito.when(dao.update(Mockito.any(UUID.class), Mockito.any(EnvironmentNode.class)))
                     .thenAnswer(
                             new Answer<PluginInfo>() {
                                 @Override
                                 public PluginInfo answer(InvocationOnMock invocation)
                                         throws Throwable {
-                                    List<AbstractNode> subtree = invocation.getArgument(1);
-                                    EnvironmentNode next =
-                                            new EnvironmentNode(
-                                                    "next", BaseNodeType.REALM, Map.of(), subtree);
+                                    EnvironmentNode next = invocation.getArgument(1);
                                     return new PluginInfo(
                                             "test-realm",
                                             URI.create("http://example.com"),
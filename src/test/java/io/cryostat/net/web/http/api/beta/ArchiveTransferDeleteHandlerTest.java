@@ -0,0 +1,122 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.cryostat.MainModule;
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.net.web.http.api.v2.IntermediateResponse;
+import io.cryostat.net.web.http.api.v2.RequestParameters;
+import io.cryostat.recordings.ArchiveWritePipeline;
+
+import com.google.gson.Gson;
+import io.vertx.core.http.HttpMethod;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ArchiveTransferDeleteHandlerTest {
+    ArchiveTransferDeleteHandler handler;
+    @Mock AuthManager auth;
+    @Mock CredentialsManager credentialsManager;
+    @Mock ArchiveWritePipeline archiveWritePipeline;
+    Gson gson = MainModule.provideGson();
+
+    @BeforeEach
+    void setup() {
+        this.handler =
+                new ArchiveTransferDeleteHandler(
+                        auth, credentialsManager, archiveWritePipeline, gson);
+    }
+
+    @Nested
+    class BasicHandlerDefinition {
+        @Test
+        void shouldBeDELETEHandler() {
+            MatcherAssert.assertThat(handler.httpMethod(), Matchers.equalTo(HttpMethod.DELETE));
+        }
+
+        @Test
+        void shouldBeAPIBeta() {
+            MatcherAssert.assertThat(handler.apiVersion(), Matchers.equalTo(ApiVersion.BETA));
+        }
+
+        @Test
+        void shouldHaveExpectedPath() {
+            MatcherAssert.assertThat(
+                    handler.path(), Matchers.equalTo("/api/beta/archiveTransfers/:transferId"));
+        }
+
+        @Test
+        void shouldHaveExpectedRequiredPermissions() {
+            MatcherAssert.assertThat(
+                    handler.resourceActions(),
+                    Matchers.equalTo(Set.of(ResourceAction.DELETE_RECORDING)));
+        }
+
+        @Test
+        void shouldProduceJson() {
+            MatcherAssert.assertThat(
+                    handler.produces(), Matchers.equalTo(List.of(HttpMimeType.JSON)));
+        }
+
+        @Test
+        void shouldRequireAuthentication() {
+            MatcherAssert.assertThat(handler.requiresAuthentication(), Matchers.is(true));
+        }
+    }
+
+    @Nested
+    class RequestHandling {
+
+        @Mock RequestParameters requestParams;
+
+        @Test
+        void shouldDelegateToPipeline() throws Exception {
+            Mockito.when(requestParams.getPathParams()).thenReturn(Map.of("transferId", "abc"));
+            Mockito.when(archiveWritePipeline.cancel("abc")).thenReturn(true);
+
+            IntermediateResponse<Void> response = handler.handle(requestParams);
+
+            MatcherAssert.assertThat(response.getStatusCode(), Matchers.equalTo(200));
+            Mockito.verify(archiveWritePipeline).cancel("abc");
+        }
+
+        @Test
+        void shouldRespond404IfIdUnknown() throws Exception {
+            Mockito.when(requestParams.getPathParams()).thenReturn(Map.of("transferId", "abc"));
+            Mockito.when(archiveWritePipeline.cancel("abc")).thenReturn(false);
+
+            IntermediateResponse<Void> response = handler.handle(requestParams);
+
+            MatcherAssert.assertThat(response.getStatusCode(), Matchers.equalTo(404));
+        }
+    }
+}
@@ -137,6 +137,6 @@ class ArchivedDirectoriesGetHandlerTest {
 
         Mockito.verify(resp)
                 .end(
-                        "[{\"connectUrl\":\"encodedServiceUriFoo\",\"jvmId\":\"someJvmId\",\"recordings\":[{\"downloadUrl\":\"/some/path/download/recordingFoo\",\"name\":\"recordingFoo\",\"reportUrl\":\"/some/path/archive/recordingFoo\",\"metadata\":{\"labels\":{}},\"size\":0,\"archivedTime\":0}]}]");
+                        "[{\"connectUrl\":\"encodedServiceUriFoo\",\"jvmId\":\"someJvmId\",\"recordings\":[{\"downloadUrl\":\"/some/path/download/recordingFoo\",\"name\":\"recordingFoo\",\"reportUrl\":\"/some/path/archive/recordingFoo\",\"metadata\":{\"labels\":{}},\"size\":0,\"archivedTime\":0,\"startTime\":0,\"endTime\":0,\"chunkCount\":0}]}]");
     }
 }
@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import io.cryostat.MainModule;
 import io.cryostat.configuration.CredentialsManager;
@@ -28,6 +29,7 @@ import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
 import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.net.web.http.api.ApiVersion;
+import io.cryostat.net.web.http.api.v2.ApiException;
 import io.cryostat.net.web.http.api.v2.IntermediateResponse;
 import io.cryostat.net.web.http.api.v2.RequestParameters;
 import io.cryostat.rules.MatchExpression;
@@ -37,6 +39,7 @@ import com.google.gson.Gson;
 import io.vertx.core.http.HttpMethod;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -127,19 +130,39 @@ class MatchExpressionDeleteHandlerTest {
             Mockito.when(requestParams.getPathParams()).thenReturn(Map.of("id", "10"));
             MatchExpression expr = Mockito.mock(MatchExpression.class);
             Mockito.when(expr.getMatchExpression()).thenReturn("target.alias == \"foo\"");
-            Mockito.when(expressionManager.get(Mockito.eq(10))).thenReturn(Optional.of(expr));
-            Mockito.when(expressionManager.delete(Mockito.eq(10))).thenReturn(true);
+            Mockito.when(expressionManager.getAsync(Mockito.eq(10)))
+                    .thenReturn(CompletableFuture.completedFuture(Optional.of(expr)));
+            Mockito.when(expressionManager.deleteAsync(Mockito.eq(10)))
+                    .thenReturn(CompletableFuture.completedFuture(true));
 
             IntermediateResponse<Void> response = handler.handle(requestParams);
 
             MatcherAssert.assertThat(response.getStatusCode(), Matchers.equalTo(200));
 
-            Mockito.verify(expressionManager).delete(10);
+            Mockito.verify(expressionManager).deleteAsync(10);
+        }
+
+        @Test
+        void shouldThrow500IfDeleteFails() throws Exception {
+            Mockito.when(requestParams.getPathParams()).thenReturn(Map.of("id", "10"));
+            MatchExpression expr = Mockito.mock(MatchExpression.class);
+            Mockito.when(expressionManager.getAsync(Mockito.eq(10)))
+                    .thenReturn(CompletableFuture.completedFuture(Optional.of(expr)));
+            Mockito.when(expressionManager.deleteAsync(Mockito.eq(10)))
+                    .thenReturn(CompletableFuture.completedFuture(false));
+
+            ApiException ex =
+                    Assertions.assertThrows(
+                            ApiException.class, () -> handler.handle(requestParams));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(500));
+            Mockito.verifyNoInteractions(notificationFactory);
         }
 
         @Test
         void shouldRespond404IfIdUnknown() throws Exception {
-            Mockito.when(expressionManager.get(Mockito.anyInt())).thenReturn(Optional.empty());
+            Mockito.when(expressionManager.getAsync(Mockito.anyInt()))
+                    .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
             Mockito.when(requestParams.getPathParams()).thenReturn(Map.of("id", "10"));
 
             IntermediateResponse<?> resp = handler.handle(requestParams);
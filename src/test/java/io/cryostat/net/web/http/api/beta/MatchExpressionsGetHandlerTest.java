@@ -17,6 +17,7 @@ package io.cryostat.net.web.http.api.beta;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import io.cryostat.MainModule;
 import io.cryostat.configuration.CredentialsManager;
@@ -101,7 +102,8 @@ class MatchExpressionsGetHandlerTest {
         void shouldDelegateToMatchExpressionManager() throws Exception {
             MatchExpression expr1 = Mockito.mock(MatchExpression.class);
             MatchExpression expr2 = Mockito.mock(MatchExpression.class);
-            Mockito.when(expressionManager.getAll()).thenReturn(List.of(expr1, expr2));
+            Mockito.when(expressionManager.getAllAsync())
+                    .thenReturn(CompletableFuture.completedFuture(List.of(expr1, expr2)));
 
             IntermediateResponse<List<MatchExpression>> response = handler.handle(requestParams);
 
@@ -112,7 +114,7 @@ class MatchExpressionsGetHandlerTest {
                     Matchers.containsInAnyOrder(Matchers.equalTo(expr1), Matchers.equalTo(expr2)));
             MatcherAssert.assertThat(actual, Matchers.hasSize(2));
 
-            Mockito.verify(expressionManager).getAll();
+            Mockito.verify(expressionManager).getAllAsync();
         }
     }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.HttpServer;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.RecordingNotFoundException;
+import io.cryostat.recordings.RecordingSlice;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RecordingSliceGetHandlerTest {
+
+    RecordingSliceGetHandler handler;
+    @Mock AuthManager auth;
+    @Mock CredentialsManager credentialsManager;
+    @Mock HttpServer httpServer;
+    @Mock Vertx vertx;
+    @Mock RecordingArchiveHelper recordingArchiveHelper;
+    @Mock RecordingSlice slice;
+    @Mock RoutingContext ctx;
+    @Mock HttpServerRequest req;
+    @Mock HttpServerResponse resp;
+
+    @BeforeEach
+    void setup() {
+        Mockito.lenient().when(httpServer.getVertx()).thenReturn(vertx);
+        this.handler =
+                new RecordingSliceGetHandler(
+                        auth, credentialsManager, httpServer, recordingArchiveHelper);
+    }
+
+    @Nested
+    class ApiSpec {
+
+        @Test
+        void shouldHandleGET() {
+            MatcherAssert.assertThat(handler.httpMethod(), Matchers.equalTo(HttpMethod.GET));
+        }
+
+        @Test
+        void shouldHandleExpectedPath() {
+            MatcherAssert.assertThat(
+                    handler.path(),
+                    Matchers.equalTo("/api/beta/recordings/:sourceTarget/:recordingName/slice"));
+        }
+
+        @Test
+        void shouldRequireReadRecording() {
+            MatcherAssert.assertThat(
+                    handler.resourceActions(),
+                    Matchers.equalTo(Set.of(ResourceAction.READ_RECORDING)));
+        }
+
+        @Test
+        void shouldNotBeAsync() {
+            Assertions.assertFalse(handler.isAsync());
+        }
+
+        @Test
+        void shouldProduceOctetStream() {
+            MatcherAssert.assertThat(
+                    handler.produces(), Matchers.equalTo(List.of(HttpMimeType.OCTET_STREAM)));
+        }
+    }
+
+    @Nested
+    class Behaviour {
+
+        @BeforeEach
+        void setup() {
+            Mockito.when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                    .thenReturn(CompletableFuture.completedFuture(true));
+            Mockito.when(ctx.request()).thenReturn(req);
+            Mockito.lenient().when(ctx.response()).thenReturn(resp);
+            Mockito.lenient()
+                    .when(resp.putHeader(Mockito.any(CharSequence.class), Mockito.anyString()))
+                    .thenReturn(resp);
+            Mockito.lenient().when(ctx.pathParam("sourceTarget")).thenReturn("someTarget");
+            Mockito.lenient().when(ctx.pathParam("recordingName")).thenReturn("foo.jfr");
+        }
+
+        @Test
+        void shouldStreamOverlappingChunks() throws Exception {
+            Mockito.when(req.getParam("start")).thenReturn("1000");
+            Mockito.when(req.getParam("end")).thenReturn("2000");
+            Mockito.when(
+                            recordingArchiveHelper.getRecordingSlice(
+                                    "someTarget", "foo.jfr", 1000, 2000))
+                    .thenReturn(CompletableFuture.completedFuture(slice));
+            Path recording = Path.of("someTarget", "foo.jfr");
+            Mockito.when(slice.getRecording()).thenReturn(recording);
+            Mockito.when(slice.getLength()).thenReturn(4096L);
+            Mockito.when(slice.pipeTo(vertx, resp)).thenReturn(Future.succeededFuture());
+
+            handler.handle(ctx);
+
+            Mockito.verify(recordingArchiveHelper).validateSourceTarget("someTarget");
+            Mockito.verify(recordingArchiveHelper).markRecordingDownloaded(recording);
+            Mockito.verify(resp).putHeader(HttpHeaders.CONTENT_LENGTH, "4096");
+            Mockito.verify(resp)
+                    .putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.OCTET_STREAM.mime());
+            Mockito.verify(slice).pipeTo(vertx, resp);
+        }
+
+        @Test
+        void shouldDefaultToWholeRecording() throws Exception {
+            Mockito.when(
+                            recordingArchiveHelper.getRecordingSlice(
+                                    "someTarget", "foo.jfr", 0, Long.MAX_VALUE))
+                    .thenReturn(CompletableFuture.completedFuture(slice));
+            Mockito.when(slice.pipeTo(vertx, resp)).thenReturn(Future.succeededFuture());
+
+            handler.handle(ctx);
+
+            Mockito.verify(slice).pipeTo(vertx, resp);
+        }
+
+        @Test
+        void shouldRejectUnparseableTime() throws Exception {
+            Mockito.when(req.getParam("start")).thenReturn("yesterday");
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        }
+
+        @Test
+        void shouldRejectInvertedRange() throws Exception {
+            Mockito.when(req.getParam("start")).thenReturn("2000");
+            Mockito.when(req.getParam("end")).thenReturn("1000");
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+            Mockito.verifyNoInteractions(recordingArchiveHelper);
+        }
+
+        @Test
+        void shouldRespond404IfNoChunksOverlap() throws Exception {
+            Mockito.when(
+                            recordingArchiveHelper.getRecordingSlice(
+                                    "someTarget", "foo.jfr", 0, Long.MAX_VALUE))
+                    .thenReturn(CompletableFuture.completedFuture(slice));
+            Mockito.when(slice.isEmpty()).thenReturn(true);
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(404));
+            Mockito.verify(slice, Mockito.never()).pipeTo(Mockito.any(), Mockito.any());
+        }
+
+        @Test
+        void shouldRespond404IfRecordingNotFound() throws Exception {
+            Mockito.when(
+                            recordingArchiveHelper.getRecordingSlice(
+                                    "someTarget", "foo.jfr", 0, Long.MAX_VALUE))
+                    .thenReturn(
+                            CompletableFuture.failedFuture(
+                                    new RecordingNotFoundException("someTarget", "foo.jfr")));
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(404));
+        }
+    }
+}
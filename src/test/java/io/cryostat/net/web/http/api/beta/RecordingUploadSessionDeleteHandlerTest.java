@@ -0,0 +1,128 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.UploadSessionManager;
+
+import io.vertx.core.Future;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RecordingUploadSessionDeleteHandlerTest {
+
+    RecordingUploadSessionDeleteHandler handler;
+    @Mock AuthManager auth;
+    @Mock CredentialsManager credentialsManager;
+    @Mock UploadSessionManager uploadSessionManager;
+    @Mock RoutingContext ctx;
+    @Mock HttpServerRequest req;
+    @Mock HttpServerResponse resp;
+
+    @BeforeEach
+    void setup() {
+        this.handler =
+                new RecordingUploadSessionDeleteHandler(
+                        auth, credentialsManager, uploadSessionManager);
+    }
+
+    @Nested
+    class ApiSpec {
+
+        @Test
+        void shouldHandleDELETE() {
+            MatcherAssert.assertThat(handler.httpMethod(), Matchers.equalTo(HttpMethod.DELETE));
+        }
+
+        @Test
+        void shouldHandleExpectedPath() {
+            MatcherAssert.assertThat(
+                    handler.path(),
+                    Matchers.equalTo("/api/beta/recordings/:jvmId/uploads/:uploadId"));
+        }
+
+        @Test
+        void shouldRequireDeleteRecording() {
+            MatcherAssert.assertThat(
+                    handler.resourceActions(),
+                    Matchers.equalTo(Set.of(ResourceAction.DELETE_RECORDING)));
+        }
+
+        @Test
+        void shouldBeAsync() {
+            Assertions.assertTrue(handler.isAsync());
+        }
+    }
+
+    @Nested
+    class Behaviour {
+
+        @BeforeEach
+        void setup() {
+            Mockito.when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                    .thenReturn(CompletableFuture.completedFuture(true));
+            Mockito.when(ctx.request()).thenReturn(req);
+            Mockito.when(ctx.response()).thenReturn(resp);
+            Mockito.lenient()
+                    .when(resp.putHeader(Mockito.any(CharSequence.class), Mockito.anyString()))
+                    .thenReturn(resp);
+            Mockito.lenient().when(resp.setStatusCode(Mockito.anyInt())).thenReturn(resp);
+            Mockito.when(ctx.pathParam("jvmId")).thenReturn("someJvmId");
+            Mockito.when(ctx.pathParam("uploadId")).thenReturn("abc");
+        }
+
+        @Test
+        void shouldAbortSession() throws Exception {
+            Mockito.when(uploadSessionManager.abort("someJvmId", "abc"))
+                    .thenReturn(Future.succeededFuture());
+
+            handler.handle(ctx);
+
+            Mockito.verify(resp).setStatusCode(204);
+            Mockito.verify(resp).end();
+        }
+
+        @Test
+        void shouldFailWhenSessionIsMissing() throws Exception {
+            ApiException notFound = new ApiException(404, "No upload");
+            Mockito.when(uploadSessionManager.abort("someJvmId", "abc"))
+                    .thenReturn(Future.failedFuture(notFound));
+
+            handler.handle(ctx);
+
+            Mockito.verify(ctx).fail(notFound);
+        }
+    }
+}
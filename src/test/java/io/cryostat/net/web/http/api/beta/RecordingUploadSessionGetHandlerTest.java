@@ -0,0 +1,153 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import io.cryostat.MainModule;
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.UploadSessionManager;
+import io.cryostat.recordings.UploadSessionManager.Session;
+
+import com.google.gson.Gson;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RecordingUploadSessionGetHandlerTest {
+
+    RecordingUploadSessionGetHandler handler;
+    @Mock AuthManager auth;
+    @Mock CredentialsManager credentialsManager;
+    @Mock UploadSessionManager uploadSessionManager;
+    @Mock Session session;
+    @Mock RoutingContext ctx;
+    @Mock HttpServerRequest req;
+    @Mock HttpServerResponse resp;
+    Gson gson = MainModule.provideGson();
+
+    @BeforeEach
+    void setup() {
+        this.handler =
+                new RecordingUploadSessionGetHandler(
+                        auth, credentialsManager, gson, uploadSessionManager);
+    }
+
+    @Nested
+    class ApiSpec {
+
+        @Test
+        void shouldHandleGET() {
+            MatcherAssert.assertThat(handler.httpMethod(), Matchers.equalTo(HttpMethod.GET));
+        }
+
+        @Test
+        void shouldHandleExpectedPath() {
+            MatcherAssert.assertThat(
+                    handler.path(),
+                    Matchers.equalTo("/api/beta/recordings/:jvmId/uploads/:uploadId"));
+        }
+
+        @Test
+        void shouldRequireReadRecording() {
+            MatcherAssert.assertThat(
+                    handler.resourceActions(),
+                    Matchers.equalTo(Set.of(ResourceAction.READ_RECORDING)));
+        }
+
+        @Test
+        void shouldBeAsync() {
+            Assertions.assertTrue(handler.isAsync());
+        }
+
+        @Test
+        void shouldProduceJson() {
+            MatcherAssert.assertThat(
+                    handler.produces(), Matchers.equalTo(List.of(HttpMimeType.JSON)));
+        }
+    }
+
+    @Nested
+    class Behaviour {
+
+        @BeforeEach
+        void setup() {
+            Mockito.when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                    .thenReturn(CompletableFuture.completedFuture(true));
+            Mockito.when(ctx.request()).thenReturn(req);
+            Mockito.when(ctx.response()).thenReturn(resp);
+            Mockito.lenient()
+                    .when(resp.putHeader(Mockito.any(CharSequence.class), Mockito.anyString()))
+                    .thenReturn(resp);
+            Mockito.when(ctx.pathParam("jvmId")).thenReturn("someJvmId");
+            Mockito.when(ctx.pathParam("uploadId")).thenReturn("abc");
+        }
+
+        @Test
+        void shouldRespondWithProgress() throws Exception {
+            Mockito.when(uploadSessionManager.get("someJvmId", "abc")).thenReturn(session);
+            Mockito.when(session.getId()).thenReturn("abc");
+            Mockito.when(session.getNextPart()).thenReturn(3);
+            Mockito.when(session.getOffset()).thenReturn(2048L);
+            Mockito.when(session.getExpiresAt()).thenReturn(1234L);
+
+            handler.handle(ctx);
+
+            Mockito.verify(resp)
+                    .end(
+                            gson.toJson(
+                                    Map.of(
+                                            "id",
+                                            "abc",
+                                            "nextPart",
+                                            3,
+                                            "offset",
+                                            2048L,
+                                            "expiresAt",
+                                            1234L)));
+        }
+
+        @Test
+        void shouldPropagateNotFound() throws Exception {
+            Mockito.when(uploadSessionManager.get("someJvmId", "abc"))
+                    .thenThrow(new ApiException(404, "No upload"));
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(404));
+        }
+    }
+}
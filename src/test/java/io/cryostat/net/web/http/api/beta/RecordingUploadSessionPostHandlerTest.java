@@ -0,0 +1,169 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import io.cryostat.MainModule;
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.RecordingMetadataManager.Metadata;
+import io.cryostat.recordings.UploadSessionManager;
+import io.cryostat.recordings.UploadSessionManager.Session;
+
+import com.google.gson.Gson;
+import io.vertx.core.Future;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RecordingUploadSessionPostHandlerTest {
+
+    RecordingUploadSessionPostHandler handler;
+    @Mock AuthManager auth;
+    @Mock CredentialsManager credentialsManager;
+    @Mock UploadSessionManager uploadSessionManager;
+    @Mock Session session;
+    @Mock RoutingContext ctx;
+    @Mock HttpServerRequest req;
+    @Mock HttpServerResponse resp;
+    Gson gson = MainModule.provideGson();
+    int globalMaxFiles = 10;
+
+    @BeforeEach
+    void setup() {
+        this.handler =
+                new RecordingUploadSessionPostHandler(
+                        auth, credentialsManager, gson, uploadSessionManager, globalMaxFiles);
+    }
+
+    @Nested
+    class ApiSpec {
+
+        @Test
+        void shouldHandlePOST() {
+            MatcherAssert.assertThat(handler.httpMethod(), Matchers.equalTo(HttpMethod.POST));
+        }
+
+        @Test
+        void shouldHandleExpectedPath() {
+            MatcherAssert.assertThat(
+                    handler.path(),
+                    Matchers.equalTo("/api/beta/recordings/:jvmId/uploads/:uploadId"));
+        }
+
+        @Test
+        void shouldRequireSameActionsAsSingleShotUpload() {
+            MatcherAssert.assertThat(
+                    handler.resourceActions(),
+                    Matchers.equalTo(
+                            Set.of(
+                                    ResourceAction.CREATE_RECORDING,
+                                    ResourceAction.READ_RECORDING,
+                                    ResourceAction.DELETE_RECORDING,
+                                    ResourceAction.DELETE_REPORT)));
+        }
+
+        @Test
+        void shouldBeAsync() {
+            Assertions.assertTrue(handler.isAsync());
+        }
+    }
+
+    @Nested
+    class Behaviour {
+
+        @BeforeEach
+        void setup() {
+            Mockito.when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                    .thenReturn(CompletableFuture.completedFuture(true));
+            Mockito.when(ctx.request()).thenReturn(req);
+            Mockito.when(ctx.response()).thenReturn(resp);
+            Mockito.lenient()
+                    .when(resp.putHeader(Mockito.any(CharSequence.class), Mockito.anyString()))
+                    .thenReturn(resp);
+            Mockito.lenient().when(ctx.pathParam("jvmId")).thenReturn("someJvmId");
+            Mockito.lenient().when(ctx.pathParam("uploadId")).thenReturn("abc");
+        }
+
+        @Test
+        void shouldCommitSession() throws Exception {
+            Metadata metadata = new Metadata(Map.of("key", "value"));
+            Mockito.when(req.getParam("maxFiles", "10")).thenReturn("5");
+            Mockito.when(uploadSessionManager.get("someJvmId", "abc")).thenReturn(session);
+            Mockito.when(session.getMetadata()).thenReturn(metadata);
+            Mockito.when(session.getSha256()).thenReturn("cafe");
+            Mockito.when(uploadSessionManager.commit("someJvmId", "abc", 5))
+                    .thenReturn(Future.succeededFuture("recording.jfr"));
+
+            handler.handle(ctx);
+
+            Mockito.verify(resp)
+                    .end(
+                            gson.toJson(
+                                    Map.of(
+                                            "name",
+                                            "recording.jfr",
+                                            "metadata",
+                                            metadata,
+                                            "sha256",
+                                            "cafe")));
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = {"foo", "0", "-1"})
+        void shouldRejectBadMaxFiles(String maxFiles) throws Exception {
+            Mockito.when(req.getParam("maxFiles", "10")).thenReturn(maxFiles);
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+            Mockito.verifyNoInteractions(uploadSessionManager);
+        }
+
+        @Test
+        void shouldFailWhenCommitFails() throws Exception {
+            Mockito.when(req.getParam("maxFiles", "10")).thenReturn("10");
+            Mockito.when(uploadSessionManager.get("someJvmId", "abc")).thenReturn(session);
+            ApiException incomplete = new ApiException(400, "incomplete");
+            Mockito.when(uploadSessionManager.commit("someJvmId", "abc", 10))
+                    .thenReturn(Future.failedFuture(incomplete));
+
+            handler.handle(ctx);
+
+            Mockito.verify(ctx).fail(incomplete);
+        }
+    }
+}
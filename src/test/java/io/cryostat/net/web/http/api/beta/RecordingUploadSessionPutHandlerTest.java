@@ -0,0 +1,192 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import io.cryostat.MainModule;
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.UploadSessionManager;
+import io.cryostat.recordings.UploadSessionManager.Session;
+
+import com.google.gson.Gson;
+import io.vertx.core.Future;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RecordingUploadSessionPutHandlerTest {
+
+    RecordingUploadSessionPutHandler handler;
+    @Mock AuthManager auth;
+    @Mock CredentialsManager credentialsManager;
+    @Mock UploadSessionManager uploadSessionManager;
+    @Mock Session session;
+    @Mock RoutingContext ctx;
+    @Mock HttpServerRequest req;
+    @Mock HttpServerResponse resp;
+    Gson gson = MainModule.provideGson();
+
+    @BeforeEach
+    void setup() {
+        this.handler = createHandler(0);
+    }
+
+    RecordingUploadSessionPutHandler createHandler(long maxUploadBytes) {
+        return new RecordingUploadSessionPutHandler(
+                auth, credentialsManager, gson, uploadSessionManager, maxUploadBytes);
+    }
+
+    @Nested
+    class ApiSpec {
+
+        @Test
+        void shouldHandlePUT() {
+            MatcherAssert.assertThat(handler.httpMethod(), Matchers.equalTo(HttpMethod.PUT));
+        }
+
+        @Test
+        void shouldHandleExpectedPath() {
+            MatcherAssert.assertThat(
+                    handler.path(),
+                    Matchers.equalTo("/api/beta/recordings/:jvmId/uploads/:uploadId/:part"));
+        }
+
+        @Test
+        void shouldRequireCreateRecording() {
+            MatcherAssert.assertThat(
+                    handler.resourceActions(),
+                    Matchers.equalTo(Set.of(ResourceAction.CREATE_RECORDING)));
+        }
+
+        @Test
+        void shouldBeAsync() {
+            Assertions.assertTrue(handler.isAsync());
+        }
+
+        @Test
+        void shouldConsumeOctetStream() {
+            MatcherAssert.assertThat(
+                    handler.consumes(), Matchers.equalTo(List.of(HttpMimeType.OCTET_STREAM)));
+        }
+    }
+
+    @Nested
+    class Behaviour {
+
+        @BeforeEach
+        void setup() {
+            Mockito.when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                    .thenReturn(CompletableFuture.completedFuture(true));
+            Mockito.when(ctx.request()).thenReturn(req);
+            Mockito.when(ctx.response()).thenReturn(resp);
+            Mockito.lenient()
+                    .when(resp.putHeader(Mockito.any(CharSequence.class), Mockito.anyString()))
+                    .thenReturn(resp);
+            Mockito.lenient().when(ctx.pathParam("jvmId")).thenReturn("someJvmId");
+            Mockito.lenient().when(ctx.pathParam("uploadId")).thenReturn("abc");
+        }
+
+        @Test
+        void shouldStreamPartIntoSession() throws Exception {
+            Mockito.when(ctx.pathParam("part")).thenReturn("2");
+            Mockito.when(req.getParam("offset")).thenReturn("1024");
+            Mockito.when(uploadSessionManager.write("someJvmId", "abc", 2, 1024, req))
+                    .thenReturn(Future.succeededFuture(session));
+            Mockito.when(session.getId()).thenReturn("abc");
+            Mockito.when(session.getNextPart()).thenReturn(3);
+            Mockito.when(session.getOffset()).thenReturn(2048L);
+            Mockito.when(session.getExpiresAt()).thenReturn(1234L);
+
+            handler.handle(ctx);
+
+            Mockito.verify(resp)
+                    .end(
+                            gson.toJson(
+                                    Map.of(
+                                            "id",
+                                            "abc",
+                                            "nextPart",
+                                            3,
+                                            "offset",
+                                            2048L,
+                                            "expiresAt",
+                                            1234L)));
+        }
+
+        @ParameterizedTest
+        @CsvSource({"0,0", "-1,0", "foo,0", "1,-1", "1,bar", "1,"})
+        void shouldRejectInvalidPartOrOffset(String part, String offset) throws Exception {
+            Mockito.when(ctx.pathParam("part")).thenReturn(part);
+            Mockito.lenient().when(req.getParam("offset")).thenReturn(offset);
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+            Mockito.verifyNoInteractions(uploadSessionManager);
+        }
+
+        @Test
+        void shouldRejectPartExceedingMaxUploadSize() throws Exception {
+            handler = createHandler(4096);
+            Mockito.when(ctx.pathParam("part")).thenReturn("2");
+            Mockito.when(req.getParam("offset")).thenReturn("4000");
+            Mockito.when(req.getHeader(HttpHeaders.CONTENT_LENGTH)).thenReturn("100");
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(413));
+            Mockito.verifyNoInteractions(uploadSessionManager);
+        }
+
+        @Test
+        void shouldFailWhenPartIsRejected() throws Exception {
+            Mockito.when(ctx.pathParam("part")).thenReturn("1");
+            Mockito.when(req.getParam("offset")).thenReturn("0");
+            ApiException conflict = new ApiException(409, "Expected part 2");
+            Mockito.when(uploadSessionManager.write("someJvmId", "abc", 1, 0, req))
+                    .thenReturn(Future.failedFuture(conflict));
+
+            handler.handle(ctx);
+
+            Mockito.verify(ctx).fail(conflict);
+        }
+    }
+}
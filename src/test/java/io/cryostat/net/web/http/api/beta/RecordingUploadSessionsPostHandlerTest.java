@@ -0,0 +1,246 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import io.cryostat.MainModule;
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.core.sys.FileSystem;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.platform.ServiceRef;
+import io.cryostat.recordings.JvmIdHelper;
+import io.cryostat.recordings.RecordingMetadataManager;
+import io.cryostat.recordings.RecordingMetadataManager.Metadata;
+import io.cryostat.recordings.UploadSessionManager;
+import io.cryostat.recordings.UploadSessionManager.Session;
+
+import com.google.gson.Gson;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RecordingUploadSessionsPostHandlerTest {
+
+    static final String JVM_ID = "someJvmId";
+    static final String CONNECT_URL = "service:jmx:rmi:///jndi/rmi://localhost:9091/jmxrmi";
+
+    RecordingUploadSessionsPostHandler handler;
+    @Mock AuthManager auth;
+    @Mock CredentialsManager credentialsManager;
+    @Mock FileSystem fs;
+    @Mock JvmIdHelper idHelper;
+    @Mock RecordingMetadataManager recordingMetadataManager;
+    @Mock UploadSessionManager uploadSessionManager;
+    @Mock Path recordingsPath;
+    @Mock Session session;
+    @Mock ServiceRef serviceRef;
+    @Mock RoutingContext ctx;
+    @Mock HttpServerRequest req;
+    @Mock HttpServerResponse resp;
+    Gson gson = MainModule.provideGson();
+    MultiMap attrs = MultiMap.caseInsensitiveMultiMap();
+
+    @BeforeEach
+    void setup() {
+        this.handler =
+                new RecordingUploadSessionsPostHandler(
+                        auth,
+                        credentialsManager,
+                        gson,
+                        fs,
+                        idHelper,
+                        recordingMetadataManager,
+                        uploadSessionManager,
+                        recordingsPath);
+    }
+
+    @Nested
+    class ApiSpec {
+
+        @Test
+        void shouldHandlePOST() {
+            MatcherAssert.assertThat(handler.httpMethod(), Matchers.equalTo(HttpMethod.POST));
+        }
+
+        @Test
+        void shouldHandleExpectedPath() {
+            MatcherAssert.assertThat(
+                    handler.path(), Matchers.equalTo("/api/beta/recordings/:jvmId/uploads"));
+        }
+
+        @Test
+        void shouldRequireCreateRecording() {
+            MatcherAssert.assertThat(
+                    handler.resourceActions(),
+                    Matchers.equalTo(Set.of(ResourceAction.CREATE_RECORDING)));
+        }
+
+        @Test
+        void shouldBeAsync() {
+            Assertions.assertTrue(handler.isAsync());
+        }
+
+        @Test
+        void shouldProduceJson() {
+            MatcherAssert.assertThat(
+                    handler.produces(), Matchers.equalTo(List.of(HttpMimeType.JSON)));
+        }
+    }
+
+    @Nested
+    class Behaviour {
+
+        @BeforeEach
+        void setup() {
+            Mockito.when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                    .thenReturn(CompletableFuture.completedFuture(true));
+            Mockito.when(ctx.request()).thenReturn(req);
+            Mockito.when(ctx.response()).thenReturn(resp);
+            Mockito.lenient()
+                    .when(resp.putHeader(Mockito.any(CharSequence.class), Mockito.anyString()))
+                    .thenReturn(resp);
+            Mockito.lenient().when(resp.setStatusCode(Mockito.anyInt())).thenReturn(resp);
+            Mockito.when(fs.isDirectory(recordingsPath)).thenReturn(true);
+            Mockito.lenient().when(req.formAttributes()).thenReturn(attrs);
+            Mockito.lenient().when(ctx.pathParam("jvmId")).thenReturn(JVM_ID);
+            Mockito.lenient().when(serviceRef.getServiceUri()).thenReturn(URI.create(CONNECT_URL));
+        }
+
+        @Test
+        void shouldCreateSession() throws Exception {
+            Map<String, String> labels = Map.of("key", "value");
+            attrs.add("filename", "localhost_test_20191219T213834Z.2.jfr");
+            attrs.add("labels", labels.toString());
+            Mockito.when(recordingMetadataManager.parseRecordingLabels(labels.toString()))
+                    .thenReturn(labels);
+            Mockito.when(idHelper.reverseLookup(JVM_ID)).thenReturn(Optional.of(serviceRef));
+            Mockito.when(idHelper.jvmIdToSubdirectoryName(JVM_ID)).thenReturn("subdir");
+            Mockito.when(req.path()).thenReturn("/api/beta/recordings/someJvmId/uploads");
+            Mockito.when(session.getId()).thenReturn("abc");
+            Mockito.when(session.getNextPart()).thenReturn(1);
+            Mockito.when(session.getExpiresAt()).thenReturn(1234L);
+            Mockito.when(
+                            uploadSessionManager.create(
+                                    JVM_ID,
+                                    "subdir",
+                                    CONNECT_URL,
+                                    "localhost_test_20191219T213834Z",
+                                    2,
+                                    new Metadata(labels)))
+                    .thenReturn(Future.succeededFuture(session));
+
+            handler.handle(ctx);
+
+            Mockito.verify(resp).setStatusCode(201);
+            Mockito.verify(resp)
+                    .putHeader(HttpHeaders.LOCATION, "/api/beta/recordings/someJvmId/uploads/abc");
+            Mockito.verify(resp)
+                    .end(
+                            gson.toJson(
+                                    Map.of(
+                                            "id",
+                                            "abc",
+                                            "nextPart",
+                                            1,
+                                            "offset",
+                                            0L,
+                                            "expiresAt",
+                                            1234L)));
+        }
+
+        @Test
+        void shouldRejectInvalidFilename() throws Exception {
+            attrs.add("filename", "incorrect_file_name.jfr");
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+            Mockito.verifyNoInteractions(uploadSessionManager);
+        }
+
+        @Test
+        void shouldRejectInvalidLabels() throws Exception {
+            attrs.add("filename", "localhost_test_20191219T213834Z.jfr");
+            attrs.add("labels", "invalid");
+            Mockito.when(recordingMetadataManager.parseRecordingLabels("invalid"))
+                    .thenThrow(new IllegalArgumentException());
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+            Mockito.verifyNoInteractions(uploadSessionManager);
+        }
+
+        @Test
+        void shouldRejectUnknownJvmId() throws Exception {
+            attrs.add("filename", "localhost_test_20191219T213834Z.jfr");
+            Mockito.when(idHelper.reverseLookup(JVM_ID)).thenReturn(Optional.empty());
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+            Mockito.verifyNoInteractions(uploadSessionManager);
+        }
+
+        @Test
+        void shouldFailWhenThrottled() throws Exception {
+            attrs.add("filename", "localhost_test_20191219T213834Z.jfr");
+            Mockito.when(idHelper.reverseLookup(JVM_ID)).thenReturn(Optional.of(serviceRef));
+            ApiException throttled = new ApiException(429, "Too many uploads");
+            Mockito.when(
+                            uploadSessionManager.create(
+                                    Mockito.any(),
+                                    Mockito.any(),
+                                    Mockito.any(),
+                                    Mockito.any(),
+                                    Mockito.anyInt(),
+                                    Mockito.any()))
+                    .thenReturn(Future.failedFuture(throttled));
+
+            handler.handle(ctx);
+
+            Mockito.verify(ctx).fail(throttled);
+        }
+    }
+}
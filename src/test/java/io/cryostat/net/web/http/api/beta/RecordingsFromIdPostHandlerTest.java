@@ -24,7 +24,6 @@ import static org.mockito.Mockito.when;
 
 import java.net.URI;
 import java.nio.file.Path;
-import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -34,31 +33,28 @@ import java.util.concurrent.CompletableFuture;
 import io.cryostat.MainModule;
 import io.cryostat.configuration.CredentialsManager;
 import io.cryostat.core.sys.FileSystem;
-import io.cryostat.messaging.notifications.Notification;
-import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
-import io.cryostat.net.web.WebServer;
 import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.net.web.http.api.v2.ApiException;
 import io.cryostat.platform.ServiceRef;
 import io.cryostat.recordings.JvmIdHelper;
-import io.cryostat.recordings.JvmIdHelper.JvmIdDoesNotExistException;
 import io.cryostat.recordings.JvmIdHelper.JvmIdGetException;
 import io.cryostat.recordings.RecordingArchiveHelper;
 import io.cryostat.recordings.RecordingMetadataManager;
 import io.cryostat.recordings.RecordingMetadataManager.Metadata;
-import io.cryostat.rules.ArchivedRecordingInfo;
+import io.cryostat.recordings.RecordingUploadStream;
 
 import com.google.gson.Gson;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerFileUpload;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
-import io.vertx.ext.web.FileUpload;
 import io.vertx.ext.web.RoutingContext;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
@@ -69,12 +65,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
-import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.mockito.stubbing.Answer;
 
 @ExtendWith(MockitoExtension.class)
 class RecordingsFromIdPostHandlerTest {
@@ -85,17 +80,15 @@ class RecordingsFromIdPostHandlerTest {
     @Mock FileSystem cryoFs;
     @Mock Path recordingsPath;
     int globalMaxFiles = 10;
-    @Mock WebServer webServer;
-    @Mock NotificationFactory notificationFactory;
-    @Mock Notification notification;
-    @Mock Notification.OwnedResourceBuilder notificationOwnedResourceBuilder;
     @Mock JvmIdHelper jvmIdHelper;
     @Mock RecordingArchiveHelper recordingArchiveHelper;
     @Mock RecordingMetadataManager recordingMetadataManager;
+    @Mock RecordingUploadStream uploadStream;
     Gson gson = MainModule.provideGson();
 
-    // this is the basename file name timestamp (December 19, 2019)
-    long expectedArchivedTime = Instant.parse("2019-12-19T21:38:34.00Z").toEpochMilli();
+    static final long UPLOAD_SIZE = 1234;
+    static final String SHA256 = "c0535e4be2b79ffd93291305436bf889314e4a3faec05ecffcbb7df31ad9e51a";
+
     String mockJvmId = "someJvmId";
     @Mock ServiceRef mockServiceRef;
     @Mock URI mockConnectUri;
@@ -103,44 +96,24 @@ class RecordingsFromIdPostHandlerTest {
 
     @BeforeEach
     void setup() throws JvmIdGetException {
-        lenient()
-                .when(
-                        notificationFactory.createOwnedResourceBuilder(
-                                Mockito.anyString(), Mockito.anyString()))
-                .thenReturn(notificationOwnedResourceBuilder);
-        lenient()
-                .when(notificationOwnedResourceBuilder.metaCategory(Mockito.any()))
-                .thenReturn(notificationOwnedResourceBuilder);
-        lenient()
-                .when(
-                        notificationOwnedResourceBuilder.metaType(
-                                Mockito.any(Notification.MetaType.class)))
-                .thenReturn(notificationOwnedResourceBuilder);
-        lenient()
-                .when(notificationOwnedResourceBuilder.metaType(Mockito.any(HttpMimeType.class)))
-                .thenReturn(notificationOwnedResourceBuilder);
-        lenient()
-                .when(
-                        notificationOwnedResourceBuilder.messageEntry(
-                                Mockito.anyString(), Mockito.any()))
-                .thenReturn(notificationOwnedResourceBuilder);
-        lenient().when(notificationOwnedResourceBuilder.build()).thenReturn(notification);
         lenient().when(mockServiceRef.getServiceUri()).thenReturn(mockConnectUri);
         lenient().when(mockConnectUri.toString()).thenReturn(mockConnectUrl);
 
-        this.handler =
-                new RecordingsFromIdPostHandler(
-                        authManager,
-                        credentialsManager,
-                        gson,
-                        cryoFs,
-                        jvmIdHelper,
-                        notificationFactory,
-                        recordingArchiveHelper,
-                        recordingMetadataManager,
-                        recordingsPath,
-                        globalMaxFiles,
-                        () -> webServer);
+        this.handler = createHandler(0);
+    }
+
+    RecordingsFromIdPostHandler createHandler(long maxUploadBytes) {
+        return new RecordingsFromIdPostHandler(
+                authManager,
+                credentialsManager,
+                gson,
+                cryoFs,
+                jvmIdHelper,
+                recordingArchiveHelper,
+                recordingMetadataManager,
+                recordingsPath,
+                globalMaxFiles,
+                maxUploadBytes);
     }
 
     @Nested
@@ -194,320 +167,95 @@ class RecordingsFromIdPostHandlerTest {
 
     @Test
     void shouldHandleRecordingUploadRequest() throws Exception {
-        String basename = "localhost_test_20191219T213834Z";
-        String filename = basename + ".jfr";
+        String filename = "localhost_test_20191219T213834Z.jfr";
         String subdirectoryName = "mockSubdirectory";
 
         RoutingContext ctx = mock(RoutingContext.class);
-
-        when(authManager.validateHttpHeader(any(), any()))
-                .thenReturn(CompletableFuture.completedFuture(true));
-        HttpServerRequest req = mock(HttpServerRequest.class);
+        HttpServerRequest req = mockRequest(ctx);
+        HttpServerResponse rep = mockResponse(ctx);
         MultiMap attrs = MultiMap.caseInsensitiveMultiMap();
         when(req.formAttributes()).thenReturn(attrs);
 
-        when(ctx.request()).thenReturn(req);
-
-        when(cryoFs.isDirectory(recordingsPath)).thenReturn(true);
-        when(req.getParam(Mockito.anyString(), Mockito.anyString()))
-                .thenReturn(String.valueOf(globalMaxFiles));
-
-        FileUpload upload = mock(FileUpload.class);
-        when(ctx.fileUploads()).thenReturn(List.of(upload));
-        when(webServer.getTempFileUpload(Mockito.any(), Mockito.any(), Mockito.any()))
-                .thenReturn(upload);
-        when(upload.fileName()).thenReturn(filename);
-        when(upload.uploadedFileName()).thenReturn("foo");
-
         when(ctx.pathParam("jvmId")).thenReturn(mockJvmId);
         when(jvmIdHelper.reverseLookup(mockJvmId)).thenReturn(Optional.of(mockServiceRef));
         when(jvmIdHelper.jvmIdToSubdirectoryName(mockJvmId)).thenReturn(subdirectoryName);
-        when(recordingArchiveHelper.getArchivedTimeFromTimestamp(Mockito.anyString()))
-                .thenReturn(expectedArchivedTime);
-
-        doAnswer(
-                        invocation -> {
-                            Handler<AsyncResult<Void>> handler = invocation.getArgument(1);
-                            handler.handle(
-                                    new AsyncResult<>() {
-                                        @Override
-                                        public Void result() {
-                                            return null;
-                                        }
-
-                                        @Override
-                                        public Throwable cause() {
-                                            return null;
-                                        }
-
-                                        @Override
-                                        public boolean succeeded() {
-                                            return true;
-                                        }
-
-                                        @Override
-                                        public boolean failed() {
-                                            return false;
-                                        }
-                                    });
-
-                            return null;
-                        })
-                .when(recordingArchiveHelper)
-                .validateRecording(Mockito.any(String.class), Mockito.any(Handler.class));
-
-        doAnswer(
-                        invocation -> {
-                            Handler<AsyncResult<String>> handler = invocation.getArgument(5);
-                            handler.handle(
-                                    new AsyncResult<>() {
-                                        @Override
-                                        public String result() {
-                                            return filename;
-                                        }
-
-                                        @Override
-                                        public Throwable cause() {
-                                            return null;
-                                        }
-
-                                        @Override
-                                        public boolean succeeded() {
-                                            return true;
-                                        }
-
-                                        @Override
-                                        public boolean failed() {
-                                            return false;
-                                        }
-                                    });
-
-                            return null;
-                        })
-                .when(recordingArchiveHelper)
-                .saveUploadedRecording(
-                        Mockito.any(String.class),
-                        Mockito.any(String.class),
-                        Mockito.any(String.class),
-                        Mockito.any(String.class),
-                        Mockito.any(Integer.class),
-                        Mockito.any(Handler.class));
-
-        HttpServerResponse rep = mock(HttpServerResponse.class);
-        when(ctx.response()).thenReturn(rep);
-        when(rep.putHeader(Mockito.any(CharSequence.class), Mockito.anyString())).thenReturn(rep);
-
-        when(webServer.getArchivedDownloadURL(Mockito.anyString(), Mockito.anyString()))
-                .then(
-                        new Answer<String>() {
-                            @Override
-                            public String answer(InvocationOnMock invocation) throws Throwable {
-                                return "/some/download/path/" + invocation.getArgument(1);
-                            }
-                        });
-        when(webServer.getArchivedReportURL(Mockito.anyString(), Mockito.anyString()))
-                .then(
-                        new Answer<String>() {
-                            @Override
-                            public String answer(InvocationOnMock invocation) throws Throwable {
-                                return "/some/report/path/" + invocation.getArgument(1);
-                            }
-                        });
+        HttpServerFileUpload upload = mockUpload(RecordingArchiveHelper.MULTIFORM_RECORDINGS_KEY);
+        when(upload.filename()).thenReturn(filename);
+        when(upload.pipeTo(uploadStream)).thenReturn(Future.succeededFuture());
+        mockOpenUploadStream();
+        mockSaveUploadStream(
+                subdirectoryName, "localhost_test_20191219T213834Z", 0, null, filename);
 
         handler.handle(ctx);
+        deliver(req, upload);
 
         InOrder inOrder = Mockito.inOrder(rep);
-        inOrder.verify(rep).putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime());
-        inOrder.verify(rep).end(gson.toJson(Map.of("name", filename, "metadata", new Metadata())));
-
-        ArchivedRecordingInfo recordingInfo =
-                new ArchivedRecordingInfo(
-                        mockConnectUrl,
-                        filename,
-                        "/some/download/path/" + filename,
-                        "/some/report/path/" + filename,
-                        new Metadata(),
-                        0,
-                        expectedArchivedTime);
-        Mockito.verify(notificationFactory)
-                .createOwnedResourceBuilder(mockConnectUrl, "ArchivedRecordingCreated");
-        Mockito.verify(notificationOwnedResourceBuilder).messageEntry("recording", recordingInfo);
-        Mockito.verify(notificationOwnedResourceBuilder).build();
-        Mockito.verify(notification).send();
+        inOrder.verify(rep, Mockito.timeout(5_000))
+                .putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime());
+        inOrder.verify(rep, Mockito.timeout(5_000))
+                .end(
+                        gson.toJson(
+                                Map.of(
+                                        "name",
+                                        filename,
+                                        "metadata",
+                                        new Metadata(),
+                                        "sha256",
+                                        SHA256)));
+
+        verify(req).setExpectMultipart(true);
+        verify(ctx, Mockito.never()).fail(Mockito.any());
     }
 
     @Test
     void shouldHandleRecordingUploadRequestWithLabels() throws Exception {
-        String basename = "localhost_test_20191219T213834Z";
-        String filename = basename + ".jfr";
+        String filename = "localhost_test_20191219T213834Z.2.jfr";
         String subdirectoryName = "mockSubdirectory";
         Map<String, String> labels = Map.of("key", "value", "key1", "value1");
         Metadata metadata = new Metadata(labels);
 
         RoutingContext ctx = mock(RoutingContext.class);
-
-        when(authManager.validateHttpHeader(any(), any()))
-                .thenReturn(CompletableFuture.completedFuture(true));
-        HttpServerRequest req = mock(HttpServerRequest.class);
+        HttpServerRequest req = mockRequest(ctx);
+        HttpServerResponse rep = mockResponse(ctx);
         MultiMap attrs = MultiMap.caseInsensitiveMultiMap();
         attrs.add("labels", labels.toString());
         when(req.formAttributes()).thenReturn(attrs);
-        when(req.getParam(Mockito.anyString(), Mockito.anyString()))
-                .thenReturn(String.valueOf(globalMaxFiles));
-
         when(recordingMetadataManager.parseRecordingLabels(labels.toString())).thenReturn(labels);
 
-        when(ctx.request()).thenReturn(req);
-
-        when(cryoFs.isDirectory(recordingsPath)).thenReturn(true);
-
-        FileUpload upload = mock(FileUpload.class);
-        when(ctx.fileUploads()).thenReturn(List.of(upload));
-        when(webServer.getTempFileUpload(Mockito.any(), Mockito.any(), Mockito.any()))
-                .thenReturn(upload);
         when(ctx.pathParam("jvmId")).thenReturn(mockJvmId);
         when(jvmIdHelper.reverseLookup(mockJvmId)).thenReturn(Optional.of(mockServiceRef));
-
-        when(upload.fileName()).thenReturn(filename);
-        when(upload.uploadedFileName()).thenReturn("foo");
         when(jvmIdHelper.jvmIdToSubdirectoryName(mockJvmId)).thenReturn(subdirectoryName);
-        when(recordingArchiveHelper.getArchivedTimeFromTimestamp(Mockito.anyString()))
-                .thenReturn(expectedArchivedTime);
-
-        doAnswer(
-                        invocation -> {
-                            Handler<AsyncResult<Void>> handler = invocation.getArgument(1);
-                            handler.handle(
-                                    new AsyncResult<>() {
-                                        @Override
-                                        public Void result() {
-                                            return null;
-                                        }
-
-                                        @Override
-                                        public Throwable cause() {
-                                            return null;
-                                        }
-
-                                        @Override
-                                        public boolean succeeded() {
-                                            return true;
-                                        }
-
-                                        @Override
-                                        public boolean failed() {
-                                            return false;
-                                        }
-                                    });
-
-                            return null;
-                        })
-                .when(recordingArchiveHelper)
-                .validateRecording(Mockito.any(String.class), Mockito.any(Handler.class));
-
-        doAnswer(
-                        invocation -> {
-                            Handler<AsyncResult<String>> handler = invocation.getArgument(5);
-                            handler.handle(
-                                    new AsyncResult<>() {
-                                        @Override
-                                        public String result() {
-                                            return filename;
-                                        }
-
-                                        @Override
-                                        public Throwable cause() {
-                                            return null;
-                                        }
-
-                                        @Override
-                                        public boolean succeeded() {
-                                            return true;
-                                        }
-
-                                        @Override
-                                        public boolean failed() {
-                                            return false;
-                                        }
-                                    });
-
-                            return null;
-                        })
-                .when(recordingArchiveHelper)
-                .saveUploadedRecording(
-                        Mockito.any(String.class),
-                        Mockito.any(String.class),
-                        Mockito.any(String.class),
-                        Mockito.any(String.class),
-                        Mockito.any(Integer.class),
-                        Mockito.any(Handler.class));
-
-        HttpServerResponse rep = mock(HttpServerResponse.class);
-        when(ctx.response()).thenReturn(rep);
-        when(rep.putHeader(Mockito.any(CharSequence.class), Mockito.anyString())).thenReturn(rep);
-
-        when(webServer.getArchivedDownloadURL(Mockito.anyString(), Mockito.anyString()))
-                .then(
-                        new Answer<String>() {
-                            @Override
-                            public String answer(InvocationOnMock invocation) throws Throwable {
-                                return "/some/download/path/" + invocation.getArgument(1);
-                            }
-                        });
-        when(webServer.getArchivedReportURL(Mockito.anyString(), Mockito.anyString()))
-                .then(
-                        new Answer<String>() {
-                            @Override
-                            public String answer(InvocationOnMock invocation) throws Throwable {
-                                return "/some/report/path/" + invocation.getArgument(1);
-                            }
-                        });
-
-        when(recordingMetadataManager.setRecordingMetadataFromPath(
-                        subdirectoryName, filename, metadata))
-                .thenReturn(CompletableFuture.completedFuture(metadata));
+        HttpServerFileUpload upload = mockUpload(RecordingArchiveHelper.MULTIFORM_RECORDINGS_KEY);
+        when(upload.filename()).thenReturn(filename);
+        when(upload.pipeTo(uploadStream)).thenReturn(Future.succeededFuture());
+        mockOpenUploadStream();
+        mockSaveUploadStream(
+                subdirectoryName, "localhost_test_20191219T213834Z", 2, metadata, filename);
 
         handler.handle(ctx);
+        deliver(req, upload);
 
         InOrder inOrder = Mockito.inOrder(rep);
-        inOrder.verify(rep).putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime());
-        inOrder.verify(rep).end(gson.toJson(Map.of("name", filename, "metadata", metadata)));
-
-        ArchivedRecordingInfo recordingInfo =
-                new ArchivedRecordingInfo(
-                        mockConnectUrl,
-                        filename,
-                        "/some/download/path/" + filename,
-                        "/some/report/path/" + filename,
-                        metadata,
-                        0,
-                        expectedArchivedTime);
-        Mockito.verify(notificationFactory)
-                .createOwnedResourceBuilder(mockConnectUrl, "ArchivedRecordingCreated");
-        Mockito.verify(notificationOwnedResourceBuilder).messageEntry("recording", recordingInfo);
-        Mockito.verify(notificationOwnedResourceBuilder).build();
-        Mockito.verify(notification).send();
+        inOrder.verify(rep, Mockito.timeout(5_000))
+                .putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime());
+        inOrder.verify(rep, Mockito.timeout(5_000))
+                .end(gson.toJson(Map.of("name", filename, "metadata", metadata, "sha256", SHA256)));
+
+        verify(recordingMetadataManager).parseRecordingLabels(labels.toString());
     }
 
     @Test
     void shouldHandleNoRecordingSubmission() throws Exception {
         RoutingContext ctx = mock(RoutingContext.class);
+        HttpServerRequest req = mockRequest(ctx);
+        mockResponse(ctx);
+        when(ctx.pathParam("jvmId")).thenReturn(mockJvmId);
+        when(jvmIdHelper.reverseLookup(mockJvmId)).thenReturn(Optional.of(mockServiceRef));
 
-        when(authManager.validateHttpHeader(any(), any()))
-                .thenReturn(CompletableFuture.completedFuture(true));
-        HttpServerRequest req = mock(HttpServerRequest.class);
-        when(ctx.request()).thenReturn(req);
-        HttpServerResponse rep = mock(HttpServerResponse.class);
-        when(ctx.response()).thenReturn(rep);
-        when(rep.putHeader(Mockito.any(CharSequence.class), Mockito.anyString())).thenReturn(rep);
-
-        when(cryoFs.isDirectory(recordingsPath)).thenReturn(true);
-        when(req.getParam(Mockito.anyString(), Mockito.anyString()))
-                .thenReturn(String.valueOf(globalMaxFiles));
-
-        when(ctx.fileUploads()).thenReturn(List.of());
+        handler.handle(ctx);
+        deliver(req);
 
-        ApiException ex = Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+        ApiException ex = captureFailure(ctx);
         MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
         MatcherAssert.assertThat(
                 ex.getFailureReason(), Matchers.equalTo("No recording submission."));
@@ -516,32 +264,25 @@ class RecordingsFromIdPostHandlerTest {
     @Test
     void shouldHandleIncorrectFormField() throws Exception {
         RoutingContext ctx = mock(RoutingContext.class);
+        HttpServerRequest req = mockRequest(ctx);
+        mockResponse(ctx);
+        when(ctx.pathParam("jvmId")).thenReturn(mockJvmId);
+        when(jvmIdHelper.reverseLookup(mockJvmId)).thenReturn(Optional.of(mockServiceRef));
+        HttpServerFileUpload upload = mockUpload("notTheRecording");
 
-        when(authManager.validateHttpHeader(any(), any()))
-                .thenReturn(CompletableFuture.completedFuture(true));
-        HttpServerRequest req = mock(HttpServerRequest.class);
-        when(ctx.request()).thenReturn(req);
-        HttpServerResponse rep = mock(HttpServerResponse.class);
-        when(ctx.response()).thenReturn(rep);
-        when(rep.putHeader(Mockito.any(CharSequence.class), Mockito.anyString())).thenReturn(rep);
-
-        when(cryoFs.isDirectory(recordingsPath)).thenReturn(true);
-        when(req.getParam(Mockito.anyString(), Mockito.anyString()))
-                .thenReturn(String.valueOf(globalMaxFiles));
-
-        FileUpload upload = mock(FileUpload.class);
-        when(ctx.fileUploads()).thenReturn(List.of(upload));
-        when(webServer.getTempFileUpload(Mockito.any(), Mockito.any(), Mockito.any()))
-                .thenReturn(null);
+        handler.handle(ctx);
+        deliver(req, upload);
 
-        ApiException ex = Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+        ApiException ex = captureFailure(ctx);
         MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
         MatcherAssert.assertThat(
                 ex.getFailureReason(), Matchers.equalTo("No recording submission."));
+        verify(recordingArchiveHelper, Mockito.never())
+                .openUploadStream(Mockito.anyLong(), Mockito.any());
     }
 
     @ParameterizedTest()
-    @ValueSource(strings = {"foo", "123max", "Integer.MAX_VALUE"})
+    @ValueSource(strings = {"foo", "123max", "Integer.MAX_VALUE", "0", "-1"})
     void shouldHandleBadParameter(String maxFiles) throws Exception {
         RoutingContext ctx = mock(RoutingContext.class);
 
@@ -549,9 +290,7 @@ class RecordingsFromIdPostHandlerTest {
                 .thenReturn(CompletableFuture.completedFuture(true));
         HttpServerRequest req = mock(HttpServerRequest.class);
         when(ctx.request()).thenReturn(req);
-        HttpServerResponse rep = mock(HttpServerResponse.class);
-        when(ctx.response()).thenReturn(rep);
-        when(rep.putHeader(Mockito.any(CharSequence.class), Mockito.anyString())).thenReturn(rep);
+        mockResponse(ctx);
 
         when(cryoFs.isDirectory(recordingsPath)).thenReturn(true);
         when(req.getParam(Mockito.anyString(), Mockito.anyString())).thenReturn(maxFiles);
@@ -563,148 +302,227 @@ class RecordingsFromIdPostHandlerTest {
     }
 
     @Test
-    void shouldHandleEmptyRecordingName() throws Exception {
+    void shouldRejectOversizedContentLengthBeforeReadingBody() throws Exception {
+        this.handler = createHandler(1024);
         RoutingContext ctx = mock(RoutingContext.class);
+        HttpServerRequest req = mockRequest(ctx);
+        mockResponse(ctx);
+        when(req.getHeader(HttpHeaders.CONTENT_LENGTH)).thenReturn("1025");
 
-        when(authManager.validateHttpHeader(any(), any()))
-                .thenReturn(CompletableFuture.completedFuture(true));
-        HttpServerRequest req = mock(HttpServerRequest.class);
-        when(ctx.request()).thenReturn(req);
-        HttpServerResponse rep = mock(HttpServerResponse.class);
-        when(ctx.response()).thenReturn(rep);
-        when(rep.putHeader(Mockito.any(CharSequence.class), Mockito.anyString())).thenReturn(rep);
-
-        when(cryoFs.isDirectory(recordingsPath)).thenReturn(true);
-        when(req.getParam(Mockito.anyString(), Mockito.anyString()))
-                .thenReturn(String.valueOf(globalMaxFiles));
+        ApiException ex = Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(413));
+        verify(req, Mockito.never()).setExpectMultipart(Mockito.anyBoolean());
+    }
 
-        FileUpload upload = mock(FileUpload.class);
-        when(ctx.fileUploads()).thenReturn(List.of(upload));
-        when(webServer.getTempFileUpload(Mockito.any(), Mockito.any(), Mockito.any()))
-                .thenReturn(upload);
-        when(upload.fileName()).thenReturn("");
+    @Test
+    void shouldHandleEmptyRecordingName() throws Exception {
+        RoutingContext ctx = mock(RoutingContext.class);
+        HttpServerRequest req = mockRequest(ctx);
+        mockResponse(ctx);
         when(ctx.pathParam("jvmId")).thenReturn(mockJvmId);
         when(jvmIdHelper.reverseLookup(mockJvmId)).thenReturn(Optional.of(mockServiceRef));
+        HttpServerFileUpload upload = mockUpload(RecordingArchiveHelper.MULTIFORM_RECORDINGS_KEY);
+        when(upload.filename()).thenReturn("");
 
-        ApiException ex = Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+        handler.handle(ctx);
+        deliver(req, upload);
+
+        ApiException ex = captureFailure(ctx);
         MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
         MatcherAssert.assertThat(
                 ex.getFailureReason(), Matchers.equalTo("Recording name must not be empty."));
-
-        verify(recordingArchiveHelper).deleteTempFileUpload(upload);
+        verify(recordingArchiveHelper, Mockito.never())
+                .openUploadStream(Mockito.anyLong(), Mockito.any());
     }
 
     @Test
-    void shouldHandleIncorrectFileNamePattern() throws JvmIdDoesNotExistException {
-        String basename = "incorrect_file_name";
-        String filename = basename + ".jfr";
-
+    void shouldHandleIncorrectFileNamePattern() throws Exception {
         RoutingContext ctx = mock(RoutingContext.class);
-
-        when(authManager.validateHttpHeader(any(), any()))
-                .thenReturn(CompletableFuture.completedFuture(true));
-        HttpServerRequest req = mock(HttpServerRequest.class);
-        when(ctx.request()).thenReturn(req);
-        HttpServerResponse rep = mock(HttpServerResponse.class);
-        when(ctx.response()).thenReturn(rep);
-        when(rep.putHeader(Mockito.any(CharSequence.class), Mockito.anyString())).thenReturn(rep);
-
-        when(cryoFs.isDirectory(recordingsPath)).thenReturn(true);
-        when(req.getParam(Mockito.anyString(), Mockito.anyString()))
-                .thenReturn(String.valueOf(globalMaxFiles));
-
-        FileUpload upload = mock(FileUpload.class);
-        when(ctx.fileUploads()).thenReturn(List.of(upload));
-        when(webServer.getTempFileUpload(Mockito.any(), Mockito.any(), Mockito.any()))
-                .thenReturn(upload);
-
-        when(upload.fileName()).thenReturn(filename);
+        HttpServerRequest req = mockRequest(ctx);
+        mockResponse(ctx);
         when(ctx.pathParam("jvmId")).thenReturn(mockJvmId);
         when(jvmIdHelper.reverseLookup(mockJvmId)).thenReturn(Optional.of(mockServiceRef));
+        HttpServerFileUpload upload = mockUpload(RecordingArchiveHelper.MULTIFORM_RECORDINGS_KEY);
+        when(upload.filename()).thenReturn("incorrect_file_name.jfr");
 
-        ApiException ex = Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+        handler.handle(ctx);
+        deliver(req, upload);
+
+        ApiException ex = captureFailure(ctx);
         MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
         MatcherAssert.assertThat(
                 ex.getFailureReason(),
                 Matchers.equalTo("This is not a valid file name for the recording."));
-
-        verify(recordingArchiveHelper).deleteTempFileUpload(upload);
+        verify(recordingArchiveHelper, Mockito.never())
+                .openUploadStream(Mockito.anyLong(), Mockito.any());
     }
 
     @Test
-    void shouldHandleInvalidLabels() throws JvmIdDoesNotExistException {
-        String basename = "localhost_test_20191219T213834Z";
-        String filename = basename + ".jfr";
-        String labels = "invalid";
-
+    void shouldDeleteUploadWhenStreamIsRejected() throws Exception {
         RoutingContext ctx = mock(RoutingContext.class);
+        HttpServerRequest req = mockRequest(ctx);
+        mockResponse(ctx);
+        when(ctx.pathParam("jvmId")).thenReturn(mockJvmId);
+        when(jvmIdHelper.reverseLookup(mockJvmId)).thenReturn(Optional.of(mockServiceRef));
+        HttpServerFileUpload upload = mockUpload(RecordingArchiveHelper.MULTIFORM_RECORDINGS_KEY);
+        when(upload.filename()).thenReturn("localhost_test_20191219T213834Z.jfr");
+        when(upload.pipeTo(uploadStream))
+                .thenReturn(
+                        Future.failedFuture(
+                                new ApiException(400, "Not a valid JFR recording file")));
+        mockOpenUploadStream();
 
-        when(authManager.validateHttpHeader(any(), any()))
-                .thenReturn(CompletableFuture.completedFuture(true));
-        HttpServerRequest req = mock(HttpServerRequest.class);
-        when(ctx.request()).thenReturn(req);
-        HttpServerResponse rep = mock(HttpServerResponse.class);
-        when(ctx.response()).thenReturn(rep);
-        when(rep.putHeader(Mockito.any(CharSequence.class), Mockito.anyString())).thenReturn(rep);
+        handler.handle(ctx);
+        deliver(req, upload);
 
-        when(cryoFs.isDirectory(recordingsPath)).thenReturn(true);
-        when(req.getParam(Mockito.anyString(), Mockito.anyString()))
-                .thenReturn(String.valueOf(globalMaxFiles));
+        ApiException ex = captureFailure(ctx);
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        MatcherAssert.assertThat(
+                ex.getFailureReason(), Matchers.equalTo("Not a valid JFR recording file"));
+        verify(upload).pause();
+        verify(recordingArchiveHelper).deleteUploadStream(uploadStream);
+        verify(recordingArchiveHelper, Mockito.never())
+                .saveUploadStream(
+                        Mockito.any(),
+                        Mockito.any(),
+                        Mockito.anyInt(),
+                        Mockito.any(),
+                        Mockito.any(),
+                        Mockito.anyInt(),
+                        Mockito.any(),
+                        Mockito.any());
+    }
 
-        FileUpload upload = mock(FileUpload.class);
-        when(ctx.fileUploads()).thenReturn(List.of(upload));
-        when(webServer.getTempFileUpload(Mockito.any(), Mockito.any(), Mockito.any()))
-                .thenReturn(upload);
-        when(upload.fileName()).thenReturn(filename);
+    @Test
+    void shouldHandleInvalidLabels() throws Exception {
+        String labels = "invalid";
+
+        RoutingContext ctx = mock(RoutingContext.class);
+        HttpServerRequest req = mockRequest(ctx);
+        mockResponse(ctx);
         when(ctx.pathParam("jvmId")).thenReturn(mockJvmId);
         when(jvmIdHelper.reverseLookup(mockJvmId)).thenReturn(Optional.of(mockServiceRef));
+        HttpServerFileUpload upload = mockUpload(RecordingArchiveHelper.MULTIFORM_RECORDINGS_KEY);
+        when(upload.filename()).thenReturn("localhost_test_20191219T213834Z.jfr");
+        when(upload.pipeTo(uploadStream)).thenReturn(Future.succeededFuture());
+        mockOpenUploadStream();
 
         MultiMap attrs = MultiMap.caseInsensitiveMultiMap();
         attrs.add("labels", labels);
         when(req.formAttributes()).thenReturn(attrs);
-
         Mockito.doThrow(new IllegalArgumentException())
                 .when(recordingMetadataManager)
                 .parseRecordingLabels(labels);
 
-        ApiException ex = Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+        handler.handle(ctx);
+        deliver(req, upload);
+
+        ApiException ex = captureFailure(ctx);
         MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
         MatcherAssert.assertThat(
                 ex.getFailureReason(),
                 Matchers.equalTo("Invalid metadata labels for the recording."));
-
-        verify(recordingArchiveHelper).deleteTempFileUpload(upload);
+        verify(recordingArchiveHelper).deleteUploadStream(uploadStream);
     }
 
     @Test
     void shouldHandleInvalidJvmId() throws Exception {
         RoutingContext ctx = mock(RoutingContext.class);
+        HttpServerRequest req = mockRequest(ctx);
+        mockResponse(ctx);
+        when(ctx.pathParam("jvmId")).thenReturn(mockJvmId);
+        when(jvmIdHelper.reverseLookup(mockJvmId)).thenReturn(Optional.empty());
+
+        ApiException ex = Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        MatcherAssert.assertThat(
+                ex.getFailureReason(),
+                Matchers.equalTo(String.format("jvmId must be valid: %s", mockJvmId)));
+        verify(req, Mockito.never()).setExpectMultipart(Mockito.anyBoolean());
+    }
 
+    HttpServerRequest mockRequest(RoutingContext ctx) throws Exception {
         when(authManager.validateHttpHeader(any(), any()))
                 .thenReturn(CompletableFuture.completedFuture(true));
         HttpServerRequest req = mock(HttpServerRequest.class);
         when(ctx.request()).thenReturn(req);
-        HttpServerResponse rep = mock(HttpServerResponse.class);
-        when(ctx.response()).thenReturn(rep);
-        when(rep.putHeader(Mockito.any(CharSequence.class), Mockito.anyString())).thenReturn(rep);
-
         when(cryoFs.isDirectory(recordingsPath)).thenReturn(true);
         when(req.getParam(Mockito.anyString(), Mockito.anyString()))
                 .thenReturn(String.valueOf(globalMaxFiles));
+        return req;
+    }
 
-        FileUpload upload = mock(FileUpload.class);
-        when(ctx.fileUploads()).thenReturn(List.of(upload));
-        when(webServer.getTempFileUpload(Mockito.any(), Mockito.any(), Mockito.any()))
-                .thenReturn(upload);
-        when(ctx.pathParam("jvmId")).thenReturn(mockJvmId);
-        when(jvmIdHelper.reverseLookup(mockJvmId)).thenReturn(Optional.empty());
+    HttpServerResponse mockResponse(RoutingContext ctx) {
+        HttpServerResponse rep = mock(HttpServerResponse.class);
+        when(ctx.response()).thenReturn(rep);
+        lenient()
+                .when(rep.putHeader(Mockito.any(CharSequence.class), Mockito.anyString()))
+                .thenReturn(rep);
+        return rep;
+    }
 
-        ApiException ex = Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
-        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
-        MatcherAssert.assertThat(
-                ex.getFailureReason(),
-                Matchers.equalTo(String.format("jvmId must be valid: %s", mockJvmId)));
+    HttpServerFileUpload mockUpload(String name) {
+        HttpServerFileUpload upload = mock(HttpServerFileUpload.class);
+        when(upload.name()).thenReturn(name);
+        return upload;
+    }
+
+    void mockOpenUploadStream() {
+        lenient().when(uploadStream.getBytesWritten()).thenReturn(UPLOAD_SIZE);
+        lenient().when(uploadStream.getSha256()).thenReturn(SHA256);
+        doAnswer(
+                        invocation -> {
+                            Handler<AsyncResult<RecordingUploadStream>> handler =
+                                    invocation.getArgument(1);
+                            handler.handle(Future.succeededFuture(uploadStream));
+                            return null;
+                        })
+                .when(recordingArchiveHelper)
+                .openUploadStream(Mockito.eq(0L), Mockito.any());
+    }
+
+    void mockSaveUploadStream(
+            String subdirectoryName,
+            String basename,
+            int counter,
+            Metadata metadata,
+            String filename) {
+        doAnswer(
+                        invocation -> {
+                            Handler<AsyncResult<String>> handler = invocation.getArgument(7);
+                            handler.handle(Future.succeededFuture(filename));
+                            return null;
+                        })
+                .when(recordingArchiveHelper)
+                .saveUploadStream(
+                        Mockito.eq(subdirectoryName),
+                        Mockito.eq(basename),
+                        Mockito.eq(counter),
+                        Mockito.eq(uploadStream),
+                        Mockito.eq(mockConnectUrl),
+                        Mockito.eq(globalMaxFiles),
+                        Mockito.eq(metadata),
+                        Mockito.any());
+    }
+
+    /** Play the multipart parts of the request body, then the end of the request. */
+    @SuppressWarnings("unchecked")
+    void deliver(HttpServerRequest req, HttpServerFileUpload... uploads) {
+        ArgumentCaptor<Handler<HttpServerFileUpload>> uploadHandler =
+                ArgumentCaptor.forClass(Handler.class);
+        verify(req).uploadHandler(uploadHandler.capture());
+        ArgumentCaptor<Handler<Void>> endHandler = ArgumentCaptor.forClass(Handler.class);
+        verify(req).endHandler(endHandler.capture());
+        for (HttpServerFileUpload upload : uploads) {
+            uploadHandler.getValue().handle(upload);
+        }
+        endHandler.getValue().handle(null);
+    }
 
-        verify(recordingArchiveHelper).deleteTempFileUpload(upload);
+    ApiException captureFailure(RoutingContext ctx) {
+        ArgumentCaptor<Throwable> failure = ArgumentCaptor.forClass(Throwable.class);
+        verify(ctx, Mockito.timeout(5_000)).fail(failure.capture());
+        MatcherAssert.assertThat(failure.getValue(), Matchers.instanceOf(ApiException.class));
+        return (ApiException) failure.getValue();
     }
 }
@@ -0,0 +1,326 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.beta;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import io.cryostat.MainModule;
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.HttpServer;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.JvmIdHelper;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.RecordingMetadataManager.Metadata;
+import io.cryostat.recordings.RecordingNotFoundException;
+import io.cryostat.recordings.RecordingStreams;
+import io.cryostat.rules.ArchivedRecordingInfo;
+
+import com.google.gson.Gson;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RequestBody;
+import io.vertx.ext.web.RoutingContext;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RecordingsMergePostHandlerTest {
+
+    RecordingsMergePostHandler handler;
+    @Mock AuthManager auth;
+    @Mock CredentialsManager credentialsManager;
+    @Mock HttpServer httpServer;
+    @Mock Vertx vertx;
+    @Mock JvmIdHelper jvmIdHelper;
+    @Mock RecordingArchiveHelper recordingArchiveHelper;
+    @Mock RoutingContext ctx;
+    @Mock RequestBody body;
+    @Mock HttpServerResponse resp;
+    Gson gson = MainModule.provideGson();
+
+    @TempDir Path tempDir;
+
+    @BeforeEach
+    void setup() {
+        Mockito.lenient().when(httpServer.getVertx()).thenReturn(vertx);
+        this.handler =
+                new RecordingsMergePostHandler(
+                        auth,
+                        credentialsManager,
+                        gson,
+                        httpServer,
+                        jvmIdHelper,
+                        recordingArchiveHelper);
+    }
+
+    @Nested
+    class ApiSpec {
+
+        @Test
+        void shouldHandlePOST() {
+            MatcherAssert.assertThat(handler.httpMethod(), Matchers.equalTo(HttpMethod.POST));
+        }
+
+        @Test
+        void shouldHandleExpectedPath() {
+            MatcherAssert.assertThat(
+                    handler.path(), Matchers.equalTo("/api/beta/fs/recordings/merge"));
+        }
+
+        @Test
+        void shouldRequireReadRecording() {
+            MatcherAssert.assertThat(
+                    handler.resourceActions(),
+                    Matchers.equalTo(Set.of(ResourceAction.READ_RECORDING)));
+        }
+
+        @Test
+        void shouldNotBeAsync() {
+            Assertions.assertFalse(handler.isAsync());
+        }
+
+        @Test
+        void shouldConsumeJson() {
+            MatcherAssert.assertThat(
+                    handler.consumes(), Matchers.equalTo(List.of(HttpMimeType.JSON)));
+        }
+
+        @Test
+        void shouldProduceOctetStreamOrZip() {
+            MatcherAssert.assertThat(
+                    handler.produces(),
+                    Matchers.equalTo(List.of(HttpMimeType.OCTET_STREAM, HttpMimeType.ZIP)));
+        }
+    }
+
+    @Nested
+    class Behaviour {
+
+        @BeforeEach
+        void setup() {
+            Mockito.when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                    .thenReturn(CompletableFuture.completedFuture(true));
+            Mockito.when(ctx.body()).thenReturn(body);
+            Mockito.lenient().when(ctx.response()).thenReturn(resp);
+            Mockito.lenient()
+                    .when(resp.putHeader(Mockito.any(CharSequence.class), Mockito.anyString()))
+                    .thenReturn(resp);
+            Mockito.lenient()
+                    .when(jvmIdHelper.jvmIdToSubdirectoryName(Mockito.anyString()))
+                    .thenAnswer(invocation -> "dir-" + invocation.getArgument(0));
+        }
+
+        Path archived(String jvmId, String name, int size) throws Exception {
+            Path file = Files.write(tempDir.resolve(jvmId + "-" + name), new byte[size]);
+            Mockito.lenient()
+                    .when(recordingArchiveHelper.getRecordingPathFromPath("dir-" + jvmId, name))
+                    .thenReturn(CompletableFuture.completedFuture(file));
+            return file;
+        }
+
+        ArchivedRecordingInfo info(String name, long startTime, Map<String, String> labels) {
+            return new ArchivedRecordingInfo(
+                    "someTarget", name, null, null, new Metadata(labels), 0, 0, null) {
+                @Override
+                public long getStartTime() {
+                    return startTime;
+                }
+            };
+        }
+
+        @Test
+        void shouldConcatenateNamedRecordings() throws Exception {
+            Path a = archived("jvm1", "a.jfr", 10);
+            Path b = archived("jvm1", "b.jfr", 20);
+            Mockito.when(body.asString())
+                    .thenReturn(
+                            "{\"recordings\":[{\"jvmId\":\"jvm1\",\"name\":\"b.jfr\"},"
+                                    + "{\"jvmId\":\"jvm1\",\"name\":\"a.jfr\"}]}");
+
+            try (MockedStatic<RecordingStreams> streams =
+                    Mockito.mockStatic(RecordingStreams.class)) {
+                streams.when(
+                                () ->
+                                        RecordingStreams.concatenate(
+                                                Mockito.any(), Mockito.any(), Mockito.any()))
+                        .thenReturn(Future.succeededFuture());
+
+                handler.handle(ctx);
+
+                streams.verify(() -> RecordingStreams.concatenate(vertx, List.of(b, a), resp));
+            }
+            Mockito.verify(resp).putHeader(HttpHeaders.CONTENT_LENGTH, "30");
+            Mockito.verify(resp)
+                    .putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.OCTET_STREAM.mime());
+            Mockito.verify(recordingArchiveHelper).markRecordingDownloaded(a);
+            Mockito.verify(recordingArchiveHelper).markRecordingDownloaded(b);
+        }
+
+        @Test
+        void shouldSelectByLabelsInRecordedOrder() throws Exception {
+            Path a = archived("jvm1", "a.jfr", 10);
+            archived("jvm1", "b.jfr", 10);
+            Path c = archived("jvm1", "c.jfr", 10);
+            Mockito.when(recordingArchiveHelper.getRecordingsFromPath("jvm1"))
+                    .thenReturn(
+                            CompletableFuture.completedFuture(
+                                    List.of(
+                                            info("c.jfr", 100, Map.of("periodic", "true")),
+                                            info("b.jfr", 200, Map.of("periodic", "false")),
+                                            info("a.jfr", 300, Map.of("periodic", "true")))));
+            Mockito.when(body.asString())
+                    .thenReturn("{\"jvmId\":\"jvm1\",\"labels\":[\"periodic=true\"]}");
+
+            try (MockedStatic<RecordingStreams> streams =
+                    Mockito.mockStatic(RecordingStreams.class)) {
+                streams.when(
+                                () ->
+                                        RecordingStreams.concatenate(
+                                                Mockito.any(), Mockito.any(), Mockito.any()))
+                        .thenReturn(Future.succeededFuture());
+
+                handler.handle(ctx);
+
+                streams.verify(() -> RecordingStreams.concatenate(vertx, List.of(c, a), resp));
+            }
+        }
+
+        @Test
+        void shouldZipRecordingsFromSeveralJvms() throws Exception {
+            Path a = archived("jvm1", "a.jfr", 10);
+            Path b = archived("jvm2", "b.jfr", 10);
+            Mockito.when(body.asString())
+                    .thenReturn(
+                            "{\"format\":\"zip\",\"recordings\":[{\"jvmId\":\"jvm1\",\"name\":\"a.jfr\"},"
+                                + "{\"jvmId\":\"jvm2\",\"name\":\"b.jfr\"}]}");
+
+            try (MockedStatic<RecordingStreams> streams =
+                    Mockito.mockStatic(RecordingStreams.class)) {
+                streams.when(
+                                () ->
+                                        RecordingStreams.zip(
+                                                Mockito.any(), Mockito.any(), Mockito.any()))
+                        .thenReturn(Future.succeededFuture());
+
+                handler.handle(ctx);
+
+                streams.verify(
+                        () ->
+                                RecordingStreams.zip(
+                                        vertx, Map.of("jvm1/a.jfr", a, "jvm2/b.jfr", b), resp));
+            }
+            Mockito.verify(resp).setChunked(true);
+            Mockito.verify(resp).putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.ZIP.mime());
+        }
+
+        @Test
+        void shouldRejectMixedJvmsWithoutZip() throws Exception {
+            Mockito.when(body.asString())
+                    .thenReturn(
+                            "{\"recordings\":[{\"jvmId\":\"jvm1\",\"name\":\"a.jfr\"},"
+                                    + "{\"jvmId\":\"jvm2\",\"name\":\"b.jfr\"}]}");
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        }
+
+        @Test
+        void shouldRejectUnknownFormat() throws Exception {
+            Mockito.when(body.asString())
+                    .thenReturn(
+                            "{\"format\":\"tar\",\"recordings\":[{\"jvmId\":\"jvm1\",\"name\":\"a.jfr\"}]}");
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        }
+
+        @Test
+        void shouldRejectNamesAndLabelsTogether() throws Exception {
+            Mockito.when(body.asString())
+                    .thenReturn(
+                            "{\"jvmId\":\"jvm1\",\"labels\":[\"a=b\"],"
+                                    + "\"recordings\":[{\"jvmId\":\"jvm1\",\"name\":\"a.jfr\"}]}");
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        }
+
+        @Test
+        void shouldRejectLabelsWithoutJvmId() throws Exception {
+            Mockito.when(body.asString()).thenReturn("{\"labels\":[\"a=b\"]}");
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        }
+
+        @Test
+        void shouldRespond404IfNothingMatches() throws Exception {
+            Mockito.when(recordingArchiveHelper.getRecordingsFromPath("jvm1"))
+                    .thenReturn(CompletableFuture.completedFuture(List.of()));
+            Mockito.when(body.asString())
+                    .thenReturn("{\"jvmId\":\"jvm1\",\"labels\":[\"periodic=true\"]}");
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(404));
+        }
+
+        @Test
+        void shouldRespond404IfRecordingNotFound() throws Exception {
+            Mockito.when(recordingArchiveHelper.getRecordingPathFromPath("dir-jvm1", "a.jfr"))
+                    .thenReturn(
+                            CompletableFuture.failedFuture(
+                                    new RecordingNotFoundException("jvm1", "a.jfr")));
+            Mockito.when(body.asString())
+                    .thenReturn("{\"recordings\":[{\"jvmId\":\"jvm1\",\"name\":\"a.jfr\"}]}");
+
+            ApiException ex =
+                    Assertions.assertThrows(ApiException.class, () -> handler.handle(ctx));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(404));
+        }
+    }
+}
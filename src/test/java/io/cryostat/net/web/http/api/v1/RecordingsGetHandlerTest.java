@@ -26,6 +26,7 @@ import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
 import io.cryostat.recordings.RecordingArchiveHelper;
 import io.cryostat.recordings.RecordingMetadataManager.Metadata;
+import io.cryostat.recordings.RecordingSummary;
 import io.cryostat.rules.ArchivePathException;
 import io.cryostat.rules.ArchivedRecordingInfo;
 
@@ -131,6 +132,67 @@ class RecordingsGetHandlerTest {
 
         Mockito.verify(resp)
                 .end(
-                        "[{\"downloadUrl\":\"/some/path/download/recordingFoo\",\"name\":\"recordingFoo\",\"reportUrl\":\"/some/path/archive/recordingFoo\",\"metadata\":{\"labels\":{}},\"size\":0,\"archivedTime\":0}]");
+                        "[{\"downloadUrl\":\"/some/path/download/recordingFoo\",\"name\":\"recordingFoo\",\"reportUrl\":\"/some/path/archive/recordingFoo\",\"metadata\":{\"labels\":{}},\"size\":0,\"archivedTime\":0,\"startTime\":0,\"endTime\":0,\"chunkCount\":0}]");
+    }
+
+    @Test
+    void shouldFilterByCoveredTimeRange() throws Exception {
+        ArchivedRecordingInfo early = recordingCovering("early", 1_000, 2_000);
+        ArchivedRecordingInfo late = recordingCovering("late", 3_000, 4_000);
+        ArchivedRecordingInfo unknown =
+                new ArchivedRecordingInfo(
+                        "encodedServiceUriFoo",
+                        "unknown",
+                        "/download",
+                        "/report",
+                        new Metadata(),
+                        0,
+                        0);
+        Mockito.when(recordingArchiveHelper.getRecordings())
+                .thenReturn(CompletableFuture.completedFuture(List.of(early, late, unknown)));
+
+        RoutingContext ctx = Mockito.mock(RoutingContext.class);
+        HttpServerResponse resp = Mockito.mock(HttpServerResponse.class);
+        Mockito.when(ctx.response()).thenReturn(resp);
+        HttpServerRequest req = Mockito.mock(HttpServerRequest.class);
+        Mockito.when(ctx.request()).thenReturn(req);
+        Mockito.when(req.getParam("from")).thenReturn("1500");
+        Mockito.when(req.getParam("to")).thenReturn("2500");
+        Mockito.when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+
+        handler.handle(ctx);
+
+        Mockito.verify(resp).end(gson.toJson(List.of(early)));
+    }
+
+    @Test
+    void shouldRespondWith400IfTimeRangeInvalid() throws Exception {
+        Mockito.when(recordingArchiveHelper.getRecordings())
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        RoutingContext ctx = Mockito.mock(RoutingContext.class);
+        HttpServerResponse resp = Mockito.mock(HttpServerResponse.class);
+        Mockito.when(ctx.response()).thenReturn(resp);
+        HttpServerRequest req = Mockito.mock(HttpServerRequest.class);
+        Mockito.when(ctx.request()).thenReturn(req);
+        Mockito.when(req.getParam("from")).thenReturn("yesterday");
+        Mockito.when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+
+        HttpException ex = Assertions.assertThrows(HttpException.class, () -> handler.handle(ctx));
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+    }
+
+    private static ArchivedRecordingInfo recordingCovering(String name, long start, long end) {
+        return new ArchivedRecordingInfo(
+                "encodedServiceUriFoo",
+                name,
+                "/download/" + name,
+                "/report/" + name,
+                new Metadata(),
+                0,
+                0,
+                new RecordingSummary(start, end, 1, Set.of("jdk.CPULoad")));
     }
 }
@@ -46,8 +46,10 @@ import io.cryostat.rules.ArchivedRecordingInfo;
 
 import com.google.gson.Gson;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
@@ -60,6 +62,8 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
@@ -274,8 +278,9 @@ class RecordingsPostHandlerTest {
                                 RecordingArchiveHelper.UPLOADED_RECORDINGS_SUBDIRECTORY)));
     }
 
-    @Test
-    void shouldHandleRecordingUploadRequestWithLabels() throws Exception {
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void shouldHandleRecordingUploadRequestWithLabels(boolean writePending) throws Exception {
         String basename = "localhost_test_20191219T213834Z";
         String filename = basename + ".jfr";
         Map<String, String> labels = Map.of("key", "value", "key1", "value1");
@@ -396,11 +401,34 @@ class RecordingsPostHandlerTest {
                             }
                         });
 
+        CompletableFuture<Metadata> written = new CompletableFuture<>();
+        if (!writePending) {
+            written.complete(metadata);
+        } else {
+            Vertx vertx = mock(Vertx.class);
+            Context context = mock(Context.class);
+            when(ctx.vertx()).thenReturn(vertx);
+            when(vertx.getOrCreateContext()).thenReturn(context);
+            doAnswer(
+                            invocation -> {
+                                Handler<Void> task = invocation.getArgument(0);
+                                task.handle(null);
+                                return null;
+                            })
+                    .when(context)
+                    .runOnContext(Mockito.any());
+        }
         Mockito.when(recordingMetadataManager.setRecordingMetadata(filename, metadata))
-                .thenReturn(CompletableFuture.completedFuture(metadata));
+                .thenReturn(written);
 
         handler.handle(ctx);
 
+        if (writePending) {
+            // the response waits for the labels to be written, without blocking the handler
+            Mockito.verify(rep, Mockito.never()).end(Mockito.anyString());
+            written.complete(metadata);
+        }
+
         InOrder inOrder = Mockito.inOrder(rep);
         inOrder.verify(rep).putHeader(HttpHeaders.CONTENT_TYPE, HttpMimeType.JSON.mime());
         inOrder.verify(rep).end(gson.toJson(Map.of("name", filename, "metadata", metadata)));
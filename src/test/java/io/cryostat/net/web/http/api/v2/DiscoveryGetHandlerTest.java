@@ -33,6 +33,8 @@ import io.cryostat.platform.discovery.TargetNode;
 import io.cryostat.platform.internal.KubeApiPlatformClient.KubernetesNodeType;
 
 import com.google.gson.Gson;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
@@ -41,6 +43,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -140,17 +144,62 @@ class DiscoveryGetHandlerTest {
 
         @Test
         void shouldRespondWithEnvironmentNode() throws Exception {
-            Mockito.when(storage.getDiscoveryTree()).thenReturn(expected);
+            Mockito.when(params.getHeaders()).thenReturn(MultiMap.caseInsensitiveMultiMap());
+            Mockito.when(storage.getVersionedDiscoveryTree())
+                    .thenReturn(new DiscoveryStorage.VersionedTree("epoch", 3, expected));
 
             IntermediateResponse<EnvironmentNode> response = handler.handle(params);
 
             MatcherAssert.assertThat(response.getStatusCode(), Matchers.equalTo(200));
+            MatcherAssert.assertThat(
+                    response.getHeaders(),
+                    Matchers.hasEntry(HttpHeaders.ETAG, (CharSequence) "\"epoch-3\""));
 
             EnvironmentNode actual = response.getBody();
 
             MatcherAssert.assertThat(actual, Matchers.equalTo(expected));
-            Mockito.verify(storage).getDiscoveryTree();
+            Mockito.verify(storage).getVersionedDiscoveryTree();
             Mockito.verifyNoMoreInteractions(storage);
         }
+
+        @ParameterizedTest
+        @ValueSource(
+                strings = {
+                    "\"epoch-3\"",
+                    "W/\"epoch-3\"",
+                    "\"epoch-2\", \"epoch-3\"",
+                    "*",
+                })
+        void shouldRespondNotModifiedIfETagMatches(String ifNoneMatch) throws Exception {
+            MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+            headers.add(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+            Mockito.when(params.getHeaders()).thenReturn(headers);
+            Mockito.when(storage.getVersionedDiscoveryTree())
+                    .thenReturn(new DiscoveryStorage.VersionedTree("epoch", 3, expected));
+
+            IntermediateResponse<EnvironmentNode> response = handler.handle(params);
+
+            MatcherAssert.assertThat(response.getStatusCode(), Matchers.equalTo(304));
+            MatcherAssert.assertThat(
+                    response.getHeaders(),
+                    Matchers.hasEntry(HttpHeaders.ETAG, (CharSequence) "\"epoch-3\""));
+            MatcherAssert.assertThat(response.getBody(), Matchers.nullValue());
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = {"\"epoch-2\"", "\"other-3\"", "epoch-3"})
+        void shouldRespondWithEnvironmentNodeIfETagDoesNotMatch(String ifNoneMatch)
+                throws Exception {
+            MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+            headers.add(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+            Mockito.when(params.getHeaders()).thenReturn(headers);
+            Mockito.when(storage.getVersionedDiscoveryTree())
+                    .thenReturn(new DiscoveryStorage.VersionedTree("epoch", 3, expected));
+
+            IntermediateResponse<EnvironmentNode> response = handler.handle(params);
+
+            MatcherAssert.assertThat(response.getStatusCode(), Matchers.equalTo(200));
+            MatcherAssert.assertThat(response.getBody(), Matchers.equalTo(expected));
+        }
     }
 }
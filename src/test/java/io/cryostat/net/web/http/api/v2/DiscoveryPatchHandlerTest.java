@@ -0,0 +1,185 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.v2;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import io.cryostat.MainModule;
+import io.cryostat.discovery.DiscoveryDelta;
+import io.cryostat.discovery.DiscoveryStorage;
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.net.security.jwt.DiscoveryJwtHelper;
+import io.cryostat.net.web.WebServer;
+import io.cryostat.net.web.http.api.ApiVersion;
+
+import com.google.gson.Gson;
+import com.nimbusds.jwt.JWT;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.RequestBody;
+import io.vertx.ext.web.RoutingContext;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class DiscoveryPatchHandlerTest {
+    AbstractDiscoveryJwtConsumingHandler<Void> handler;
+    @Mock AuthManager auth;
+    @Mock DiscoveryJwtHelper jwt;
+    @Mock WebServer webServer;
+    @Mock DiscoveryStorage storage;
+    Gson gson = MainModule.provideGson();
+
+    @BeforeEach
+    void setup() {
+        this.handler =
+                new DiscoveryPatchHandler(
+                        auth, jwt, () -> webServer, storage, UUID::fromString, gson);
+    }
+
+    @Nested
+    class BasicHandlerDefinition {
+        @Test
+        void shouldBePATCHHandler() {
+            MatcherAssert.assertThat(handler.httpMethod(), Matchers.equalTo(HttpMethod.PATCH));
+        }
+
+        @Test
+        void shouldBe2_2APIVersion() {
+            MatcherAssert.assertThat(handler.apiVersion(), Matchers.equalTo(ApiVersion.V2_2));
+        }
+
+        @Test
+        void shouldHaveExpectedPath() {
+            MatcherAssert.assertThat(handler.path(), Matchers.equalTo("/api/v2.2/discovery/:id"));
+        }
+
+        @Test
+        void shouldHaveExpectedRequiredPermissions() {
+            MatcherAssert.assertThat(
+                    handler.resourceActions(),
+                    Matchers.equalTo(
+                            Set.of(
+                                    ResourceAction.CREATE_TARGET,
+                                    ResourceAction.UPDATE_TARGET,
+                                    ResourceAction.DELETE_TARGET)));
+        }
+    }
+
+    @Nested
+    class RequestHandling {
+
+        @Mock RoutingContext ctx;
+        @Mock JWT jwt;
+
+        @ParameterizedTest
+        @NullAndEmptySource
+        @ValueSource(strings = {" ", "\n", "\t", "not a uuid", "1234", "abc-123"})
+        void shouldThrowIfIdParamInvalid(String id) throws Exception {
+            if (id != null) {
+                Mockito.when(ctx.pathParam("id")).thenReturn(id);
+            }
+
+            ApiException ex =
+                    Assertions.assertThrows(
+                            ApiException.class, () -> handler.handleWithValidJwt(ctx, jwt));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        }
+
+        @ParameterizedTest
+        @NullAndEmptySource
+        @ValueSource(
+                strings = {
+                    "not json",
+                    " some, values ",
+                    "\"foo\":\"bar\"",
+                    "[]",
+                })
+        void shouldThrowIfBodyJsonInvalid(String json) throws Exception {
+            UUID uuid = UUID.randomUUID();
+            Mockito.when(ctx.pathParam("id")).thenReturn(uuid.toString());
+            RequestBody body = Mockito.mock(RequestBody.class);
+            Mockito.when(ctx.body()).thenReturn(body);
+            Mockito.when(body.asString()).thenReturn(json);
+
+            ApiException ex =
+                    Assertions.assertThrows(
+                            ApiException.class, () -> handler.handleWithValidJwt(ctx, jwt));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        }
+
+        @Test
+        void shouldThrowIfDeltaDoesNotApply() throws Exception {
+            UUID uuid = UUID.randomUUID();
+            Mockito.when(ctx.pathParam("id")).thenReturn(uuid.toString());
+            RequestBody body = Mockito.mock(RequestBody.class);
+            Mockito.when(ctx.body()).thenReturn(body);
+            Mockito.when(body.asString()).thenReturn("{\"remove\":[{\"id\":\"JVM/unknown\"}]}");
+            Mockito.when(storage.patch(Mockito.eq(uuid), Mockito.any()))
+                    .thenThrow(IllegalArgumentException.class);
+
+            ApiException ex =
+                    Assertions.assertThrows(
+                            ApiException.class, () -> handler.handleWithValidJwt(ctx, jwt));
+
+            MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        }
+
+        @Test
+        void shouldPatchStorageAndSendResponse() throws Exception {
+            UUID uuid = UUID.randomUUID();
+            Mockito.when(ctx.pathParam("id")).thenReturn(uuid.toString());
+            RequestBody body = Mockito.mock(RequestBody.class);
+            Mockito.when(ctx.body()).thenReturn(body);
+            Mockito.when(body.asString())
+                    .thenReturn(
+                            "{\"remove\":[{\"parent\":[\"CryostatAgent/agent-47\"],"
+                                + "\"id\":\"JVM/service:jmx:rmi:///jndi/rmi://localhost/jmxrmi\"}]}");
+
+            handler.handleWithValidJwt(ctx, jwt);
+
+            ArgumentCaptor<DiscoveryDelta> captor = ArgumentCaptor.forClass(DiscoveryDelta.class);
+            Mockito.verify(storage).patch(Mockito.eq(uuid), captor.capture());
+            DiscoveryDelta delta = captor.getValue();
+            MatcherAssert.assertThat(delta.getAdd(), Matchers.empty());
+            MatcherAssert.assertThat(delta.getModify(), Matchers.empty());
+            MatcherAssert.assertThat(delta.getRemove(), Matchers.hasSize(1));
+            DiscoveryDelta.NodeRemoval removal = delta.getRemove().get(0);
+            MatcherAssert.assertThat(
+                    removal.getParent(), Matchers.equalTo(List.of("CryostatAgent/agent-47")));
+            MatcherAssert.assertThat(
+                    removal.getId(),
+                    Matchers.equalTo("JVM/service:jmx:rmi:///jndi/rmi://localhost/jmxrmi"));
+            Mockito.verify(ctx).json(Mockito.any());
+        }
+    }
+}
@@ -28,6 +28,7 @@ import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
 import io.cryostat.net.web.http.api.v2.graph.ActiveRecordingsFetcher.Active;
 import io.cryostat.net.web.http.api.v2.graph.RecordingsFetcher.Recordings;
+import io.cryostat.recordings.RecordingMetadataManager;
 
 import graphql.GraphQLContext;
 import graphql.schema.DataFetchingEnvironment;
@@ -47,6 +48,7 @@ class ActiveRecordingsFetcherTest {
     ActiveRecordingsFetcher fetcher;
 
     @Mock AuthManager auth;
+    @Mock RecordingMetadataManager metadataManager;
 
     @Mock DataFetchingEnvironment env;
     @Mock GraphQLContext graphCtx;
@@ -55,7 +57,7 @@ class ActiveRecordingsFetcherTest {
 
     @BeforeEach
     void setup() {
-        this.fetcher = new ActiveRecordingsFetcher(auth);
+        this.fetcher = new ActiveRecordingsFetcher(auth, metadataManager);
     }
 
     @Test
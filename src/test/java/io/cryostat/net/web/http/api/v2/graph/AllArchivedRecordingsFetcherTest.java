@@ -22,11 +22,15 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
 import io.cryostat.net.web.http.api.v2.graph.ArchivedRecordingsFetcher.Archived;
+import io.cryostat.net.web.http.api.v2.graph.labels.LabelSelectorMatcher;
 import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.RecordingMetadataManager;
 import io.cryostat.recordings.RecordingMetadataManager.Metadata;
 import io.cryostat.rules.ArchivedRecordingInfo;
 
@@ -49,6 +53,7 @@ class AllArchivedRecordingsFetcherTest {
 
     @Mock AuthManager auth;
     @Mock RecordingArchiveHelper archiveHelper;
+    @Mock RecordingMetadataManager metadataManager;
 
     @Mock DataFetchingEnvironment env;
     @Mock GraphQLContext graphCtx;
@@ -58,7 +63,7 @@ class AllArchivedRecordingsFetcherTest {
 
     @BeforeEach
     void setup() {
-        this.fetcher = new AllArchivedRecordingsFetcher(auth, archiveHelper);
+        this.fetcher = new AllArchivedRecordingsFetcher(auth, archiveHelper, metadataManager);
     }
 
     @Test
@@ -184,6 +189,31 @@ class AllArchivedRecordingsFetcherTest {
             when(filter.contains(Mockito.any())).thenReturn(false);
             when(filter.contains(FilterInput.Key.LABELS)).thenReturn(true);
             when(filter.get(FilterInput.Key.LABELS)).thenReturn(List.of("foo", "bar"));
+            when(metadataManager.filterByLabels(
+                            Mockito.<ArchivedRecordingInfo>anyList(),
+                            Mockito.any(),
+                            Mockito.any(),
+                            Mockito.any(),
+                            Mockito.anyList()))
+                    .thenAnswer(
+                            invocation -> {
+                                List<ArchivedRecordingInfo> candidates = invocation.getArgument(0);
+                                Function<ArchivedRecordingInfo, Metadata> metadata =
+                                        invocation.getArgument(3);
+                                List<String> selectors = invocation.getArgument(4);
+                                return candidates.stream()
+                                        .filter(
+                                                r ->
+                                                        selectors.stream()
+                                                                .map(LabelSelectorMatcher::parse)
+                                                                .allMatch(
+                                                                        m ->
+                                                                                m.test(
+                                                                                        metadata.apply(
+                                                                                                        r)
+                                                                                                .getLabels())))
+                                        .collect(Collectors.toList());
+                            });
 
             when(archiveHelper.getRecordings()).thenReturn(future);
             when(future.get()).thenReturn(List.of(recording1, recording2, recording3));
@@ -192,6 +222,13 @@ class AllArchivedRecordingsFetcherTest {
 
             MatcherAssert.assertThat(recordings, Matchers.notNullValue());
             MatcherAssert.assertThat(recordings.data, Matchers.contains(recording2));
+            Mockito.verify(metadataManager)
+                    .filterByLabels(
+                            Mockito.eq(List.of(recording1, recording2, recording3)),
+                            Mockito.any(),
+                            Mockito.any(),
+                            Mockito.any(),
+                            Mockito.eq(List.of("foo", "bar")));
         }
     }
 
@@ -0,0 +1,116 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.net.web.http.api.v2.graph;
+
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import io.cryostat.net.AuthManager;
+import io.cryostat.net.security.ResourceAction;
+import io.cryostat.recordings.RecordingArchiveHelper;
+import io.cryostat.recordings.RecordingSlice;
+import io.cryostat.rules.ArchivedRecordingInfo;
+
+import graphql.GraphQLContext;
+import graphql.schema.DataFetchingEnvironment;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ArchivedRecordingSliceFetcherTest {
+    ArchivedRecordingSliceFetcher fetcher;
+
+    @Mock AuthManager auth;
+    @Mock RecordingArchiveHelper recordingArchiveHelper;
+
+    @Mock DataFetchingEnvironment env;
+    @Mock GraphQLContext graphCtx;
+    @Mock ArchivedRecordingInfo source;
+    @Mock RecordingSlice slice;
+
+    @BeforeEach
+    void setup() {
+        this.fetcher = new ArchivedRecordingSliceFetcher(auth, recordingArchiveHelper);
+    }
+
+    @Test
+    void shouldHaveExpectedRequiredPermissions() {
+        MatcherAssert.assertThat(
+                fetcher.resourceActions(), Matchers.equalTo(Set.of(ResourceAction.READ_RECORDING)));
+    }
+
+    @Test
+    void shouldDescribeSlice() throws Exception {
+        when(env.getGraphQlContext()).thenReturn(graphCtx);
+        when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+        when(env.getSource()).thenReturn(source);
+        when(env.getArgument("start")).thenReturn(1000L);
+        when(env.getArgument("end")).thenReturn(2000L);
+        when(source.getServiceUri()).thenReturn("someServiceUri");
+        when(source.getName()).thenReturn("foo.jfr");
+        when(source.getDownloadUrl())
+                .thenReturn("http://localhost:8181/api/beta/recordings/someServiceUri/foo.jfr");
+        when(recordingArchiveHelper.getRecordingSlice("someServiceUri", "foo.jfr", 1000, 2000))
+                .thenReturn(CompletableFuture.completedFuture(slice));
+        when(slice.getStartTime()).thenReturn(900L);
+        when(slice.getEndTime()).thenReturn(2100L);
+        when(slice.getChunkCount()).thenReturn(2);
+        when(slice.getLength()).thenReturn(4096L);
+
+        Map<String, Object> result = fetcher.get(env);
+
+        MatcherAssert.assertThat(
+                result,
+                Matchers.equalTo(
+                        Map.of(
+                                "downloadUrl",
+                                "http://localhost:8181/api/beta/recordings/someServiceUri/foo.jfr/slice?start=1000&end=2000",
+                                "startTime",
+                                900L,
+                                "endTime",
+                                2100L,
+                                "chunkCount",
+                                2,
+                                "size",
+                                4096L)));
+    }
+
+    @Test
+    void shouldReturnNullIfNoChunksOverlap() throws Exception {
+        when(env.getGraphQlContext()).thenReturn(graphCtx);
+        when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+        when(env.getSource()).thenReturn(source);
+        when(source.getServiceUri()).thenReturn("someServiceUri");
+        when(source.getName()).thenReturn("foo.jfr");
+        when(recordingArchiveHelper.getRecordingSlice(
+                        "someServiceUri", "foo.jfr", 0, Long.MAX_VALUE))
+                .thenReturn(CompletableFuture.completedFuture(slice));
+        when(slice.isEmpty()).thenReturn(true);
+
+        MatcherAssert.assertThat(fetcher.get(env), Matchers.nullValue());
+    }
+}
@@ -22,11 +22,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import io.cryostat.net.AuthManager;
 import io.cryostat.net.security.ResourceAction;
 import io.cryostat.net.web.http.api.v2.graph.ArchivedRecordingsFetcher.Archived;
 import io.cryostat.net.web.http.api.v2.graph.RecordingsFetcher.Recordings;
+import io.cryostat.net.web.http.api.v2.graph.labels.LabelSelectorMatcher;
+import io.cryostat.recordings.RecordingMetadataManager;
 import io.cryostat.recordings.RecordingMetadataManager.Metadata;
 import io.cryostat.rules.ArchivedRecordingInfo;
 
@@ -48,6 +52,7 @@ class ArchivedRecordingsFetcherTest {
     ArchivedRecordingsFetcher fetcher;
 
     @Mock AuthManager auth;
+    @Mock RecordingMetadataManager metadataManager;
 
     @Mock DataFetchingEnvironment env;
     @Mock GraphQLContext graphCtx;
@@ -56,7 +61,7 @@ class ArchivedRecordingsFetcherTest {
 
     @BeforeEach
     void setup() {
-        this.fetcher = new ArchivedRecordingsFetcher(auth);
+        this.fetcher = new ArchivedRecordingsFetcher(auth, metadataManager);
     }
 
     @Test
@@ -206,6 +211,31 @@ class ArchivedRecordingsFetcherTest {
             when(filter.get(FilterInput.Key.SIZE_GE)).thenReturn(size);
             when(filter.get(FilterInput.Key.LABELS))
                     .thenReturn(List.of(labelFilter1, labelFilter2));
+            when(metadataManager.filterByLabels(
+                            Mockito.<ArchivedRecordingInfo>anyList(),
+                            Mockito.any(),
+                            Mockito.any(),
+                            Mockito.any(),
+                            Mockito.anyList()))
+                    .thenAnswer(
+                            invocation -> {
+                                List<ArchivedRecordingInfo> candidates = invocation.getArgument(0);
+                                Function<ArchivedRecordingInfo, Metadata> metadata =
+                                        invocation.getArgument(3);
+                                List<String> selectors = invocation.getArgument(4);
+                                return candidates.stream()
+                                        .filter(
+                                                r ->
+                                                        selectors.stream()
+                                                                .map(LabelSelectorMatcher::parse)
+                                                                .allMatch(
+                                                                        m ->
+                                                                                m.test(
+                                                                                        metadata.apply(
+                                                                                                        r)
+                                                                                                .getLabels())))
+                                        .collect(Collectors.toList());
+                            });
 
             Recordings source = Mockito.mock(Recordings.class);
             source.archived = List.of(recording1, recording2, recording3, recording4, recording5);
@@ -256,4 +286,34 @@ class ArchivedRecordingsFetcherTest {
             MatcherAssert.assertThat(archived.aggregate.count, Matchers.equalTo(2L));
         }
     }
+
+    @Test
+    void shouldExcludeUnindexedRecordingsFromTimeRangeFilters() throws Exception {
+        try (MockedStatic<FilterInput> staticFilter = Mockito.mockStatic(FilterInput.class)) {
+            staticFilter.when(() -> FilterInput.from(env)).thenReturn(filter);
+            when(env.getGraphQlContext()).thenReturn(graphCtx);
+            when(auth.validateHttpHeader(Mockito.any(), Mockito.any()))
+                    .thenReturn(CompletableFuture.completedFuture(true));
+
+            ArchivedRecordingInfo indexed = Mockito.mock(ArchivedRecordingInfo.class);
+            ArchivedRecordingInfo unindexed = Mockito.mock(ArchivedRecordingInfo.class);
+            when(indexed.getChunkCount()).thenReturn(1);
+            when(indexed.getStartTime()).thenReturn(1000L);
+            when(unindexed.getChunkCount()).thenReturn(0);
+
+            when(filter.contains(Mockito.any())).thenReturn(false);
+            when(filter.contains(FilterInput.Key.START_TIME_BEFORE)).thenReturn(true);
+            when(filter.get(FilterInput.Key.START_TIME_BEFORE)).thenReturn(2000L);
+
+            Recordings source = Mockito.mock(Recordings.class);
+            source.archived = List.of(indexed, unindexed);
+
+            when(env.getSource()).thenReturn(source);
+
+            Archived archived = fetcher.get(env);
+
+            MatcherAssert.assertThat(archived.data, Matchers.contains(indexed));
+            MatcherAssert.assertThat(archived.aggregate.count, Matchers.equalTo(1L));
+        }
+    }
 }
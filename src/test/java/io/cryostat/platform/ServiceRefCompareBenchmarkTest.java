@@ -0,0 +1,108 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.platform;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Times {@link ServiceRef#compare(java.util.Collection)} over large sets of targets. Skipped by
+ * default; run with {@code mvn test -Dtest=ServiceRefCompareBenchmarkTest
+ * -Dcryostat.benchmark=true}. Each size reports the best time of several runs after warming up.
+ */
+@EnabledIfSystemProperty(named = "cryostat.benchmark", matches = "true")
+class ServiceRefCompareBenchmarkTest {
+
+    static final int WARMUP_RUNS = 5;
+    static final int MEASURED_RUNS = 10;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1_000, 10_000, 50_000})
+    void onePercentChanged(int n) {
+        List<ServiceRef> previous = refs(n, 0, "j");
+        int m = n / 100;
+        // 1% of targets lost, 1% found, and 1% modified with a new JVM ID
+        List<ServiceRef> current = new ArrayList<>(previous.subList(m, n));
+        for (int i = 0; i < m; i++) {
+            int k = n / 2 + i;
+            current.set(
+                    k - m, new ServiceRef("k" + k, previous.get(k).getServiceUri(), "app-" + k));
+        }
+        current.addAll(refs(m, n, "j"));
+
+        ServiceRef.Compare diff = time("1% changed", n, previous, current);
+
+        MatcherAssert.assertThat(diff.added(), Matchers.hasSize(m));
+        MatcherAssert.assertThat(diff.removed(), Matchers.hasSize(m));
+        MatcherAssert.assertThat(diff.updated(), Matchers.hasSize(m));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1_000, 10_000, 50_000})
+    void allModified(int n) {
+        // every target modified, as when JVM IDs are first resolved
+        List<ServiceRef> previous = refs(n, 0, "j");
+        List<ServiceRef> current = refs(n, 0, "k");
+
+        ServiceRef.Compare diff = time("all modified", n, previous, current);
+
+        MatcherAssert.assertThat(diff.added(), Matchers.empty());
+        MatcherAssert.assertThat(diff.removed(), Matchers.empty());
+        MatcherAssert.assertThat(diff.updated(), Matchers.hasSize(n));
+    }
+
+    private static ServiceRef.Compare time(
+            String scenario, int n, List<ServiceRef> previous, List<ServiceRef> current) {
+        ServiceRef.Compare diff = null;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++) {
+            long start = System.nanoTime();
+            diff = ServiceRef.compare(previous).to(current);
+            long elapsed = System.nanoTime() - start;
+            if (i >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        System.out.printf("ServiceRef.compare %s, n=%d: best %.1f ms%n", scenario, n, best / 1e6);
+        return diff;
+    }
+
+    private static List<ServiceRef> refs(int n, int offset, String jvmIdPrefix) {
+        List<ServiceRef> refs = new ArrayList<>(n);
+        for (int i = offset; i < offset + n; i++) {
+            ServiceRef ref =
+                    new ServiceRef(
+                            jvmIdPrefix + i,
+                            URI.create(
+                                    String.format(
+                                            "service:jmx:rmi:///jndi/rmi://host-%d:9091/jmxrmi",
+                                            i)),
+                            "app-" + i);
+            ref.setLabels(Map.of("app", "a" + (i % 10)));
+            ref.setPlatformAnnotations(Map.of("pod", "p" + i));
+            refs.add(ref);
+        }
+        return refs;
+    }
+}
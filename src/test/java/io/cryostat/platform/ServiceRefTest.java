@@ -16,6 +16,7 @@
 package io.cryostat.platform;
 
 import java.net.URI;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -148,4 +149,45 @@ class ServiceRefTest {
         sr.setPlatformAnnotations(Map.of());
         MatcherAssert.assertThat(sr.getPlatformAnnotations(), Matchers.equalTo(Map.of()));
     }
+
+    @Test
+    void shouldCompareEmptyCollections() {
+        ServiceRef.Compare diff = ServiceRef.compare(List.of()).to(List.of());
+        MatcherAssert.assertThat(diff.added(), Matchers.empty());
+        MatcherAssert.assertThat(diff.removed(), Matchers.empty());
+        MatcherAssert.assertThat(diff.updated(), Matchers.empty());
+    }
+
+    @Test
+    void shouldCompareAddedRemovedAndUpdatedRefs() {
+        ServiceRef unchanged =
+                new ServiceRef("a", URI.create("service:jmx:rmi:///jndi/rmi://a:9091/jmxrmi"), "a");
+        ServiceRef lost =
+                new ServiceRef("b", URI.create("service:jmx:rmi:///jndi/rmi://b:9091/jmxrmi"), "b");
+        ServiceRef found =
+                new ServiceRef("c", URI.create("service:jmx:rmi:///jndi/rmi://c:9091/jmxrmi"), "c");
+        ServiceRef before = new ServiceRef(null, EXAMPLE_URI, EXAMPLE_ALIAS);
+        ServiceRef after = new ServiceRef(EXAMPLE_JVMID, EXAMPLE_URI, EXAMPLE_ALIAS);
+
+        ServiceRef.Compare diff =
+                ServiceRef.compare(List.of(unchanged, lost, before))
+                        .to(List.of(after, found, unchanged));
+
+        MatcherAssert.assertThat(diff.added(), Matchers.contains(found));
+        MatcherAssert.assertThat(diff.removed(), Matchers.contains(lost));
+        MatcherAssert.assertThat(diff.updated(), Matchers.contains(after));
+    }
+
+    @Test
+    void shouldCompareRefsWithDuplicateServiceUris() {
+        ServiceRef before = new ServiceRef(EXAMPLE_JVMID, EXAMPLE_URI, "before");
+        ServiceRef afterA = new ServiceRef(EXAMPLE_JVMID, EXAMPLE_URI, "afterA");
+        ServiceRef afterB = new ServiceRef(EXAMPLE_JVMID, EXAMPLE_URI, "afterB");
+
+        ServiceRef.Compare diff = ServiceRef.compare(List.of(before)).to(List.of(afterA, afterB));
+
+        MatcherAssert.assertThat(diff.added(), Matchers.empty());
+        MatcherAssert.assertThat(diff.removed(), Matchers.empty());
+        MatcherAssert.assertThat(diff.updated(), Matchers.containsInAnyOrder(afterA, afterB));
+    }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import io.cryostat.core.sys.Clock;
+import io.cryostat.core.sys.FileSystem;
+import io.cryostat.util.events.Event;
+
+import com.google.gson.Gson;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ArchiveIndexTest {
+
+    ArchiveIndex index;
+    @Mock Clock clock;
+    @TempDir Path tempDir;
+    Path archivePath;
+    Path summariesPath;
+    Gson gson = new Gson();
+    List<Event<ArchiveIndex.IndexEvent, ArchiveIndex.Entry>> events;
+
+    @BeforeEach
+    void setup() {
+        this.archivePath = tempDir.resolve("archive");
+        this.summariesPath = tempDir.resolve("archive-index");
+        this.index = new ArchiveIndex(archivePath, summariesPath, new FileSystem(), gson, clock);
+        this.events = new ArrayList<>();
+        this.index.addListener(events::add);
+    }
+
+    Path write(String subdirectory, String filename, int size) throws Exception {
+        Path dir = archivePath.resolve(subdirectory);
+        Files.createDirectories(dir);
+        return Files.write(dir.resolve(filename), new byte[size]);
+    }
+
+    @Test
+    void shouldBeEmptyInitially() {
+        MatcherAssert.assertThat(index.size(), Matchers.equalTo(0));
+        MatcherAssert.assertThat(index.getTotalBytes(), Matchers.equalTo(0L));
+        MatcherAssert.assertThat(index.getTotalBytes("foo"), Matchers.equalTo(0L));
+    }
+
+    @Test
+    void rebuildShouldIndexArchivedRecordings() throws Exception {
+        write("jvmA", "a.jfr", 10);
+        write("jvmA", "connectUrl", 3);
+        write("jvmB", "b.jfr", 20);
+        write(RecordingArchiveHelper.UPLOADED_RECORDINGS_SUBDIRECTORY, "c.jfr", 30);
+        write(RecordingArchiveHelper.TEMP_UPLOADS_SUBDIRECTORY, "tmp", 40);
+
+        index.rebuild();
+
+        MatcherAssert.assertThat(index.size(), Matchers.equalTo(3));
+        MatcherAssert.assertThat(index.getTotalBytes(), Matchers.equalTo(60L));
+        MatcherAssert.assertThat(index.getTotalBytes("jvmA"), Matchers.equalTo(10L));
+        MatcherAssert.assertThat(
+                index.getSubdirectories(),
+                Matchers.containsInAnyOrder(
+                        "jvmA", "jvmB", RecordingArchiveHelper.UPLOADED_RECORDINGS_SUBDIRECTORY));
+        MatcherAssert.assertThat(events, Matchers.empty());
+    }
+
+    @Test
+    void addShouldIndexRecordingAndEmit() throws Exception {
+        Path path = write("jvmA", "a.jfr", 10);
+
+        ArchiveIndex.Entry entry = index.add(path).orElseThrow();
+
+        MatcherAssert.assertThat(entry.getSubdirectoryName(), Matchers.equalTo("jvmA"));
+        MatcherAssert.assertThat(entry.getFilename(), Matchers.equalTo("a.jfr"));
+        MatcherAssert.assertThat(entry.getSize(), Matchers.equalTo(10L));
+        MatcherAssert.assertThat(index.getTotalBytes(), Matchers.equalTo(10L));
+        MatcherAssert.assertThat(events, Matchers.hasSize(1));
+        MatcherAssert.assertThat(
+                events.get(0).getEventType(), Matchers.equalTo(ArchiveIndex.IndexEvent.ADDED));
+    }
+
+    @Test
+    void addShouldNotDoubleCountReplacedRecording() throws Exception {
+        Path path = write("jvmA", "a.jfr", 10);
+        index.add(path);
+        Files.write(path, new byte[25]);
+
+        index.add(path);
+
+        MatcherAssert.assertThat(index.size(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(index.getTotalBytes(), Matchers.equalTo(25L));
+        MatcherAssert.assertThat(index.getTotalBytes("jvmA"), Matchers.equalTo(25L));
+    }
+
+    @Test
+    void addShouldIgnorePathsOutsideArchive() throws Exception {
+        MatcherAssert.assertThat(
+                index.add(Path.of("/some/other/place.jfr")).isPresent(), Matchers.is(false));
+        MatcherAssert.assertThat(
+                index.add(archivePath.resolve("x")).isPresent(), Matchers.is(false));
+        MatcherAssert.assertThat(events, Matchers.empty());
+    }
+
+    @Test
+    void removeShouldUpdateTotalsAndEmit() throws Exception {
+        Path a = write("jvmA", "a.jfr", 10);
+        Path b = write("jvmA", "b.jfr", 5);
+        index.add(a);
+        index.add(b);
+        events.clear();
+
+        Files.delete(a);
+        MatcherAssert.assertThat(index.remove(a).isPresent(), Matchers.is(true));
+
+        MatcherAssert.assertThat(index.getTotalBytes(), Matchers.equalTo(5L));
+        MatcherAssert.assertThat(index.getTotalBytes("jvmA"), Matchers.equalTo(5L));
+        MatcherAssert.assertThat(events, Matchers.hasSize(1));
+        MatcherAssert.assertThat(
+                events.get(0).getEventType(), Matchers.equalTo(ArchiveIndex.IndexEvent.REMOVED));
+
+        MatcherAssert.assertThat(index.remove(a).isPresent(), Matchers.is(false));
+        MatcherAssert.assertThat(events, Matchers.hasSize(1));
+    }
+
+    @Test
+    void touchShouldUpdateLastAccessTime() throws Exception {
+        Path a = write("jvmA", "a.jfr", 10);
+        index.add(a);
+        Mockito.when(clock.now()).thenReturn(Instant.ofEpochMilli(Long.MAX_VALUE));
+
+        index.touch(a);
+
+        MatcherAssert.assertThat(
+                index.getEntries("jvmA").get(0).getLastAccessTime(),
+                Matchers.equalTo(Long.MAX_VALUE));
+        MatcherAssert.assertThat(
+                events.get(events.size() - 1).getEventType(),
+                Matchers.equalTo(ArchiveIndex.IndexEvent.ACCESSED));
+    }
+
+    @Test
+    void addShouldSummarizeAndPersistRecording() throws Exception {
+        Path dir = Files.createDirectories(archivePath.resolve("jvmA"));
+        Path path = RecordingSummaryTest.record(dir.resolve("a.jfr"));
+
+        ArchiveIndex.Entry entry = index.add(path).orElseThrow();
+
+        RecordingSummary summary = entry.getSummary().orElseThrow();
+        MatcherAssert.assertThat(summary, Matchers.equalTo(RecordingSummary.read(path)));
+        MatcherAssert.assertThat(
+                index.getEntry("jvmA", "a.jfr").flatMap(ArchiveIndex.Entry::getSummary).get(),
+                Matchers.equalTo(summary));
+        MatcherAssert.assertThat(
+                Files.isRegularFile(summariesPath.resolve("jvmA").resolve("a.jfr.json")),
+                Matchers.is(true));
+    }
+
+    @Test
+    void addShouldKeepIndexingUnreadableRecordings() throws Exception {
+        Path path = write("jvmA", "a.jfr", 10);
+
+        ArchiveIndex.Entry entry = index.add(path).orElseThrow();
+
+        MatcherAssert.assertThat(entry.getSummary().isPresent(), Matchers.is(false));
+        MatcherAssert.assertThat(index.getTotalBytes(), Matchers.equalTo(10L));
+    }
+
+    @Test
+    void addShouldUseProvidedSummary() throws Exception {
+        Path path = write("jvmA", "a.jfr", 10);
+        RecordingSummary summary = new RecordingSummary(1, 2, 1, Set.of("jdk.CPULoad"));
+
+        ArchiveIndex.Entry entry = index.add(path, summary).orElseThrow();
+
+        MatcherAssert.assertThat(entry.getSummary().get(), Matchers.equalTo(summary));
+    }
+
+    @Test
+    void rebuildShouldReusePersistedSummaries() throws Exception {
+        Path path = write("jvmA", "a.jfr", 10);
+        RecordingSummary summary = new RecordingSummary(1, 2, 1, Set.of("jdk.CPULoad"));
+        index.add(path, summary);
+
+        ArchiveIndex rebuilt =
+                new ArchiveIndex(archivePath, summariesPath, new FileSystem(), gson, clock);
+        rebuilt.rebuild();
+
+        MatcherAssert.assertThat(
+                rebuilt.getEntry("jvmA", "a.jfr").flatMap(ArchiveIndex.Entry::getSummary).get(),
+                Matchers.equalTo(summary));
+    }
+
+    @Test
+    void rebuildShouldIgnoreSummaryOfReplacedRecording() throws Exception {
+        Path path = write("jvmA", "a.jfr", 10);
+        index.add(path, new RecordingSummary(1, 2, 1, Set.of("jdk.CPULoad")));
+        Files.write(path, new byte[20]);
+
+        index.rebuild();
+
+        MatcherAssert.assertThat(
+                index.getEntry("jvmA", "a.jfr").flatMap(ArchiveIndex.Entry::getSummary).isPresent(),
+                Matchers.is(false));
+    }
+
+    @Test
+    void rebuildAndRemoveShouldDeleteStaleSummaries() throws Exception {
+        Path a = write("jvmA", "a.jfr", 10);
+        Path b = write("jvmA", "b.jfr", 10);
+        index.add(a, new RecordingSummary(1, 2, 1, Set.of()));
+        index.add(b, new RecordingSummary(1, 2, 1, Set.of()));
+        Path summaryA = summariesPath.resolve("jvmA").resolve("a.jfr.json");
+        Path summaryB = summariesPath.resolve("jvmA").resolve("b.jfr.json");
+
+        index.remove(a);
+        MatcherAssert.assertThat(Files.exists(summaryA), Matchers.is(false));
+
+        Files.delete(b);
+        index.rebuild();
+        MatcherAssert.assertThat(Files.exists(summaryB), Matchers.is(false));
+    }
+}
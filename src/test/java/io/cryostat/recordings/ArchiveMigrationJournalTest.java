@@ -0,0 +1,124 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import io.cryostat.core.sys.FileSystem;
+
+import com.google.gson.Gson;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArchiveMigrationJournalTest {
+
+    @TempDir Path tempDir;
+    Path journalPath;
+    ArchiveMigrationJournal journal;
+
+    @BeforeEach
+    void setup() {
+        this.journalPath = tempDir.resolve("conf").resolve("archive-migration.jsonl");
+        this.journal = new ArchiveMigrationJournal(journalPath, new FileSystem(), new Gson());
+    }
+
+    @Test
+    void shouldNotResumeWithoutJournal() {
+        MatcherAssert.assertThat(journal.load(), Matchers.is(false));
+        MatcherAssert.assertThat(journal.isComplete("foo"), Matchers.is(false));
+        MatcherAssert.assertThat(journal.getDestination("foo").isPresent(), Matchers.is(false));
+    }
+
+    @Test
+    void shouldPersistProgress() throws Exception {
+        journal.begin("foo", "jvmFoo");
+        journal.begin("bar", "jvmBar");
+        journal.complete("bar");
+
+        ArchiveMigrationJournal resumed =
+                new ArchiveMigrationJournal(journalPath, new FileSystem(), new Gson());
+        MatcherAssert.assertThat(resumed.load(), Matchers.is(true));
+        MatcherAssert.assertThat(resumed.isComplete("foo"), Matchers.is(false));
+        MatcherAssert.assertThat(resumed.getDestination("foo").get(), Matchers.equalTo("jvmFoo"));
+        MatcherAssert.assertThat(resumed.isComplete("bar"), Matchers.is(true));
+        MatcherAssert.assertThat(resumed.isDestination("jvmBar"), Matchers.is(true));
+        MatcherAssert.assertThat(resumed.isDestination("foo"), Matchers.is(false));
+        MatcherAssert.assertThat(
+                Files.exists(journalPath.resolveSibling("archive-migration.jsonl.tmp")),
+                Matchers.is(false));
+    }
+
+    @Test
+    void shouldAppendOneRecordPerChange() throws Exception {
+        journal.begin("foo", "jvmFoo");
+        journal.begin("bar", "jvmBar");
+        journal.complete("bar");
+
+        MatcherAssert.assertThat(Files.readAllLines(journalPath), Matchers.hasSize(3));
+    }
+
+    @Test
+    void shouldDeleteJournalWhenFinished() throws Exception {
+        journal.begin("foo", "jvmFoo");
+        journal.complete("foo");
+        journal.finish();
+
+        MatcherAssert.assertThat(Files.exists(journalPath), Matchers.is(false));
+        MatcherAssert.assertThat(journal.getDestination("foo").isPresent(), Matchers.is(false));
+    }
+
+    @Test
+    void shouldCompactJournalWhenFinishedWithIncompleteSubdirectories() throws Exception {
+        journal.begin("foo", "jvmFoo");
+        journal.begin("bar", "jvmBar");
+        journal.complete("bar");
+        journal.finish();
+
+        MatcherAssert.assertThat(Files.readAllLines(journalPath), Matchers.hasSize(2));
+        ArchiveMigrationJournal resumed =
+                new ArchiveMigrationJournal(journalPath, new FileSystem(), new Gson());
+        MatcherAssert.assertThat(resumed.load(), Matchers.is(true));
+        MatcherAssert.assertThat(resumed.getDestination("foo").get(), Matchers.equalTo("jvmFoo"));
+        MatcherAssert.assertThat(resumed.isComplete("foo"), Matchers.is(false));
+        MatcherAssert.assertThat(resumed.isComplete("bar"), Matchers.is(true));
+    }
+
+    @Test
+    void shouldIgnoreTornFinalRecord() throws Exception {
+        journal.begin("foo", "jvmFoo");
+        Files.writeString(journalPath, "{\"subdirectory\":\"ba", StandardOpenOption.APPEND);
+
+        ArchiveMigrationJournal resumed =
+                new ArchiveMigrationJournal(journalPath, new FileSystem(), new Gson());
+        MatcherAssert.assertThat(resumed.load(), Matchers.is(true));
+        MatcherAssert.assertThat(resumed.getDestination("foo").get(), Matchers.equalTo("jvmFoo"));
+        MatcherAssert.assertThat(resumed.getDestination("bar").isPresent(), Matchers.is(false));
+    }
+
+    @Test
+    void shouldStartOverIfJournalIsUnreadable() throws Exception {
+        Files.createDirectories(journalPath.getParent());
+        Files.writeString(journalPath, "not json {");
+
+        MatcherAssert.assertThat(journal.load(), Matchers.is(false));
+        MatcherAssert.assertThat(journal.isComplete("foo"), Matchers.is(false));
+    }
+}
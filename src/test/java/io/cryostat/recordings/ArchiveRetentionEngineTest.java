@@ -0,0 +1,241 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import io.cryostat.core.sys.Clock;
+import io.cryostat.core.sys.FileSystem;
+import io.cryostat.messaging.notifications.Notification;
+import io.cryostat.messaging.notifications.NotificationFactory;
+import io.cryostat.net.web.http.HttpMimeType;
+import io.cryostat.recordings.RecordingMetadataManager.Metadata;
+import io.cryostat.util.events.Event;
+
+import com.google.gson.Gson;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ArchiveRetentionEngineTest {
+
+    ArchiveIndex index;
+    @Mock RecordingArchiveHelper archiveHelper;
+    @Mock RecordingMetadataManager metadataManager;
+    @Mock JvmIdHelper jvmIdHelper;
+    @Mock NotificationFactory notificationFactory;
+    @Mock Notification.Builder notificationBuilder;
+    @Mock Notification notification;
+    @Mock ExecutorService executor;
+    @Mock Clock clock;
+
+    @BeforeEach
+    void setup() throws Exception {
+        this.index =
+                new ArchiveIndex(
+                        Path.of("/archive"),
+                        Path.of("/archive-index"),
+                        Mockito.mock(FileSystem.class),
+                        new Gson(),
+                        clock);
+        Mockito.lenient()
+                .when(jvmIdHelper.subdirectoryNameToJvmId(Mockito.anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        Mockito.lenient()
+                .when(metadataManager.findMetadata(Mockito.anyString(), Mockito.anyString()))
+                .thenReturn(Optional.empty());
+        Mockito.lenient()
+                .when(
+                        archiveHelper.deleteRecordingFromPath(
+                                Mockito.anyString(), Mockito.anyString()))
+                .thenAnswer(
+                        invocation -> {
+                            index.remove(
+                                    (String) invocation.getArgument(0),
+                                    (String) invocation.getArgument(1));
+                            return CompletableFuture.completedFuture(null);
+                        });
+        Mockito.lenient().when(notificationFactory.createBuilder()).thenReturn(notificationBuilder);
+        Mockito.lenient()
+                .when(notificationBuilder.metaCategory(Mockito.anyString()))
+                .thenReturn(notificationBuilder);
+        Mockito.lenient()
+                .when(notificationBuilder.metaType(Mockito.any(HttpMimeType.class)))
+                .thenReturn(notificationBuilder);
+        Mockito.lenient()
+                .when(notificationBuilder.message(Mockito.any()))
+                .thenReturn(notificationBuilder);
+        Mockito.lenient().when(notificationBuilder.build()).thenReturn(notification);
+    }
+
+    ArchiveRetentionEngine engine(
+            long maxBytes,
+            long maxBytesPerJvm,
+            Duration maxAge,
+            ArchiveRetentionEngine.EvictionPolicy policy) {
+        return new ArchiveRetentionEngine(
+                index,
+                archiveHelper,
+                metadataManager,
+                jvmIdHelper,
+                notificationFactory,
+                executor,
+                clock,
+                maxBytes,
+                maxBytesPerJvm,
+                maxAge,
+                policy,
+                Duration.ofSeconds(60));
+    }
+
+    void put(String subdirectory, String filename, long size, long archived, long accessed) {
+        index.putEntry(new ArchiveIndex.Entry(subdirectory, filename, size, archived, accessed));
+    }
+
+    List<String> names(List<ArchiveIndex.Entry> entries) {
+        return entries.stream().map(ArchiveIndex.Entry::getFilename).toList();
+    }
+
+    @Test
+    void shouldBeDisabledWithoutLimits() {
+        ArchiveRetentionEngine engine =
+                engine(0, 0, Duration.ZERO, ArchiveRetentionEngine.EvictionPolicy.OLDEST);
+        MatcherAssert.assertThat(engine.isEnabled(), Matchers.is(false));
+    }
+
+    @Test
+    void shouldNotEvictWhenWithinLimits() throws Exception {
+        put("jvmA", "a.jfr", 10, 1, 1);
+        put("jvmB", "b.jfr", 10, 2, 2);
+        ArchiveRetentionEngine engine =
+                engine(100, 50, Duration.ZERO, ArchiveRetentionEngine.EvictionPolicy.OLDEST);
+
+        MatcherAssert.assertThat(engine.enforce(), Matchers.empty());
+        Mockito.verifyNoInteractions(archiveHelper);
+        Mockito.verifyNoInteractions(notificationFactory);
+    }
+
+    @Test
+    void shouldEvictOldestUntilWithinGlobalQuota() throws Exception {
+        put("jvmA", "a.jfr", 10, 3, 3);
+        put("jvmA", "b.jfr", 10, 1, 1);
+        put("jvmB", "c.jfr", 10, 2, 2);
+        put("jvmB", "d.jfr", 10, 4, 4);
+        ArchiveRetentionEngine engine =
+                engine(25, 0, Duration.ZERO, ArchiveRetentionEngine.EvictionPolicy.OLDEST);
+
+        List<ArchiveIndex.Entry> evicted = engine.enforce();
+
+        MatcherAssert.assertThat(names(evicted), Matchers.contains("b.jfr", "c.jfr"));
+        MatcherAssert.assertThat(index.getTotalBytes(), Matchers.equalTo(20L));
+        Mockito.verify(notificationBuilder)
+                .metaCategory(ArchiveRetentionEngine.NOTIFICATION_CATEGORY);
+        Mockito.verify(notificationBuilder)
+                .message(
+                        Map.of(
+                                "recordings",
+                                List.of("jvmA/b.jfr", "jvmB/c.jfr"),
+                                "bytesFreed",
+                                20L));
+        Mockito.verify(notification).send();
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyDownloaded() throws Exception {
+        put("jvmA", "a.jfr", 10, 1, 100);
+        put("jvmA", "b.jfr", 10, 2, 50);
+        put("jvmA", "c.jfr", 10, 3, 75);
+        ArchiveRetentionEngine engine =
+                engine(
+                        20,
+                        0,
+                        Duration.ZERO,
+                        ArchiveRetentionEngine.EvictionPolicy.LEAST_RECENTLY_DOWNLOADED);
+
+        MatcherAssert.assertThat(names(engine.enforce()), Matchers.contains("b.jfr"));
+    }
+
+    @Test
+    void shouldEnforcePerJvmQuota() throws Exception {
+        put("jvmA", "a.jfr", 10, 1, 1);
+        put("jvmA", "b.jfr", 10, 2, 2);
+        put("jvmA", "c.jfr", 10, 3, 3);
+        put("jvmB", "d.jfr", 10, 0, 0);
+        ArchiveRetentionEngine engine =
+                engine(0, 15, Duration.ZERO, ArchiveRetentionEngine.EvictionPolicy.OLDEST);
+
+        MatcherAssert.assertThat(
+                names(engine.enforce()), Matchers.containsInAnyOrder("a.jfr", "b.jfr"));
+        MatcherAssert.assertThat(index.getTotalBytes("jvmA"), Matchers.equalTo(10L));
+        MatcherAssert.assertThat(index.getTotalBytes("jvmB"), Matchers.equalTo(10L));
+    }
+
+    @Test
+    void shouldExpireRecordingsByAge() throws Exception {
+        Mockito.when(clock.now()).thenReturn(Instant.ofEpochMilli(100_000L));
+        put("jvmA", "old.jfr", 10, 10_000, 10_000);
+        put("jvmA", "new.jfr", 10, 95_000, 95_000);
+        ArchiveRetentionEngine engine =
+                engine(0, 0, Duration.ofSeconds(30), ArchiveRetentionEngine.EvictionPolicy.OLDEST);
+
+        MatcherAssert.assertThat(names(engine.enforce()), Matchers.contains("old.jfr"));
+    }
+
+    @Test
+    void shouldNotEvictPinnedRecordings() throws Exception {
+        put("jvmA", "pinned.jfr", 10, 1, 1);
+        put("jvmA", "b.jfr", 10, 2, 2);
+        put("jvmA", "c.jfr", 10, 3, 3);
+        Mockito.when(metadataManager.findMetadata("jvmA", "pinned.jfr"))
+                .thenReturn(
+                        Optional.of(
+                                new Metadata(Map.of(ArchiveRetentionEngine.PINNED_LABEL, "true"))));
+        ArchiveRetentionEngine engine =
+                engine(15, 0, Duration.ZERO, ArchiveRetentionEngine.EvictionPolicy.OLDEST);
+
+        MatcherAssert.assertThat(names(engine.enforce()), Matchers.contains("b.jfr", "c.jfr"));
+        MatcherAssert.assertThat(names(index.getEntries()), Matchers.contains("pinned.jfr"));
+    }
+
+    @Test
+    void shouldScheduleEnforcementWhenAddedRecordingExceedsQuota() throws Exception {
+        ArchiveRetentionEngine engine =
+                engine(15, 0, Duration.ZERO, ArchiveRetentionEngine.EvictionPolicy.OLDEST);
+        put("jvmA", "a.jfr", 10, 1, 1);
+        ArchiveIndex.Entry b = new ArchiveIndex.Entry("jvmA", "b.jfr", 10, 2, 2);
+
+        engine.onEvent(new Event<>(ArchiveIndex.IndexEvent.ADDED, b));
+        Mockito.verifyNoInteractions(executor);
+
+        index.putEntry(b);
+        engine.onEvent(new Event<>(ArchiveIndex.IndexEvent.ADDED, b));
+        engine.onEvent(new Event<>(ArchiveIndex.IndexEvent.ADDED, b));
+        Mockito.verify(executor, Mockito.times(1)).submit(Mockito.any(Runnable.class));
+    }
+}
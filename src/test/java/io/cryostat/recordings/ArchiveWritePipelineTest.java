@@ -0,0 +1,188 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.cryostat.messaging.notifications.Notification;
+import io.cryostat.messaging.notifications.NotificationFactory;
+
+import io.vertx.core.Vertx;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ArchiveWritePipelineTest {
+
+    static final String TARGET_ID = "service:jmx:rmi:///jndi/rmi://localhost:9091/jmxrmi";
+
+    ArchiveWritePipeline pipeline;
+    Vertx vertx;
+    ExecutorService executor;
+    @Mock NotificationFactory notificationFactory;
+    @Mock Notification.OwnedResourceBuilder notificationBuilder;
+    @Mock Notification notification;
+    @TempDir Path tempDir;
+
+    @BeforeEach
+    void setup() throws Exception {
+        Mockito.lenient()
+                .when(
+                        notificationFactory.createOwnedResourceBuilder(
+                                Mockito.anyString(), Mockito.anyString()))
+                .thenReturn(notificationBuilder);
+        Mockito.lenient()
+                .when(notificationBuilder.messageEntry(Mockito.anyString(), Mockito.any()))
+                .thenReturn(notificationBuilder);
+        Mockito.lenient().when(notificationBuilder.build()).thenReturn(notification);
+        this.vertx = Vertx.vertx();
+        this.executor = Executors.newCachedThreadPool();
+        this.pipeline = new ArchiveWritePipeline(vertx, executor, notificationFactory, 16, 64, 256);
+    }
+
+    @AfterEach
+    void teardown() throws Exception {
+        executor.shutdownNow();
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shouldRejectInvalidBufferSizes() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ArchiveWritePipeline(vertx, executor, notificationFactory, 0, 64, 0));
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ArchiveWritePipeline(vertx, executor, notificationFactory, 16, 8, 0));
+    }
+
+    @Test
+    void shouldWriteAllBytesToDestination() throws Exception {
+        byte[] data = new byte[4096];
+        new Random(1234).nextBytes(data);
+        Path destination = tempDir.resolve("foo.jfr");
+
+        ArchiveWritePipeline.Transfer transfer =
+                pipeline.write(
+                        TARGET_ID, "foo", new ByteArrayInputStream(data), destination, () -> true);
+        long written = transfer.getFuture().get(5, TimeUnit.SECONDS);
+
+        MatcherAssert.assertThat(written, Matchers.equalTo((long) data.length));
+        MatcherAssert.assertThat(Files.readAllBytes(destination), Matchers.equalTo(data));
+        MatcherAssert.assertThat(pipeline.getBytesInFlight(TARGET_ID), Matchers.equalTo(0L));
+        MatcherAssert.assertThat(pipeline.cancel(transfer.getId()), Matchers.is(false));
+    }
+
+    @Test
+    void shouldSendProgressNotifications() throws Exception {
+        Path destination = tempDir.resolve("foo.jfr");
+
+        pipeline.write(
+                        TARGET_ID,
+                        "foo",
+                        new ByteArrayInputStream(new byte[1024]),
+                        destination,
+                        () -> true)
+                .getFuture()
+                .get(5, TimeUnit.SECONDS);
+
+        Mockito.verify(notificationFactory, Mockito.times(1))
+                .createOwnedResourceBuilder(TARGET_ID, "ArchiveWriteStarted");
+        Mockito.verify(notificationFactory, Mockito.times(4))
+                .createOwnedResourceBuilder(TARGET_ID, "ArchiveWriteProgress");
+        Mockito.verify(notificationBuilder, Mockito.times(5))
+                .messageEntry(Mockito.eq("transferId"), Mockito.anyString());
+        Mockito.verify(notification, Mockito.times(5)).send();
+    }
+
+    @Test
+    void shouldFailAndCleanUpIfSourceDies() throws Exception {
+        Path destination = tempDir.resolve("foo.jfr");
+
+        ArchiveWritePipeline.Transfer transfer =
+                pipeline.write(
+                        TARGET_ID,
+                        "foo",
+                        new ByteArrayInputStream(new byte[1024]),
+                        destination,
+                        () -> false);
+
+        ExecutionException ee =
+                Assertions.assertThrows(
+                        ExecutionException.class,
+                        () -> transfer.getFuture().get(5, TimeUnit.SECONDS));
+        MatcherAssert.assertThat(ee.getCause(), Matchers.instanceOf(IOException.class));
+        MatcherAssert.assertThat(Files.exists(destination), Matchers.is(false));
+    }
+
+    @Test
+    void shouldCancelInFlightTransfer() throws Exception {
+        Path destination = tempDir.resolve("foo.jfr");
+        PipedOutputStream out = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(out, 1024);
+
+        out.write(new byte[32]);
+        ArchiveWritePipeline.Transfer transfer =
+                pipeline.write(TARGET_ID, "foo", in, destination, () -> true);
+
+        MatcherAssert.assertThat(pipeline.cancel(transfer.getId()), Matchers.is(true));
+        out.write(new byte[32]);
+        out.close();
+
+        Assertions.assertThrows(
+                CancellationException.class, () -> transfer.getFuture().get(5, TimeUnit.SECONDS));
+        MatcherAssert.assertThat(Files.exists(destination), Matchers.is(false));
+        MatcherAssert.assertThat(pipeline.cancel(transfer.getId()), Matchers.is(false));
+    }
+
+    @Test
+    void shouldNotOverwriteExistingDestination() throws Exception {
+        Path destination = tempDir.resolve("foo.jfr");
+        Files.writeString(destination, "existing");
+
+        ArchiveWritePipeline.Transfer transfer =
+                pipeline.write(
+                        TARGET_ID,
+                        "foo",
+                        new ByteArrayInputStream(new byte[32]),
+                        destination,
+                        () -> true);
+
+        Assertions.assertThrows(
+                ExecutionException.class, () -> transfer.getFuture().get(5, TimeUnit.SECONDS));
+        MatcherAssert.assertThat(Files.readString(destination), Matchers.equalTo("existing"));
+    }
+}
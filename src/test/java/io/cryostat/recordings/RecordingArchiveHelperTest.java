@@ -24,12 +24,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.management.remote.JMXServiceURL;
 
@@ -53,14 +56,17 @@ import io.cryostat.recordings.RecordingMetadataManager.Metadata;
 import io.cryostat.rules.ArchivedRecordingInfo;
 import io.cryostat.util.URIUtil;
 
+import com.google.gson.Gson;
 import io.vertx.core.Vertx;
 import org.apache.commons.codec.binary.Base32;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
@@ -91,6 +97,9 @@ class RecordingArchiveHelperTest {
     @Mock CryostatFlightRecorderService service;
     @Mock Vertx vertx;
     @Mock io.vertx.core.file.FileSystem vertxFs;
+    @Mock ArchiveWritePipeline archiveWritePipeline;
+    @Mock ArchiveIndex archiveIndex;
+    @Mock ArchiveMigrationJournal migrationJournal;
 
     String targetId = "fooTarget";
     String recordingName = "someRecording";
@@ -141,6 +150,28 @@ class RecordingArchiveHelperTest {
                         });
 
         lenient().when(vertx.fileSystem()).thenReturn(vertxFs);
+        lenient()
+                .when(
+                        archiveWritePipeline.write(
+                                Mockito.anyString(),
+                                Mockito.anyString(),
+                                Mockito.any(),
+                                Mockito.any(),
+                                Mockito.any()))
+                .thenAnswer(
+                        new Answer<ArchiveWritePipeline.Transfer>() {
+                            @Override
+                            public ArchiveWritePipeline.Transfer answer(InvocationOnMock invocation)
+                                    throws Throwable {
+                                ArchiveWritePipeline.Transfer transfer =
+                                        Mockito.mock(ArchiveWritePipeline.Transfer.class);
+                                Mockito.when(transfer.getDestination())
+                                        .thenReturn(invocation.getArgument(3));
+                                Mockito.when(transfer.getFuture())
+                                        .thenReturn(CompletableFuture.completedFuture(1L));
+                                return transfer;
+                            }
+                        });
 
         this.recordingArchiveHelper =
                 new RecordingArchiveHelper(
@@ -155,7 +186,11 @@ class RecordingArchiveHelperTest {
                         notificationFactory,
                         jvmIdHelper,
                         null,
-                        base32);
+                        archiveWritePipeline,
+                        archiveIndex,
+                        base32,
+                        migrationJournal,
+                        1);
     }
 
     @Test
@@ -269,7 +304,14 @@ class RecordingArchiveHelperTest {
                         .get();
 
         MatcherAssert.assertThat(info.getName(), Matchers.equalTo(savedName));
-        Mockito.verify(fs).copy(Mockito.isA(BufferedInputStream.class), Mockito.eq(destination));
+        Mockito.verify(archiveWritePipeline)
+                .write(
+                        Mockito.eq(targetId),
+                        Mockito.anyString(),
+                        Mockito.isA(BufferedInputStream.class),
+                        Mockito.eq(destination),
+                        Mockito.any());
+        Mockito.verify(archiveIndex).add(destination);
         Mockito.verify(notificationFactory)
                 .createOwnedResourceBuilder(targetId, "ActiveRecordingSaved");
         Mockito.verify(notificationOwnedResourceBuilder).messageEntry("recording", info);
@@ -350,7 +392,13 @@ class RecordingArchiveHelperTest {
                         .get();
 
         MatcherAssert.assertThat(info.getName(), Matchers.equalTo(savedName));
-        Mockito.verify(fs).copy(Mockito.isA(BufferedInputStream.class), Mockito.eq(destination));
+        Mockito.verify(archiveWritePipeline)
+                .write(
+                        Mockito.eq(serviceRef1.getServiceUri().toString()),
+                        Mockito.anyString(),
+                        Mockito.isA(BufferedInputStream.class),
+                        Mockito.eq(destination),
+                        Mockito.any());
         Mockito.verify(notificationFactory)
                 .createOwnedResourceBuilder(
                         serviceRef1.getServiceUri().toString(), "ActiveRecordingSaved");
@@ -438,7 +486,13 @@ class RecordingArchiveHelperTest {
                         .get();
 
         MatcherAssert.assertThat(info.getName(), Matchers.equalTo(savedName));
-        Mockito.verify(fs).copy(Mockito.isA(BufferedInputStream.class), Mockito.eq(destination));
+        Mockito.verify(archiveWritePipeline)
+                .write(
+                        Mockito.eq(targetId),
+                        Mockito.anyString(),
+                        Mockito.isA(BufferedInputStream.class),
+                        Mockito.eq(destination),
+                        Mockito.any());
         Mockito.verify(notificationFactory)
                 .createOwnedResourceBuilder(targetId, "ActiveRecordingSaved");
         Mockito.verify(notificationOwnedResourceBuilder).messageEntry("recording", info);
@@ -518,7 +572,13 @@ class RecordingArchiveHelperTest {
                         .get();
 
         MatcherAssert.assertThat(info.getName(), Matchers.equalTo(savedName));
-        Mockito.verify(fs).copy(Mockito.isA(BufferedInputStream.class), Mockito.eq(destination));
+        Mockito.verify(archiveWritePipeline)
+                .write(
+                        Mockito.eq(targetId),
+                        Mockito.anyString(),
+                        Mockito.isA(BufferedInputStream.class),
+                        Mockito.eq(destination),
+                        Mockito.any());
         Mockito.verify(notificationFactory)
                 .createOwnedResourceBuilder(targetId, "ActiveRecordingSaved");
         Mockito.verify(notificationOwnedResourceBuilder).messageEntry("recording", info);
@@ -605,7 +665,13 @@ class RecordingArchiveHelperTest {
                         .get();
 
         MatcherAssert.assertThat(info.getName(), Matchers.equalTo(savedName));
-        Mockito.verify(fs).copy(Mockito.isA(BufferedInputStream.class), Mockito.eq(destination));
+        Mockito.verify(archiveWritePipeline)
+                .write(
+                        Mockito.eq(targetId),
+                        Mockito.anyString(),
+                        Mockito.isA(BufferedInputStream.class),
+                        Mockito.eq(destination),
+                        Mockito.any());
         Mockito.verify(notificationFactory)
                 .createOwnedResourceBuilder(targetId, "ActiveRecordingSaved");
         Mockito.verify(notificationOwnedResourceBuilder).messageEntry("recording", info);
@@ -662,7 +728,9 @@ class RecordingArchiveHelperTest {
 
         Assertions.assertThrows(
                 EmptyRecordingException.class,
-                () -> recordingArchiveHelper.writeRecordingToDestination(connection, descriptor));
+                () ->
+                        recordingArchiveHelper.writeRecordingToDestination(
+                                new ConnectionDescriptor(targetId), connection, descriptor));
 
         Mockito.verify(fs).deleteIfExists(Mockito.any());
     }
@@ -745,7 +813,13 @@ class RecordingArchiveHelperTest {
                         .get();
 
         MatcherAssert.assertThat(info.getName(), Matchers.equalTo(savedName));
-        Mockito.verify(fs).copy(Mockito.isA(BufferedInputStream.class), Mockito.eq(destination));
+        Mockito.verify(archiveWritePipeline)
+                .write(
+                        Mockito.eq(targetId),
+                        Mockito.anyString(),
+                        Mockito.isA(BufferedInputStream.class),
+                        Mockito.eq(destination),
+                        Mockito.any());
         Mockito.verify(notificationFactory)
                 .createOwnedResourceBuilder(targetId, "ActiveRecordingSaved");
         Mockito.verify(notificationOwnedResourceBuilder).messageEntry("recording", info);
@@ -839,6 +913,12 @@ class RecordingArchiveHelperTest {
 
         MatcherAssert.assertThat(deleted, Matchers.equalTo(matcher));
 
+        Mockito.verify(archiveIndex)
+                .remove(
+                        archivedRecordingsPath
+                                .resolve(subdirectories.get(1))
+                                .resolve(recordingName)
+                                .toAbsolutePath());
         Mockito.verify(fs).deleteIfExists(destinationFile);
         Mockito.verify(notificationFactory)
                 .createOwnedResourceBuilder("uploads", "ArchivedRecordingDeleted");
@@ -1164,4 +1244,128 @@ class RecordingArchiveHelperTest {
         MatcherAssert.assertThat(invalidTime, Matchers.lessThanOrEqualTo(now + tolerance));
         MatcherAssert.assertThat(invalidTime, Matchers.greaterThanOrEqualTo(now - tolerance));
     }
+
+    @Nested
+    class Migration {
+
+        @TempDir Path tempDir;
+        Path archivePath;
+        Path journalPath;
+        RecordingArchiveHelper helper;
+
+        @BeforeEach
+        void setup() throws Exception {
+            archivePath = tempDir.resolve("archive");
+            journalPath = tempDir.resolve("conf").resolve("archive-migration.jsonl");
+            Files.createDirectories(archivePath);
+            helper =
+                    new RecordingArchiveHelper(
+                            new FileSystem(),
+                            () -> webServer,
+                            archivePath,
+                            archivedRecordingsReportPath,
+                            targetConnectionManager,
+                            recordingMetadataManager,
+                            clock,
+                            platformClient,
+                            notificationFactory,
+                            jvmIdHelper,
+                            null,
+                            archiveWritePipeline,
+                            archiveIndex,
+                            base32,
+                            new ArchiveMigrationJournal(journalPath, new FileSystem(), new Gson()),
+                            2);
+        }
+
+        Path legacy(String subdirectory, String connectUrl, String... files) throws Exception {
+            Path dir = Files.createDirectories(archivePath.resolve(subdirectory));
+            Files.writeString(dir.resolve("connectUrl"), connectUrl);
+            for (String file : files) {
+                Files.write(dir.resolve(file), new byte[] {1});
+            }
+            return dir;
+        }
+
+        @Test
+        void shouldMoveLegacySubdirectoriesIntoJvmIdSubdirectories() throws Exception {
+            legacy("legacyA", "urlA", "a1.jfr", "a2.jfr");
+            legacy("legacyB", "urlB", "b.jfr");
+            Mockito.when(jvmIdHelper.getJvmId("urlA")).thenReturn("jvmA");
+            Mockito.when(jvmIdHelper.getJvmId("urlB")).thenReturn("jvmB");
+
+            helper.migrate();
+
+            MatcherAssert.assertThat(
+                    Files.exists(archivePath.resolve("legacyA")), Matchers.is(false));
+            MatcherAssert.assertThat(
+                    Files.exists(archivePath.resolve("legacyB")), Matchers.is(false));
+            MatcherAssert.assertThat(
+                    Files.exists(archivePath.resolve("jvmA").resolve("a1.jfr")), Matchers.is(true));
+            MatcherAssert.assertThat(
+                    Files.exists(archivePath.resolve("jvmA").resolve("a2.jfr")), Matchers.is(true));
+            MatcherAssert.assertThat(
+                    Files.readString(archivePath.resolve("jvmA").resolve("connectUrl")),
+                    Matchers.equalTo("urlA"));
+            MatcherAssert.assertThat(
+                    Files.exists(archivePath.resolve("jvmB").resolve("b.jfr")), Matchers.is(true));
+            MatcherAssert.assertThat(Files.exists(journalPath), Matchers.is(false));
+            Mockito.verify(archiveIndex).rebuild();
+        }
+
+        @Test
+        void shouldResumeFromJournal() throws Exception {
+            legacy("done", "urlDone", "d.jfr");
+            legacy("partial", "urlPartial", "p2.jfr");
+            Path destination = Files.createDirectories(archivePath.resolve("jvmPartial"));
+            Files.writeString(destination.resolve("connectUrl"), "urlPartial");
+            Files.write(destination.resolve("p1.jfr"), new byte[] {1});
+            ArchiveMigrationJournal journal =
+                    new ArchiveMigrationJournal(journalPath, new FileSystem(), new Gson());
+            journal.complete("done");
+            journal.begin("partial", "jvmPartial");
+
+            helper.migrate();
+
+            Mockito.verify(jvmIdHelper, Mockito.never()).getJvmId(Mockito.anyString());
+            MatcherAssert.assertThat(
+                    Files.exists(archivePath.resolve("done").resolve("d.jfr")), Matchers.is(true));
+            MatcherAssert.assertThat(
+                    Files.exists(destination.resolve("p1.jfr")), Matchers.is(true));
+            MatcherAssert.assertThat(
+                    Files.exists(destination.resolve("p2.jfr")), Matchers.is(true));
+            MatcherAssert.assertThat(
+                    Files.exists(archivePath.resolve("partial")), Matchers.is(false));
+            MatcherAssert.assertThat(Files.exists(journalPath), Matchers.is(false));
+        }
+
+        @Test
+        void shouldServeLegacyRecordingsUntilMigrated() throws Exception {
+            Path legacyDir = legacy("legacyA", "urlA", "a.jfr");
+            AtomicBoolean migrating = new AtomicBoolean();
+            AtomicReference<Path> found = new AtomicReference<>();
+            Mockito.when(jvmIdHelper.getJvmId("urlA"))
+                    .thenAnswer(
+                            invocation -> {
+                                if (migrating.compareAndSet(false, true)) {
+                                    found.set(helper.getRecordingPath("urlA", "a.jfr").get());
+                                }
+                                return "jvmA";
+                            });
+
+            helper.migrate();
+
+            MatcherAssert.assertThat(
+                    found.get(),
+                    Matchers.equalTo(legacyDir.resolve("a.jfr").normalize().toAbsolutePath()));
+            MatcherAssert.assertThat(
+                    helper.getRecordingPath("urlA", "a.jfr").get(),
+                    Matchers.equalTo(
+                            archivePath
+                                    .resolve("jvmA")
+                                    .resolve("a.jfr")
+                                    .normalize()
+                                    .toAbsolutePath()));
+        }
+    }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import io.cryostat.net.web.http.api.v2.graph.labels.LabelSelectorMatcher;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class RecordingLabelIndexTest {
+
+    Map<String, Map<String, Map<String, String>>> stored;
+    List<String> loaded;
+    RecordingLabelIndex index;
+
+    @BeforeEach
+    void setup() {
+        stored = new HashMap<>();
+        stored.put(
+                "jvm",
+                Map.of(
+                        "a", Map.of("env", "prod", "tier", "frontend"),
+                        "b", Map.of("env", "qa", "tier", "backend"),
+                        "c", Map.of("env", "prod"),
+                        "d", Map.of()));
+        stored.put("otherJvm", Map.of("e", Map.of("env", "prod")));
+        loaded = new ArrayList<>();
+        index =
+                new RecordingLabelIndex(
+                        jvmId -> {
+                            loaded.add(jvmId);
+                            return stored.getOrDefault(jvmId, Map.of());
+                        });
+    }
+
+    @ParameterizedTest
+    @CsvSource(
+            delimiter = ';',
+            value = {
+                "env=prod; a,c",
+                "env == qa; b",
+                "env != prod; b",
+                "env in (prod, qa); a,b,c",
+                "env notin (prod); b",
+                "tier; a,b",
+                "!tier; c",
+                "env=staging; ''",
+                "unparseable (; a,b,c",
+            })
+    void shouldSelectMatchingRecordings(String selector, String expected) {
+        MatcherAssert.assertThat(
+                select("jvm", selector),
+                Matchers.equalTo(expected.isEmpty() ? List.of() : List.of(expected.split(","))));
+    }
+
+    @Test
+    void shouldIntersectMultipleSelectors() {
+        MatcherAssert.assertThat(select("jvm", "env=prod", "tier"), Matchers.contains("a"));
+        MatcherAssert.assertThat(
+                select("jvm", "env in (prod, qa)", "!tier"), Matchers.contains("c"));
+        MatcherAssert.assertThat(select("jvm", "env=prod", "env=qa"), Matchers.empty());
+    }
+
+    @Test
+    void shouldLoadEachJvmOnFirstQuery() {
+        MatcherAssert.assertThat(loaded, Matchers.empty());
+
+        select("jvm", "env=prod");
+        select("jvm", "env=qa");
+        select("otherJvm", "env=prod");
+
+        MatcherAssert.assertThat(loaded, Matchers.contains("jvm", "otherJvm"));
+    }
+
+    @Test
+    void shouldIgnoreUpdatesToUnloadedJvms() {
+        index.put("jvm", "a", Map.of("env", "qa"));
+        index.remove("jvm", "c");
+
+        MatcherAssert.assertThat(select("jvm", "env=prod"), Matchers.contains("a", "c"));
+    }
+
+    @Test
+    void shouldReplaceLabels() {
+        select("jvm");
+        index.put("jvm", "a", Map.of("env", "qa"));
+
+        MatcherAssert.assertThat(select("jvm", "env=qa"), Matchers.contains("a", "b"));
+        MatcherAssert.assertThat(select("jvm", "env=prod"), Matchers.contains("c"));
+        MatcherAssert.assertThat(select("jvm", "tier"), Matchers.contains("b"));
+    }
+
+    @Test
+    void shouldRemoveLabels() {
+        select("jvm");
+        index.remove("jvm", "a");
+        index.remove("jvm", "a");
+        index.remove("unknownJvm", "a");
+
+        MatcherAssert.assertThat(select("jvm", "env=prod"), Matchers.contains("c"));
+        MatcherAssert.assertThat(select("jvm", "tier"), Matchers.contains("b"));
+    }
+
+    @Test
+    void shouldReloadInvalidatedJvm() {
+        select("jvm");
+        stored.put("jvm", Map.of("a", Map.of("env", "staging")));
+
+        MatcherAssert.assertThat(select("jvm", "env=staging"), Matchers.empty());
+        index.invalidate("jvm");
+        MatcherAssert.assertThat(select("jvm", "env=staging"), Matchers.contains("a"));
+        MatcherAssert.assertThat(loaded, Matchers.contains("jvm", "jvm"));
+    }
+
+    @Test
+    void shouldLoadWithoutHoldingLockAndReplayConcurrentUpdates() {
+        List<Boolean> heldLock = new ArrayList<>();
+        index =
+                new RecordingLabelIndex(
+                        jvmId -> {
+                            heldLock.add(Thread.holdsLock(index));
+                            // updates committed after the labels were read
+                            index.put(jvmId, "b", Map.of("env", "prod"));
+                            index.remove(jvmId, "a");
+                            return stored.get(jvmId);
+                        });
+
+        MatcherAssert.assertThat(select("jvm", "env=prod"), Matchers.contains("b", "c"));
+        MatcherAssert.assertThat(select("jvm", "tier"), Matchers.empty());
+        MatcherAssert.assertThat(heldLock, Matchers.contains(false));
+    }
+
+    @Test
+    void shouldNotKeepLoadInvalidatedWhileInProgress() {
+        index =
+                new RecordingLabelIndex(
+                        jvmId -> {
+                            loaded.add(jvmId);
+                            Map<String, Map<String, String>> labels = stored.get(jvmId);
+                            if (loaded.size() == 1) {
+                                index.invalidate(jvmId);
+                            }
+                            return labels;
+                        });
+
+        MatcherAssert.assertThat(select("jvm", "env=prod"), Matchers.contains("a", "c"));
+        MatcherAssert.assertThat(select("jvm", "env=prod"), Matchers.contains("a", "c"));
+        MatcherAssert.assertThat(loaded, Matchers.contains("jvm", "jvm"));
+    }
+
+    @Test
+    void shouldNotSelectRecordingsOfOtherJvms() {
+        MatcherAssert.assertThat(select("otherJvm", "env=prod"), Matchers.contains("e"));
+        MatcherAssert.assertThat(select("unknownJvm", "env=prod"), Matchers.empty());
+    }
+
+    private List<String> select(String jvmId, String... selectors) {
+        List<LabelSelectorMatcher> matchers =
+                List.of(selectors).stream()
+                        .map(LabelSelectorMatcher::parse)
+                        .collect(Collectors.toList());
+        return index.select(jvmId, matchers).stream().sorted().collect(Collectors.toList());
+    }
+}
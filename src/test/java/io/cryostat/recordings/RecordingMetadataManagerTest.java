@@ -21,39 +21,62 @@ import static org.mockito.Mockito.when;
 
 import java.io.BufferedReader;
 import java.io.StringReader;
-import java.nio.file.OpenOption;
+import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 
 import javax.inject.Provider;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
 
 import io.cryostat.DirectExecutorService;
 import io.cryostat.MainModule;
 import io.cryostat.MockVertx;
 import io.cryostat.configuration.CredentialsManager;
 import io.cryostat.core.net.JFRConnection;
+import io.cryostat.core.net.discovery.JvmDiscoveryClient.EventKind;
 import io.cryostat.core.sys.FileSystem;
+import io.cryostat.discovery.DiscoveryStorage;
 import io.cryostat.messaging.notifications.Notification;
 import io.cryostat.messaging.notifications.NotificationFactory;
 import io.cryostat.net.ConnectionDescriptor;
 import io.cryostat.net.TargetConnectionManager;
 import io.cryostat.net.web.http.HttpMimeType;
 import io.cryostat.platform.PlatformClient;
+import io.cryostat.platform.ServiceRef;
+import io.cryostat.platform.TargetDiscoveryEvent;
 import io.cryostat.recordings.JvmIdHelper.JvmIdGetException;
 import io.cryostat.recordings.RecordingMetadataManager.Metadata;
 import io.cryostat.recordings.RecordingMetadataManager.StoredRecordingMetadata;
+import io.cryostat.storage.DatabaseExecutor;
 
 import com.google.gson.Gson;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
 import org.apache.commons.codec.binary.Base32;
+import org.apache.commons.lang3.tuple.Pair;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.NullSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -81,13 +104,12 @@ public class RecordingMetadataManagerTest {
     @Mock Notification.OwnedResourceBuilder notificationOwnedResourceBuilder;
     @Mock JFRConnection connection;
     @Mock ConnectionDescriptor connectionDescriptor;
+    @Mock StoredRecordingLabelsDao dao;
+    @Mock RecordingArchiveHelper archiveHelper;
     Gson gson = MainModule.provideGson();
 
     @BeforeEach
     void setup() throws JvmIdGetException {
-        Gson gson = new Gson();
-        Base32 base32 = new Base32();
-
         lenient()
                 .when(
                         notificationFactory.createOwnedResourceBuilder(
@@ -129,7 +151,18 @@ public class RecordingMetadataManagerTest {
                             }
                         });
 
-        this.recordingMetadataManager =
+        this.recordingMetadataManager = createManager(false);
+    }
+
+    private RecordingMetadataManager createManager(boolean retainMetadataFiles) {
+        return createManager(recordingMetadataDir, fs, retainMetadataFiles);
+    }
+
+    private RecordingMetadataManager createManager(
+            Path recordingMetadataDir, FileSystem fs, boolean retainMetadataFiles) {
+        Gson gson = new Gson();
+        Base32 base32 = new Base32();
+        RecordingMetadataManager manager =
                 new RecordingMetadataManager(
                         new DirectExecutorService(),
                         recordingMetadataDir,
@@ -143,8 +176,14 @@ public class RecordingMetadataManagerTest {
                         notificationFactory,
                         jvmIdHelper,
                         gson,
-                        base32);
-        this.recordingMetadataManager.init(vertx, null);
+                        base32,
+                        dao,
+                        new RecordingMetadataWriter(
+                                dao, Executors.newSingleThreadScheduledExecutor(), 0),
+                        2,
+                        retainMetadataFiles);
+        manager.init(vertx, null);
+        return manager;
     }
 
     @Test
@@ -157,21 +196,12 @@ public class RecordingMetadataManagerTest {
 
         when(jvmIdHelper.getJvmId(Mockito.any(ConnectionDescriptor.class))).thenReturn(jvmId);
         when(connectionDescriptor.getTargetId()).thenReturn("someTarget");
-        Path mockPath = Mockito.mock(Path.class);
-        when(recordingMetadataDir.resolve(Mockito.anyString())).thenReturn(mockPath);
-        when(mockPath.resolve(Mockito.anyString())).thenReturn(mockPath);
 
         recordingMetadataManager
                 .setRecordingMetadata(connectionDescriptor, recordingName, new Metadata(labels))
                 .get();
 
-        verify(fs)
-                .writeString(
-                        Mockito.any(Path.class),
-                        Mockito.anyString(),
-                        Mockito.any(OpenOption.class),
-                        Mockito.any(OpenOption.class),
-                        Mockito.any(OpenOption.class));
+        verify(dao).putAll(written("someTarget", jvmId, recordingName, labels));
     }
 
     @ParameterizedTest
@@ -200,28 +230,31 @@ public class RecordingMetadataManagerTest {
         String jvmId = "id";
         Map<String, String> labels =
                 Map.of("KEY", "newValue", "key.2", "some.value", "key3", "1234");
-        Metadata metadata = new Metadata(labels);
 
-        when(jvmIdHelper.getJvmId(Mockito.any(ConnectionDescriptor.class))).thenReturn(jvmId);
-        when(connectionDescriptor.getTargetId()).thenReturn("someTarget");
-        Path mockPath = Mockito.mock(Path.class);
-        Path parentPath = Mockito.mock(Path.class);
-        when(recordingMetadataDir.resolve(Mockito.anyString())).thenReturn(mockPath);
-        when(mockPath.resolve(Mockito.anyString())).thenReturn(mockPath);
-        when(mockPath.getParent()).thenReturn(parentPath);
+        when(dao.remove(jvmId, recordingName))
+                .thenReturn(
+                        Optional.of(
+                                new StoredRecordingLabels(
+                                        "someTarget", jvmId, recordingName, labels)));
 
-        when(fs.deleteIfExists(mockPath)).thenReturn(true);
-        when(fs.isRegularFile(mockPath)).thenReturn(true);
-        when(fs.readFile(mockPath))
-                .thenReturn(new BufferedReader(new StringReader("{\"labels\":{}}")));
+        Metadata deleted =
+                recordingMetadataManager.deleteRecordingMetadataIfExists(jvmId, recordingName);
 
-        recordingMetadataManager
-                .setRecordingMetadata(connectionDescriptor, recordingName, metadata)
-                .get();
+        MatcherAssert.assertThat(deleted, Matchers.equalTo(new Metadata(labels)));
+        verify(dao).remove(jvmId, recordingName);
+    }
 
-        recordingMetadataManager.deleteRecordingMetadataIfExists(jvmId, recordingName);
+    @Test
+    void shouldReturnEmptyMetadataForUnlabelledRecording() throws Exception {
+        when(jvmIdHelper.getJvmId(Mockito.any(ConnectionDescriptor.class))).thenReturn("id");
+        when(connectionDescriptor.getTargetId()).thenReturn("someTarget");
+        when(dao.find("id", "someRecording")).thenReturn(Optional.empty());
+
+        Metadata metadata =
+                recordingMetadataManager.getMetadata(connectionDescriptor, "someRecording");
 
-        verify(fs).deleteIfExists(Mockito.any(Path.class));
+        MatcherAssert.assertThat(metadata, Matchers.equalTo(new Metadata()));
+        Mockito.verifyNoInteractions(fs);
     }
 
     @Test
@@ -230,44 +263,24 @@ public class RecordingMetadataManagerTest {
         String targetId = "someTarget";
         String jvmId = "id";
         Map<String, String> labels = Map.of("KEY", "value", "key.2", "some.value", "key3", "1234");
-        Metadata metadata = new Metadata(labels);
-        StoredRecordingMetadata srm =
-                StoredRecordingMetadata.of(targetId, jvmId, recordingName, metadata);
         Map<String, String> updatedLabels =
                 Map.of("KEY", "UPDATED_VALUE", "key.2", "some.value", "key3", "1234");
-        Metadata updatedMetadata = new Metadata(updatedLabels);
-        StoredRecordingMetadata updatedSrm =
-                StoredRecordingMetadata.of(targetId, jvmId, recordingName, updatedMetadata);
 
         when(jvmIdHelper.getJvmId(Mockito.any(ConnectionDescriptor.class))).thenReturn(jvmId);
         when(connectionDescriptor.getTargetId()).thenReturn(targetId);
-        Path mockPath = Mockito.mock(Path.class);
-        when(recordingMetadataDir.resolve(Mockito.anyString())).thenReturn(mockPath);
-        when(mockPath.resolve(Mockito.anyString())).thenReturn(mockPath);
 
         recordingMetadataManager
-                .setRecordingMetadata(connectionDescriptor, recordingName, metadata)
+                .setRecordingMetadata(connectionDescriptor, recordingName, new Metadata(labels))
                 .get();
 
         recordingMetadataManager
-                .setRecordingMetadata(connectionDescriptor, recordingName, updatedMetadata)
+                .setRecordingMetadata(
+                        connectionDescriptor, recordingName, new Metadata(updatedLabels))
                 .get();
 
-        InOrder inOrder = Mockito.inOrder(fs);
-        inOrder.verify(fs)
-                .writeString(
-                        mockPath,
-                        gson.toJson(srm),
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.TRUNCATE_EXISTING);
-        inOrder.verify(fs)
-                .writeString(
-                        mockPath,
-                        gson.toJson(updatedSrm),
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.TRUNCATE_EXISTING);
+        InOrder inOrder = Mockito.inOrder(dao);
+        inOrder.verify(dao).putAll(written(targetId, jvmId, recordingName, labels));
+        inOrder.verify(dao).putAll(written(targetId, jvmId, recordingName, updatedLabels));
     }
 
     @Test
@@ -276,29 +289,383 @@ public class RecordingMetadataManagerTest {
         String targetId = "someTarget";
         String jvmId = "id";
         Map<String, String> labels = Map.of("KEY", "value", "key.2", "some.value", "key3", "1234");
-        Metadata metadata = new Metadata(labels);
-        StoredRecordingMetadata srm =
-                StoredRecordingMetadata.of(targetId, jvmId, recordingName, metadata);
         String filename = "archivedRecording";
         when(jvmIdHelper.getJvmId(Mockito.any(ConnectionDescriptor.class))).thenReturn(jvmId);
         when(connectionDescriptor.getTargetId()).thenReturn(targetId);
-        Path mockPath = Mockito.mock(Path.class);
-        when(recordingMetadataDir.resolve(Mockito.anyString())).thenReturn(mockPath);
-        when(mockPath.resolve(Mockito.anyString())).thenReturn(mockPath);
+        when(dao.find(jvmId, recordingName))
+                .thenReturn(
+                        Optional.of(
+                                new StoredRecordingLabels(targetId, jvmId, recordingName, labels)));
 
         recordingMetadataManager
-                .setRecordingMetadata(connectionDescriptor, recordingName, metadata)
+                .copyMetadataToArchives(connectionDescriptor, recordingName, filename)
                 .get();
 
-        recordingMetadataManager.copyMetadataToArchives(
-                connectionDescriptor, recordingName, filename);
+        verify(dao).putAll(written(targetId, jvmId, filename, labels));
+    }
+
+    @Test
+    void shouldMigrateMetadataFilesIntoDatabase() throws Exception {
+        String jvmId = "id";
+        String recordingName = "foo.jfr";
+        Map<String, String> labels = Map.of("KEY", "value");
+        Path subdirectory = Mockito.mock(Path.class);
+        Path file = Mockito.mock(Path.class);
+        when(archiveHelperProvider.get()).thenReturn(archiveHelper);
+        when(fs.isDirectory(recordingMetadataDir)).thenReturn(true);
+        when(fs.listDirectoryChildren(recordingMetadataDir)).thenReturn(List.of(jvmId));
+        when(recordingMetadataDir.resolve(jvmId)).thenReturn(subdirectory);
+        Path marker = Mockito.mock(Path.class);
+        when(recordingMetadataDir.resolve(RecordingMetadataManager.MIGRATED_MARKER))
+                .thenReturn(marker);
+        when(fs.isDirectory(subdirectory)).thenReturn(true);
+        when(fs.listDirectoryChildren(subdirectory))
+                .thenReturn(List.of("Zm9vLmpmcg.json"), List.of());
+        when(subdirectory.resolve("Zm9vLmpmcg.json")).thenReturn(file);
+        when(fs.isRegularFile(file)).thenReturn(true);
+        when(fs.readFile(file))
+                .thenReturn(
+                        new BufferedReader(
+                                new StringReader(
+                                        gson.toJson(
+                                                StoredRecordingMetadata.of(
+                                                        "someTarget",
+                                                        jvmId,
+                                                        recordingName,
+                                                        new Metadata(labels))))));
+        when(fs.exists(Mockito.any(Path.class))).thenReturn(true);
+        when(fs.exists(marker)).thenReturn(false);
+        when(fs.deleteIfExists(file)).thenReturn(true);
+        when(file.getParent()).thenReturn(subdirectory);
+        when(vertx.eventBus()).thenReturn(Mockito.mock(EventBus.class));
+
+        Promise<Void> promise = Promise.promise();
+        recordingMetadataManager.start(promise);
+
+        MatcherAssert.assertThat(promise.future().succeeded(), Matchers.is(true));
+        verify(dao).put("someTarget", jvmId, recordingName, labels);
+        verify(fs).deleteIfExists(file);
+        verify(fs, Mockito.atLeastOnce()).deleteIfExists(subdirectory);
+    }
+
+    @Test
+    void shouldHandleDiscoveryEventsAfterStartupMigration() throws Exception {
+        EventBus eventBus = Mockito.mock(EventBus.class);
+        when(vertx.eventBus()).thenReturn(eventBus);
+        when(archiveHelperProvider.get()).thenReturn(archiveHelper);
+        ServiceRef serviceRef =
+                new ServiceRef("id", URI.create("service:jmx:rmi://localhost:9091/jmxrmi"), "foo");
+
+        Promise<Void> promise = Promise.promise();
+        recordingMetadataManager.start(promise);
+        recordingMetadataManager.accept(new TargetDiscoveryEvent(EventKind.FOUND, serviceRef));
+
+        Mockito.verifyNoInteractions(archiveHelper);
+
+        ArgumentCaptor<Handler<Message<Object>>> startup = ArgumentCaptor.forClass(Handler.class);
+        verify(eventBus)
+                .consumer(
+                        Mockito.eq(DiscoveryStorage.DISCOVERY_STARTUP_ADDRESS), startup.capture());
+        startup.getValue().handle(Mockito.mock(Message.class));
+
+        InOrder inOrder = Mockito.inOrder(archiveHelper);
+        inOrder.verify(archiveHelper).migrate();
+        inOrder.verify(archiveHelper)
+                .transferArchivesIfRestarted(serviceRef.getServiceUri().toString());
+    }
+
+    @Test
+    void shouldKeepLabelsAcrossRestartsWithInMemoryDatabase(@TempDir Path tmp) throws Exception {
+        Path metadataDir = Files.createDirectory(tmp.resolve("metadata"));
+        ConnectionDescriptor cd = new ConnectionDescriptor("someTarget");
+        when(jvmIdHelper.getJvmId(Mockito.any(ConnectionDescriptor.class))).thenReturn("id");
+        when(vertx.eventBus()).thenReturn(Mockito.mock(EventBus.class));
+        when(archiveHelperProvider.get()).thenReturn(archiveHelper);
+
+        EntityManagerFactory emf = createInMemoryDatabase();
+        try {
+            RecordingMetadataManager manager = startOverDatabase(emf, metadataDir);
+            manager.setRecordingMetadata(cd, "foo", new Metadata(Map.of("env", "qa"))).get();
+            manager.setRecordingMetadata(
+                            cd, "foo", new Metadata(Map.of("cryostat.io/pinned", "true")))
+                    .get();
+        } finally {
+            emf.close();
+        }
+
+        emf = createInMemoryDatabase();
+        try {
+            RecordingMetadataManager manager = startOverDatabase(emf, metadataDir);
+            MatcherAssert.assertThat(
+                    manager.getMetadata(cd, "foo").getLabels(),
+                    Matchers.equalTo(Map.of("cryostat.io/pinned", "true")));
+            manager.setRecordingMetadata(cd, "foo", new Metadata(Map.of("env", "prod"))).get();
+            manager.setRecordingMetadata(cd, "bar", new Metadata(Map.of("env", "qa"))).get();
+            manager.deleteRecordingMetadataIfExists("id", "bar");
+        } finally {
+            emf.close();
+        }
+
+        emf = createInMemoryDatabase();
+        try {
+            RecordingMetadataManager manager = startOverDatabase(emf, metadataDir);
+            // the latest labels survive, rather than those first imported from the files
+            MatcherAssert.assertThat(
+                    manager.getMetadata(cd, "foo").getLabels(),
+                    Matchers.equalTo(Map.of("env", "prod")));
+            MatcherAssert.assertThat(
+                    manager.findMetadata("id", "bar").isPresent(), Matchers.is(false));
+        } finally {
+            emf.close();
+        }
+    }
+
+    @Test
+    void shouldMigrateMetadataFilesOnlyOnceIntoPersistentDatabase(@TempDir Path tmp)
+            throws Exception {
+        Path metadataDir = Files.createDirectory(tmp.resolve("metadata"));
+        Path subdirectory = Files.createDirectory(metadataDir.resolve("id"));
+        Path file = subdirectory.resolve("Zm9vLmpmcg.json");
+        Files.writeString(
+                file,
+                gson.toJson(
+                        StoredRecordingMetadata.of(
+                                "someTarget", "id", "foo.jfr", new Metadata(Map.of("env", "qa")))));
+        when(vertx.eventBus()).thenReturn(Mockito.mock(EventBus.class));
+        when(archiveHelperProvider.get()).thenReturn(archiveHelper);
+
+        RecordingMetadataManager manager = createManager(metadataDir, new FileSystem(), false);
+        manager.start(Promise.promise());
+        verify(dao).put("someTarget", "id", "foo.jfr", Map.of("env", "qa"));
+        MatcherAssert.assertThat(Files.exists(file), Matchers.is(false));
+        MatcherAssert.assertThat(
+                Files.exists(metadataDir.resolve(RecordingMetadataManager.MIGRATED_MARKER)),
+                Matchers.is(true));
+
+        // a file left behind, ex. by a failed delete, is not imported again over newer labels
+        Files.createDirectories(subdirectory);
+        Files.writeString(
+                file,
+                gson.toJson(
+                        StoredRecordingMetadata.of(
+                                "someTarget",
+                                "id",
+                                "foo.jfr",
+                                new Metadata(Map.of("env", "stale")))));
+        manager = createManager(metadataDir, new FileSystem(), false);
+        manager.start(Promise.promise());
+        verify(dao, Mockito.never()).put("someTarget", "id", "foo.jfr", Map.of("env", "stale"));
+    }
+
+    private EntityManagerFactory createInMemoryDatabase() {
+        // the default database configuration: in memory, and recreated at each startup
+        Properties properties = new Properties();
+        properties.put("jakarta.persistence.jdbc.driver", "org.h2.Driver");
+        properties.put(
+                "jakarta.persistence.jdbc.url",
+                "jdbc:h2:mem:" + getClass().getSimpleName() + ";DB_CLOSE_DELAY=-1");
+        properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.put("hibernate.hbm2ddl.auto", "create");
+        return Persistence.createEntityManagerFactory("io.cryostat", properties);
+    }
+
+    private RecordingMetadataManager startOverDatabase(EntityManagerFactory emf, Path metadataDir) {
+        FileSystem fs = new FileSystem();
+        Gson gson = new Gson();
+        Base32 base32 = new Base32();
+        StoredRecordingLabelsDao dao =
+                new StoredRecordingLabelsDao(emf, Mockito.mock(DatabaseExecutor.class));
+        RecordingMetadataManager manager =
+                new RecordingMetadataManager(
+                        new DirectExecutorService(),
+                        metadataDir,
+                        metadataDir.resolveSibling("archive"),
+                        30,
+                        fs,
+                        archiveHelperProvider,
+                        targetConnectionManager,
+                        credentialsManager,
+                        platformClient,
+                        notificationFactory,
+                        jvmIdHelper,
+                        gson,
+                        base32,
+                        dao,
+                        new RecordingMetadataWriter(
+                                dao,
+                                Executors.newSingleThreadScheduledExecutor(),
+                                0,
+                                new RecordingMetadataFiles(
+                                        metadataDir, fs, jvmIdHelper, gson, base32)),
+                        2,
+                        true);
+        manager.init(vertx, null);
+        Promise<Void> promise = Promise.promise();
+        manager.start(promise);
+        MatcherAssert.assertThat(promise.future().succeeded(), Matchers.is(true));
+        return manager;
+    }
+
+    @Test
+    void shouldRetainMetadataFilesWhenDatabaseIsNotPersistent() throws Exception {
+        this.recordingMetadataManager = createManager(true);
+        String jvmId = "id";
+        String recordingName = "foo.jfr";
+        Map<String, String> labels = Map.of("cryostat.io/pinned", "true");
+        Path subdirectory = Mockito.mock(Path.class);
+        Path file = Mockito.mock(Path.class);
+        when(archiveHelperProvider.get()).thenReturn(archiveHelper);
+        when(fs.isDirectory(recordingMetadataDir)).thenReturn(true);
+        when(fs.listDirectoryChildren(recordingMetadataDir)).thenReturn(List.of(jvmId));
+        when(recordingMetadataDir.resolve(jvmId)).thenReturn(subdirectory);
+        when(recordingMetadataDir.resolve(RecordingMetadataManager.MIGRATED_MARKER))
+                .thenReturn(Mockito.mock(Path.class));
+        when(fs.isDirectory(subdirectory)).thenReturn(true);
+        when(fs.listDirectoryChildren(subdirectory)).thenReturn(List.of("Zm9vLmpmcg.json"));
+        when(subdirectory.resolve("Zm9vLmpmcg.json")).thenReturn(file);
+        when(fs.isRegularFile(file)).thenReturn(true);
+        // each startup against a fresh in-memory database imports the same file again
+        when(fs.readFile(file))
+                .thenAnswer(
+                        invocation ->
+                                new BufferedReader(
+                                        new StringReader(
+                                                gson.toJson(
+                                                        StoredRecordingMetadata.of(
+                                                                "someTarget",
+                                                                jvmId,
+                                                                recordingName,
+                                                                new Metadata(labels))))));
+        when(vertx.eventBus()).thenReturn(Mockito.mock(EventBus.class));
+
+        Promise<Void> first = Promise.promise();
+        recordingMetadataManager.start(first);
+        this.recordingMetadataManager = createManager(true);
+        Promise<Void> second = Promise.promise();
+        recordingMetadataManager.start(second);
+
+        MatcherAssert.assertThat(first.future().succeeded(), Matchers.is(true));
+        MatcherAssert.assertThat(second.future().succeeded(), Matchers.is(true));
+        verify(dao, Mockito.times(2)).put("someTarget", jvmId, recordingName, labels);
+        verify(fs, Mockito.never()).deleteIfExists(Mockito.any(Path.class));
+    }
+
+    @Test
+    void shouldFilterByIndexedLabels() throws Exception {
+        Metadata labelled = new Metadata(Map.of("KEY", "value"));
+        Metadata unlabelled = new Metadata();
+        List<Pair<String, Metadata>> recordings =
+                List.of(Pair.of("a", labelled), Pair.of("b", labelled), Pair.of("c", unlabelled));
+        when(dao.findByJvmId("id"))
+                .thenReturn(
+                        List.of(
+                                new StoredRecordingLabels(
+                                        "someTarget", "id", "a", labelled.getLabels()),
+                                new StoredRecordingLabels(
+                                        "someTarget", "id", "b", labelled.getLabels())));
+        when(jvmIdHelper.getJvmId(Mockito.any(ConnectionDescriptor.class))).thenReturn("id");
+        when(connectionDescriptor.getTargetId()).thenReturn("someTarget");
+
+        MatcherAssert.assertThat(
+                recordingMetadataManager.filterByLabels(
+                        "id", recordings, Pair::getLeft, Pair::getRight, List.of("KEY=value")),
+                Matchers.contains(recordings.get(0), recordings.get(1)));
+
+        recordingMetadataManager
+                .setRecordingMetadata(
+                        connectionDescriptor, "b", new Metadata(Map.of("KEY", "other")))
+                .get();
+
+        MatcherAssert.assertThat(
+                recordingMetadataManager.filterByLabels(
+                        "id", recordings, Pair::getLeft, Pair::getRight, List.of("KEY=value")),
+                Matchers.contains(recordings.get(0)));
+        MatcherAssert.assertThat(
+                recordingMetadataManager.filterByLabels(
+                        "id", recordings, Pair::getLeft, Pair::getRight, List.of("KEY!=value")),
+                Matchers.contains(recordings.get(1), recordings.get(2)));
+        verify(dao, Mockito.times(1)).findByJvmId("id");
+    }
+
+    @Test
+    void shouldNotIndexLabelsWhoseWriteFailed() throws Exception {
+        Metadata labelled = new Metadata(Map.of("KEY", "value"));
+        List<Pair<String, Metadata>> recordings =
+                List.of(Pair.of("a", labelled), Pair.of("b", labelled));
+        when(dao.findByJvmId("id"))
+                .thenReturn(
+                        List.of(
+                                new StoredRecordingLabels(
+                                        "someTarget", "id", "a", labelled.getLabels()),
+                                new StoredRecordingLabels(
+                                        "someTarget", "id", "b", labelled.getLabels())));
+        when(jvmIdHelper.getJvmId(Mockito.any(ConnectionDescriptor.class))).thenReturn("id");
+        when(connectionDescriptor.getTargetId()).thenReturn("someTarget");
+        Mockito.doThrow(new RuntimeException("database unavailable"))
+                .when(dao)
+                .putAll(Mockito.any());
+
+        MatcherAssert.assertThat(
+                recordingMetadataManager.filterByLabels(
+                        "id", recordings, Pair::getLeft, Pair::getRight, List.of("KEY=value")),
+                Matchers.contains(recordings.get(0), recordings.get(1)));
+
+        CompletableFuture<Metadata> written =
+                recordingMetadataManager.setRecordingMetadata(
+                        connectionDescriptor, "b", new Metadata(Map.of("KEY", "other")));
+
+        Assertions.assertThrows(ExecutionException.class, written::get);
+        MatcherAssert.assertThat(
+                recordingMetadataManager.filterByLabels(
+                        "id", recordings, Pair::getLeft, Pair::getRight, List.of("KEY=value")),
+                Matchers.contains(recordings.get(0), recordings.get(1)));
+    }
+
+    @Test
+    void shouldFilterRecordingsOfManyTargetsByIndexedLabels() throws Exception {
+        record Rec(String targetId, String name, Metadata metadata) {}
+        Metadata labelled = new Metadata(Map.of("KEY", "value"));
+        Metadata other = new Metadata(Map.of("KEY", "other"));
+        List<Rec> recordings =
+                List.of(
+                        new Rec("targetA", "a", labelled),
+                        new Rec("targetB", "b", labelled),
+                        new Rec("targetA", "c", other),
+                        new Rec("unreachable", "d", labelled),
+                        new Rec("unreachable", "e", other));
+        when(jvmIdHelper.getJvmId("targetA")).thenReturn("idA");
+        when(jvmIdHelper.getJvmId("targetB")).thenReturn("idB");
+        when(jvmIdHelper.getJvmId("unreachable"))
+                .thenThrow(new JvmIdHelper.JvmIdGetException("unreachable", "unreachable"));
+        when(dao.findByJvmId("idA"))
+                .thenReturn(
+                        List.of(
+                                new StoredRecordingLabels(
+                                        "targetA", "idA", "a", labelled.getLabels()),
+                                new StoredRecordingLabels(
+                                        "targetA", "idA", "c", other.getLabels())));
+        // the index of targetB's JVM has not caught up with the recording's labels
+        when(dao.findByJvmId("idB")).thenReturn(List.of());
+
+        MatcherAssert.assertThat(
+                recordingMetadataManager.filterByLabels(
+                        recordings, Rec::targetId, Rec::name, Rec::metadata, List.of("KEY=value")),
+                Matchers.contains(recordings.get(0), recordings.get(3)));
+        verify(jvmIdHelper, Mockito.times(1)).getJvmId("targetA");
+    }
 
-        Mockito.verify(fs)
-                .writeString(
-                        mockPath,
-                        gson.toJson(srm),
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.TRUNCATE_EXISTING);
+    private static Collection<StoredRecordingLabels> written(
+            String targetId, String jvmId, String recordingName, Map<String, String> labels) {
+        return Mockito.argThat(
+                c -> {
+                    if (c.size() != 1) {
+                        return false;
+                    }
+                    StoredRecordingLabels l = c.iterator().next();
+                    return targetId.equals(l.getTargetId())
+                            && jvmId.equals(l.getJvmId())
+                            && recordingName.equals(l.getRecordingName())
+                            && labels.equals(l.getLabels());
+                });
     }
 }
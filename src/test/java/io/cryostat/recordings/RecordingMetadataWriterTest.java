@@ -0,0 +1,195 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RecordingMetadataWriterTest {
+
+    RecordingMetadataWriter writer;
+    @Mock StoredRecordingLabelsDao dao;
+    @Mock ScheduledExecutorService scheduler;
+    @Mock ScheduledFuture<?> scheduled;
+
+    @BeforeEach
+    void setup() {
+        Mockito.lenient()
+                .doReturn(scheduled)
+                .when(scheduler)
+                .schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.any());
+        writer = new RecordingMetadataWriter(dao, scheduler, 50);
+    }
+
+    @Test
+    void shouldScheduleOneFlushPerBatch() {
+        writer.put("target", "jvm", "a", Map.of("k", "v"));
+        writer.put("target", "jvm", "b", Map.of("k", "v"));
+
+        verify(scheduler, Mockito.times(1))
+                .schedule(
+                        Mockito.any(Runnable.class),
+                        Mockito.eq(50L),
+                        Mockito.eq(TimeUnit.MILLISECONDS));
+
+        writer.flush();
+        writer.put("target", "jvm", "c", Map.of("k", "v"));
+
+        verify(scheduler, Mockito.times(2))
+                .schedule(
+                        Mockito.any(Runnable.class),
+                        Mockito.eq(50L),
+                        Mockito.eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void shouldCoalesceUpdatesAndWriteThemInOneBatch() {
+        CompletableFuture<Void> first = writer.put("target", "jvm", "a", Map.of("k", "1"));
+        CompletableFuture<Void> second = writer.put("target", "jvm", "a", Map.of("k", "2"));
+        CompletableFuture<Void> other = writer.put("target", "jvm", "b", Map.of("k", "3"));
+
+        MatcherAssert.assertThat(first.isDone(), Matchers.is(false));
+        Mockito.verifyNoInteractions(dao);
+
+        writer.flush();
+
+        MatcherAssert.assertThat(
+                written(),
+                Matchers.equalTo(
+                        List.of(List.of("a", Map.of("k", "2")), List.of("b", Map.of("k", "3")))));
+        MatcherAssert.assertThat(first, Matchers.sameInstance(second));
+        MatcherAssert.assertThat(
+                first.isDone() && !first.isCompletedExceptionally(), Matchers.is(true));
+        MatcherAssert.assertThat(
+                other.isDone() && !other.isCompletedExceptionally(), Matchers.is(true));
+    }
+
+    @Test
+    void shouldExposePendingLabelsUntilWritten() {
+        writer.put("target", "jvm", "a", Map.of("k", "v"));
+
+        MatcherAssert.assertThat(
+                writer.find("jvm", "a"), Matchers.equalTo(Optional.of(Map.of("k", "v"))));
+
+        writer.flush();
+
+        MatcherAssert.assertThat(writer.find("jvm", "a"), Matchers.equalTo(Optional.empty()));
+    }
+
+    @Test
+    void shouldFailPendingUpdatesIfWriteFails() {
+        RuntimeException failure = new RuntimeException("database unavailable");
+        Mockito.doThrow(failure).when(dao).putAll(Mockito.any());
+        CompletableFuture<Void> future = writer.put("target", "jvm", "a", Map.of("k", "v"));
+
+        writer.flush();
+
+        ExecutionException ee = Assertions.assertThrows(ExecutionException.class, future::get);
+        MatcherAssert.assertThat(ee.getCause(), Matchers.sameInstance(failure));
+        MatcherAssert.assertThat(writer.find("jvm", "a"), Matchers.equalTo(Optional.empty()));
+    }
+
+    @Test
+    void shouldNotifyCommitListenersBeforeCompletingUpdates() {
+        List<String> committed = new ArrayList<>();
+        CompletableFuture<Void> future = writer.put("target", "jvm", "a", Map.of("k", "v"));
+        writer.onCommit(
+                labels -> {
+                    MatcherAssert.assertThat(future.isDone(), Matchers.is(false));
+                    labels.forEach(l -> committed.add(l.getRecordingName()));
+                });
+
+        writer.flush();
+
+        MatcherAssert.assertThat(committed, Matchers.equalTo(List.of("a")));
+        MatcherAssert.assertThat(
+                future.isDone() && !future.isCompletedExceptionally(), Matchers.is(true));
+    }
+
+    @Test
+    void shouldNotNotifyCommitListenersIfWriteFails() {
+        Mockito.doThrow(new RuntimeException("database unavailable"))
+                .when(dao)
+                .putAll(Mockito.any());
+        List<StoredRecordingLabels> committed = new ArrayList<>();
+        writer.onCommit(committed::addAll);
+        CompletableFuture<Void> future = writer.put("target", "jvm", "a", Map.of("k", "v"));
+
+        writer.flush();
+
+        MatcherAssert.assertThat(future.isCompletedExceptionally(), Matchers.is(true));
+        MatcherAssert.assertThat(committed, Matchers.empty());
+    }
+
+    @Test
+    void shouldDiscardPendingUpdateOnRemove() {
+        CompletableFuture<Void> future = writer.put("target", "jvm", "a", Map.of("k", "v"));
+        when(dao.remove("jvm", "a")).thenReturn(Optional.empty());
+
+        MatcherAssert.assertThat(
+                writer.remove("jvm", "a"), Matchers.equalTo(Optional.of(Map.of("k", "v"))));
+        MatcherAssert.assertThat(future.isDone(), Matchers.is(true));
+
+        writer.flush();
+
+        Mockito.verify(dao, Mockito.never()).putAll(Mockito.any());
+    }
+
+    @Test
+    void shouldWritePendingUpdatesBeforeReassigning() {
+        writer.put("target", "jvm", "a", Map.of("k", "v"));
+
+        writer.reassign("jvm", "newJvm", "newTarget");
+
+        var inOrder = Mockito.inOrder(dao);
+        inOrder.verify(dao).putAll(Mockito.any());
+        inOrder.verify(dao).reassign("jvm", "newJvm", "newTarget");
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<Object>> written() {
+        ArgumentCaptor<Collection<StoredRecordingLabels>> captor =
+                ArgumentCaptor.forClass(Collection.class);
+        verify(dao).putAll(captor.capture());
+        return captor.getValue().stream()
+                .map(l -> List.<Object>of(l.getRecordingName(), l.getLabels()))
+                .collect(Collectors.toList());
+    }
+}
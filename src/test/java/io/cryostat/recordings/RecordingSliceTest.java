@@ -0,0 +1,171 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RecordingSliceTest {
+
+    static Vertx vertx;
+
+    @TempDir static Path recordingsDir;
+    static Path first;
+    static Path second;
+    static Path third;
+
+    @TempDir Path tempDir;
+
+    @BeforeAll
+    static void record() throws Exception {
+        vertx = Vertx.vertx();
+        first = RecordingSummaryTest.record(recordingsDir.resolve("first.jfr"));
+        Thread.sleep(20);
+        second = RecordingSummaryTest.record(recordingsDir.resolve("second.jfr"));
+        Thread.sleep(20);
+        third = RecordingSummaryTest.record(recordingsDir.resolve("third.jfr"));
+    }
+
+    @AfterAll
+    static void closeVertx() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    Path concatenate(Path... recordings) throws Exception {
+        Path combined = tempDir.resolve("combined.jfr");
+        Files.write(combined, new byte[0]);
+        for (Path recording : recordings) {
+            Files.write(combined, Files.readAllBytes(recording), StandardOpenOption.APPEND);
+        }
+        return combined;
+    }
+
+    byte[] pipe(RecordingSlice slice) throws Exception {
+        Path out = tempDir.resolve("slice.jfr");
+        AsyncFile file =
+                vertx.fileSystem()
+                        .open(out.toString(), new OpenOptions())
+                        .toCompletionStage()
+                        .toCompletableFuture()
+                        .get(5, TimeUnit.SECONDS);
+        slice.pipeTo(vertx, file)
+                .toCompletionStage()
+                .toCompletableFuture()
+                .get(5, TimeUnit.SECONDS);
+        return Files.readAllBytes(out);
+    }
+
+    @Test
+    void shouldSelectOnlyOverlappingChunk() throws Exception {
+        Path combined = concatenate(first, second, third);
+        RecordingSummary summary = RecordingSummary.read(second);
+
+        RecordingSlice slice =
+                RecordingSlice.read(combined, summary.getStartTime(), summary.getEndTime());
+
+        MatcherAssert.assertThat(slice.getChunkCount(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(slice.getStartTime(), Matchers.equalTo(summary.getStartTime()));
+        MatcherAssert.assertThat(slice.getEndTime(), Matchers.equalTo(summary.getEndTime()));
+        MatcherAssert.assertThat(slice.getLength(), Matchers.equalTo(Files.size(second)));
+        MatcherAssert.assertThat(pipe(slice), Matchers.equalTo(Files.readAllBytes(second)));
+    }
+
+    @Test
+    void shouldSelectAdjacentChunks() throws Exception {
+        Path combined = concatenate(first, second, third);
+
+        RecordingSlice slice =
+                RecordingSlice.read(
+                        combined,
+                        RecordingSummary.read(first).getStartTime(),
+                        RecordingSummary.read(second).getEndTime());
+
+        MatcherAssert.assertThat(slice.getChunkCount(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(
+                slice.getLength(), Matchers.equalTo(Files.size(first) + Files.size(second)));
+        byte[] bytes = pipe(slice);
+        MatcherAssert.assertThat(
+                bytes, Matchers.equalTo(Files.readAllBytes(concatenate(first, second))));
+    }
+
+    @Test
+    void shouldStreamSeparatedChunksAsValidRecording() throws Exception {
+        Path combined = concatenate(second, first, third);
+
+        RecordingSlice slice =
+                RecordingSlice.read(
+                        combined,
+                        RecordingSummary.read(second).getStartTime(),
+                        RecordingSummary.read(third).getEndTime());
+
+        MatcherAssert.assertThat(slice.getChunkCount(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(
+                slice.getLength(), Matchers.equalTo(Files.size(second) + Files.size(third)));
+        Path out = Files.write(tempDir.resolve("out.jfr"), pipe(slice));
+        RecordingSummary summary = RecordingSummary.read(out);
+        MatcherAssert.assertThat(summary.getChunkCount(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(
+                summary.getStartTime(),
+                Matchers.equalTo(RecordingSummary.read(second).getStartTime()));
+    }
+
+    @Test
+    void shouldBeEmptyIfNoChunksOverlap() throws Exception {
+        Path combined = concatenate(first, second);
+        long start = RecordingSummary.read(first).getStartTime();
+
+        RecordingSlice slice = RecordingSlice.read(combined, 0, start - 1);
+
+        MatcherAssert.assertThat(slice.isEmpty(), Matchers.is(true));
+        MatcherAssert.assertThat(slice.getLength(), Matchers.equalTo(0L));
+        MatcherAssert.assertThat(slice.getStartTime(), Matchers.equalTo(0L));
+    }
+
+    @Test
+    void shouldRejectNonRecordingFile() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("not.jfr"), "this is not a recording");
+
+        Assertions.assertThrows(
+                InvalidJfrFileException.class, () -> RecordingSlice.read(file, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    void shouldRejectTruncatedChunk() throws Exception {
+        byte[] bytes = Files.readAllBytes(first);
+        Path truncated = tempDir.resolve("truncated.jfr");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+
+        Assertions.assertThrows(
+                InvalidJfrFileException.class,
+                () -> RecordingSlice.read(truncated, 0, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RecordingStreamsTest {
+
+    Vertx vertx;
+
+    @TempDir Path tempDir;
+
+    @BeforeEach
+    void setup() {
+        vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    void teardown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    Path file(String name, int size, long seed) throws Exception {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return Files.write(tempDir.resolve(name), bytes);
+    }
+
+    AsyncFile open(Path path) throws Exception {
+        return vertx.fileSystem()
+                .open(path.toString(), new OpenOptions())
+                .toCompletionStage()
+                .toCompletableFuture()
+                .get(5, TimeUnit.SECONDS);
+    }
+
+    static void await(Future<Void> future) throws Exception {
+        future.toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shouldConcatenateFilesInOrder() throws Exception {
+        Path first = file("first.jfr", 200_000, 1);
+        Path second = file("second.jfr", 10, 2);
+        Path third = file("third.jfr", 70_000, 3);
+        Path out = tempDir.resolve("out.jfr");
+
+        await(RecordingStreams.concatenate(vertx, List.of(third, first, second), open(out)));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(Files.readAllBytes(third));
+        expected.write(Files.readAllBytes(first));
+        expected.write(Files.readAllBytes(second));
+        MatcherAssert.assertThat(Files.readAllBytes(out), Matchers.equalTo(expected.toByteArray()));
+    }
+
+    @Test
+    void shouldConcatenateRecordingsIntoValidRecording() throws Exception {
+        Path first = RecordingSummaryTest.record(tempDir.resolve("first.jfr"));
+        Path second = RecordingSummaryTest.record(tempDir.resolve("second.jfr"));
+        Path out = tempDir.resolve("out.jfr");
+
+        await(RecordingStreams.concatenate(vertx, List.of(first, second), open(out)));
+
+        MatcherAssert.assertThat(RecordingSummary.read(out).getChunkCount(), Matchers.equalTo(2));
+    }
+
+    @Test
+    void shouldZipFilesAsEntries() throws Exception {
+        Map<String, Path> entries = new LinkedHashMap<>();
+        entries.put("a/first.jfr", file("first.jfr", 200_000, 1));
+        entries.put("b/second.jfr", file("second.jfr", 0, 2));
+        entries.put("b/third.jfr", file("third.jfr", 70_000, 3));
+        Path out = tempDir.resolve("out.zip");
+
+        await(RecordingStreams.zip(vertx, entries, open(out)));
+
+        Map<String, byte[]> unzipped = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(out))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                unzipped.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        MatcherAssert.assertThat(
+                List.copyOf(unzipped.keySet()),
+                Matchers.equalTo(List.of("a/first.jfr", "b/second.jfr", "b/third.jfr")));
+        for (Map.Entry<String, Path> entry : entries.entrySet()) {
+            MatcherAssert.assertThat(
+                    unzipped.get(entry.getKey()),
+                    Matchers.equalTo(Files.readAllBytes(entry.getValue())));
+        }
+    }
+
+    @Test
+    void shouldFailWithoutEndingDestinationIfFileIsMissing() throws Exception {
+        Path first = file("first.jfr", 1_000, 1);
+        Path out = tempDir.resolve("out.jfr");
+        AsyncFile dest = open(out);
+
+        Future<Void> f =
+                RecordingStreams.concatenate(
+                        vertx, List.of(first, tempDir.resolve("missing.jfr")), dest);
+
+        MatcherAssert.assertThat(
+                f.toCompletionStage()
+                        .toCompletableFuture()
+                        .handle((v, t) -> t)
+                        .get(5, TimeUnit.SECONDS),
+                Matchers.notNullValue());
+        await(dest.close());
+        MatcherAssert.assertThat(Files.size(out), Matchers.equalTo(1_000L));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
+
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RecordingSummaryTest {
+
+    @TempDir Path tempDir;
+
+    @Name("io.cryostat.recordings.RecordingSummaryTest.Marker")
+    static class MarkerEvent extends Event {}
+
+    @Name("io.cryostat.recordings.RecordingSummaryTest.Unused")
+    static class UnusedEvent extends Event {}
+
+    static Path record(Path destination) throws Exception {
+        try (Recording recording = new Recording()) {
+            recording.enable(MarkerEvent.class);
+            recording.enable(UnusedEvent.class);
+            recording.start();
+            new MarkerEvent().commit();
+            recording.stop();
+            recording.dump(destination);
+        }
+        return destination;
+    }
+
+    @Test
+    void shouldReadTimeRangeAndEventTypes() throws Exception {
+        long before = System.currentTimeMillis();
+        Path jfr = record(tempDir.resolve("a.jfr"));
+        long after = System.currentTimeMillis();
+
+        RecordingSummary summary = RecordingSummary.read(jfr);
+
+        MatcherAssert.assertThat(summary.getChunkCount(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(summary.getStartTime(), Matchers.greaterThanOrEqualTo(before));
+        MatcherAssert.assertThat(
+                summary.getEndTime(), Matchers.greaterThanOrEqualTo(summary.getStartTime()));
+        MatcherAssert.assertThat(summary.getEndTime(), Matchers.lessThanOrEqualTo(after));
+        MatcherAssert.assertThat(
+                summary.getEventTypes(),
+                Matchers.hasItem("io.cryostat.recordings.RecordingSummaryTest.Marker"));
+        MatcherAssert.assertThat(
+                summary.getEventTypes(),
+                Matchers.not(
+                        Matchers.hasItem("io.cryostat.recordings.RecordingSummaryTest.Unused")));
+    }
+
+    @Test
+    void shouldCountConcatenatedChunks() throws Exception {
+        Path first = record(tempDir.resolve("first.jfr"));
+        Path second = record(tempDir.resolve("second.jfr"));
+        Path combined = tempDir.resolve("combined.jfr");
+        Files.write(combined, Files.readAllBytes(first));
+        Files.write(combined, Files.readAllBytes(second), StandardOpenOption.APPEND);
+
+        RecordingSummary summary = RecordingSummary.read(combined);
+
+        MatcherAssert.assertThat(summary.getChunkCount(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(
+                summary.getStartTime(),
+                Matchers.equalTo(RecordingSummary.read(first).getStartTime()));
+        MatcherAssert.assertThat(
+                summary.getEndTime(), Matchers.equalTo(RecordingSummary.read(second).getEndTime()));
+    }
+
+    @Test
+    void shouldRejectNonRecordingFile() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("not.jfr"), "this is not a recording");
+
+        Assertions.assertThrows(InvalidJfrFileException.class, () -> RecordingSummary.read(file));
+    }
+
+    @Test
+    void shouldRejectEmptyFile() throws Exception {
+        Path file = Files.write(tempDir.resolve("empty.jfr"), new byte[0]);
+
+        Assertions.assertThrows(InvalidJfrFileException.class, () -> RecordingSummary.read(file));
+    }
+
+    @Test
+    void shouldRejectTruncatedRecording() throws Exception {
+        byte[] bytes = Files.readAllBytes(record(tempDir.resolve("a.jfr")));
+        Path truncated =
+                Files.write(
+                        tempDir.resolve("truncated.jfr"), Arrays.copyOf(bytes, bytes.length / 2));
+
+        Assertions.assertThrows(
+                InvalidJfrFileException.class, () -> RecordingSummary.read(truncated));
+    }
+
+    @Test
+    void shouldDetectOverlappingRanges() {
+        RecordingSummary summary = new RecordingSummary(100, 200, 1, Set.of());
+
+        MatcherAssert.assertThat(summary.overlaps(0, 99), Matchers.is(false));
+        MatcherAssert.assertThat(summary.overlaps(0, 100), Matchers.is(true));
+        MatcherAssert.assertThat(summary.overlaps(150, 160), Matchers.is(true));
+        MatcherAssert.assertThat(summary.overlaps(200, 300), Matchers.is(true));
+        MatcherAssert.assertThat(summary.overlaps(201, 300), Matchers.is(false));
+    }
+}
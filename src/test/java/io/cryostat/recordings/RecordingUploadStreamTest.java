@@ -0,0 +1,277 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.cryostat.core.sys.Clock;
+import io.cryostat.core.sys.FileSystem;
+import io.cryostat.messaging.notifications.Notification;
+import io.cryostat.messaging.notifications.NotificationFactory;
+import io.cryostat.net.TargetConnectionManager;
+import io.cryostat.net.web.WebServer;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.platform.PlatformClient;
+import io.cryostat.recordings.RecordingMetadataManager.Metadata;
+import io.cryostat.rules.ArchivedRecordingInfo;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import org.apache.commons.codec.binary.Base32;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RecordingUploadStreamTest {
+
+    static final String BASENAME = "localhost_test_20191219T213834Z";
+    static final String CONNECT_URL = "service:jmx:rmi:///jndi/rmi://localhost:9091/jmxrmi";
+    static final int MAX_FILES = 10;
+
+    RecordingArchiveHelper helper;
+    Vertx vertx;
+    @Mock WebServer webServer;
+    @Mock TargetConnectionManager targetConnectionManager;
+    @Mock RecordingMetadataManager recordingMetadataManager;
+    @Mock Clock clock;
+    @Mock PlatformClient platformClient;
+    @Mock NotificationFactory notificationFactory;
+    @Mock JvmIdHelper jvmIdHelper;
+    @Mock ArchiveWritePipeline archiveWritePipeline;
+    @Mock ArchiveIndex archiveIndex;
+    @Mock Notification notification;
+    @Mock Notification.OwnedResourceBuilder notificationBuilder;
+    @TempDir Path archivePath;
+    @TempDir Path scratch;
+
+    @BeforeEach
+    void setup() throws Exception {
+        Files.createDirectory(
+                archivePath.resolve(RecordingArchiveHelper.TEMP_UPLOADS_SUBDIRECTORY));
+        Mockito.lenient()
+                .when(
+                        notificationFactory.createOwnedResourceBuilder(
+                                Mockito.anyString(), Mockito.anyString()))
+                .thenReturn(notificationBuilder);
+        Mockito.lenient()
+                .when(notificationBuilder.messageEntry(Mockito.anyString(), Mockito.any()))
+                .thenReturn(notificationBuilder);
+        Mockito.lenient().when(notificationBuilder.build()).thenReturn(notification);
+        this.vertx = Vertx.vertx();
+        this.helper =
+                new RecordingArchiveHelper(
+                        new FileSystem(),
+                        () -> webServer,
+                        archivePath,
+                        scratch,
+                        targetConnectionManager,
+                        recordingMetadataManager,
+                        clock,
+                        platformClient,
+                        notificationFactory,
+                        jvmIdHelper,
+                        vertx,
+                        archiveWritePipeline,
+                        archiveIndex,
+                        new Base32(),
+                        Mockito.mock(ArchiveMigrationJournal.class),
+                        1);
+    }
+
+    @AfterEach
+    void teardown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shouldDigestAndSaveStreamedRecording() throws Exception {
+        byte[] bytes = Files.readAllBytes(RecordingSummaryTest.record(scratch.resolve("a.jfr")));
+        RecordingUploadStream stream = open(0);
+
+        // small, unaligned writes exercise every parser state across buffer boundaries
+        for (int i = 0; i < bytes.length; i += 97) {
+            await(
+                    stream.write(
+                            Buffer.buffer(
+                                    Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + 97)))));
+        }
+        await(stream.end());
+
+        MatcherAssert.assertThat(stream.getBytesWritten(), Matchers.equalTo((long) bytes.length));
+        MatcherAssert.assertThat(
+                stream.getSha256(),
+                Matchers.equalTo(
+                        HexFormat.of()
+                                .formatHex(MessageDigest.getInstance("SHA-256").digest(bytes))));
+
+        String name = save(stream, "subdir", 0);
+
+        Path dest = archivePath.resolve("subdir").resolve(name);
+        MatcherAssert.assertThat(name, Matchers.equalTo(BASENAME + ".jfr"));
+        MatcherAssert.assertThat(Files.readAllBytes(dest), Matchers.equalTo(bytes));
+        MatcherAssert.assertThat(Files.exists(stream.getPath()), Matchers.is(false));
+        MatcherAssert.assertThat(
+                Files.readString(archivePath.resolve("subdir").resolve("connectUrl")),
+                Matchers.equalTo(CONNECT_URL));
+        ArgumentCaptor<RecordingSummary> summary = ArgumentCaptor.forClass(RecordingSummary.class);
+        Mockito.verify(archiveIndex).add(Mockito.eq(dest), summary.capture());
+        MatcherAssert.assertThat(summary.getValue().getChunkCount(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(
+                summary.getValue().getEventTypes(),
+                Matchers.hasItem("io.cryostat.recordings.RecordingSummaryTest.Marker"));
+
+        ArgumentCaptor<ArchivedRecordingInfo> info =
+                ArgumentCaptor.forClass(ArchivedRecordingInfo.class);
+        Mockito.verify(notificationFactory)
+                .createOwnedResourceBuilder(CONNECT_URL, "ArchivedRecordingCreated");
+        Mockito.verify(notificationBuilder).messageEntry(Mockito.eq("recording"), info.capture());
+        Mockito.verify(notification).send();
+        MatcherAssert.assertThat(info.getValue().getName(), Matchers.equalTo(name));
+        MatcherAssert.assertThat(info.getValue().getSize(), Matchers.equalTo((long) bytes.length));
+        MatcherAssert.assertThat(
+                info.getValue().getArchivedTime(),
+                Matchers.equalTo(Instant.parse("2019-12-19T21:38:34.00Z").toEpochMilli()));
+        Mockito.verifyNoInteractions(recordingMetadataManager);
+    }
+
+    @Test
+    void shouldApplyUploadedLabelsOnSave() throws Exception {
+        byte[] bytes = Files.readAllBytes(RecordingSummaryTest.record(scratch.resolve("a.jfr")));
+        Metadata metadata = new Metadata(Map.of("key", "value"));
+        Mockito.when(
+                        recordingMetadataManager.setRecordingMetadataFromPath(
+                                "subdir", BASENAME + ".jfr", metadata))
+                .thenReturn(CompletableFuture.completedFuture(metadata));
+        RecordingUploadStream stream = open(0);
+        await(stream.write(Buffer.buffer(bytes)));
+        await(stream.end());
+
+        Promise<String> promise = Promise.promise();
+        helper.saveUploadStream(
+                "subdir", BASENAME, 0, stream, CONNECT_URL, MAX_FILES, metadata, promise);
+        await(promise.future());
+
+        ArgumentCaptor<ArchivedRecordingInfo> info =
+                ArgumentCaptor.forClass(ArchivedRecordingInfo.class);
+        Mockito.verify(notificationBuilder).messageEntry(Mockito.eq("recording"), info.capture());
+        MatcherAssert.assertThat(info.getValue().getMetadata(), Matchers.equalTo(metadata));
+    }
+
+    @Test
+    void shouldReserveNextFreeNameOnCollision() throws Exception {
+        byte[] bytes = Files.readAllBytes(RecordingSummaryTest.record(scratch.resolve("a.jfr")));
+        Path subdir = Files.createDirectory(archivePath.resolve("subdir"));
+        Files.writeString(subdir.resolve(BASENAME + ".jfr"), "existing");
+        Files.writeString(subdir.resolve(BASENAME + ".2.jfr"), "existing");
+        RecordingUploadStream stream = open(0);
+        await(stream.write(Buffer.buffer(bytes)));
+        await(stream.end());
+
+        String name = save(stream, "subdir", 0);
+
+        MatcherAssert.assertThat(name, Matchers.equalTo(BASENAME + ".3.jfr"));
+        MatcherAssert.assertThat(Files.readAllBytes(subdir.resolve(name)), Matchers.equalTo(bytes));
+        MatcherAssert.assertThat(
+                Files.readString(subdir.resolve(BASENAME + ".jfr")), Matchers.equalTo("existing"));
+    }
+
+    @Test
+    void shouldRejectNonRecordingOnFirstWrite() throws Exception {
+        RecordingUploadStream stream = open(0);
+
+        ApiException ex =
+                awaitFailure(
+                        stream.write(
+                                Buffer.buffer(
+                                        "this is not a recording"
+                                                .getBytes(StandardCharsets.UTF_8))));
+
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        MatcherAssert.assertThat(awaitFailure(stream.end()), Matchers.sameInstance(ex));
+        MatcherAssert.assertThat(Files.size(stream.getPath()), Matchers.equalTo(0L));
+    }
+
+    @Test
+    void shouldRejectUploadExceedingMaxBytes() throws Exception {
+        byte[] bytes = Files.readAllBytes(RecordingSummaryTest.record(scratch.resolve("a.jfr")));
+        RecordingUploadStream stream = open(100);
+
+        await(stream.write(Buffer.buffer(Arrays.copyOf(bytes, 100))));
+        ApiException ex =
+                awaitFailure(stream.write(Buffer.buffer(Arrays.copyOfRange(bytes, 100, 101))));
+
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(413));
+        MatcherAssert.assertThat(stream.getBytesWritten(), Matchers.equalTo(100L));
+    }
+
+    @Test
+    void shouldRejectTruncatedRecordingOnEnd() throws Exception {
+        byte[] bytes = Files.readAllBytes(RecordingSummaryTest.record(scratch.resolve("a.jfr")));
+        RecordingUploadStream stream = open(0);
+
+        await(stream.write(Buffer.buffer(Arrays.copyOf(bytes, bytes.length / 2))));
+        ApiException ex = awaitFailure(stream.end());
+
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+    }
+
+    RecordingUploadStream open(long maxBytes) throws Exception {
+        Promise<RecordingUploadStream> promise = Promise.promise();
+        helper.openUploadStream(maxBytes, promise);
+        return await(promise.future());
+    }
+
+    String save(RecordingUploadStream stream, String subdirectoryName, int counter)
+            throws Exception {
+        Promise<String> promise = Promise.promise();
+        helper.saveUploadStream(
+                subdirectoryName, BASENAME, counter, stream, CONNECT_URL, MAX_FILES, null, promise);
+        return await(promise.future());
+    }
+
+    static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    static ApiException awaitFailure(Future<?> future) {
+        ExecutionException ex =
+                Assertions.assertThrows(ExecutionException.class, () -> await(future));
+        MatcherAssert.assertThat(ex.getCause(), Matchers.instanceOf(ApiException.class));
+        return (ApiException) ex.getCause();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import io.cryostat.storage.DatabaseExecutor;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+
+/**
+ * Measures the throughput of {@link StoredRecordingLabelsDao} with connection pools of different
+ * sizes. Eight threads run a 90/10 mix of {@code findByJvmId} and {@code put}. A pool of one
+ * connection allows at most one operation in flight, like the single shared EntityManager it
+ * replaced. Skipped by default; run with {@code mvn test
+ * -Dtest=StoredRecordingLabelsDaoBenchmarkTest -Dcryostat.benchmark=true}.
+ *
+ * <p>Runs against an in-memory H2 database unless {@code cryostat.benchmark.jdbc.url} is set, along
+ * with {@code cryostat.benchmark.jdbc.driver}, {@code cryostat.benchmark.jdbc.username}, {@code
+ * cryostat.benchmark.jdbc.password}, and {@code cryostat.benchmark.hibernate.dialect}, ex. to point
+ * it at a PostgreSQL server. The {@code StoredRecordingLabels} table is recreated by each run.
+ */
+@EnabledIfSystemProperty(named = "cryostat.benchmark", matches = "true")
+class StoredRecordingLabelsDaoBenchmarkTest {
+
+    static final int THREADS = 8;
+    static final int JVMS = 100;
+    static final int RECORDINGS_PER_JVM = 10;
+    static final long WARMUP_MS = 5_000;
+    static final long MEASURED_MS = 10_000;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 8})
+    void mixedReadsAndWrites(int poolSize) throws Exception {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("benchmark");
+        config.setDriverClassName(
+                System.getProperty("cryostat.benchmark.jdbc.driver", "org.h2.Driver"));
+        config.setJdbcUrl(
+                System.getProperty(
+                        "cryostat.benchmark.jdbc.url",
+                        "jdbc:h2:mem:" + getClass().getSimpleName() + ";DB_CLOSE_DELAY=-1"));
+        config.setUsername(System.getProperty("cryostat.benchmark.jdbc.username", "cryostat"));
+        config.setPassword(System.getProperty("cryostat.benchmark.jdbc.password", ""));
+        config.setMaximumPoolSize(poolSize);
+        Properties properties = new Properties();
+        try (HikariDataSource dataSource = new HikariDataSource(config)) {
+            properties.put("hibernate.connection.datasource", dataSource);
+            properties.put(
+                    "hibernate.dialect",
+                    System.getProperty(
+                            "cryostat.benchmark.hibernate.dialect",
+                            "org.hibernate.dialect.H2Dialect"));
+            properties.put("hibernate.hbm2ddl.auto", "create-drop");
+            EntityManagerFactory emf =
+                    Persistence.createEntityManagerFactory("io.cryostat", properties);
+            try {
+                StoredRecordingLabelsDao dao =
+                        new StoredRecordingLabelsDao(emf, Mockito.mock(DatabaseExecutor.class));
+                for (int jvm = 0; jvm < JVMS; jvm++) {
+                    for (int recording = 0; recording < RECORDINGS_PER_JVM; recording++) {
+                        dao.put(
+                                "target-" + jvm,
+                                "jvm-" + jvm,
+                                "recording-" + recording,
+                                Map.of("env", "prod"));
+                    }
+                }
+
+                run(dao, WARMUP_MS);
+                long ops = run(dao, MEASURED_MS);
+
+                System.out.printf(
+                        "StoredRecordingLabelsDao %s, pool of %d: %.0f ops/s%n",
+                        config.getJdbcUrl(), poolSize, ops * 1000.0 / MEASURED_MS);
+                MatcherAssert.assertThat(ops, Matchers.greaterThan(0L));
+            } finally {
+                emf.close();
+            }
+        }
+    }
+
+    private static long run(StoredRecordingLabelsDao dao, long durationMs) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            long[] deadline = new long[1];
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    start.await();
+                                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                                    long ops = 0;
+                                    while (System.nanoTime() < deadline[0]) {
+                                        int jvm = random.nextInt(JVMS);
+                                        if (random.nextInt(10) == 0) {
+                                            dao.put(
+                                                    "target-" + jvm,
+                                                    "jvm-" + jvm,
+                                                    "recording-"
+                                                            + random.nextInt(RECORDINGS_PER_JVM),
+                                                    Map.of(
+                                                            "env",
+                                                            "qa",
+                                                            "run",
+                                                            String.valueOf(ops)));
+                                        } else {
+                                            dao.findByJvmId("jvm-" + jvm);
+                                        }
+                                        ops++;
+                                    }
+                                    return ops;
+                                }));
+            }
+            deadline[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMs);
+            start.countDown();
+            long total = 0;
+            for (Future<Long> future : futures) {
+                total += future.get();
+            }
+            return total;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import io.cryostat.storage.DatabaseExecutor;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class StoredRecordingLabelsDaoTest {
+
+    EntityManagerFactory emf;
+    StoredRecordingLabelsDao dao;
+
+    @BeforeEach
+    void setup() {
+        Properties properties = new Properties();
+        properties.put("jakarta.persistence.jdbc.driver", "org.h2.Driver");
+        properties.put(
+                "jakarta.persistence.jdbc.url",
+                "jdbc:h2:mem:" + getClass().getSimpleName() + ";DB_CLOSE_DELAY=-1");
+        properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.put("hibernate.hbm2ddl.auto", "create-drop");
+        emf = Persistence.createEntityManagerFactory("io.cryostat", properties);
+        dao = new StoredRecordingLabelsDao(emf, Mockito.mock(DatabaseExecutor.class));
+
+        dao.put("target", "jvm", "a", Map.of("env", "prod", "tier", "frontend"));
+        dao.put("target", "jvm", "b", Map.of("env", "qa", "tier", "backend"));
+        dao.put("target", "jvm", "c", Map.of("env", "prod"));
+        dao.put("target", "jvm", "d", Map.of());
+        dao.put("other", "otherJvm", "e", Map.of("env", "prod"));
+    }
+
+    @AfterEach
+    void teardown() {
+        emf.close();
+    }
+
+    @Test
+    void shouldReplaceLabels() {
+        dao.put("target", "jvm", "a", Map.of("env", "qa"));
+
+        MatcherAssert.assertThat(
+                dao.find("jvm", "a").get().getLabels(), Matchers.equalTo(Map.of("env", "qa")));
+        MatcherAssert.assertThat(dao.getAll(), Matchers.hasSize(5));
+    }
+
+    @Test
+    void shouldRemoveLabels() {
+        MatcherAssert.assertThat(
+                dao.remove("jvm", "a").get().getLabels(),
+                Matchers.equalTo(Map.of("env", "prod", "tier", "frontend")));
+        MatcherAssert.assertThat(dao.find("jvm", "a").isPresent(), Matchers.is(false));
+        MatcherAssert.assertThat(dao.remove("jvm", "a").isPresent(), Matchers.is(false));
+    }
+
+    @Test
+    void shouldReassignJvmId() {
+        dao.put("target", "newJvm", "a", Map.of("stale", "true"));
+
+        MatcherAssert.assertThat(dao.reassign("jvm", "newJvm", "newTarget"), Matchers.is(4));
+
+        MatcherAssert.assertThat(dao.findByJvmId("jvm"), Matchers.empty());
+        MatcherAssert.assertThat(dao.findByJvmId("newJvm"), Matchers.hasSize(4));
+        StoredRecordingLabels a = dao.find("newJvm", "a").get();
+        MatcherAssert.assertThat(
+                a.getLabels(), Matchers.equalTo(Map.of("env", "prod", "tier", "frontend")));
+        MatcherAssert.assertThat(a.getTargetId(), Matchers.equalTo("newTarget"));
+    }
+
+    @Test
+    void shouldLoadAndDeleteInBatches() {
+        List<Integer> ids =
+                List.of(dao.find("jvm", "a").get().getId(), dao.find("jvm", "b").get().getId());
+
+        MatcherAssert.assertThat(
+                dao.getAllByIds(List.of(ids.get(0), ids.get(1), -1)).stream()
+                        .map(StoredRecordingLabels::getRecordingName)
+                        .toList(),
+                Matchers.containsInAnyOrder("a", "b"));
+
+        MatcherAssert.assertThat(
+                dao.deleteAll(List.of(ids.get(0), ids.get(1), -1)), Matchers.is(2));
+        MatcherAssert.assertThat(dao.getAllByIds(ids), Matchers.empty());
+        MatcherAssert.assertThat(dao.getAll(), Matchers.hasSize(3));
+    }
+
+    @Test
+    void shouldHandleConcurrentOperations() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String jvmId = "concurrentJvm" + i;
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    for (int j = 0; j < 10; j++) {
+                                        dao.put("target", jvmId, "r" + j, Map.of("n", "" + j));
+                                        MatcherAssert.assertThat(
+                                                dao.find(jvmId, "r" + j).isPresent(),
+                                                Matchers.is(true));
+                                        dao.find("jvm", "a");
+                                    }
+                                    return null;
+                                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < 8; i++) {
+            MatcherAssert.assertThat(dao.findByJvmId("concurrentJvm" + i), Matchers.hasSize(10));
+        }
+        MatcherAssert.assertThat(dao.getAll(), Matchers.hasSize(5 + 8 * 10));
+    }
+}
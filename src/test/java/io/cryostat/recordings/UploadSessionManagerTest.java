@@ -0,0 +1,315 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.cryostat.core.sys.Clock;
+import io.cryostat.net.web.http.api.v2.ApiException;
+import io.cryostat.recordings.UploadSessionManager.Session;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class UploadSessionManagerTest {
+
+    static final String JVM_ID = "someJvmId";
+    static final String SUBDIRECTORY = "someSubdirectory";
+    static final String CONNECT_URL = "service:jmx:rmi:///jndi/rmi://localhost:9091/jmxrmi";
+    static final String BASENAME = "localhost_test_20191219T213834Z";
+    static final Duration TTL = Duration.ofMinutes(15);
+
+    UploadSessionManager manager;
+    Vertx vertx;
+    AtomicLong now = new AtomicLong(1_000_000);
+    @Mock RecordingArchiveHelper recordingArchiveHelper;
+    @Mock Clock clock;
+    @TempDir Path uploadsPath;
+    @TempDir Path scratch;
+    byte[] recording;
+
+    @BeforeEach
+    void setup() throws Exception {
+        Mockito.lenient()
+                .when(clock.now())
+                .thenAnswer(invocation -> Instant.ofEpochMilli(now.get()));
+        this.vertx = Vertx.vertx();
+        this.recording =
+                Files.readAllBytes(RecordingSummaryTest.record(scratch.resolve("recording.jfr")));
+    }
+
+    @AfterEach
+    void teardown() throws Exception {
+        await(vertx.close());
+    }
+
+    void deploy(long maxBytes) throws Exception {
+        this.manager =
+                new UploadSessionManager(
+                        recordingArchiveHelper, clock, uploadsPath, maxBytes, TTL, 2);
+        await(vertx.deployVerticle(manager));
+    }
+
+    @Test
+    void shouldAssemblePartsInPlaceAndCommit() throws Exception {
+        deploy(0);
+        Session session = create(JVM_ID);
+        int split = recording.length / 3;
+
+        Session progress = write(session, 1, 0, Arrays.copyOf(recording, split));
+        MatcherAssert.assertThat(progress.getNextPart(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(progress.getOffset(), Matchers.equalTo((long) split));
+        write(session, 2, split, Arrays.copyOfRange(recording, split, recording.length));
+
+        AtomicReference<RecordingUploadStream> committed = new AtomicReference<>();
+        Mockito.doAnswer(
+                        invocation -> {
+                            committed.set(invocation.getArgument(3));
+                            Handler<AsyncResult<String>> handler = invocation.getArgument(7);
+                            handler.handle(Future.succeededFuture(BASENAME + ".jfr"));
+                            return null;
+                        })
+                .when(recordingArchiveHelper)
+                .saveUploadStream(
+                        Mockito.eq(SUBDIRECTORY),
+                        Mockito.eq(BASENAME),
+                        Mockito.eq(0),
+                        Mockito.any(),
+                        Mockito.eq(CONNECT_URL),
+                        Mockito.eq(5),
+                        Mockito.isNull(),
+                        Mockito.any());
+
+        String name = await(manager.commit(JVM_ID, session.getId(), 5));
+
+        MatcherAssert.assertThat(name, Matchers.equalTo(BASENAME + ".jfr"));
+        RecordingUploadStream upload = committed.get();
+        MatcherAssert.assertThat(Files.readAllBytes(upload.getPath()), Matchers.equalTo(recording));
+        MatcherAssert.assertThat(
+                session.getSha256(),
+                Matchers.equalTo(
+                        HexFormat.of()
+                                .formatHex(
+                                        MessageDigest.getInstance("SHA-256").digest(recording))));
+        MatcherAssert.assertThat(upload.summarize().getChunkCount(), Matchers.equalTo(1));
+        ApiException ex =
+                Assertions.assertThrows(
+                        ApiException.class, () -> manager.get(JVM_ID, session.getId()));
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(404));
+    }
+
+    @Test
+    void shouldRejectOutOfSequenceParts() throws Exception {
+        deploy(0);
+        Session session = create(JVM_ID);
+        write(session, 1, 0, Arrays.copyOf(recording, 100));
+
+        ApiException wrongPart = awaitFailure(writeAsync(session, 3, 100, new byte[10]));
+        ApiException wrongOffset = awaitFailure(writeAsync(session, 2, 50, new byte[10]));
+        ApiException repeated = awaitFailure(writeAsync(session, 1, 0, new byte[10]));
+
+        MatcherAssert.assertThat(wrongPart.getStatusCode(), Matchers.equalTo(409));
+        MatcherAssert.assertThat(wrongOffset.getStatusCode(), Matchers.equalTo(409));
+        MatcherAssert.assertThat(repeated.getStatusCode(), Matchers.equalTo(409));
+        MatcherAssert.assertThat(session.getOffset(), Matchers.equalTo(100L));
+        MatcherAssert.assertThat(Files.size(sessionFile(session)), Matchers.equalTo(100L));
+    }
+
+    @Test
+    void shouldTruncateFailedPartSoThatItCanBeRetried() throws Exception {
+        deploy(recording.length);
+        Session session = create(JVM_ID);
+        int split = recording.length / 2;
+        write(session, 1, 0, Arrays.copyOf(recording, split));
+
+        byte[] oversized = Arrays.copyOfRange(recording, split, recording.length + 1);
+        ApiException ex = awaitFailure(writeAsync(session, 2, split, oversized));
+
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(413));
+        MatcherAssert.assertThat(session.getOffset(), Matchers.equalTo((long) split));
+        MatcherAssert.assertThat(Files.size(sessionFile(session)), Matchers.equalTo((long) split));
+
+        write(session, 2, split, Arrays.copyOfRange(recording, split, recording.length));
+        MatcherAssert.assertThat(
+                Files.readAllBytes(sessionFile(session)), Matchers.equalTo(recording));
+    }
+
+    @Test
+    void shouldRejectNonRecordingPart() throws Exception {
+        deploy(0);
+        Session session = create(JVM_ID);
+
+        ApiException ex =
+                awaitFailure(
+                        writeAsync(
+                                session, 1, 0, "not a recording".getBytes(StandardCharsets.UTF_8)));
+
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        MatcherAssert.assertThat(session.getNextPart(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(Files.size(sessionFile(session)), Matchers.equalTo(0L));
+    }
+
+    @Test
+    void shouldNotCommitIncompleteRecording() throws Exception {
+        deploy(0);
+        Session session = create(JVM_ID);
+        write(session, 1, 0, Arrays.copyOf(recording, recording.length / 2));
+
+        ApiException ex = awaitFailure(manager.commit(JVM_ID, session.getId(), 5));
+
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(400));
+        MatcherAssert.assertThat(
+                manager.get(JVM_ID, session.getId()), Matchers.sameInstance(session));
+        Mockito.verifyNoInteractions(recordingArchiveHelper);
+    }
+
+    @Test
+    void shouldThrottleSessionsPerJvm() throws Exception {
+        deploy(0);
+        create(JVM_ID);
+        Session second = create(JVM_ID);
+
+        ApiException ex =
+                awaitFailure(manager.create(JVM_ID, SUBDIRECTORY, CONNECT_URL, BASENAME, 0, null));
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(429));
+
+        create("anotherJvmId");
+        await(manager.abort(JVM_ID, second.getId()));
+        create(JVM_ID);
+    }
+
+    @Test
+    void shouldNotFindSessionOfAnotherJvm() throws Exception {
+        deploy(0);
+        Session session = create(JVM_ID);
+
+        ApiException ex =
+                Assertions.assertThrows(
+                        ApiException.class, () -> manager.get("anotherJvmId", session.getId()));
+        MatcherAssert.assertThat(ex.getStatusCode(), Matchers.equalTo(404));
+    }
+
+    @Test
+    void shouldDeleteAbortedSession() throws Exception {
+        deploy(0);
+        Session session = create(JVM_ID);
+        write(session, 1, 0, Arrays.copyOf(recording, 100));
+        Path file = sessionFile(session);
+
+        await(manager.abort(JVM_ID, session.getId()));
+
+        MatcherAssert.assertThat(Files.exists(file), Matchers.is(false));
+        Assertions.assertThrows(ApiException.class, () -> manager.get(JVM_ID, session.getId()));
+    }
+
+    @Test
+    void shouldExpireIdleSessions() throws Exception {
+        deploy(0);
+        Session idle = create(JVM_ID);
+        now.addAndGet(TTL.toMillis() / 2);
+        Session active = create(JVM_ID);
+        write(active, 1, 0, Arrays.copyOf(recording, 100));
+
+        now.addAndGet(TTL.toMillis() / 2);
+        manager.expireSessions();
+
+        Assertions.assertThrows(ApiException.class, () -> manager.get(JVM_ID, idle.getId()));
+        MatcherAssert.assertThat(
+                manager.get(JVM_ID, active.getId()), Matchers.sameInstance(active));
+        awaitDeleted(sessionFile(idle));
+    }
+
+    @Test
+    void shouldDeleteStaleUploadsOnStart() throws Exception {
+        Path stale = Files.writeString(uploadsPath.resolve("stale"), "partial");
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(now.get() - TTL.toMillis() - 1));
+        Path fresh = Files.writeString(uploadsPath.resolve("fresh"), "partial");
+        Files.setLastModifiedTime(fresh, FileTime.fromMillis(now.get()));
+
+        deploy(0);
+
+        MatcherAssert.assertThat(Files.exists(stale), Matchers.is(false));
+        MatcherAssert.assertThat(Files.exists(fresh), Matchers.is(true));
+    }
+
+    Session create(String jvmId) throws Exception {
+        return await(manager.create(jvmId, SUBDIRECTORY, CONNECT_URL, BASENAME, 0, null));
+    }
+
+    Session write(Session session, int part, long offset, byte[] bytes) throws Exception {
+        return await(writeAsync(session, part, offset, bytes));
+    }
+
+    Future<Session> writeAsync(Session session, int part, long offset, byte[] bytes)
+            throws Exception {
+        Path source = Files.createTempFile(scratch, "part", null);
+        Files.write(source, bytes);
+        AsyncFile body =
+                await(vertx.fileSystem().open(source.toString(), new OpenOptions().setRead(true)));
+        return manager.write(JVM_ID, session.getId(), part, offset, body);
+    }
+
+    Path sessionFile(Session session) {
+        return uploadsPath.resolve(session.getId());
+    }
+
+    static void awaitDeleted(Path file) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (Files.exists(file) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        MatcherAssert.assertThat(Files.exists(file), Matchers.is(false));
+    }
+
+    static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    static ApiException awaitFailure(Future<?> future) {
+        ExecutionException ex =
+                Assertions.assertThrows(ExecutionException.class, () -> await(future));
+        MatcherAssert.assertThat(ex.getCause(), Matchers.instanceOf(ApiException.class));
+        return (ApiException) ex.getCause();
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.cryostat.core.sys.Clock;
+import io.cryostat.rules.ArchivalScheduler.OverrunPolicy;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ArchivalSchedulerTest {
+
+    @Mock ScheduledExecutorService ticker;
+    @Mock ExecutorService workers;
+    @Mock Clock clock;
+    @Mock Rule rule;
+    @Mock Rule otherRule;
+
+    long nowMillis;
+    List<Runnable> workQueue;
+
+    @BeforeEach
+    void setup() {
+        this.nowMillis = 1_000_000;
+        this.workQueue = new ArrayList<>();
+        Mockito.lenient()
+                .when(clock.getMonotonicTime())
+                .thenAnswer(invocation -> TimeUnit.MILLISECONDS.toNanos(nowMillis));
+        Mockito.lenient()
+                .doAnswer(invocation -> workQueue.add(invocation.getArgument(0)))
+                .when(workers)
+                .execute(Mockito.any());
+        Mockito.lenient().when(rule.getName()).thenReturn("rule");
+        Mockito.lenient().when(otherRule.getName()).thenReturn("other");
+    }
+
+    ArchivalScheduler scheduler(int jitterPercent, int max, int maxPerRule, OverrunPolicy p) {
+        return new ArchivalScheduler(ticker, workers, clock, jitterPercent, max, maxPerRule, p);
+    }
+
+    void advanceSeconds(ArchivalScheduler scheduler, int seconds) {
+        for (int i = 0; i < seconds; i++) {
+            nowMillis += ArchivalScheduler.TICK_MILLIS;
+            scheduler.tick();
+        }
+    }
+
+    void runQueued() {
+        List<Runnable> queued = new ArrayList<>(workQueue);
+        workQueue.clear();
+        queued.forEach(Runnable::run);
+    }
+
+    @Test
+    void shouldTickOnceStarted() {
+        ArchivalScheduler scheduler = scheduler(0, 1, 1, OverrunPolicy.SKIP);
+        scheduler.start();
+
+        Mockito.verify(ticker)
+                .scheduleAtFixedRate(
+                        Mockito.any(),
+                        Mockito.eq(ArchivalScheduler.TICK_MILLIS),
+                        Mockito.eq(ArchivalScheduler.TICK_MILLIS),
+                        Mockito.eq(TimeUnit.MILLISECONDS));
+        scheduler.stop();
+    }
+
+    @Test
+    void shouldShutDownExecutorsWhenStopped() {
+        ArchivalScheduler scheduler = scheduler(0, 1, 1, OverrunPolicy.SKIP);
+        Mockito.doReturn(Mockito.mock(ScheduledFuture.class))
+                .when(ticker)
+                .scheduleAtFixedRate(
+                        Mockito.any(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+        scheduler.start();
+
+        scheduler.stop();
+
+        Mockito.verify(ticker).shutdown();
+        Mockito.verify(workers).shutdown();
+        Mockito.when(ticker.isShutdown()).thenReturn(true);
+        Assertions.assertThrows(IllegalStateException.class, scheduler::start);
+    }
+
+    @Test
+    void shouldRunAtInitialDelayThenEachPeriod() {
+        ArchivalScheduler scheduler = scheduler(0, 4, 4, OverrunPolicy.SKIP);
+        AtomicInteger count = new AtomicInteger();
+        scheduler.schedule("jvm", rule, count::incrementAndGet, 5, 10);
+
+        advanceSeconds(scheduler, 4);
+        runQueued();
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(0));
+
+        advanceSeconds(scheduler, 1);
+        runQueued();
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(1));
+
+        advanceSeconds(scheduler, 9);
+        runQueued();
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(1));
+
+        advanceSeconds(scheduler, 1);
+        runQueued();
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(scheduler.getRuns(), Matchers.equalTo(2L));
+    }
+
+    @Test
+    void shouldRunPeriodsLongerThanTheWheel() {
+        ArchivalScheduler scheduler = scheduler(0, 4, 4, OverrunPolicy.SKIP);
+        AtomicInteger count = new AtomicInteger();
+        int period = ArchivalScheduler.WHEEL_SIZE * 2 + 3;
+        scheduler.schedule("jvm", rule, count::incrementAndGet, period, period);
+
+        advanceSeconds(scheduler, period - 1);
+        runQueued();
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(0));
+
+        advanceSeconds(scheduler, 1);
+        runQueued();
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(1));
+    }
+
+    @Test
+    void shouldSpreadFirstRunsAcrossPeriod() {
+        ArchivalScheduler scheduler = scheduler(100, 1000, 1000, OverrunPolicy.SKIP);
+        int targets = 200;
+        int period = 60;
+        List<Integer> firstRuns = new ArrayList<>();
+        int[] second = new int[1];
+        for (int i = 0; i < targets; i++) {
+            scheduler.schedule("jvm-" + i, rule, () -> firstRuns.add(second[0]), 0, period);
+        }
+
+        for (second[0] = 1; second[0] < period; second[0]++) {
+            advanceSeconds(scheduler, 1);
+            runQueued();
+        }
+
+        MatcherAssert.assertThat(firstRuns, Matchers.hasSize(targets));
+        long distinctSeconds = firstRuns.stream().distinct().count();
+        MatcherAssert.assertThat(distinctSeconds, Matchers.greaterThan(period / 2L));
+    }
+
+    @Test
+    void shouldNotSpreadWithoutJitter() {
+        ArchivalScheduler scheduler = scheduler(0, 1000, 1000, OverrunPolicy.SKIP);
+        AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 50; i++) {
+            scheduler.schedule("jvm-" + i, rule, count::incrementAndGet, 3, 60);
+        }
+
+        advanceSeconds(scheduler, 3);
+
+        MatcherAssert.assertThat(workQueue, Matchers.hasSize(50));
+    }
+
+    @Test
+    void shouldLimitGlobalConcurrency() {
+        ArchivalScheduler scheduler = scheduler(0, 2, 10, OverrunPolicy.SKIP);
+        for (int i = 0; i < 5; i++) {
+            scheduler.schedule("jvm-" + i, i % 2 == 0 ? rule : otherRule, () -> {}, 1, 60);
+        }
+
+        advanceSeconds(scheduler, 1);
+        MatcherAssert.assertThat(workQueue, Matchers.hasSize(2));
+        MatcherAssert.assertThat(scheduler.getRunning(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(scheduler.getWaiting(), Matchers.equalTo(3));
+
+        runQueued();
+        MatcherAssert.assertThat(workQueue, Matchers.hasSize(2));
+        runQueued();
+        runQueued();
+        MatcherAssert.assertThat(scheduler.getRunning(), Matchers.equalTo(0));
+        MatcherAssert.assertThat(scheduler.getRuns(), Matchers.equalTo(5L));
+    }
+
+    @Test
+    void shouldLimitPerRuleConcurrency() {
+        ArchivalScheduler scheduler = scheduler(0, 10, 1, OverrunPolicy.SKIP);
+        scheduler.schedule("jvm-1", rule, () -> {}, 1, 60);
+        scheduler.schedule("jvm-2", rule, () -> {}, 1, 60);
+        scheduler.schedule("jvm-3", otherRule, () -> {}, 1, 60);
+
+        advanceSeconds(scheduler, 1);
+
+        MatcherAssert.assertThat(workQueue, Matchers.hasSize(2));
+        MatcherAssert.assertThat(scheduler.getWaiting(), Matchers.equalTo(1));
+        runQueued();
+        MatcherAssert.assertThat(workQueue, Matchers.hasSize(1));
+    }
+
+    @Test
+    void shouldSkipOverrunningRuns() {
+        ArchivalScheduler scheduler = scheduler(0, 10, 10, OverrunPolicy.SKIP);
+        AtomicInteger count = new AtomicInteger();
+        scheduler.schedule("jvm", rule, count::incrementAndGet, 1, 2);
+
+        advanceSeconds(scheduler, 1);
+        MatcherAssert.assertThat(workQueue, Matchers.hasSize(1));
+        // the first run is still in progress when the next two come due
+        advanceSeconds(scheduler, 4);
+        MatcherAssert.assertThat(scheduler.getSkipped(), Matchers.equalTo(2L));
+
+        runQueued();
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(workQueue, Matchers.empty());
+
+        advanceSeconds(scheduler, 2);
+        runQueued();
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(2));
+    }
+
+    @Test
+    void shouldCoalesceOverrunningRunsIntoOneCatchUp() {
+        ArchivalScheduler scheduler = scheduler(0, 10, 10, OverrunPolicy.CATCH_UP);
+        AtomicInteger count = new AtomicInteger();
+        scheduler.schedule("jvm", rule, count::incrementAndGet, 1, 2);
+
+        advanceSeconds(scheduler, 1);
+        advanceSeconds(scheduler, 4);
+        MatcherAssert.assertThat(workQueue, Matchers.hasSize(1));
+
+        runQueued();
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(workQueue, Matchers.hasSize(1));
+        runQueued();
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(workQueue, Matchers.empty());
+        MatcherAssert.assertThat(scheduler.getSkipped(), Matchers.equalTo(0L));
+    }
+
+    @Test
+    void shouldStopRunningCancelledTasks() {
+        ArchivalScheduler scheduler = scheduler(0, 10, 10, OverrunPolicy.SKIP);
+        AtomicInteger count = new AtomicInteger();
+        Future<?> task = scheduler.schedule("jvm", rule, count::incrementAndGet, 1, 1);
+
+        advanceSeconds(scheduler, 1);
+        runQueued();
+        task.cancel(false);
+        advanceSeconds(scheduler, 5);
+        runQueued();
+
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(1));
+    }
+
+    @Test
+    void shouldReleaseCancelledTasks() {
+        ArchivalScheduler scheduler = scheduler(0, 1, 1, OverrunPolicy.SKIP);
+        Future<?> running = scheduler.schedule("jvm-1", rule, () -> {}, 1, 60);
+        Future<?> waiting = scheduler.schedule("jvm-2", rule, () -> {}, 1, 60);
+        Future<?> idle = scheduler.schedule("jvm-3", otherRule, () -> {}, 30, 60);
+
+        advanceSeconds(scheduler, 1);
+        MatcherAssert.assertThat(scheduler.getScheduled(), Matchers.equalTo(3));
+        MatcherAssert.assertThat(scheduler.getWaiting(), Matchers.equalTo(1));
+
+        running.cancel(false);
+        waiting.cancel(false);
+        idle.cancel(false);
+
+        MatcherAssert.assertThat(scheduler.getScheduled(), Matchers.equalTo(0));
+        MatcherAssert.assertThat(scheduler.getWaiting(), Matchers.equalTo(0));
+    }
+
+    @Test
+    void shouldNotStartCancelledWaitingTasks() {
+        ArchivalScheduler scheduler = scheduler(0, 1, 1, OverrunPolicy.SKIP);
+        AtomicInteger count = new AtomicInteger();
+        scheduler.schedule("jvm-1", rule, count::incrementAndGet, 1, 60);
+        Future<?> task = scheduler.schedule("jvm-2", rule, count::incrementAndGet, 1, 60);
+
+        advanceSeconds(scheduler, 1);
+        task.cancel(false);
+        runQueued();
+        runQueued();
+
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(scheduler.getWaiting(), Matchers.equalTo(0));
+    }
+
+    @Test
+    void shouldCatchUpAfterStalledTicker() {
+        ArchivalScheduler scheduler = scheduler(0, 10, 10, OverrunPolicy.SKIP);
+        AtomicInteger count = new AtomicInteger();
+        scheduler.schedule("jvm", rule, count::incrementAndGet, 1, 10);
+
+        nowMillis += TimeUnit.SECONDS.toMillis(35);
+        scheduler.tick();
+        runQueued();
+
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(scheduler.getSkipped(), Matchers.equalTo(3L));
+
+        advanceSeconds(scheduler, 6);
+        runQueued();
+        MatcherAssert.assertThat(count.get(), Matchers.equalTo(2));
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.rules;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.script.ScriptEngine;
+
+import io.cryostat.MainModule;
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.platform.ServiceRef;
+import io.cryostat.platform.ServiceRef.AnnotationKey;
+import io.cryostat.rules.MatchExpressionCompiler.CompiledMatchExpression;
+import io.cryostat.rules.MatchExpressionCompiler.UnsupportedEvaluationException;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class MatchExpressionCompilerTest {
+
+    MatchExpressionCompiler compiler;
+    MatchExpressionEvaluator evaluator;
+    ScriptEngine scriptEngine;
+    @Mock ServiceRef serviceRef;
+    @Mock ServiceRef unaliasedRef;
+    @Mock CredentialsManager credentials;
+    @Mock RuleRegistry rules;
+
+    @BeforeEach
+    void setup() throws Exception {
+        this.compiler = new MatchExpressionCompiler();
+        this.scriptEngine = MainModule.provideScriptEngine();
+        this.evaluator = new MatchExpressionEvaluator(scriptEngine, credentials, rules);
+
+        Map<String, String> labels = new HashMap<>();
+        labels.put("app", "cryostat");
+        labels.put("version", "2");
+        labels.put("size", "large");
+        labels.put("blank", "");
+        labels.put("padded", "\u00A0\uFEFF\u001Ccryostat\u2007\u202F ");
+        stub(
+                serviceRef,
+                Optional.of("someAlias"),
+                labels,
+                Map.of("annotation1", "someAnnotation", "PORT", "9091"));
+        stub(unaliasedRef, Optional.empty(), Map.of(), Map.of());
+    }
+
+    private void stub(
+            ServiceRef ref,
+            Optional<String> alias,
+            Map<String, String> labels,
+            Map<String, String> platformAnnotations)
+            throws Exception {
+        Mockito.lenient()
+                .when(ref.getServiceUri())
+                .thenReturn(new URI("service:jmx:rmi:///jndi/rmi://cryostat:9091/jmxrmi"));
+        Mockito.lenient().when(ref.getJvmId()).thenReturn("-some1234HashId=");
+        Mockito.lenient().when(ref.getAlias()).thenReturn(alias);
+        Mockito.lenient().when(ref.getLabels()).thenReturn(labels);
+        Mockito.lenient().when(ref.getPlatformAnnotations()).thenReturn(platformAnnotations);
+        Mockito.lenient()
+                .when(ref.getCryostatAnnotations())
+                .thenReturn(
+                        Map.of(
+                                AnnotationKey.JAVA_MAIN,
+                                "io.cryostat.Cryostat",
+                                AnnotationKey.PORT,
+                                "9091"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                "true",
+                "false",
+                "null",
+                "undefined",
+                "'x'",
+                "''",
+                "0",
+                "1.5",
+                "(true)",
+                "!true",
+                "!!''",
+                "!target.missing",
+                "target.alias == 'someAlias'",
+                "target.alias === 'someAlias'",
+                "target.alias != 'someAlias'",
+                "target.alias !== 'otherAlias'",
+                "target.alias == null",
+                "target.alias == undefined",
+                "target.alias === undefined",
+                "target.alias === null",
+                "target.missing == null",
+                "target.missing === undefined",
+                "target.missing === null",
+                "target.jvmId == '-some1234HashId='",
+                "target.connectUrl == 'service:jmx:rmi:///jndi/rmi://cryostat:9091/jmxrmi'",
+                "target['alias'] == 'someAlias'",
+                "target.labels.app == 'cryostat'",
+                "target.labels['app'] === 'cryostat'",
+                "target.labels.version == 2",
+                "target.labels.version === 2",
+                "target.labels.version == '2'",
+                "target.labels.blank == 0",
+                "target.labels.blank == false",
+                "target.labels.missing == undefined",
+                "target.labels == null",
+                "target.annotations.platform.annotation1 == 'someAnnotation'",
+                "target.annotations.platform['PORT'] == 9091",
+                "target.annotations.cryostat.JAVA_MAIN == 'io.cryostat.Cryostat'",
+                "target.annotations.cryostat.PORT == 9091",
+                "target.annotations.cryostat.HOST == undefined",
+                "target.annotations.cryostat.nonsense == undefined",
+                "'app' in target.labels",
+                "'missing' in target.labels",
+                "'alias' in target",
+                "'platform' in target.annotations",
+                "'JAVA_MAIN' in target.annotations.cryostat",
+                "'HOST' in target.annotations.cryostat",
+                "target.alias == 'someAlias' && target.labels.app == 'cryostat'",
+                "target.alias == 'someAlias' || target.labels.app == 'other'",
+                "target.alias == 'other' || target.labels.app == 'other'",
+                "target.alias && true",
+                "'x' && target.alias",
+                "0 || ''",
+                "target.missing || 'fallback'",
+                "'5' == 5",
+                "true == 1",
+                "'1' == true",
+                "'' == 0",
+                "' 12 ' == 12",
+                "'0x1A' == 26",
+                "'1e3' == 1000",
+                "'1d' == 1",
+                "-'3' == -3",
+                "-undefined == -undefined",
+                "'Infinity' == 'Infinity'",
+                "null == 0",
+                "null == false",
+                "undefined == null",
+                "/^some/.test(target.alias)",
+                "/Alias$/.test(target.alias)",
+                "/alias/i.test(target.alias)",
+                "/ALIAS/.test(target.alias)",
+                "/^[a-z]+[A-Z]\\w+$/.test(target.alias)",
+                "/cryostat:\\d+/.test(target.connectUrl)",
+                "/(?:some|other)Alias/g.test(target.alias)",
+                "/some(?=Alias)/.test(target.alias)",
+                "/some(?!Alias)/.test(target.alias)",
+                "/^null$/.test(target.missing)",
+                "/^undefined$/.test(target.missing)",
+                "/Cryostat$/.test(target.annotations.cryostat.JAVA_MAIN)",
+                "target.alias.startsWith('some')",
+                "target.alias.endsWith('Alias')",
+                "target.alias.endsWith('alias')",
+                "target.alias.indexOf('Alias') == 4",
+                "target.alias.indexOf('nope') == -1",
+                "target.alias.toLowerCase() == 'somealias'",
+                "target.alias.toUpperCase() === 'SOMEALIAS'",
+                "' x '.trim() === 'x'",
+                "'\\u00A0\\uFEFFx\\u2007\\u202F'.trim() === 'x'",
+                "'\\u001Cx\\u001F'.trim() === 'x'",
+                "'\\u001Cx'.trim().length",
+                "'\\u00A0\\uFEFF12\\u180E' == 12",
+                "'\\u001C12' == 12",
+                "target.labels.padded.trim()",
+                "target.labels.padded.trim().length",
+                "target.alias.length == 9",
+                "'x'.length === 1",
+                "target.labels.app.toUpperCase().startsWith('CRYO')",
+            })
+    void shouldAgreeWithScriptEngine(String expression) throws Exception {
+        Optional<CompiledMatchExpression> compiled = compiler.compile(expression);
+        MatcherAssert.assertThat(expression, compiled.isPresent(), Matchers.is(true));
+        for (ServiceRef ref : new ServiceRef[] {serviceRef, unaliasedRef}) {
+            Object actual;
+            try {
+                actual = compiled.get().evaluate(ref);
+            } catch (UnsupportedEvaluationException e) {
+                continue;
+            }
+            Object expected = scriptEngine.eval(expression, evaluator.createBindings(ref));
+            if (expected instanceof Number) {
+                MatcherAssert.assertThat(expression, actual, Matchers.instanceOf(Double.class));
+                MatcherAssert.assertThat(
+                        expression,
+                        (Double) actual,
+                        Matchers.equalTo(((Number) expected).doubleValue()));
+            } else {
+                MatcherAssert.assertThat(expression, actual, Matchers.equalTo(expected));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                "",
+                "target.alias ==",
+                "true; false",
+                "var x = true",
+                "function f() {}",
+                "x == 1",
+                "target.alias < 'b'",
+                "typeof target.alias == 'string'",
+                "target.alias == 'a' ? true : false",
+                "target.alias.match(/a/) != null",
+                "target.alias.substring(1) == 'a'",
+                "target.alias.startsWith('a', 1)",
+                "parseInt(target.labels.version) == 2",
+                "/a/.exec(target.alias) != null",
+                "/a/y.test(target.alias)",
+                "/\\s/.test(target.alias)",
+                "/\\bsome/.test(target.alias)",
+                "/(a)\\1/.test(target.alias)",
+                "/[[a]]/.test(target.alias)",
+                "/[a&&b]/.test(target.alias)",
+                "/[]/.test(target.alias)",
+                "/a++/.test(target.alias)",
+                "/\\x{41}/.test(target.alias)",
+                "/\\p{L}/.test(target.alias)",
+                "/(?<n>a)/.test(target.alias)",
+            })
+    void shouldNotCompileUnsupportedExpressions(String expression) {
+        MatcherAssert.assertThat(compiler.compile(expression).isPresent(), Matchers.is(false));
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                "target.missing.foo == 'bar'",
+                "target.labels.missing.length == 0",
+                "target.labels.empty",
+                "target.labels.size == 'large'",
+                "'get' in target.labels",
+                "target.labels == 'x'",
+                "target.labels === target.labels",
+                "target.labels.version.startsWith(2)",
+                "/a$/.test('a\\n')",
+                "/A/i.test('ä')",
+            })
+    void shouldDeferUnsupportedValuesToScriptEngine(String expression) {
+        Optional<CompiledMatchExpression> compiled = compiler.compile(expression);
+        MatcherAssert.assertThat(compiled.isPresent(), Matchers.is(true));
+        Assertions.assertThrows(
+                UnsupportedEvaluationException.class, () -> compiled.get().evaluate(serviceRef));
+    }
+
+    @Test
+    void evaluatorShouldFallBackToScriptEngine() throws Exception {
+        MatcherAssert.assertThat(
+                evaluator.applies("target.labels.size == 'large'", serviceRef), Matchers.is(true));
+        MatcherAssert.assertThat(
+                evaluator.applies("/a$/.test('a\\n')", serviceRef), Matchers.is(false));
+        MatcherAssert.assertThat(
+                evaluator.applies("typeof target.alias == 'string'", serviceRef),
+                Matchers.is(true));
+    }
+
+    @Test
+    void evaluatorShouldEvaluateCompiledIncludes() throws Exception {
+        // not supported by the script engine, only by the compiled form
+        MatcherAssert.assertThat(
+                evaluator.applies("target.alias.includes('meAl')", serviceRef), Matchers.is(true));
+        MatcherAssert.assertThat(
+                evaluator.applies("target.alias.includes('nope')", serviceRef), Matchers.is(false));
+    }
+}
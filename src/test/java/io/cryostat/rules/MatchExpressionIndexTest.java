@@ -0,0 +1,223 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.rules;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.script.ScriptException;
+
+import io.cryostat.configuration.CredentialsManager;
+import io.cryostat.configuration.CredentialsManager.CredentialsEvent;
+import io.cryostat.core.net.discovery.JvmDiscoveryClient.EventKind;
+import io.cryostat.platform.PlatformClient;
+import io.cryostat.platform.ServiceRef;
+import io.cryostat.platform.TargetDiscoveryEvent;
+import io.cryostat.rules.RuleRegistry.RuleEvent;
+import io.cryostat.util.events.Event;
+import io.cryostat.util.events.EventListener;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class MatchExpressionIndexTest {
+
+    MatchExpressionIndex index;
+    @Mock MatchExpressionEvaluator evaluator;
+    @Mock PlatformClient platformClient;
+    @Mock CredentialsManager credentialsManager;
+    @Mock RuleRegistry ruleRegistry;
+
+    ServiceRef target1;
+    ServiceRef target2;
+    List<ServiceRef> discovered;
+
+    static final String EXPR = "target.alias == 'one'";
+
+    @BeforeEach
+    void setup() throws Exception {
+        this.target1 =
+                new ServiceRef("id1", URI.create("service:jmx:rmi:///jndi/rmi://one"), "one");
+        this.target2 =
+                new ServiceRef("id2", URI.create("service:jmx:rmi:///jndi/rmi://two"), "two");
+        this.discovered = new ArrayList<>(List.of(target1, target2));
+        Mockito.lenient().when(platformClient.listDiscoverableServices()).thenReturn(discovered);
+        Mockito.lenient()
+                .when(evaluator.applies(Mockito.anyString(), Mockito.any()))
+                .thenAnswer(
+                        invocation -> {
+                            ServiceRef ref = invocation.getArgument(1);
+                            return ref.getAlias().orElse("").equals("one");
+                        });
+        this.index =
+                new MatchExpressionIndex(
+                        evaluator, platformClient, credentialsManager, ruleRegistry, Runnable::run);
+    }
+
+    @Test
+    void shouldRegisterDiscoveryListener() {
+        Mockito.verify(platformClient).addTargetDiscoveryListener(index);
+    }
+
+    @Test
+    void shouldIndexExpressionOnceAcrossTargets() throws Exception {
+        MatcherAssert.assertThat(index.getMatchingTargets(EXPR), Matchers.equalTo(Set.of(target1)));
+        MatcherAssert.assertThat(index.applies(EXPR, target1), Matchers.is(true));
+        MatcherAssert.assertThat(index.applies(EXPR, target2), Matchers.is(false));
+        MatcherAssert.assertThat(index.getMatchingTargets(EXPR), Matchers.equalTo(Set.of(target1)));
+
+        Mockito.verify(evaluator, Mockito.times(1)).applies(EXPR, target1);
+        Mockito.verify(evaluator, Mockito.times(1)).applies(EXPR, target2);
+    }
+
+    @Test
+    void shouldIndexExpressionsInBatches() throws Exception {
+        List<ServiceRef> many = new ArrayList<>();
+        for (int i = 0; i < MatchExpressionIndex.BATCH_SIZE * 2 + 1; i++) {
+            many.add(new ServiceRef("id" + i, URI.create("uri" + i), i == 5 ? "one" : "other"));
+        }
+        discovered.clear();
+        discovered.addAll(many);
+
+        MatcherAssert.assertThat(
+                index.getMatchingTargets(EXPR), Matchers.equalTo(Set.of(many.get(5))));
+        Mockito.verify(evaluator, Mockito.times(many.size()))
+                .applies(Mockito.eq(EXPR), Mockito.any());
+    }
+
+    @Test
+    void shouldEvaluateOnlyDiscoveredTarget() throws Exception {
+        index.getMatchingTargets(EXPR);
+        index.getMatchingTargets("other");
+        Mockito.clearInvocations(evaluator);
+
+        ServiceRef target3 =
+                new ServiceRef("id3", URI.create("service:jmx:rmi:///jndi/rmi://three"), "one");
+        index.accept(new TargetDiscoveryEvent(EventKind.FOUND, target3));
+
+        Mockito.verify(evaluator).applies(EXPR, target3);
+        Mockito.verify(evaluator).applies("other", target3);
+        Mockito.verifyNoMoreInteractions(evaluator);
+        MatcherAssert.assertThat(
+                index.getMatchingTargets(EXPR), Matchers.equalTo(Set.of(target1, target3)));
+        MatcherAssert.assertThat(index.applies(EXPR, target3), Matchers.is(true));
+        Mockito.verifyNoMoreInteractions(evaluator);
+    }
+
+    @Test
+    void shouldEvaluateTargetsDiscoveredDuringIndexingWithoutHoldingLock() throws Exception {
+        ServiceRef target3 =
+                new ServiceRef("id3", URI.create("service:jmx:rmi:///jndi/rmi://three"), "one");
+        AtomicBoolean heldLock = new AtomicBoolean();
+        AtomicBoolean discoveredDuring = new AtomicBoolean();
+        Mockito.doAnswer(
+                        invocation -> {
+                            heldLock.compareAndSet(false, Thread.holdsLock(index));
+                            if (discoveredDuring.compareAndSet(false, true)) {
+                                index.accept(new TargetDiscoveryEvent(EventKind.FOUND, target3));
+                            }
+                            ServiceRef ref = invocation.getArgument(1);
+                            return ref.getAlias().orElse("").equals("one");
+                        })
+                .when(evaluator)
+                .applies(Mockito.anyString(), Mockito.any());
+
+        MatcherAssert.assertThat(
+                index.getMatchingTargets(EXPR), Matchers.equalTo(Set.of(target1, target3)));
+        MatcherAssert.assertThat(heldLock.get(), Matchers.is(false));
+        Mockito.verify(evaluator).applies(EXPR, target3);
+    }
+
+    @Test
+    void shouldForgetLostTarget() throws Exception {
+        index.getMatchingTargets(EXPR);
+
+        index.accept(new TargetDiscoveryEvent(EventKind.LOST, target1));
+
+        MatcherAssert.assertThat(index.getMatchingTargets(EXPR), Matchers.empty());
+    }
+
+    @Test
+    void shouldReplaceModifiedTarget() throws Exception {
+        index.getMatchingTargets(EXPR);
+
+        ServiceRef renamed = new ServiceRef(target2.getJvmId(), target2.getServiceUri(), "one");
+        index.accept(new TargetDiscoveryEvent(EventKind.MODIFIED, renamed));
+
+        MatcherAssert.assertThat(
+                index.getMatchingTargets(EXPR), Matchers.equalTo(Set.of(target1, renamed)));
+    }
+
+    @Test
+    void shouldEvaluateUnknownTargetWithoutIndexingIt() throws Exception {
+        index.getMatchingTargets(EXPR);
+        ServiceRef unknown = new ServiceRef("id9", URI.create("unknown"), "one");
+
+        MatcherAssert.assertThat(index.applies(EXPR, unknown), Matchers.is(true));
+
+        Mockito.verify(evaluator).applies(EXPR, unknown);
+        MatcherAssert.assertThat(index.getMatchingTargets(EXPR), Matchers.equalTo(Set.of(target1)));
+    }
+
+    @Test
+    void shouldNotIndexFailingExpression() throws Exception {
+        Mockito.when(evaluator.applies(Mockito.eq("bad"), Mockito.any()))
+                .thenThrow(new ScriptException("bad"));
+
+        Assertions.assertThrows(ScriptException.class, () -> index.getMatchingTargets("bad"));
+        Assertions.assertThrows(ScriptException.class, () -> index.applies("bad", target1));
+    }
+
+    @Test
+    void shouldInvalidateExpressionWhenRuleRemoved() throws Exception {
+        ArgumentCaptor<EventListener<RuleEvent, Rule>> listener =
+                ArgumentCaptor.forClass(EventListener.class);
+        Mockito.verify(ruleRegistry).addListener(listener.capture());
+        index.getMatchingTargets(EXPR);
+        Rule rule = Mockito.mock(Rule.class);
+        Mockito.when(rule.getMatchExpression()).thenReturn(EXPR);
+
+        listener.getValue().onEvent(new Event<>(RuleEvent.REMOVED, rule));
+        index.getMatchingTargets(EXPR);
+
+        Mockito.verify(evaluator, Mockito.times(2)).applies(EXPR, target1);
+    }
+
+    @Test
+    void shouldInvalidateExpressionWhenCredentialsRemoved() throws Exception {
+        ArgumentCaptor<EventListener<CredentialsEvent, String>> listener =
+                ArgumentCaptor.forClass(EventListener.class);
+        Mockito.verify(credentialsManager).addListener(listener.capture());
+        index.getMatchingTargets(EXPR);
+
+        listener.getValue().onEvent(new Event<>(CredentialsEvent.REMOVED, EXPR));
+        index.getMatchingTargets(EXPR);
+
+        Mockito.verify(evaluator, Mockito.times(2)).applies(EXPR, target1);
+    }
+}
@@ -16,12 +16,13 @@
 package io.cryostat.rules;
 
 import java.net.URI;
+import java.util.ArrayDeque;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 
 import org.openjdk.jmc.common.unit.IConstrainedMap;
@@ -78,6 +79,7 @@ class RuleProcessorTest {
     @Mock RecordingTargetHelper recordingTargetHelper;
     @Mock RecordingMetadataManager metadataManager;
     @Mock PeriodicArchiverFactory periodicArchiverFactory;
+    @Mock ArchivalScheduler archivalScheduler;
 
     @Mock JFRConnection connection;
     @Mock CryostatFlightRecorderService service;
@@ -96,7 +98,8 @@ class RuleProcessorTest {
                         recordingArchiveHelper,
                         recordingTargetHelper,
                         metadataManager,
-                        periodicArchiverFactory);
+                        periodicArchiverFactory,
+                        archivalScheduler);
     }
 
     @Test
@@ -106,6 +109,7 @@ class RuleProcessorTest {
         processor.start();
 
         Mockito.verify(platformClient).addTargetDiscoveryListener(processor);
+        Mockito.verify(archivalScheduler).start();
     }
 
     @Test
@@ -115,6 +119,91 @@ class RuleProcessorTest {
         processor.stop();
 
         Mockito.verify(platformClient).removeTargetDiscoveryListener(processor);
+        Mockito.verify(archivalScheduler).stop();
+    }
+
+    @Test
+    void testEventsForSameTargetAreProcessedInOrder() throws Exception {
+        Queue<Runnable> queue = new ArrayDeque<>();
+        Mockito.doAnswer(inv -> queue.add(inv.getArgument(0)))
+                .when(executor)
+                .execute(Mockito.any());
+
+        String jmxUrl = "service:jmx:rmi://localhost:9091/jndi/rmi://fooHost:9091/jmxrmi";
+        ServiceRef serviceRef = new ServiceRef("id", new URI(jmxUrl), "com.example.App");
+        Mockito.when(registry.getRules(serviceRef)).thenReturn(Set.of());
+
+        processor.accept(new TargetDiscoveryEvent(EventKind.FOUND, serviceRef));
+        processor.accept(new TargetDiscoveryEvent(EventKind.MODIFIED, serviceRef));
+
+        MatcherAssert.assertThat(queue, Matchers.hasSize(1));
+        Mockito.verify(registry, Mockito.never()).getRules(Mockito.any());
+
+        queue.poll().run();
+        Mockito.verify(registry, Mockito.times(1)).getRules(serviceRef);
+        MatcherAssert.assertThat(queue, Matchers.hasSize(1));
+
+        queue.poll().run();
+        Mockito.verify(registry, Mockito.times(2)).getRules(serviceRef);
+        MatcherAssert.assertThat(queue, Matchers.empty());
+    }
+
+    @Test
+    void testEventsForSameTargetAreOrderedOnceJvmIdIsKnown() throws Exception {
+        Queue<Runnable> queue = new ArrayDeque<>();
+        Mockito.doAnswer(inv -> queue.add(inv.getArgument(0)))
+                .when(executor)
+                .execute(Mockito.any());
+
+        URI serviceUri = new URI("service:jmx:rmi:///jndi/rmi://fooHost:9091/jmxrmi");
+        ServiceRef unresolved = new ServiceRef(null, serviceUri, "com.example.App");
+        ServiceRef resolved = new ServiceRef("id", serviceUri, "com.example.App");
+        Mockito.when(registry.getRules(Mockito.any())).thenReturn(Set.of());
+
+        processor.accept(new TargetDiscoveryEvent(EventKind.FOUND, unresolved));
+        processor.accept(new TargetDiscoveryEvent(EventKind.MODIFIED, resolved));
+
+        MatcherAssert.assertThat(queue, Matchers.hasSize(1));
+
+        queue.poll().run();
+        Mockito.verify(registry).getRules(unresolved);
+        Mockito.verify(registry, Mockito.never()).getRules(resolved);
+        MatcherAssert.assertThat(queue, Matchers.hasSize(1));
+
+        queue.poll().run();
+        Mockito.verify(registry).getRules(resolved);
+        MatcherAssert.assertThat(queue, Matchers.empty());
+    }
+
+    @Test
+    void testEventsForDifferentTargetsAreProcessedConcurrently() throws Exception {
+        Queue<Runnable> queue = new ArrayDeque<>();
+        Mockito.doAnswer(inv -> queue.add(inv.getArgument(0)))
+                .when(executor)
+                .execute(Mockito.any());
+
+        ServiceRef first =
+                new ServiceRef(
+                        "id1",
+                        new URI("service:jmx:rmi:///jndi/rmi://fooHost:9091/jmxrmi"),
+                        "com.example.App");
+        ServiceRef second =
+                new ServiceRef(
+                        "id2",
+                        new URI("service:jmx:rmi:///jndi/rmi://barHost:9091/jmxrmi"),
+                        "com.example.App");
+        Mockito.when(registry.getRules(Mockito.any())).thenReturn(Set.of());
+
+        processor.accept(new TargetDiscoveryEvent(EventKind.FOUND, first));
+        processor.accept(new TargetDiscoveryEvent(EventKind.FOUND, second));
+
+        MatcherAssert.assertThat(queue, Matchers.hasSize(2));
+
+        queue.poll().run();
+        queue.poll().run();
+        Mockito.verify(registry).getRules(first);
+        Mockito.verify(registry).getRules(second);
+        MatcherAssert.assertThat(queue, Matchers.empty());
     }
 
     @Test
@@ -254,16 +343,17 @@ class RuleProcessorTest {
         MatcherAssert.assertThat(metadataCaptor.getValue(), Matchers.equalTo(new Metadata()));
 
         ArgumentCaptor<Runnable> handlerCaptor = ArgumentCaptor.forClass(Runnable.class);
-        Mockito.verify(executor)
-                .scheduleAtFixedRate(
+        Mockito.verify(archivalScheduler)
+                .schedule(
+                        Mockito.eq(serviceRef.getJvmId()),
+                        Mockito.eq(rule),
                         handlerCaptor.capture(),
                         Mockito.eq((long) rule.getInitialDelaySeconds()),
-                        Mockito.eq((long) rule.getArchivalPeriodSeconds()),
-                        Mockito.eq(TimeUnit.SECONDS));
+                        Mockito.eq((long) rule.getArchivalPeriodSeconds()));
 
-        Mockito.verify(periodicArchiver, Mockito.times(1)).run();
+        Mockito.verify(periodicArchiver, Mockito.never()).run();
         handlerCaptor.getValue().run();
-        Mockito.verify(periodicArchiver, Mockito.times(2)).run();
+        Mockito.verify(periodicArchiver, Mockito.times(1)).run();
     }
 
     @Test
@@ -424,20 +514,25 @@ class RuleProcessorTest {
                             }
                         });
 
-        ScheduledFuture task = Mockito.mock(ScheduledFuture.class);
+        Future task = Mockito.mock(Future.class);
         Mockito.doReturn(task)
-                .when(executor)
-                .scheduleAtFixedRate(
-                        Mockito.any(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+                .when(archivalScheduler)
+                .schedule(
+                        Mockito.any(),
+                        Mockito.any(),
+                        Mockito.any(),
+                        Mockito.anyLong(),
+                        Mockito.anyLong());
 
         processor.accept(tde);
 
-        Mockito.verify(executor)
-                .scheduleAtFixedRate(
+        Mockito.verify(archivalScheduler)
+                .schedule(
+                        Mockito.eq(serviceRef.getJvmId()),
+                        Mockito.eq(rule),
                         Mockito.any(),
                         Mockito.eq((long) rule.getInitialDelaySeconds()),
-                        Mockito.eq((long) rule.getArchivalPeriodSeconds()),
-                        Mockito.eq(TimeUnit.SECONDS));
+                        Mockito.eq((long) rule.getArchivalPeriodSeconds()));
 
         Mockito.verify(periodicArchiverFactory)
                 .create(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
@@ -50,7 +50,7 @@ class RuleRegistryTest {
 
     RuleRegistry registry;
     @Mock Path rulesDir;
-    @Mock MatchExpressionEvaluator matchExpressionEvaluator;
+    @Mock MatchExpressionIndex matchExpressionIndex;
     @Mock FileSystem fs;
     Gson gson = Mockito.spy(MainModule.provideGson());
 
@@ -60,7 +60,7 @@ class RuleRegistryTest {
 
     @BeforeEach
     void setup() throws Exception {
-        this.registry = new RuleRegistry(rulesDir, () -> matchExpressionEvaluator, fs, gson);
+        this.registry = new RuleRegistry(rulesDir, () -> matchExpressionIndex, fs, gson);
         this.testRule =
                 new Rule.Builder()
                         .name("test rule")
@@ -205,8 +205,7 @@ class RuleRegistryTest {
 
     @Test
     void testGetRulesByServiceRef() throws Exception {
-        Mockito.when(matchExpressionEvaluator.applies(Mockito.any(), Mockito.any()))
-                .thenReturn(true);
+        Mockito.when(matchExpressionIndex.applies(Mockito.any(), Mockito.any())).thenReturn(true);
 
         registry.addRule(testRule);
 
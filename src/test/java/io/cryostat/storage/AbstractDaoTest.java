@@ -0,0 +1,196 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.storage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import io.cryostat.core.sys.Clock;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class AbstractDaoTest {
+
+    EntityManagerFactory emf;
+    AtomicLong nanos;
+    Clock clock;
+
+    @BeforeEach
+    void setup() {
+        Properties properties = new Properties();
+        properties.put("jakarta.persistence.jdbc.driver", "org.h2.Driver");
+        properties.put(
+                "jakarta.persistence.jdbc.url",
+                "jdbc:h2:mem:" + getClass().getSimpleName() + ";DB_CLOSE_DELAY=-1");
+        properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.put("hibernate.hbm2ddl.auto", "create-drop");
+        properties.put("hibernate.loaded_classes", List.of(CachedEntity.class));
+        emf = Persistence.createEntityManagerFactory("io.cryostat", properties);
+
+        nanos = new AtomicLong();
+        clock = Mockito.mock(Clock.class);
+        Mockito.lenient().when(clock.getMonotonicTime()).thenAnswer(i -> nanos.get());
+    }
+
+    @AfterEach
+    void teardown() {
+        emf.close();
+    }
+
+    CachedEntityDao createDao(Duration versionCheckInterval) {
+        return new CachedEntityDao(
+                emf,
+                new EntityCacheFactory(versionCheckInterval, clock)
+                        .create(CachedEntity.class, CachedEntity::getId));
+    }
+
+    @Nested
+    class Unversioned {
+
+        CachedEntityDao dao;
+
+        @BeforeEach
+        void setup() {
+            dao = createDao(Duration.ZERO);
+            dao.saveAll(List.of(new CachedEntity(1, "a"), new CachedEntity(2, "b")));
+        }
+
+        @Test
+        void shouldServeReadsFromCache() {
+            MatcherAssert.assertThat(dao.getAll(), Matchers.hasSize(2));
+            MatcherAssert.assertThat(dao.get(1).get().getLabel(), Matchers.equalTo("a"));
+            MatcherAssert.assertThat(dao.get(3).isPresent(), Matchers.is(false));
+            MatcherAssert.assertThat(
+                    dao.getAllByIds(List.of(2, 3)).stream().map(CachedEntity::getLabel).toList(),
+                    Matchers.contains("b"));
+
+            MatcherAssert.assertThat(dao.cache.getMisses(), Matchers.equalTo(1L));
+            MatcherAssert.assertThat(dao.cache.getHits(), Matchers.equalTo(3L));
+        }
+
+        @Test
+        void shouldWriteThroughToCache() {
+            dao.getAll();
+
+            dao.save(new CachedEntity(3, "c"));
+            MatcherAssert.assertThat(dao.get(3).get().getLabel(), Matchers.equalTo("c"));
+
+            MatcherAssert.assertThat(dao.delete(1), Matchers.is(true));
+            MatcherAssert.assertThat(dao.get(1).isPresent(), Matchers.is(false));
+
+            MatcherAssert.assertThat(dao.deleteAll(List.of(2, 4)), Matchers.equalTo(1));
+            MatcherAssert.assertThat(
+                    dao.getAll().stream().map(CachedEntity::getLabel).toList(),
+                    Matchers.contains("c"));
+
+            MatcherAssert.assertThat(dao.cache.getMisses(), Matchers.equalTo(1L));
+            MatcherAssert.assertThat(dao.cache.getInvalidations(), Matchers.equalTo(0L));
+        }
+
+        @Test
+        void shouldInvalidateAfterOtherWrites() {
+            dao.getAll();
+
+            dao.rename(1, "z");
+
+            MatcherAssert.assertThat(dao.cache.getInvalidations(), Matchers.equalTo(1L));
+            MatcherAssert.assertThat(dao.get(1).get().getLabel(), Matchers.equalTo("z"));
+            MatcherAssert.assertThat(dao.cache.getMisses(), Matchers.equalTo(2L));
+        }
+    }
+
+    @Nested
+    class Versioned {
+
+        CachedEntityDao replica1;
+        CachedEntityDao replica2;
+
+        @BeforeEach
+        void setup() {
+            replica1 = createDao(Duration.ofSeconds(5));
+            replica2 = createDao(Duration.ofSeconds(5));
+            replica1.save(new CachedEntity(1, "a"));
+        }
+
+        @Test
+        void shouldSeeOtherReplicasWritesAfterCheckInterval() {
+            MatcherAssert.assertThat(replica2.getAll(), Matchers.hasSize(1));
+
+            replica1.save(new CachedEntity(2, "b"));
+
+            MatcherAssert.assertThat(replica2.getAll(), Matchers.hasSize(1));
+            nanos.addAndGet(TimeUnit.SECONDS.toNanos(5));
+            MatcherAssert.assertThat(replica2.getAll(), Matchers.hasSize(2));
+            MatcherAssert.assertThat(replica2.cache.getStale(), Matchers.equalTo(1L));
+        }
+
+        @Test
+        void shouldNotReloadAfterOwnWrites() {
+            replica1.getAll();
+
+            replica1.save(new CachedEntity(2, "b"));
+            replica1.delete(1);
+            nanos.addAndGet(TimeUnit.SECONDS.toNanos(5));
+
+            MatcherAssert.assertThat(
+                    replica1.getAll().stream().map(CachedEntity::getLabel).toList(),
+                    Matchers.contains("b"));
+            MatcherAssert.assertThat(replica1.cache.getMisses(), Matchers.equalTo(1L));
+            MatcherAssert.assertThat(replica1.cache.getStale(), Matchers.equalTo(0L));
+        }
+
+        @Test
+        void shouldReloadOnOwnWriteAfterOtherReplicasWrite() {
+            replica1.getAll();
+            replica2.save(new CachedEntity(2, "b"));
+
+            replica1.save(new CachedEntity(3, "c"));
+
+            MatcherAssert.assertThat(replica1.cache.getStale(), Matchers.equalTo(1L));
+            MatcherAssert.assertThat(replica1.getAll(), Matchers.hasSize(3));
+        }
+    }
+
+    static class CachedEntityDao extends AbstractDao<Integer, CachedEntity> {
+        CachedEntityDao(EntityManagerFactory emf, EntityCache<Integer, CachedEntity> cache) {
+            super(CachedEntity.class, emf, Mockito.mock(DatabaseExecutor.class), cache);
+        }
+
+        void rename(int id, String label) {
+            inTransaction(
+                    entityManager ->
+                            entityManager
+                                    .createQuery(
+                                            "UPDATE CachedEntity e SET e.label = :label"
+                                                    + " WHERE e.id = :id")
+                                    .setParameter("label", label)
+                                    .setParameter("id", id)
+                                    .executeUpdate());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.storage;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DatabaseExecutorTest {
+
+    DatabaseExecutor executor;
+
+    @AfterEach
+    void teardown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void shouldCompleteWithTaskResult() throws Exception {
+        executor = new DatabaseExecutor(1, 1, Duration.ofSeconds(10));
+
+        MatcherAssert.assertThat(
+                executor.submit(() -> "foo").get(5, TimeUnit.SECONDS), Matchers.equalTo("foo"));
+    }
+
+    @Test
+    void shouldCompleteExceptionallyWithTaskFailure() {
+        executor = new DatabaseExecutor(1, 1, Duration.ofSeconds(10));
+
+        CompletableFuture<Object> future =
+                executor.submit(
+                        () -> {
+                            throw new IllegalStateException("foo");
+                        });
+
+        ExecutionException ex =
+                Assertions.assertThrows(
+                        ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        MatcherAssert.assertThat(ex.getCause(), Matchers.instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    void shouldRejectWhenQueueIsFull() throws Exception {
+        executor = new DatabaseExecutor(1, 1, Duration.ofSeconds(10));
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Boolean> blocker =
+                executor.submit(
+                        () -> {
+                            running.countDown();
+                            try {
+                                return release.await(5, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        });
+        running.await(5, TimeUnit.SECONDS);
+        CompletableFuture<String> queued = executor.submit(() -> "queued");
+        CompletableFuture<String> rejected = executor.submit(() -> "rejected");
+
+        ExecutionException ex =
+                Assertions.assertThrows(
+                        ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        MatcherAssert.assertThat(
+                ex.getCause(), Matchers.instanceOf(RejectedExecutionException.class));
+        MatcherAssert.assertThat(executor.getRejected(), Matchers.equalTo(1L));
+        MatcherAssert.assertThat(executor.getQueued(), Matchers.equalTo(1));
+
+        release.countDown();
+        MatcherAssert.assertThat(blocker.get(5, TimeUnit.SECONDS), Matchers.is(true));
+        MatcherAssert.assertThat(queued.get(5, TimeUnit.SECONDS), Matchers.equalTo("queued"));
+    }
+
+    @Test
+    void shouldTimeOutAndSkipQueuedTasks() throws Exception {
+        executor = new DatabaseExecutor(1, 1, Duration.ofMillis(100));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean ran = new AtomicBoolean();
+
+        CompletableFuture<Boolean> blocker =
+                executor.submit(
+                        () -> {
+                            try {
+                                return release.await(5, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        });
+        CompletableFuture<Boolean> queued = executor.submit(() -> ran.getAndSet(true));
+
+        ExecutionException ex =
+                Assertions.assertThrows(
+                        ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        MatcherAssert.assertThat(ex.getCause(), Matchers.instanceOf(TimeoutException.class));
+        Assertions.assertThrows(ExecutionException.class, () -> blocker.get(5, TimeUnit.SECONDS));
+        MatcherAssert.assertThat(executor.getTimedOut(), Matchers.equalTo(2L));
+
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getCompleted() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        MatcherAssert.assertThat(executor.getCompleted(), Matchers.equalTo(2L));
+        MatcherAssert.assertThat(ran.get(), Matchers.is(false));
+    }
+}
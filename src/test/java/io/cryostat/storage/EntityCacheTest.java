@@ -0,0 +1,71 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.storage;
+
+import java.time.Duration;
+import java.util.List;
+
+import io.cryostat.core.sys.Clock;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class EntityCacheTest {
+
+    EntityCache<Integer, CachedEntity> cache;
+
+    @BeforeEach
+    void setup() {
+        cache =
+                new EntityCache<>(
+                        "test", CachedEntity::getId, Duration.ZERO, Mockito.mock(Clock.class));
+    }
+
+    @Test
+    void shouldNotKeepLoadWhichRacedWithWrite() {
+        EntityCache.Snapshot<Integer, CachedEntity> loaded =
+                cache.snapshot(
+                        () -> {
+                            cache.putAll(List.of(new CachedEntity(2, "b")), 0);
+                            return List.of(new CachedEntity(1, "a"));
+                        },
+                        () -> 0);
+
+        MatcherAssert.assertThat(loaded.values(), Matchers.hasSize(1));
+        MatcherAssert.assertThat(cache.getSize(), Matchers.equalTo(0));
+
+        cache.snapshot(() -> List.of(new CachedEntity(1, "a"), new CachedEntity(2, "b")), () -> 0);
+
+        MatcherAssert.assertThat(cache.getSize(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(cache.getMisses(), Matchers.equalTo(2L));
+    }
+
+    @Test
+    void shouldReloadAfterInvalidation() {
+        cache.snapshot(() -> List.of(new CachedEntity(1, "a")), () -> 0);
+        cache.invalidate();
+
+        EntityCache.Snapshot<Integer, CachedEntity> reloaded =
+                cache.snapshot(() -> List.of(new CachedEntity(1, "z")), () -> 0);
+
+        MatcherAssert.assertThat(reloaded.byId().get(1).getLabel(), Matchers.equalTo("z"));
+        MatcherAssert.assertThat(cache.getInvalidations(), Matchers.equalTo(1L));
+        MatcherAssert.assertThat(cache.getMisses(), Matchers.equalTo(2L));
+    }
+}